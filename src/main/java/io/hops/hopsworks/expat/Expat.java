@@ -18,13 +18,18 @@
 package io.hops.hopsworks.expat;
 
 import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
+import io.hops.hopsworks.expat.configuration.ExpatConf;
+import io.hops.hopsworks.expat.executor.MigrationScheduler;
 import io.hops.hopsworks.expat.executor.ProcessExecutor;
+import io.hops.hopsworks.expat.executor.ProjectShardCoordinator;
 import io.hops.hopsworks.expat.executor.ShutdownManager;
 import io.hops.hopsworks.expat.migrations.MigrateStep;
+import io.hops.hopsworks.expat.migrations.MigrationContext;
 import io.hops.hopsworks.expat.migrations.MigrationException;
 import io.hops.hopsworks.expat.migrations.RollbackException;
 import io.hops.hopsworks.expat.migrations.conda.CreateKagentLogsIndeces;
 import io.hops.hopsworks.expat.migrations.elk.BeamKibana;
+import io.hops.hopsworks.expat.migrations.jobs.JobConfigMigration;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.ex.ConfigurationException;
 import org.kohsuke.args4j.CmdLineException;
@@ -33,6 +38,11 @@ import org.kohsuke.args4j.Option;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.kohsuke.args4j.OptionHandlerFilter.ALL;
 
 public class Expat {
@@ -67,7 +77,7 @@ public class Expat {
     }
   }
 
-  public void run() throws ConfigurationException, MigrationException, RollbackException,
+  public void run(MigrationContext context) throws ConfigurationException, MigrationException, RollbackException,
       ClassNotFoundException, InstantiationException, IllegalAccessException {
 
     Configuration config = ConfigurationBuilder.getConfiguration();
@@ -83,23 +93,61 @@ public class Expat {
     }
 
     String[] migrationClasses = migrations.split("\n");
+    List<MigrateStep> steps = new ArrayList<>();
     for (String migration : migrationClasses) {
-      MigrateStep step = (MigrateStep) Class.forName(migration.trim()).newInstance();
+      if (migration.trim().isEmpty()) {
+        continue;
+      }
+      steps.add((MigrateStep) Class.forName(migration.trim()).newInstance());
+    }
+    // the job configuration steps of the version rewrite the jobs table once
+    steps = JobConfigMigration.fuse(steps);
+    
+    ProjectShardCoordinator shards = getProjectShards(config);
+    try {
+      MigrationScheduler scheduler = new MigrationScheduler(config.getInt(ExpatConf.MIGRATION_WORKERS,
+          ExpatConf.MIGRATION_WORKERS_DEFAULT), version, shards, context);
       if (command.equalsIgnoreCase("migrate")) {
-        step.migrate();
+        scheduler.migrate(steps);
       } else {
-        step.rollback();
+        scheduler.rollback(steps);
+      }
+    } finally {
+      if (shards != null) {
+        shards.close();
       }
     }
   }
 
+  private ProjectShardCoordinator getProjectShards(Configuration config) throws MigrationException {
+    long shardSize = config.getLong(ExpatConf.SHARD_SIZE, ExpatConf.SHARD_SIZE_DEFAULT);
+    if (shardSize <= 0) {
+      return null;
+    }
+    if (config.getBoolean(ExpatConf.DRY_RUN)) {
+      LOGGER.info("Project sharding is disabled in dry run");
+      return null;
+    }
+    String workerId = config.getString(ExpatConf.SHARD_WORKER_ID,
+        ManagementFactory.getRuntimeMXBean().getName());
+    try {
+      return new ProjectShardCoordinator(shardSize, config.getInt(ExpatConf.SHARD_LEASE_TIMEOUT,
+          ExpatConf.SHARD_LEASE_TIMEOUT_DEFAULT), workerId);
+    } catch (ConfigurationException | SQLException e) {
+      throw new MigrationException("Could not set up project sharding", e);
+    }
+  }
+
   public static void main(String[] args) throws Exception {
     Expat e = new Expat(args);
   
     ShutdownManager.getManager().addShutdownHook(new ProcessExecutor.ShutdownHook(), 100);
     ShutdownManager.getManager().addShutdownHook(new CreateKagentLogsIndeces.ShutdownHook(), 150);
     ShutdownManager.getManager().addShutdownHook(new BeamKibana.ShutdownHook(), 200);
+    // lowest priority, the shared clients are closed after everything else
+    MigrationContext context = new MigrationContext();
+    ShutdownManager.getManager().addShutdownHook(new MigrationContext.ShutdownHook(context), 50);
     
-    e.run();
+    e.run(context);
   }
 }
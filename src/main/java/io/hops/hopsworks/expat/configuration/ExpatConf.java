@@ -21,6 +21,19 @@ public class ExpatConf {
   private static final String EXPAT_PREFIX = "expat.";
   public static final String EXPAT_PATH = EXPAT_PREFIX + "dir";
   public static final String DRY_RUN = EXPAT_PREFIX + "dry_run";
+  public static final String MIGRATION_WORKERS = EXPAT_PREFIX + "migration_workers";
+  public static final int MIGRATION_WORKERS_DEFAULT = 1;
+  private static final String SHARD_PREFIX = EXPAT_PREFIX + "shard.";
+  public static final String SHARD_SIZE = SHARD_PREFIX + "size";
+  public static final long SHARD_SIZE_DEFAULT = 0;
+  public static final String SHARD_LEASE_TIMEOUT = SHARD_PREFIX + "lease_timeout";
+  public static final int SHARD_LEASE_TIMEOUT_DEFAULT = 300;
+  public static final String SHARD_WORKER_ID = SHARD_PREFIX + "worker_id";
+  public static final String HTTP_MAX_CONNECTIONS_PER_ENDPOINT = EXPAT_PREFIX + "http_max_connections_per_endpoint";
+  public static final int HTTP_MAX_CONNECTIONS_PER_ENDPOINT_DEFAULT = 20;
+  // threads parsing and transforming the job configurations of the job configuration steps
+  public static final String JOB_CONFIG_WORKERS = EXPAT_PREFIX + "job_config_workers";
+  public static final int JOB_CONFIG_WORKERS_DEFAULT = 4;
 
   // ------ Database Configuration ------ //
   private static final String DATABASE_PREFIX = "database.";
@@ -30,6 +43,17 @@ public class ExpatConf {
   public static final String DATABASE_URL = DATABASE_PREFIX + "url";
   public static final String DATABASE_USER_KEY = DATABASE_PREFIX + "user";
   public static final String DATABASE_PASSWORD_KEY = DATABASE_PREFIX + "password";
+  public static final String DATABASE_POOL_SIZE = DATABASE_PREFIX + "pool_size";
+  // connections per migration worker: the step, its journal, lease heartbeats and helper threads
+  public static final int DATABASE_CONNECTIONS_PER_WORKER = 4;
+  public static final int DATABASE_POOL_SIZE_MIN = 10;
+  // statements kept open per connection by the DAOs, 0 disables the cache
+  public static final String DATABASE_STATEMENT_CACHE_SIZE = DATABASE_PREFIX + "statement_cache_size";
+  public static final int DATABASE_STATEMENT_CACHE_SIZE_DEFAULT = 64;
+  // server side prepared statements cached by the JDBC driver per connection
+  public static final String DATABASE_PREP_STMT_CACHE_SIZE = DATABASE_PREFIX + "prep_stmt_cache_size";
+  public static final int DATABASE_PREP_STMT_CACHE_SIZE_DEFAULT = 250;
+  public static final int DATABASE_PREP_STMT_CACHE_SQL_LIMIT = 2048;
 
   // ------ Kubernetes Configuration ------ //
   private static final String KUBE_PREFIX = "kube.";
@@ -89,10 +113,37 @@ public class ExpatConf {
   public static final String ELASTIC_SNAPSHOT_NAME = ELASTIC_SNAPSHOT + "name";
   public static final String ELASTIC_SNAPSHOT_INDICES = ELASTIC_SNAPSHOT + "indices";
   public static final String ELASTIC_SNAPSHOT_IGNORE_UNAVAILABLE = ELASTIC_SNAPSHOT + "ignoreUnavailable";
+  // reindexes run in the background on the cluster, at most max_concurrent of them at once per elastic endpoint
+  public static final String ELASTIC_REINDEX = ELASTIC_PREFIX + "reindex.";
+  public static final String ELASTIC_REINDEX_MAX_CONCURRENT = ELASTIC_REINDEX + "max_concurrent";
+  public static final int ELASTIC_REINDEX_MAX_CONCURRENT_DEFAULT = 2;
+  public static final String ELASTIC_REINDEX_SLICES = ELASTIC_REINDEX + "slices";
+  public static final String ELASTIC_REINDEX_SLICES_DEFAULT = "auto";
+  public static final String ELASTIC_REINDEX_REQUESTS_PER_SECOND = ELASTIC_REINDEX + "requests_per_second";
+  public static final float ELASTIC_REINDEX_REQUESTS_PER_SECOND_DEFAULT = -1;
+  public static final String ELASTIC_REINDEX_POLL_INTERVAL_MS = ELASTIC_REINDEX + "poll_interval_ms";
+  public static final long ELASTIC_REINDEX_POLL_INTERVAL_MS_DEFAULT = 5000;
+  // indices rewritten behind an alias keep their previous version, for rollback
+  public static final String ELASTIC_REINDEX_KEEP_PREVIOUS_VERSION = ELASTIC_REINDEX + "keep_previous_version";
+  public static final boolean ELASTIC_REINDEX_KEEP_PREVIOUS_VERSION_DEFAULT = true;
+  // prov indices are rewritten behind an alias with a single copy, instead of being copied to a temp index and back.
+  // Hopsworks deletes the prov index of a project by name, which fails once that name is an alias.
+  public static final String ELASTIC_REINDEX_ALIAS_MODE = ELASTIC_REINDEX + "alias_mode";
+  public static final boolean ELASTIC_REINDEX_ALIAS_MODE_DEFAULT = false;
+  // hits read per request by the steps that page through search results
+  public static final String ELASTIC_SEARCH_PAGE_SIZE = ELASTIC_PREFIX + "search.page_size";
+  public static final int ELASTIC_SEARCH_PAGE_SIZE_DEFAULT = 1000;
   
   // ------ Hops Configuration ------ //
   private static final String HOPS_PREFIX = "hops.";
   public static final String HOPS_CLIENT_USER = HOPS_PREFIX + "client.user";
+  // namenode operations a step may have in flight at once, and the hdfs clients they are spread over
+  public static final String HOPS_CLIENT_MAX_IN_FLIGHT_OPS = HOPS_PREFIX + "client.max_in_flight_ops";
+  public static final int HOPS_CLIENT_MAX_IN_FLIGHT_OPS_DEFAULT = 16;
+  public static final String HOPS_CLIENT_CONNECTIONS = HOPS_PREFIX + "client.connections";
+  public static final int HOPS_CLIENT_CONNECTIONS_DEFAULT = 4;
+  // compare the xattrs read from the database with the namenode values, to check the database reads
+  public static final String HOPS_CLIENT_VERIFY_XATTR_READS = HOPS_PREFIX + "client.verify_xattr_reads";
   // ------ Epipe Configuration ------ //
   public static final String EPIPE_PATH = "epipe.path";
   public static final String EPIPE_REINDEX = "epipe.reindex";
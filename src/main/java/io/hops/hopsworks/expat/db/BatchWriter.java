@@ -0,0 +1,172 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Writes rows through a batched prepared statement. The batch is executed once it holds {@code batchSize} rows or
+ * once {@code flushInterval} ms passed since the last flush, and when {@link #flush()} is called. With
+ * {@code rewriteBatchedStatements} on the connection (see {@link DbConnectionFactory}) the driver sends a batch of
+ * inserts as one multi-row insert.
+ * In dry run nothing is executed, each flush logs the statement and the number of rows it would have written.
+ * Closing the writer does not flush, so that a migration failing half way does not write the rows of its last batch.
+ * <pre>
+ *   try (BatchWriter writer = new BatchWriter(connection, UPDATE, dryRun).withCommitOnFlush(true)) {
+ *     for (...) {
+ *       writer.add(value, id);
+ *     }
+ *     writer.flush();
+ *   }
+ * </pre>
+ */
+public class BatchWriter implements AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(BatchWriter.class);
+
+  public static final int DEFAULT_BATCH_SIZE = 100;
+  public static final long DEFAULT_FLUSH_INTERVAL = 5000;
+
+  @FunctionalInterface
+  public interface Parameters {
+    void set(PreparedStatement statement) throws SQLException;
+  }
+
+  private final Connection connection;
+  private final String sql;
+  private final boolean dryRun;
+  private final PreparedStatement statement;
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+  private boolean commitOnFlush = false;
+
+  private int pending = 0;
+  private long lastFlush = System.currentTimeMillis();
+  private long rows = 0;
+  private long affectedRows = 0;
+
+  public BatchWriter(Connection connection, String sql, boolean dryRun) throws SQLException {
+    this.connection = connection;
+    this.sql = sql;
+    this.dryRun = dryRun;
+    this.statement = connection.prepareStatement(sql);
+  }
+
+  public BatchWriter withBatchSize(int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("batch size should be at least 1, got:" + batchSize);
+    }
+    this.batchSize = batchSize;
+    return this;
+  }
+
+  /**
+   * @param flushInterval ms after which a partial batch is executed on the next add, 0 to flush on size only
+   */
+  public BatchWriter withFlushInterval(long flushInterval) {
+    this.flushInterval = flushInterval;
+    return this;
+  }
+
+  /**
+   * Commit the transaction of the connection after each flush, for connections that are not in auto commit mode.
+   */
+  public BatchWriter withCommitOnFlush(boolean commitOnFlush) {
+    this.commitOnFlush = commitOnFlush;
+    return this;
+  }
+
+  /**
+   * Adds a row, the parameters are set in order with {@link PreparedStatement#setObject(int, Object)}.
+   */
+  public void add(Object... params) throws SQLException {
+    add(stmt -> {
+      for (int i = 0; i < params.length; i++) {
+        stmt.setObject(i + 1, params[i]);
+      }
+    });
+  }
+
+  public void add(Parameters parameters) throws SQLException {
+    parameters.set(statement);
+    statement.addBatch();
+    pending++;
+    rows++;
+    if (pending >= batchSize || (flushInterval > 0 && System.currentTimeMillis() - lastFlush >= flushInterval)) {
+      flush();
+    }
+  }
+
+  /**
+   * Executes the rows added since the last flush.
+   * @return the number of rows affected by the flushed batch, as far as the driver reports them
+   */
+  public long flush() throws SQLException {
+    lastFlush = System.currentTimeMillis();
+    if (pending == 0) {
+      return 0;
+    }
+    long affected = 0;
+    if (dryRun) {
+      LOGGER.info("{} ({} rows)", statement, pending);
+      statement.clearBatch();
+    } else {
+      for (int count : statement.executeBatch()) {
+        // rewritten batches report SUCCESS_NO_INFO for the statements they were merged from
+        if (count > 0) {
+          affected += count;
+        }
+      }
+      if (commitOnFlush && !connection.getAutoCommit()) {
+        connection.commit();
+      }
+    }
+    LOGGER.debug("Flushed {} rows, {} affected: {}", pending, affected, sql);
+    pending = 0;
+    affectedRows += affected;
+    return affected;
+  }
+
+  /**
+   * @return rows added to the writer, executed or not
+   */
+  public long getRows() {
+    return rows;
+  }
+
+  /**
+   * @return rows affected by the executed batches, 0 in dry run
+   */
+  public long getAffectedRows() {
+    return affectedRows;
+  }
+
+  /**
+   * Closes the statement, rows added since the last flush are discarded.
+   */
+  @Override
+  public void close() throws SQLException {
+    if (pending > 0) {
+      LOGGER.warn("Discarding {} rows that were not flushed: {}", pending, sql);
+    }
+    statement.close();
+  }
+}
@@ -24,22 +24,45 @@ import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.ex.ConfigurationException;
 
 import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Properties;
 
 public class DbConnectionFactory {
 
-  private static HikariDataSource ds = null;
+  private static volatile HikariDataSource ds = null;
 
-  private static void init() throws ConfigurationException {
+  private static synchronized void init() throws ConfigurationException {
+    if (ds != null) {
+      // steps running concurrently may race to initialize the pool
+      return;
+    }
     Configuration config = ConfigurationBuilder.getConfiguration();
 
-    ds = new HikariDataSource();
-    ds.setDriverClassName(config.getString(ExpatConf.DATABASE_DBMS_DRIVER_NAME,
+    HikariDataSource dataSource = new HikariDataSource();
+    dataSource.setDriverClassName(config.getString(ExpatConf.DATABASE_DBMS_DRIVER_NAME,
         ExpatConf.DATABASE_DBMS_DRIVER_NAME_DEFAULT));
-    ds.setJdbcUrl(config.getString(ExpatConf.DATABASE_URL));
-    ds.setUsername(config.getString(ExpatConf.DATABASE_USER_KEY));
-    ds.setPassword(config.getString(ExpatConf.DATABASE_PASSWORD_KEY));
-    ds.setReadOnly(config.getBoolean(ExpatConf.DRY_RUN));
+    dataSource.setJdbcUrl(config.getString(ExpatConf.DATABASE_URL));
+    dataSource.setUsername(config.getString(ExpatConf.DATABASE_USER_KEY));
+    dataSource.setPassword(config.getString(ExpatConf.DATABASE_PASSWORD_KEY));
+    dataSource.setReadOnly(config.getBoolean(ExpatConf.DRY_RUN));
+    // steps of a version may run concurrently, size the pool for the number of migration workers
+    int workers = config.getInt(ExpatConf.MIGRATION_WORKERS, ExpatConf.MIGRATION_WORKERS_DEFAULT);
+    dataSource.setMaximumPoolSize(config.getInt(ExpatConf.DATABASE_POOL_SIZE,
+        Math.max(ExpatConf.DATABASE_POOL_SIZE_MIN, ExpatConf.DATABASE_CONNECTIONS_PER_WORKER * workers)));
+    // prepare statements on the server and let the driver keep them across borrows of a pooled connection
+    dataSource.addDataSourceProperty("useServerPrepStmts", "true");
+    dataSource.addDataSourceProperty("cachePrepStmts", "true");
+    dataSource.addDataSourceProperty("prepStmtCacheSize", String.valueOf(
+        config.getInt(ExpatConf.DATABASE_PREP_STMT_CACHE_SIZE, ExpatConf.DATABASE_PREP_STMT_CACHE_SIZE_DEFAULT)));
+    dataSource.addDataSourceProperty("prepStmtCacheSqlLimit",
+        String.valueOf(ExpatConf.DATABASE_PREP_STMT_CACHE_SQL_LIMIT));
+    // send batches of inserts as multi-row inserts, see BatchWriter. Their generated keys cannot be trusted, see
+    // getConnectionWithoutBatchRewrite
+    dataSource.addDataSourceProperty("rewriteBatchedStatements", "true");
+    StatementCache.setCapacity(config.getInt(ExpatConf.DATABASE_STATEMENT_CACHE_SIZE,
+        ExpatConf.DATABASE_STATEMENT_CACHE_SIZE_DEFAULT));
+    ds = dataSource;
   }
 
   public static Connection getConnection() throws ConfigurationException, SQLException {
@@ -48,4 +71,43 @@ public class DbConnectionFactory {
     }
     return ds.getConnection();
   }
+
+  /**
+   * A connection, outside of the pool, that sends the statements of a batch one by one. Batches of inserts whose
+   * generated keys are read need it: the driver returns the keys of a multi-row insert as consecutive values from the
+   * first one, which they are not on NDB where auto increment values are prefetched in ranges.
+   * The caller closes the connection.
+   */
+  public static Connection getConnectionWithoutBatchRewrite() throws ConfigurationException, SQLException {
+    Configuration config = ConfigurationBuilder.getConfiguration();
+    String driver = config.getString(ExpatConf.DATABASE_DBMS_DRIVER_NAME,
+        ExpatConf.DATABASE_DBMS_DRIVER_NAME_DEFAULT);
+    try {
+      Class.forName(driver);
+    } catch (ClassNotFoundException e) {
+      throw new SQLException("JDBC driver not found: " + driver, e);
+    }
+    Properties properties = new Properties();
+    String user = config.getString(ExpatConf.DATABASE_USER_KEY);
+    if (user != null) {
+      properties.setProperty("user", user);
+    }
+    String password = config.getString(ExpatConf.DATABASE_PASSWORD_KEY);
+    if (password != null) {
+      properties.setProperty("password", password);
+    }
+    properties.setProperty("useServerPrepStmts", "true");
+    properties.setProperty("rewriteBatchedStatements", "false");
+    Connection connection = DriverManager.getConnection(config.getString(ExpatConf.DATABASE_URL), properties);
+    connection.setReadOnly(config.getBoolean(ExpatConf.DRY_RUN));
+    return connection;
+  }
+
+  public static synchronized void close() {
+    if (ds != null) {
+      StatementCache.closeAll();
+      ds.close();
+      ds = null;
+    }
+  }
 }
@@ -0,0 +1,151 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Walks a table in primary key order, {@code chunkSize} rows at a time
+ * ({@code SELECT ... WHERE key > ? ORDER BY key LIMIT chunkSize}), and commits after each chunk when the connection is
+ * not in auto commit mode. A step that writes while it scans then never holds more than a chunk worth of changes in
+ * a transaction, which NDB limits with MaxNoOfConcurrentOperations.
+ * The key of the last row of the last committed chunk is the watermark, a scan started after it with
+ * {@link #startAfter(long)} continues where a failed scan stopped. {@link #endBefore(long)} bounds the scan to the keys
+ * below a given one.
+ * The driver buffers the rows of a chunk on the client, so the handler may use the same connection.
+ */
+public class KeysetScanner {
+  private static final Logger LOGGER = LoggerFactory.getLogger(KeysetScanner.class);
+
+  public static final int DEFAULT_CHUNK_SIZE = 500;
+
+  /**
+   * A handler throwing unrelated checked exceptions, that would be inferred as {@link Exception}, names them with a
+   * type witness, e.g. {@code scanner.<IOException, ReflectiveOperationException>scan(row -> ...)}.
+   */
+  @FunctionalInterface
+  public interface RowHandler<X extends Exception, Y extends Exception> {
+    void accept(ResultSet row) throws SQLException, X, Y;
+  }
+
+  @FunctionalInterface
+  public interface ChunkListener {
+    /**
+     * Called after the last row of a chunk was handled and before the chunk is committed, e.g. to flush the
+     * {@link BatchWriter}s of the handler.
+     */
+    void chunkDone(long lastKey) throws SQLException;
+  }
+
+  private final Connection connection;
+  private final String table;
+  private final String keyColumn;
+  private final String columns;
+  private int chunkSize = DEFAULT_CHUNK_SIZE;
+  private ChunkListener chunkListener;
+  private long watermark = Long.MIN_VALUE;
+  private long end = Long.MAX_VALUE;
+
+  /**
+   * @param columns the selected columns, they must include the key column
+   */
+  public KeysetScanner(Connection connection, String table, String keyColumn, String columns) {
+    this.connection = connection;
+    this.table = table;
+    this.keyColumn = keyColumn;
+    this.columns = columns;
+  }
+
+  public KeysetScanner withChunkSize(int chunkSize) {
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("chunk size should be at least 1, got:" + chunkSize);
+    }
+    this.chunkSize = chunkSize;
+    return this;
+  }
+
+  public KeysetScanner withChunkListener(ChunkListener chunkListener) {
+    this.chunkListener = chunkListener;
+    return this;
+  }
+
+  /**
+   * Skip the rows with a key up to and including the watermark of a previous scan.
+   */
+  public KeysetScanner startAfter(long watermark) {
+    this.watermark = watermark;
+    return this;
+  }
+
+  /**
+   * Skip the rows with a key equal to or above the given one.
+   */
+  public KeysetScanner endBefore(long end) {
+    this.end = end;
+    return this;
+  }
+
+  /**
+   * @return the key of the last committed row, {@link Long#MIN_VALUE} if no chunk was committed
+   */
+  public long getWatermark() {
+    return watermark;
+  }
+
+  /**
+   * @return the number of rows handled
+   */
+  public <X extends Exception, Y extends Exception> long scan(RowHandler<X, Y> handler) throws SQLException, X, Y {
+    String query = "SELECT " + columns + " FROM " + table + " WHERE " + keyColumn + " > ? AND " + keyColumn
+      + " < ? ORDER BY " + keyColumn + " LIMIT " + chunkSize;
+    long rows = 0;
+    try (PreparedStatement stmt = connection.prepareStatement(query)) {
+      int chunkRows;
+      do {
+        chunkRows = 0;
+        long lastKey = watermark;
+        stmt.setLong(1, watermark);
+        stmt.setLong(2, end);
+        try (ResultSet resultSet = stmt.executeQuery()) {
+          while (resultSet.next()) {
+            lastKey = resultSet.getLong(keyColumn);
+            handler.accept(resultSet);
+            chunkRows++;
+          }
+        }
+        if (chunkRows > 0) {
+          if (chunkListener != null) {
+            chunkListener.chunkDone(lastKey);
+          }
+          if (!connection.getAutoCommit()) {
+            connection.commit();
+          }
+          watermark = lastKey;
+          rows += chunkRows;
+          LOGGER.debug("Scanned {} rows of {} up to {}={}", rows, table, keyColumn, watermark);
+        }
+      } while (chunkRows == chunkSize);
+    }
+    return rows;
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prepared statements kept open per physical connection, so that lookups done once per inode or user do not prepare
+ * and close a statement on every call. Statements returned by {@link #prepare(Connection, String)} belong to the
+ * cache and must not be closed by the caller, only their result sets. A statement is prepared again once the
+ * connection it was prepared on is closed or returned to the pool.
+ * Each connection keeps at most {@code database.statement_cache_size} statements, the least recently used statement
+ * is closed when the cache is full. A size of 0 disables the cache, every call prepares a new statement.
+ */
+public final class StatementCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(StatementCache.class);
+
+  private static final Map<Connection, StatementCache> CACHES = new HashMap<>();
+  private static final LongAdder HITS = new LongAdder();
+  private static final LongAdder MISSES = new LongAdder();
+  private static volatile int capacity = 0;
+
+  private final Map<String, PreparedStatement> statements;
+
+  private StatementCache(int capacity) {
+    this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+        if (size() <= capacity) {
+          return false;
+        }
+        closeQuietly(eldest.getValue());
+        return true;
+      }
+    };
+  }
+
+  static void setCapacity(int size) {
+    capacity = Math.max(0, size);
+  }
+
+  public static PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+    if (capacity == 0) {
+      MISSES.increment();
+      return connection.prepareStatement(sql);
+    }
+    StatementCache cache = forConnection(connection);
+    synchronized (cache) {
+      PreparedStatement statement = cache.statements.get(sql);
+      if (statement != null && !statement.isClosed() && statement.getConnection() == connection) {
+        HITS.increment();
+        return statement;
+      }
+      MISSES.increment();
+      closeQuietly(statement);
+      statement = connection.prepareStatement(sql);
+      cache.statements.put(sql, statement);
+      return statement;
+    }
+  }
+
+  private static StatementCache forConnection(Connection connection) throws SQLException {
+    // pooled connections are wrapped in a new proxy every time they are borrowed
+    Connection physical = connection.isWrapperFor(Connection.class) ? connection.unwrap(Connection.class) : connection;
+    synchronized (CACHES) {
+      StatementCache cache = CACHES.get(physical);
+      if (cache == null) {
+        evictClosed();
+        cache = new StatementCache(capacity);
+        CACHES.put(physical, cache);
+      }
+      return cache;
+    }
+  }
+
+  private static void evictClosed() {
+    Iterator<Map.Entry<Connection, StatementCache>> it = CACHES.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Connection, StatementCache> entry = it.next();
+      try {
+        if (!entry.getKey().isClosed()) {
+          continue;
+        }
+      } catch (SQLException e) {
+        // treat the connection as closed
+      }
+      entry.getValue().clear();
+      it.remove();
+    }
+  }
+
+  private synchronized void clear() {
+    for (PreparedStatement statement : statements.values()) {
+      closeQuietly(statement);
+    }
+    statements.clear();
+  }
+
+  private static void closeQuietly(PreparedStatement statement) {
+    if (statement == null) {
+      return;
+    }
+    try {
+      statement.close();
+    } catch (SQLException e) {
+      LOGGER.debug("Could not close cached statement", e);
+    }
+  }
+
+  public static long getHits() {
+    return HITS.sum();
+  }
+
+  public static long getMisses() {
+    return MISSES.sum();
+  }
+
+  static void closeAll() {
+    synchronized (CACHES) {
+      for (StatementCache cache : CACHES.values()) {
+        cache.clear();
+      }
+      CACHES.clear();
+    }
+    LOGGER.info("Statement cache hits:{} misses:{}", getHits(), getMisses());
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.db.dao;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Column label to column index lookup for the result sets of one query, labels are case insensitive.
+ */
+public final class ColumnIndex {
+  private final Map<String, Integer> indices;
+  
+  private ColumnIndex(Map<String, Integer> indices) {
+    this.indices = indices;
+  }
+  
+  public static ColumnIndex of(ResultSetMetaData metaData) throws SQLException {
+    int count = metaData.getColumnCount();
+    Map<String, Integer> indices = new HashMap<>(count * 2);
+    for (int i = 1; i <= count; i++) {
+      //keep the first occurrence, as ResultSet.findColumn does
+      indices.putIfAbsent(metaData.getColumnLabel(i).toLowerCase(Locale.ROOT), i);
+    }
+    return new ColumnIndex(indices);
+  }
+  
+  public int get(String column) throws SQLException {
+    Integer index = indices.get(column.toLowerCase(Locale.ROOT));
+    if (index == null) {
+      throw new SQLException("Column '" + column + "' not found.");
+    }
+    return index;
+  }
+}
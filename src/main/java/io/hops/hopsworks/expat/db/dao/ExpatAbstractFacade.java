@@ -16,6 +16,11 @@
  */
 package io.hops.hopsworks.expat.db.dao;
 
+import io.hops.hopsworks.expat.db.BatchWriter;
+import io.hops.hopsworks.expat.db.DbConnectionFactory;
+import io.hops.hopsworks.expat.db.StatementCache;
+import org.apache.commons.configuration2.ex.ConfigurationException;
+
 import java.io.InputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
@@ -32,13 +37,30 @@ import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public abstract class ExpatAbstractFacade<E extends ExpatAbstractEntity> {
+  // ids per IN (...) list of findByIds, bounds the size of the statement and of the NDB batch
+  public static final int IN_CHUNK_SIZE = 500;
+  
   private final Class<E> entityClass;
+  private final RowMapper.Factory<E> rowMapperFactory;
   
   protected ExpatAbstractFacade(Class<E> entityClass) {
+    this(entityClass, null);
+  }
+  
+  /**
+   * @param rowMapperFactory mapper of the entity rows, without it entities are instantiated through reflection and
+   * read with {@link ExpatAbstractEntity#getEntity(ResultSet)}
+   */
+  protected ExpatAbstractFacade(Class<E> entityClass, RowMapper.Factory<E> rowMapperFactory) {
     this.entityClass = entityClass;
+    this.rowMapperFactory = rowMapperFactory;
   }
   
   public abstract Connection getConnection();
@@ -49,9 +71,9 @@ public abstract class ExpatAbstractFacade<E extends ExpatAbstractEntity> {
     List<E> resultList = new ArrayList<>();
     try {
       resultSet = statement.executeQuery(this.findAllQuery());
+      RowMapper<E> rowMapper = getRowMapper(resultSet);
       while (resultSet.next()) {
-        E entity = this.entityClass.newInstance();
-        resultList.add((E) entity.getEntity(resultSet));
+        resultList.add(rowMapper.map(resultSet));
       }
     } finally {
       if (resultSet != null) {
@@ -89,28 +111,162 @@ public abstract class ExpatAbstractFacade<E extends ExpatAbstractEntity> {
     throws SQLException, IllegalAccessException, InstantiationException {
     ResultSet resultSet = null;
     List<E> resultList = new ArrayList<>();
-    PreparedStatement preparedStatement = null;
     try {
-      preparedStatement = getConnection().prepareStatement(query);
+      // the statement belongs to the cache, only the result set is closed
+      PreparedStatement preparedStatement = StatementCache.prepare(getConnection(), query);
       for (int i = 0; i < params.length; i++) {
         setObject(preparedStatement, i + 1, params[i], sqlType[i]);
       }
       resultSet = preparedStatement.executeQuery();
+      RowMapper<E> rowMapper = getRowMapper(resultSet);
       while (resultSet.next()) {
-        E entity = this.entityClass.newInstance();
-        resultList.add((E) entity.getEntity(resultSet));
+        resultList.add(rowMapper.map(resultSet));
       }
     } finally {
       if (resultSet != null) {
         resultSet.close();
       }
-      if (preparedStatement != null) {
-        preparedStatement.close();
-      }
     }
     return resultList;
   }
   
+  /**
+   * Finds the entities with the given ids in {@code IN (...)} queries of at most {@link #IN_CHUNK_SIZE} ids each.
+   * The ids are matched against the single column of {@link #idColumns()}.
+   * @return the entities found, keyed by id. Ids without an entity are not in the map.
+   */
+  public <K> Map<K, E> findByIds(Collection<K> ids, JDBCType sqlType)
+    throws SQLException, IllegalAccessException, InstantiationException {
+    List<Object[]> compositeIds = new ArrayList<>(ids.size());
+    for (K id : ids) {
+      compositeIds.add(new Object[]{id});
+    }
+    Map<List<Object>, E> found = findByCompositeIds(compositeIds, new JDBCType[]{sqlType});
+    Map<K, E> result = new HashMap<>(found.size() * 2);
+    for (Map.Entry<List<Object>, E> entry : found.entrySet()) {
+      result.put((K) entry.getKey().get(0), entry.getValue());
+    }
+    return result;
+  }
+  
+  /**
+   * Composite key version of {@link #findByIds(Collection, JDBCType)}, the ids are matched against the columns of
+   * {@link #idColumns()} with a {@code (a, b) IN ((?, ?), ...)} row constructor on the rows of {@link #findAllQuery()}.
+   * @return the entities found, keyed by the list of their key values in the order of the key columns
+   */
+  public Map<List<Object>, E> findByCompositeIds(Collection<Object[]> ids, JDBCType[] sqlType)
+    throws SQLException, IllegalAccessException, InstantiationException {
+    return findByCompositeIds(this.findAllQuery(), this.idColumns(), ids, sqlType);
+  }
+  
+  /**
+   * Looks up many keys at once, see {@link #findByCompositeIds(Collection, JDBCType[])}.
+   * @param select query without a {@code WHERE} clause
+   * @param keyColumns columns the ids are matched against, in the order of the values of an id
+   */
+  protected Map<List<Object>, E> findByCompositeIds(String select, String[] keyColumns, Collection<Object[]> ids,
+    JDBCType[] sqlType) throws SQLException, IllegalAccessException, InstantiationException {
+    Map<List<Object>, E> result = new HashMap<>(ids.size() * 2);
+    if (ids.isEmpty()) {
+      return result;
+    }
+    if (keyColumns.length != sqlType.length) {
+      throw new IllegalArgumentException("Expected " + keyColumns.length + " key types, got:" + sqlType.length);
+    }
+    String in = select + " WHERE "
+      + (keyColumns.length == 1 ? keyColumns[0] : "(" + String.join(", ", keyColumns) + ")") + " IN ";
+    String row = keyColumns.length == 1 ? "?" : "(" + String.join(", ", Collections.nCopies(keyColumns.length, "?"))
+      + ")";
+    
+    List<Object[]> idList = new ArrayList<>(ids);
+    for (int from = 0; from < idList.size(); from += IN_CHUNK_SIZE) {
+      List<Object[]> chunk = idList.subList(from, Math.min(from + IN_CHUNK_SIZE, idList.size()));
+      String chunkQuery = in + "(" + String.join(", ", Collections.nCopies(chunk.size(), row)) + ")";
+      // only full chunks repeat, keep the last one out of the statement cache
+      boolean cached = chunk.size() == IN_CHUNK_SIZE;
+      PreparedStatement preparedStatement = cached ? StatementCache.prepare(getConnection(), chunkQuery)
+        : getConnection().prepareStatement(chunkQuery);
+      try {
+        int param = 1;
+        for (Object[] id : chunk) {
+          for (int k = 0; k < keyColumns.length; k++) {
+            setObject(preparedStatement, param++, id[k], sqlType[k]);
+          }
+        }
+        try (ResultSet resultSet = preparedStatement.executeQuery()) {
+          RowMapper<E> rowMapper = getRowMapper(resultSet);
+          ColumnIndex columns = ColumnIndex.of(resultSet.getMetaData());
+          int[] keyIndex = new int[keyColumns.length];
+          for (int k = 0; k < keyColumns.length; k++) {
+            keyIndex[k] = columns.get(keyColumns[k].substring(keyColumns[k].lastIndexOf('.') + 1));
+          }
+          Object[] sample = chunk.get(0);
+          while (resultSet.next()) {
+            List<Object> key = new ArrayList<>(keyColumns.length);
+            for (int k = 0; k < keyColumns.length; k++) {
+              // read the key with the type of the requested ids so that the map can be looked up with them
+              key.add(sample[k] == null ? resultSet.getObject(keyIndex[k])
+                : resultSet.getObject(keyIndex[k], sample[k].getClass()));
+            }
+            result.put(key, rowMapper.map(resultSet));
+          }
+        }
+      } finally {
+        if (!cached) {
+          preparedStatement.close();
+        }
+      }
+    }
+    return result;
+  }
+  
+  public <X extends Exception> void forEach(ExpatEntityConsumer<E, X> consumer)
+    throws SQLException, ConfigurationException, IllegalAccessException, InstantiationException, X {
+    forEach(this.findAllQuery(), new Object[0], new JDBCType[0], consumer);
+  }
+  
+  /**
+   * Streams the rows of the query to the consumer one at a time, so that memory use does not depend on the size of the
+   * result. The rows are read with a MySQL streaming result set on a connection of their own, taken from the pool,
+   * which leaves the connection of the facade free for the queries and updates done by the consumer. Only committed
+   * rows are visible to the stream.
+   */
+  public <X extends Exception> void forEach(String query, Object[] params, JDBCType[] sqlType,
+    ExpatEntityConsumer<E, X> consumer)
+    throws SQLException, ConfigurationException, IllegalAccessException, InstantiationException, X {
+    try (Connection streamConnection = DbConnectionFactory.getConnection();
+         PreparedStatement preparedStatement = streamConnection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+           ResultSet.CONCUR_READ_ONLY)) {
+      // row by row streaming in the MySQL driver
+      preparedStatement.setFetchSize(Integer.MIN_VALUE);
+      for (int i = 0; i < params.length; i++) {
+        setObject(preparedStatement, i + 1, params[i], sqlType[i]);
+      }
+      try (ResultSet resultSet = preparedStatement.executeQuery()) {
+        RowMapper<E> rowMapper = getRowMapper(resultSet);
+        while (resultSet.next()) {
+          consumer.accept(rowMapper.map(resultSet));
+        }
+      }
+    }
+  }
+  
+  protected RowMapper<E> getRowMapper(ResultSet resultSet)
+    throws SQLException, IllegalAccessException, InstantiationException {
+    if (rowMapperFactory != null) {
+      return rowMapperFactory.bind(resultSet);
+    }
+    // fail early if the entity cannot be instantiated
+    this.entityClass.newInstance();
+    return rs -> {
+      try {
+        return (E) this.entityClass.newInstance().getEntity(rs);
+      } catch (IllegalAccessException | InstantiationException e) {
+        throw new SQLException("Could not instantiate " + this.entityClass.getName(), e);
+      }
+    };
+  }
+  
   public void update(String query, Object param, JDBCType sqlType) throws SQLException {
     update(query, new Object[]{param}, new JDBCType[]{sqlType});
   }
@@ -130,6 +286,14 @@ public abstract class ExpatAbstractFacade<E extends ExpatAbstractEntity> {
     }
   }
   
+  /**
+   * Batched version of {@link #update(String, Object[], JDBCType[])} for updates and inserts done in a loop, the
+   * caller flushes the remaining rows and closes the writer.
+   */
+  public BatchWriter batchWriter(String query, boolean dryRun) throws SQLException {
+    return new BatchWriter(getConnection(), query, dryRun);
+  }
+  
   public void updateBatch(String[] statements) throws SQLException {
     Statement statement = getConnection().createStatement();
     try {
@@ -154,6 +318,13 @@ public abstract class ExpatAbstractFacade<E extends ExpatAbstractEntity> {
   
   public abstract String findByIdQuery();
   
+  /**
+   * @return the key columns of the entity, in the order of the parameters of {@link #findByIdQuery()}
+   */
+  protected String[] idColumns() {
+    return new String[]{"id"};
+  }
+  
   private void setObject(PreparedStatement preparedStatement, int i, Object parameterObj, JDBCType sqlType)
     throws SQLException {
     try {
@@ -0,0 +1,236 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.db.dao;
+
+import io.hops.hopsworks.expat.db.StatementCache;
+import io.hops.hopsworks.expat.db.dao.hdfs.user.ExpatHdfsGroup;
+import io.hops.hopsworks.expat.db.dao.hdfs.user.ExpatHdfsUser;
+import io.hops.hopsworks.expat.db.dao.project.ExpatProject;
+import io.hops.hopsworks.expat.db.dao.user.ExpatUser;
+import io.hops.hopsworks.expat.db.dao.user.ExpatUserFacade;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In memory copy of the small tables that migrations look up over and over: projects, users, hdfs users and hdfs
+ * groups. Each table is read in full the first time it is needed, with the
+ * connection passed by the caller, and then served from memory. It is shared by the steps of a run through
+ * {@link io.hops.hopsworks.expat.migrations.MigrationContext#getReferenceData()}.
+ * Hdfs users and groups looked up by name and not found are read from the database, so that users and groups created
+ * after the tables were loaded are found. Steps that change these tables in any other way should invalidate them.
+ */
+public class ReferenceDataCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ReferenceDataCache.class);
+
+  private static final String GET_PROJECTS = "SELECT * FROM project";
+  private static final String GET_HDFS_USERS = "SELECT * FROM hops.hdfs_users";
+  private static final String GET_HDFS_USER_BY_NAME = "SELECT * FROM hops.hdfs_users WHERE name = ?";
+  private static final String GET_HDFS_GROUPS = "SELECT * FROM hops.hdfs_groups";
+  private static final String GET_HDFS_GROUP_BY_NAME = "SELECT * FROM hops.hdfs_groups WHERE name = ?";
+
+  private final ExpatUserFacade userFacade = new ExpatUserFacade();
+
+  private Map<Integer, ExpatProject> projectsById;
+  private Map<String, ExpatProject> projectsByName;
+  private Map<Integer, ExpatUser> usersByUid;
+  private Map<String, ExpatUser> usersByUsername;
+  private Map<String, ExpatUser> usersByEmail;
+  private Map<Integer, ExpatHdfsUser> hdfsUsersById;
+  private Map<String, ExpatHdfsUser> hdfsUsersByName;
+  private Map<Integer, ExpatHdfsGroup> hdfsGroupsById;
+  private Map<String, ExpatHdfsGroup> hdfsGroupsByName;
+
+  public synchronized ExpatProject getProject(Connection connection, int id) throws SQLException {
+    loadProjects(connection);
+    return projectsById.get(id);
+  }
+
+  public synchronized ExpatProject getProject(Connection connection, String name) throws SQLException {
+    loadProjects(connection);
+    return projectsByName.get(name);
+  }
+
+  public synchronized ExpatUser getUser(Connection connection, int uid) throws SQLException {
+    loadUsers(connection);
+    return usersByUid.get(uid);
+  }
+
+  public synchronized ExpatUser getUserByUsername(Connection connection, String username) throws SQLException {
+    loadUsers(connection);
+    return usersByUsername.get(username);
+  }
+
+  public synchronized ExpatUser getUserByEmail(Connection connection, String email) throws SQLException {
+    loadUsers(connection);
+    return usersByEmail.get(email);
+  }
+
+  public synchronized ExpatHdfsUser getHdfsUser(Connection connection, int id) throws SQLException {
+    loadHdfsUsers(connection);
+    return hdfsUsersById.get(id);
+  }
+
+  public synchronized ExpatHdfsUser getHdfsUser(Connection connection, String name) throws SQLException {
+    loadHdfsUsers(connection);
+    ExpatHdfsUser hdfsUser = hdfsUsersByName.get(name);
+    if (hdfsUser == null) {
+      hdfsUser = findByName(connection, GET_HDFS_USER_BY_NAME, name, rs -> new ExpatHdfsUser().getEntity(rs));
+      if (hdfsUser != null) {
+        hdfsUsersById.put(hdfsUser.getId(), hdfsUser);
+        hdfsUsersByName.put(hdfsUser.getName(), hdfsUser);
+      }
+    }
+    return hdfsUser;
+  }
+
+  public synchronized ExpatHdfsGroup getHdfsGroup(Connection connection, int id) throws SQLException {
+    loadHdfsGroups(connection);
+    return hdfsGroupsById.get(id);
+  }
+
+  public synchronized ExpatHdfsGroup getHdfsGroup(Connection connection, String name) throws SQLException {
+    loadHdfsGroups(connection);
+    ExpatHdfsGroup hdfsGroup = hdfsGroupsByName.get(name);
+    if (hdfsGroup == null) {
+      hdfsGroup = findByName(connection, GET_HDFS_GROUP_BY_NAME, name, rs -> new ExpatHdfsGroup().getEntity(rs));
+      if (hdfsGroup != null) {
+        hdfsGroupsById.put(hdfsGroup.getId(), hdfsGroup);
+        hdfsGroupsByName.put(hdfsGroup.getName(), hdfsGroup);
+      }
+    }
+    return hdfsGroup;
+  }
+
+  /**
+   * Drops the hdfs users, they are read again on next use.
+   */
+  public synchronized void invalidateHdfsUsers() {
+    hdfsUsersById = null;
+    hdfsUsersByName = null;
+  }
+
+  /**
+   * Drops the hdfs groups, they are read again on next use.
+   */
+  public synchronized void invalidateHdfsGroups() {
+    hdfsGroupsById = null;
+    hdfsGroupsByName = null;
+  }
+
+  public synchronized void invalidate() {
+    projectsById = null;
+    projectsByName = null;
+    usersByUid = null;
+    usersByUsername = null;
+    usersByEmail = null;
+    invalidateHdfsUsers();
+    invalidateHdfsGroups();
+  }
+
+  private void loadProjects(Connection connection) throws SQLException {
+    if (projectsById != null) {
+      return;
+    }
+    Map<Integer, ExpatProject> byId = new HashMap<>();
+    Map<String, ExpatProject> byName = new HashMap<>();
+    try (Statement stmt = connection.createStatement();
+         ResultSet resultSet = stmt.executeQuery(GET_PROJECTS)) {
+      RowMapper<ExpatProject> mapper = ExpatProject.ROW_MAPPER.bind(resultSet);
+      while (resultSet.next()) {
+        ExpatProject project = mapper.map(resultSet);
+        byId.put(project.getId(), project);
+        byName.put(project.getName(), project);
+      }
+    }
+    projectsById = byId;
+    projectsByName = byName;
+    LOGGER.info("Loaded {} projects", byId.size());
+  }
+
+  private void loadUsers(Connection connection) throws SQLException {
+    if (usersByUid != null) {
+      return;
+    }
+    Map<Integer, ExpatUser> byUid = new HashMap<>();
+    Map<String, ExpatUser> byUsername = new HashMap<>();
+    Map<String, ExpatUser> byEmail = new HashMap<>();
+    for (ExpatUser user : userFacade.getExpatUsers(connection)) {
+      byUid.put(user.getUid(), user);
+      byUsername.put(user.getUsername(), user);
+      byEmail.put(user.getEmail(), user);
+    }
+    usersByUid = byUid;
+    usersByUsername = byUsername;
+    usersByEmail = byEmail;
+    LOGGER.info("Loaded {} users", byUid.size());
+  }
+
+  private void loadHdfsUsers(Connection connection) throws SQLException {
+    if (hdfsUsersById != null) {
+      return;
+    }
+    Map<Integer, ExpatHdfsUser> byId = new HashMap<>();
+    Map<String, ExpatHdfsUser> byName = new HashMap<>();
+    try (Statement stmt = connection.createStatement();
+         ResultSet resultSet = stmt.executeQuery(GET_HDFS_USERS)) {
+      while (resultSet.next()) {
+        ExpatHdfsUser hdfsUser = new ExpatHdfsUser().getEntity(resultSet);
+        byId.put(hdfsUser.getId(), hdfsUser);
+        byName.put(hdfsUser.getName(), hdfsUser);
+      }
+    }
+    hdfsUsersById = byId;
+    hdfsUsersByName = byName;
+    LOGGER.info("Loaded {} hdfs users", byId.size());
+  }
+
+  private void loadHdfsGroups(Connection connection) throws SQLException {
+    if (hdfsGroupsById != null) {
+      return;
+    }
+    Map<Integer, ExpatHdfsGroup> byId = new HashMap<>();
+    Map<String, ExpatHdfsGroup> byName = new HashMap<>();
+    try (Statement stmt = connection.createStatement();
+         ResultSet resultSet = stmt.executeQuery(GET_HDFS_GROUPS)) {
+      while (resultSet.next()) {
+        ExpatHdfsGroup hdfsGroup = new ExpatHdfsGroup().getEntity(resultSet);
+        byId.put(hdfsGroup.getId(), hdfsGroup);
+        byName.put(hdfsGroup.getName(), hdfsGroup);
+      }
+    }
+    hdfsGroupsById = byId;
+    hdfsGroupsByName = byName;
+    LOGGER.info("Loaded {} hdfs groups", byId.size());
+  }
+
+  private <E> E findByName(Connection connection, String query, String name, RowMapper<E> mapper)
+    throws SQLException {
+    PreparedStatement stmt = StatementCache.prepare(connection, query);
+    stmt.setString(1, name);
+    try (ResultSet resultSet = stmt.executeQuery()) {
+      return resultSet.next() ? mapper.map(resultSet) : null;
+    }
+  }
+}
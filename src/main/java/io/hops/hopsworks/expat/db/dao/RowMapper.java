@@ -0,0 +1,39 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.db.dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Builds an entity from the current row of a result set. Mappers are created once per result set by a
+ * {@link Factory}, which resolves the column indices up front so that rows are read by index and entities are built
+ * without reflection.
+ */
+@FunctionalInterface
+public interface RowMapper<E> {
+  E map(ResultSet resultSet) throws SQLException;
+  
+  @FunctionalInterface
+  interface Factory<E> {
+    RowMapper<E> create(ColumnIndex columns) throws SQLException;
+    
+    default RowMapper<E> bind(ResultSet resultSet) throws SQLException {
+      return create(ColumnIndex.of(resultSet.getMetaData()));
+    }
+  }
+}
@@ -17,6 +17,7 @@
 package io.hops.hopsworks.expat.db.dao.dataset;
 
 import io.hops.hopsworks.expat.db.dao.ExpatAbstractEntity;
+import io.hops.hopsworks.expat.db.dao.RowMapper;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -140,19 +141,37 @@ public class ExpatDataset extends ExpatAbstractEntity<ExpatDataset> {
     this.permission = permission;
   }
   
+  public static final RowMapper.Factory<ExpatDataset> ROW_MAPPER = columns -> {
+    int idColumn = columns.get("id");
+    int inodeIdColumn = columns.get("inode_id");
+    int nameColumn = columns.get("inode_name");
+    int descriptionColumn = columns.get("description");
+    int searchableColumn = columns.get("searchable");
+    int publicDsColumn = columns.get("public_ds");
+    int publicDsIdColumn = columns.get("public_ds_id");
+    int dsTypeColumn = columns.get("dstype");
+    int projectIdColumn = columns.get("projectId");
+    int featureStoreIdColumn = columns.get("feature_store_id");
+    int permissionColumn = columns.get("permission");
+    return resultSet -> {
+      ExpatDataset dataset = new ExpatDataset();
+      dataset.id = resultSet.getInt(idColumn);
+      dataset.inodeId = resultSet.getLong(inodeIdColumn);
+      dataset.name = resultSet.getString(nameColumn);
+      dataset.description = resultSet.getString(descriptionColumn);
+      dataset.searchable = resultSet.getBoolean(searchableColumn);
+      dataset.publicDs = resultSet.getInt(publicDsColumn);
+      dataset.publicDsId = resultSet.getString(publicDsIdColumn);
+      dataset.dsType = resultSet.getString(dsTypeColumn);
+      dataset.projectId = resultSet.getInt(projectIdColumn);
+      dataset.featureStoreId = resultSet.getInt(featureStoreIdColumn);
+      dataset.permission = resultSet.getString(permissionColumn);
+      return dataset;
+    };
+  };
+  
   @Override
   public ExpatDataset getEntity(ResultSet resultSet) throws SQLException {
-    this.id = resultSet.getInt("id");
-    this.inodeId = resultSet.getLong("inode_id");
-    this.name = resultSet.getString("inode_name");
-    this.description = resultSet.getString("description");
-    this.searchable = resultSet.getBoolean("searchable");
-    this.publicDs = resultSet.getInt("public_ds");
-    this.publicDsId = resultSet.getString("public_ds_id");
-    this.dsType = resultSet.getString("dstype");
-    this.projectId = resultSet.getInt("projectId");
-    this.featureStoreId = resultSet.getInt("feature_store_id");
-    this.permission = resultSet.getString("permission");
-    return this;
+    return ROW_MAPPER.bind(resultSet).map(resultSet);
   }
 }
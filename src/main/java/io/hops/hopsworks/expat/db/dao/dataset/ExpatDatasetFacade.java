@@ -16,8 +16,11 @@
  */
 package io.hops.hopsworks.expat.db.dao.dataset;
 
+import io.hops.hopsworks.expat.db.BatchWriter;
 import io.hops.hopsworks.expat.db.DbConnectionFactory;
 import io.hops.hopsworks.expat.db.dao.ExpatAbstractFacade;
+import io.hops.hopsworks.expat.db.dao.ExpatEntityConsumer;
+import io.hops.hopsworks.expat.migrations.ProjectShard;
 import org.apache.commons.configuration2.ex.ConfigurationException;
 
 import java.sql.Connection;
@@ -27,15 +30,17 @@ import java.util.List;
 
 public class ExpatDatasetFacade extends ExpatAbstractFacade<ExpatDataset> {
   private static final String GET_ALL_DATASETS_IN_PROJECT = "SELECT * FROM dataset WHERE projectId = ?";
+  private static final String GET_ALL_DATASETS_IN_SHARD = "SELECT * FROM dataset WHERE projectId >= ? AND " +
+    "projectId < ?";
   private final static String UPDATE_DATASET_PERMISSION = "UPDATE dataset SET permission = ? WHERE id = ?";
   private Connection connection;
   public ExpatDatasetFacade(Class<ExpatDataset> entityClass) throws SQLException, ConfigurationException {
-    super(entityClass);
+    super(entityClass, ExpatDataset.ROW_MAPPER);
     this.connection = DbConnectionFactory.getConnection();
   }
   
   public ExpatDatasetFacade(Class<ExpatDataset> entityClass, Connection connection) {
-    super(entityClass);
+    super(entityClass, ExpatDataset.ROW_MAPPER);
     this.connection = connection;
   }
   
@@ -63,8 +68,30 @@ public class ExpatDatasetFacade extends ExpatAbstractFacade<ExpatDataset> {
     return this.findByQuery(GET_ALL_DATASETS_IN_PROJECT, projectId, JDBCType.INTEGER);
   }
   
+  public <X extends Exception> void forEachByProjectId(Integer projectId, ExpatEntityConsumer<ExpatDataset, X> consumer)
+    throws SQLException, ConfigurationException, IllegalAccessException, InstantiationException, X {
+    this.forEach(GET_ALL_DATASETS_IN_PROJECT, new Object[]{projectId}, new JDBCType[]{JDBCType.INTEGER}, consumer);
+  }
+  
+  /**
+   * Streams the datasets of the projects of the shard, see {@link #forEach(String, Object[], JDBCType[],
+   * ExpatEntityConsumer)}.
+   */
+  public <X extends Exception> void forEachInShard(ProjectShard shard, ExpatEntityConsumer<ExpatDataset, X> consumer)
+    throws SQLException, ConfigurationException, IllegalAccessException, InstantiationException, X {
+    this.forEach(GET_ALL_DATASETS_IN_SHARD, new Object[]{shard.getStart(), shard.getEnd()},
+      new JDBCType[]{JDBCType.BIGINT, JDBCType.BIGINT}, consumer);
+  }
+  
   public void updatePermission(Integer id, String permission) throws SQLException {
     this.update(UPDATE_DATASET_PERMISSION, new Object[]{permission, id},
       new JDBCType[]{JDBCType.VARCHAR, JDBCType.INTEGER});
   }
+  
+  /**
+   * Batched {@link #updatePermission(Integer, String)}, rows are added as (permission, id).
+   */
+  public BatchWriter permissionWriter(boolean dryRun) throws SQLException {
+    return this.batchWriter(UPDATE_DATASET_PERMISSION, dryRun);
+  }
 }
@@ -16,8 +16,11 @@
  */
 package io.hops.hopsworks.expat.db.dao.dataset;
 
+import io.hops.hopsworks.expat.db.BatchWriter;
 import io.hops.hopsworks.expat.db.DbConnectionFactory;
 import io.hops.hopsworks.expat.db.dao.ExpatAbstractFacade;
+import io.hops.hopsworks.expat.db.dao.ExpatEntityConsumer;
+import io.hops.hopsworks.expat.migrations.ProjectShard;
 import org.apache.commons.configuration2.ex.ConfigurationException;
 
 import java.sql.Connection;
@@ -27,6 +30,8 @@ import java.util.List;
 
 public class ExpatDatasetSharedWithFacade extends ExpatAbstractFacade<ExpatDatasetSharedWith> {
   private static final String GET_DATASET_SHARED_WITH = "SELECT * FROM dataset_shared_with WHERE dataset = ?";
+  private static final String GET_SHARED_WITH_IN_SHARD = "SELECT s.* FROM dataset_shared_with s " +
+    "JOIN dataset d ON s.dataset = d.id WHERE d.projectId >= ? AND d.projectId < ?";
   private final static String UPDATE_DATASET_PERMISSION = "UPDATE dataset_shared_with SET permission = ? WHERE id = ?";
   private Connection connection;
   
@@ -65,8 +70,25 @@ public class ExpatDatasetSharedWithFacade extends ExpatAbstractFacade<ExpatDatas
     return this.findByQuery(GET_DATASET_SHARED_WITH, datasetId, JDBCType.INTEGER);
   }
   
+  /**
+   * Streams the shares of the datasets owned by the projects of the shard.
+   */
+  public <X extends Exception> void forEachInShard(ProjectShard shard,
+    ExpatEntityConsumer<ExpatDatasetSharedWith, X> consumer)
+    throws SQLException, ConfigurationException, IllegalAccessException, InstantiationException, X {
+    this.forEach(GET_SHARED_WITH_IN_SHARD, new Object[]{shard.getStart(), shard.getEnd()},
+      new JDBCType[]{JDBCType.BIGINT, JDBCType.BIGINT}, consumer);
+  }
+  
   public void updatePermission(Integer id, String permission) throws SQLException {
     this.update(UPDATE_DATASET_PERMISSION, new Object[]{permission, id},
       new JDBCType[]{JDBCType.VARCHAR, JDBCType.INTEGER});
   }
+  
+  /**
+   * Batched {@link #updatePermission(Integer, String)}, rows are added as (permission, id).
+   */
+  public BatchWriter permissionWriter(boolean dryRun) throws SQLException {
+    return this.batchWriter(UPDATE_DATASET_PERMISSION, dryRun);
+  }
 }
@@ -17,6 +17,7 @@
 package io.hops.hopsworks.expat.db.dao.hdfs.inode;
 
 import io.hops.hopsworks.expat.db.dao.ExpatAbstractEntity;
+import io.hops.hopsworks.expat.db.dao.RowMapper;
 
 import java.math.BigDecimal;
 import java.sql.ResultSet;
@@ -171,24 +172,47 @@ public class ExpatHdfsInode extends ExpatAbstractEntity<ExpatHdfsInode> {
     this.partitionId = partitionId;
   }
   
+  public static final RowMapper.Factory<ExpatHdfsInode> ROW_MAPPER = columns -> {
+    int idColumn = columns.get("id");
+    int parentIdColumn = columns.get("parent_id");
+    int nameColumn = columns.get("name");
+    int modificationTimeColumn = columns.get("modification_time");
+    int accessTimeColumn = columns.get("access_time");
+    int hdfsUserColumn = columns.get("user_id");
+    int hdfsGroupColumn = columns.get("group_id");
+    int permissionColumn = columns.get("permission");
+    int symlinkColumn = columns.get("symlink");
+    int quotaEnabledColumn = columns.get("quota_enabled");
+    int underConstructionColumn = columns.get("under_construction");
+    int metaStatusColumn = columns.get("meta_enabled");
+    int dirColumn = columns.get("is_dir");
+    int childrenNumColumn = columns.get("children_num");
+    int sizeColumn = columns.get("size");
+    int partitionIdColumn = columns.get("partition_id");
+    return resultSet -> {
+      ExpatHdfsInode inode = new ExpatHdfsInode();
+      inode.id = resultSet.getLong(idColumn);
+      inode.parentId = resultSet.getLong(parentIdColumn);
+      inode.name = resultSet.getString(nameColumn);
+      inode.modificationTime = resultSet.getBigDecimal(modificationTimeColumn);
+      inode.accessTime = resultSet.getBigDecimal(accessTimeColumn);
+      inode.hdfsUser = resultSet.getInt(hdfsUserColumn);
+      inode.hdfsGroup = resultSet.getInt(hdfsGroupColumn);
+      inode.permission = resultSet.getShort(permissionColumn);
+      inode.symlink = resultSet.getString(symlinkColumn);
+      inode.quotaEnabled = resultSet.getBoolean(quotaEnabledColumn);
+      inode.underConstruction = resultSet.getBoolean(underConstructionColumn);
+      inode.metaStatus = resultSet.getString(metaStatusColumn);
+      inode.dir = resultSet.getBoolean(dirColumn);
+      inode.childrenNum = resultSet.getInt(childrenNumColumn);
+      inode.size = resultSet.getLong(sizeColumn);
+      inode.partitionId = resultSet.getLong(partitionIdColumn);
+      return inode;
+    };
+  };
+  
   @Override
   public ExpatHdfsInode getEntity(ResultSet resultSet) throws SQLException {
-    this.id = resultSet.getLong("id");
-    this.parentId = resultSet.getLong("parent_id");
-    this.name = resultSet.getString("name");
-    this.modificationTime = resultSet.getBigDecimal("modification_time");
-    this.accessTime = resultSet.getBigDecimal("access_time");
-    this.hdfsUser = resultSet.getInt("user_id");
-    this.hdfsGroup = resultSet.getInt("group_id");
-    this.permission = resultSet.getShort("permission");
-    this.symlink = resultSet.getString("symlink");
-    this.quotaEnabled = resultSet.getBoolean("quota_enabled");
-    this.underConstruction = resultSet.getBoolean("under_construction");
-    this.metaStatus = resultSet.getString("meta_enabled");
-    this.dir = resultSet.getBoolean("is_dir");
-    this.childrenNum = resultSet.getInt("children_num");
-    this.size = resultSet.getLong("size");
-    this.partitionId = resultSet.getLong("partition_id");
-    return this;
+    return ROW_MAPPER.bind(resultSet).map(resultSet);
   }
 }
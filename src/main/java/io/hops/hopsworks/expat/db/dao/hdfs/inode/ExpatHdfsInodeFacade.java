@@ -18,7 +18,10 @@ package io.hops.hopsworks.expat.db.dao.hdfs.inode;
 
 import io.hops.hopsworks.common.util.HopsUtils;
 import io.hops.hopsworks.expat.db.DbConnectionFactory;
+import io.hops.hopsworks.expat.db.StatementCache;
 import io.hops.hopsworks.expat.db.dao.ExpatAbstractFacade;
+import io.hops.hopsworks.expat.db.dao.ExpatEntityConsumer;
+import io.hops.hopsworks.expat.db.dao.RowMapper;
 import io.hops.hopsworks.expat.migrations.MigrationException;
 import org.apache.commons.configuration2.ex.ConfigurationException;
 import org.slf4j.Logger;
@@ -30,7 +33,9 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public class ExpatHdfsInodeFacade extends ExpatAbstractFacade<ExpatHdfsInode> {
   private static final Logger LOGGER = LoggerFactory.getLogger(ExpatHdfsInodeFacade.class);
@@ -38,19 +43,21 @@ public class ExpatHdfsInodeFacade extends ExpatAbstractFacade<ExpatHdfsInode> {
   private final static String FIND_ROOT_BY_NAME = "SELECT * FROM hops.hdfs_inodes i WHERE parent_id = ? "
     + "AND name = ? AND partition_id = ?";
 
+  private final static String[] INODE_PK_COLUMNS = new String[]{"parent_id", "name", "partition_id"};
+
   private final static String FIND_INODE_BY_ID = "SELECT * FROM hops.hdfs_inodes i WHERE id = ? ";
+
+  private final static String FIND_CHILDREN = "SELECT * FROM hops.hdfs_inodes i WHERE parent_id = ?";
   
   private Connection connection;
-  private PreparedStatement findRootByName;
-  private PreparedStatement findInodeById;
   
   protected ExpatHdfsInodeFacade(Class<ExpatHdfsInode> entityClass) throws SQLException, ConfigurationException {
-    super(entityClass);
+    super(entityClass, ExpatHdfsInode.ROW_MAPPER);
     this.connection = DbConnectionFactory.getConnection();
   }
   
   public ExpatHdfsInodeFacade(Class<ExpatHdfsInode> entityClass, Connection connection) {
-    super(entityClass);
+    super(entityClass, ExpatHdfsInode.ROW_MAPPER);
     this.connection = connection;
   }
   
@@ -73,6 +80,15 @@ public class ExpatHdfsInodeFacade extends ExpatAbstractFacade<ExpatHdfsInode> {
     return this.findById(id, JDBCType.BIGINT);
   }
   
+  /**
+   * Streams the children of a directory, directories such as the Projects root may have too many children to be
+   * loaded in a list.
+   */
+  public <X extends Exception> void forEachChild(long parentId, ExpatEntityConsumer<ExpatHdfsInode, X> consumer)
+    throws SQLException, ConfigurationException, IllegalAccessException, InstantiationException, X {
+    forEach(FIND_CHILDREN, new Object[]{parentId}, new JDBCType[]{JDBCType.BIGINT}, consumer);
+  }
+  
   public ExpatHdfsInode getRootNode(String name) throws SQLException, MigrationException {
     // LOGGER.info("getRootNode: " + name);
     long partitionId = HopsUtils.calculatePartitionId(HopsUtils.ROOT_INODE_ID, name, HopsUtils.ROOT_DIR_DEPTH + 1);
@@ -81,16 +97,17 @@ public class ExpatHdfsInodeFacade extends ExpatAbstractFacade<ExpatHdfsInode> {
 
   public ExpatHdfsInode findInodeById(long inodeId)
     throws SQLException, MigrationException {
-    findInodeById = connection.prepareStatement(FIND_INODE_BY_ID);
+    PreparedStatement findInodeById = StatementCache.prepare(connection, FIND_INODE_BY_ID);
     findInodeById.setLong(1, inodeId);
 
     List<ExpatHdfsInode> resultList = new ArrayList<>();
     ResultSet result = findInodeById.executeQuery();
+    RowMapper<ExpatHdfsInode> rowMapper = ExpatHdfsInode.ROW_MAPPER.bind(result);
     while (result.next()) {
-      resultList.add(new ExpatHdfsInode().getEntity(result));
+      resultList.add(rowMapper.map(result));
     }
 
-    findInodeById.close();
+    result.close();
 
     if (resultList.size() == 1) {
       return resultList.get(0);
@@ -103,21 +120,33 @@ public class ExpatHdfsInodeFacade extends ExpatAbstractFacade<ExpatHdfsInode> {
     }
   }
   
+  /**
+   * Batched {@link #findByInodePK(long, String, long)}.
+   * @param inodePKs parent id, name and partition id of each inode
+   * @return the inodes found, keyed by the list of parent id, name and partition id
+   */
+  public Map<List<Object>, ExpatHdfsInode> findByInodePKs(Collection<Object[]> inodePKs)
+    throws SQLException, IllegalAccessException, InstantiationException {
+    return findByCompositeIds(findAllQuery(), INODE_PK_COLUMNS, inodePKs,
+      new JDBCType[]{JDBCType.BIGINT, JDBCType.VARCHAR, JDBCType.BIGINT});
+  }
+  
   public ExpatHdfsInode findByInodePK(long parentId, String name, long partitionId)
     throws SQLException, MigrationException {
     // LOGGER.info("findByInodePK: parentId: " + parentId + " name: " + name + " partitionId: " + partitionId);
-    findRootByName = connection.prepareStatement(FIND_ROOT_BY_NAME);
+    PreparedStatement findRootByName = StatementCache.prepare(connection, FIND_ROOT_BY_NAME);
     findRootByName.setLong(1, parentId);
     findRootByName.setString(2, name);
     findRootByName.setLong(3, partitionId);
   
     List<ExpatHdfsInode> resultList = new ArrayList<>();
     ResultSet result = findRootByName.executeQuery();
+    RowMapper<ExpatHdfsInode> rowMapper = ExpatHdfsInode.ROW_MAPPER.bind(result);
     while (result.next()) {
-      resultList.add(new ExpatHdfsInode().getEntity(result));
+      resultList.add(rowMapper.map(result));
     }
   
-    findRootByName.close();
+    result.close();
   
     if (resultList.size() == 1) {
       return resultList.get(0);
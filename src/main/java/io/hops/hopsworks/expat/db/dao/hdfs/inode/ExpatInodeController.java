@@ -7,18 +7,58 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
+import java.sql.JDBCType;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Resolves inodes by path. Inodes resolved by path are kept in a LRU cache keyed by parent id and name, so that the
+ * common prefixes of paths such as /Projects/X are only read once. The cached inodes are snapshots taken when they
+ * were first resolved, steps that modify or delete the inodes they resolve should use {@link #clearCache()}.
+ */
 public class ExpatInodeController {
   private static final Logger LOGGER = LoggerFactory.getLogger(ExpatInodeController.class);
+  public static final int DEFAULT_CACHE_SIZE = 10000;
   
   private ExpatHdfsInodeFacade inodeFacade;
+  private final Map<InodeKey, ExpatHdfsInode> cache;
+  // ancestors read by getPaths, keyed by id
+  private final Map<Long, ExpatHdfsInode> ancestorCache;
+  private final LongAdder cacheHits = new LongAdder();
+  private final LongAdder cacheMisses = new LongAdder();
   
   public ExpatInodeController(Connection connection) {
+    this(connection, DEFAULT_CACHE_SIZE);
+  }
+  
+  /**
+   * @param cacheSize number of inodes kept in the path cache, 0 disables the cache
+   */
+  public ExpatInodeController(Connection connection, int cacheSize) {
     this.inodeFacade = new ExpatHdfsInodeFacade(ExpatHdfsInode.class, connection);
+    this.cache = new LinkedHashMap<InodeKey, ExpatHdfsInode>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<InodeKey, ExpatHdfsInode> eldest) {
+        return size() > cacheSize;
+      }
+    };
+    this.ancestorCache = new LinkedHashMap<Long, ExpatHdfsInode>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, ExpatHdfsInode> eldest) {
+        return size() > cacheSize;
+      }
+    };
   }
   
   /**
@@ -41,26 +81,183 @@ public class ExpatInodeController {
     return inodeFacade.findByInodePK(inodeId, inodeName, partitionId);
   }
   
+  /**
+   * Resolves many paths at once. Each distinct prefix is resolved once and the inodes of each level of the paths are
+   * read with one batched query.
+   * @return the inode of each path, null for paths that do not exist
+   */
+  public Map<String, ExpatHdfsInode> resolveAll(Collection<String> paths)
+    throws SQLException, IllegalAccessException, InstantiationException {
+    Map<String, String[]> components = new HashMap<>();
+    int maxDepth = 0;
+    for (String path : paths) {
+      String[] p = getPathComponents(path);
+      components.put(path, p);
+      maxDepth = Math.max(maxDepth, p.length);
+    }
+    
+    // inodes of the resolved prefixes, a prefix is the path components up to a depth joined with '/'
+    Map<String, ExpatHdfsInode> resolved = new HashMap<>();
+    for (int depth = 0; depth < maxDepth; depth++) {
+      Map<String, Object[]> toFetch = new HashMap<>();
+      for (String[] p : components.values()) {
+        if (p.length <= depth) {
+          continue;
+        }
+        String prefix = String.join("/", Arrays.copyOfRange(p, 0, depth + 1));
+        if (resolved.containsKey(prefix) || toFetch.containsKey(prefix)) {
+          continue;
+        }
+        long parentId;
+        if (depth == 0) {
+          parentId = HopsUtils.ROOT_INODE_ID;
+        } else {
+          ExpatHdfsInode parent = resolved.get(String.join("/", Arrays.copyOfRange(p, 0, depth)));
+          if (parent == null) {
+            // the parent does not exist
+            continue;
+          }
+          parentId = parent.getId();
+        }
+        ExpatHdfsInode cached = getCached(parentId, p[depth]);
+        if (cached != null) {
+          resolved.put(prefix, cached);
+        } else {
+          toFetch.put(prefix, new Object[]{parentId, p[depth],
+            HopsUtils.calculatePartitionId(parentId, p[depth], depth + 1)});
+        }
+      }
+      if (toFetch.isEmpty()) {
+        continue;
+      }
+      Map<List<Object>, ExpatHdfsInode> fetched = inodeFacade.findByInodePKs(toFetch.values());
+      for (Map.Entry<String, Object[]> entry : toFetch.entrySet()) {
+        ExpatHdfsInode inode = fetched.get(Arrays.asList(entry.getValue()));
+        if (inode != null) {
+          putCached(inode);
+          resolved.put(entry.getKey(), inode);
+        }
+      }
+    }
+    
+    Map<String, ExpatHdfsInode> result = new HashMap<>();
+    for (Map.Entry<String, String[]> entry : components.entrySet()) {
+      String[] p = entry.getValue();
+      result.put(entry.getKey(), p.length < 1 ? null : resolved.get(String.join("/", p)));
+    }
+    return result;
+  }
+  
+  public long getCacheHits() {
+    return cacheHits.sum();
+  }
+  
+  public long getCacheMisses() {
+    return cacheMisses.sum();
+  }
+  
+  /**
+   * @return the share of path components found in the cache, 0 before any lookup
+   */
+  public double getCacheHitRate() {
+    long hits = cacheHits.sum();
+    long total = hits + cacheMisses.sum();
+    return total == 0 ? 0 : (double) hits / total;
+  }
+  
+  public void clearCache() {
+    synchronized (cache) {
+      cache.clear();
+    }
+    synchronized (ancestorCache) {
+      ancestorCache.clear();
+    }
+  }
+  
   public String getPath(ExpatHdfsInode i) throws SQLException, IllegalAccessException, InstantiationException {
     if(i == null) {
       throw new IllegalArgumentException("Inode was not provided.");
     }
-    List<String> pathComponents = new ArrayList<>();
-    ExpatHdfsInode parent = i;
-    while (parent.getId() != 1) {
-      pathComponents.add(parent.getName());
-      parent = inodeFacade.find(parent.getParentId());
+    return getPaths(Collections.singletonList(i)).get(i.getId());
+  }
+  
+  /**
+   * Builds the paths of many inodes at once. The missing ancestors of all the inodes are read one level at a time with
+   * one batched query per level, and kept in a cache shared by later calls.
+   * @return the path of each inode keyed by inode id
+   */
+  public Map<Long, String> getPaths(Collection<ExpatHdfsInode> inodes)
+    throws SQLException, IllegalAccessException, InstantiationException {
+    Map<Long, ExpatHdfsInode> known = new HashMap<>();
+    for (ExpatHdfsInode inode : inodes) {
+      known.put(inode.getId(), inode);
     }
-    StringBuilder path = new StringBuilder();
-    for (int j = pathComponents.size() - 1; j >= 0; j--) {
-      path.append("/").append(pathComponents.get(j));
+    while (true) {
+      Set<Long> missing = new HashSet<>();
+      for (ExpatHdfsInode inode : inodes) {
+        ExpatHdfsInode parent = inode;
+        while (parent.getId() != HopsUtils.ROOT_INODE_ID) {
+          ExpatHdfsInode next = known.get(parent.getParentId());
+          if (next == null) {
+            next = getCachedAncestor(parent.getParentId());
+          }
+          if (next == null) {
+            missing.add(parent.getParentId());
+            break;
+          }
+          known.put(next.getId(), next);
+          parent = next;
+        }
+      }
+      if (missing.isEmpty()) {
+        break;
+      }
+      Map<Long, ExpatHdfsInode> fetched = inodeFacade.findByIds(missing, JDBCType.BIGINT);
+      if (fetched.size() < missing.size()) {
+        missing.removeAll(fetched.keySet());
+        throw new IllegalStateException("Ancestor inodes not found: " + missing);
+      }
+      known.putAll(fetched);
+      synchronized (ancestorCache) {
+        ancestorCache.putAll(fetched);
+      }
     }
-    return path.toString();
+    
+    Map<Long, String> paths = new HashMap<>();
+    for (ExpatHdfsInode inode : inodes) {
+      List<String> pathComponents = new ArrayList<>();
+      ExpatHdfsInode parent = inode;
+      while (parent.getId() != HopsUtils.ROOT_INODE_ID) {
+        pathComponents.add(parent.getName());
+        parent = known.get(parent.getParentId());
+      }
+      StringBuilder path = new StringBuilder();
+      for (int j = pathComponents.size() - 1; j >= 0; j--) {
+        path.append("/").append(pathComponents.get(j));
+      }
+      paths.put(inode.getId(), path.toString());
+    }
+    return paths;
   }
   
+  private ExpatHdfsInode getCachedAncestor(long id) {
+    synchronized (ancestorCache) {
+      return ancestorCache.get(id);
+    }
+  }
   
   private ExpatHdfsInode getInode(String path) throws MigrationException, SQLException {
     // LOGGER.info("getInode: " + path);
+    String[] p = getPathComponents(path);
+    if (p.length < 1) {
+      return null;
+    }
+    
+    return getInode(findChild(HopsUtils.ROOT_INODE_ID, p[0], HopsUtils.ROOT_DIR_DEPTH + 1), 1,
+      Arrays.copyOfRange(p, 1, p.length));
+  }
+  
+  private String[] getPathComponents(String path) {
     // Get the path components
     String[] p;
     if (path.charAt(0) == '/') {
@@ -72,12 +269,7 @@ public class ExpatInodeController {
     } else {
       p = path.split("/");
     }
-    
-    if (p.length < 1) {
-      return null;
-    }
-    
-    return getInode(inodeFacade.getRootNode(p[0]), 1, Arrays.copyOfRange(p, 1, p.length));
+    return p;
   }
   
   private ExpatHdfsInode getInode(ExpatHdfsInode inode, int depth, String[] p) throws MigrationException, SQLException {
@@ -89,8 +281,7 @@ public class ExpatInodeController {
     }
     //Move down the path
     for (int i = 0; i < p.length; i++) {
-      long partitionId = HopsUtils.calculatePartitionId(curr.getId(), p[i], i + depth + 1);
-      ExpatHdfsInode next = inodeFacade.findByInodePK(curr.getId(), p[i], partitionId);
+      ExpatHdfsInode next = findChild(curr.getId(), p[i], i + depth + 1);
       if (next == null) {
         return null;
       } else {
@@ -99,4 +290,61 @@ public class ExpatInodeController {
     }
     return curr;
   }
+  
+  private ExpatHdfsInode findChild(long parentId, String name, int depth) throws MigrationException, SQLException {
+    ExpatHdfsInode inode = getCached(parentId, name);
+    if (inode == null) {
+      inode = inodeFacade.findByInodePK(parentId, name, HopsUtils.calculatePartitionId(parentId, name, depth));
+      if (inode != null) {
+        putCached(inode);
+      }
+    }
+    return inode;
+  }
+  
+  private ExpatHdfsInode getCached(long parentId, String name) {
+    ExpatHdfsInode inode;
+    synchronized (cache) {
+      inode = cache.get(new InodeKey(parentId, name));
+    }
+    if (inode != null) {
+      cacheHits.increment();
+    } else {
+      cacheMisses.increment();
+    }
+    return inode;
+  }
+  
+  private void putCached(ExpatHdfsInode inode) {
+    synchronized (cache) {
+      cache.put(new InodeKey(inode.getParentId(), inode.getName()), inode);
+    }
+  }
+  
+  private static final class InodeKey {
+    private final long parentId;
+    private final String name;
+    
+    private InodeKey(long parentId, String name) {
+      this.parentId = parentId;
+      this.name = name;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      InodeKey that = (InodeKey) o;
+      return parentId == that.parentId && name.equals(that.name);
+    }
+    
+    @Override
+    public int hashCode() {
+      return Objects.hash(parentId, name);
+    }
+  }
 }
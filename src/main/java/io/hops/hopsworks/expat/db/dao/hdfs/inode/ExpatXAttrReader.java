@@ -0,0 +1,290 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.db.dao.hdfs.inode;
+
+import io.hops.hopsworks.common.hdfs.DistributedFileSystemOps;
+import io.hops.hopsworks.common.util.HopsUtils;
+import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
+import io.hops.hopsworks.expat.configuration.ExpatConf;
+import io.hops.hopsworks.expat.db.StatementCache;
+import io.hops.hopsworks.expat.db.dao.ExpatAbstractFacade;
+import io.hops.hopsworks.expat.migrations.MigrationException;
+import io.hops.hopsworks.expat.migrations.projects.util.XAttrException;
+import io.hops.hopsworks.expat.migrations.projects.util.XAttrHelper;
+import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reads xattrs from the hops.hdfs_xattrs table instead of asking the namenode, for steps that read many xattrs and
+ * write few of them. Values larger than one row are stored in several parts, they are concatenated in index order.
+ * <p/>
+ * {@link #getXAttr(String, String)} reads the xattr of all the children of the parent directory of the path with one
+ * query and keeps them, the paths a migration visits are mostly siblings (feature groups of a feature store, versions
+ * of a model). The query is pruned to the partition of the path, which the children of a directory share below the
+ * randomly partitioned top levels of the tree. The values kept are those found when the directory was read, call
+ * {@link #invalidate(String)} before reading again an xattr the step changed.
+ * <p/>
+ * With {@link ExpatConf#HOPS_CLIENT_VERIFY_XATTR_READS} set, every value read is compared with the value returned by
+ * the namenode, differences are logged and fail the step in {@link #checkVerified()}.
+ */
+public class ExpatXAttrReader {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ExpatXAttrReader.class);
+  // HopsFS stores the namespace of an xattr as the ordinal of XAttr.NameSpace
+  private static final List<String> NAMESPACES = Arrays.asList("user", "trusted", "security", "system", "raw",
+    "provenance");
+  private static final int DIRECTORY_CACHE_SIZE = 64;
+
+  private static final String GET_CHILDREN_XATTRS = "SELECT i.name, x.`index`, x.value FROM hops.hdfs_inodes i "
+    + "JOIN hops.hdfs_xattrs x ON x.inode_id = i.id WHERE i.partition_id = ? AND i.parent_id = ? "
+    + "AND x.namespace = ? AND x.name = ? ORDER BY i.name, x.`index`";
+  private static final String GET_XATTRS = "SELECT inode_id, `index`, value FROM hops.hdfs_xattrs "
+    + "WHERE namespace = ? AND name = ? AND inode_id IN ";
+
+  private final Connection connection;
+  private final ExpatInodeController inodeController;
+  private final DistributedFileSystemOps verifyWith;
+  private final Map<String, Map<String, byte[]>> directories =
+    new LinkedHashMap<String, Map<String, byte[]>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Map<String, byte[]>> eldest) {
+        return size() > DIRECTORY_CACHE_SIZE;
+      }
+    };
+  private final LongAdder mismatches = new LongAdder();
+
+  /**
+   * @param verifyWith client used to check the values read against the namenode, null to not check them
+   */
+  public ExpatXAttrReader(Connection connection, ExpatInodeController inodeController,
+    DistributedFileSystemOps verifyWith) {
+    this.connection = connection;
+    this.inodeController = inodeController;
+    this.verifyWith = verifyWith;
+  }
+
+  /**
+   * @return a reader that checks its values against dfso if {@link ExpatConf#HOPS_CLIENT_VERIFY_XATTR_READS} is set
+   */
+  public static ExpatXAttrReader create(Connection connection, DistributedFileSystemOps dfso)
+    throws ConfigurationException {
+    boolean verify = ConfigurationBuilder.getConfiguration().getBoolean(ExpatConf.HOPS_CLIENT_VERIFY_XATTR_READS,
+      false);
+    return new ExpatXAttrReader(connection, new ExpatInodeController(connection), verify ? dfso : null);
+  }
+
+  /**
+   * @param xattrName namespace and name of the xattr, as given to the namenode, e.g. provenance.featurestore
+   * @return the value of the xattr, null if the path or the xattr do not exist
+   */
+  public byte[] getXAttr(String path, String xattrName) throws SQLException, MigrationException {
+    String normalized = path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    int separator = normalized.lastIndexOf('/');
+    if (separator < 0 || normalized.length() == 1) {
+      throw new IllegalArgumentException("not an absolute path below the root:" + path);
+    }
+    String parent = separator == 0 ? "/" : normalized.substring(0, separator);
+    String child = normalized.substring(separator + 1);
+    ExpatHdfsInode parentInode = inodeController.getInodeAtPath(parent);
+    if (parentInode == null) {
+      return null;
+    }
+    int depth = normalized.split("/").length - 1;
+    long partitionId = HopsUtils.calculatePartitionId(parentInode.getId(), child, depth);
+    String directoryKey = parent + "\u0000" + partitionId + "\u0000" + xattrName;
+    Map<String, byte[]> children = directories.get(directoryKey);
+    if (children == null) {
+      children = readChildren(parent, parentInode.getId(), partitionId, xattrName);
+      directories.put(directoryKey, children);
+    }
+    byte[] value = children.get(child);
+    if (verifyWith != null) {
+      verify(normalized, xattrName, value);
+    }
+    return value;
+  }
+
+  /**
+   * Reads an xattr of many inodes, in chunks of {@link ExpatAbstractFacade#IN_CHUNK_SIZE} inodes per query.
+   * @return the values keyed by inode id, inodes without the xattr are left out
+   */
+  public Map<Long, byte[]> getXAttrs(Collection<Long> inodeIds, String xattrName) throws SQLException {
+    String[] parsed = parse(xattrName);
+    Parts<Long> parts = new Parts<>();
+    List<Long> ids = new ArrayList<>(inodeIds);
+    for (int from = 0; from < ids.size(); from += ExpatAbstractFacade.IN_CHUNK_SIZE) {
+      List<Long> chunk = ids.subList(from, Math.min(from + ExpatAbstractFacade.IN_CHUNK_SIZE, ids.size()));
+      String query = GET_XATTRS + "(" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ") "
+        + "ORDER BY inode_id, `index`";
+      PreparedStatement stmt = StatementCache.prepare(connection, query);
+      stmt.setByte(1, namespaceOf(parsed[0]));
+      stmt.setString(2, parsed[1]);
+      for (int i = 0; i < chunk.size(); i++) {
+        stmt.setLong(i + 3, chunk.get(i));
+      }
+      try (ResultSet resultSet = stmt.executeQuery()) {
+        while (resultSet.next()) {
+          parts.add(resultSet.getLong(1), resultSet.getInt(2), resultSet.getBytes(3));
+        }
+      }
+    }
+    return parts.values();
+  }
+
+  /**
+   * Reads an xattr of many paths, the paths are resolved with {@link ExpatInodeController#resolveAll(Collection)}.
+   * @return the values keyed by path, paths that do not exist or do not have the xattr are left out
+   */
+  public Map<String, byte[]> getXAttrsByPath(Collection<String> paths, String xattrName)
+    throws SQLException, IllegalAccessException, InstantiationException {
+    Map<String, ExpatHdfsInode> inodes = inodeController.resolveAll(paths);
+    Map<Long, String> pathsById = new HashMap<>();
+    for (Map.Entry<String, ExpatHdfsInode> inode : inodes.entrySet()) {
+      if (inode.getValue() != null) {
+        pathsById.put(inode.getValue().getId(), inode.getKey());
+      }
+    }
+    Map<String, byte[]> values = new HashMap<>();
+    for (Map.Entry<Long, byte[]> value : getXAttrs(pathsById.keySet(), xattrName).entrySet()) {
+      values.put(pathsById.get(value.getKey()), value.getValue());
+    }
+    if (verifyWith != null) {
+      for (String path : paths) {
+        verify(path, xattrName, values.get(path));
+      }
+    }
+    return values;
+  }
+  
+  /**
+   * Drops the values read for the siblings of the path, they are read again on next use.
+   */
+  public void invalidate(String path) {
+    String normalized = path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    int separator = normalized.lastIndexOf('/');
+    String parent = separator <= 0 ? "/" : normalized.substring(0, separator);
+    directories.keySet().removeIf(key -> key.startsWith(parent + "\u0000"));
+  }
+
+  public long getMismatches() {
+    return mismatches.sum();
+  }
+
+  /**
+   * Logs the number of values read that differ from the namenode values, when the reads are verified.
+   * @throws MigrationException if any value differed, the step worked on values that cannot be trusted
+   */
+  public void checkVerified() throws MigrationException {
+    if (verifyWith == null) {
+      return;
+    }
+    long total = getMismatches();
+    LOGGER.info("Verified xattr reads against the namenode, mismatches:{}", total);
+    if (total > 0) {
+      throw new MigrationException(total + " xattrs read from the database differ from the namenode values");
+    }
+  }
+
+  private Map<String, byte[]> readChildren(String parent, long parentId, long partitionId, String xattrName)
+    throws SQLException {
+    String[] parsed = parse(xattrName);
+    Parts<String> parts = new Parts<>();
+    PreparedStatement stmt = StatementCache.prepare(connection, GET_CHILDREN_XATTRS);
+    stmt.setLong(1, partitionId);
+    stmt.setLong(2, parentId);
+    stmt.setByte(3, namespaceOf(parsed[0]));
+    stmt.setString(4, parsed[1]);
+    try (ResultSet resultSet = stmt.executeQuery()) {
+      while (resultSet.next()) {
+        parts.add(resultSet.getString(1), resultSet.getInt(2), resultSet.getBytes(3));
+      }
+    }
+    Map<String, byte[]> children = parts.values();
+    LOGGER.debug("Read {} xattrs {} below:{}", children.size(), xattrName, parent);
+    return children;
+  }
+
+  private void verify(String path, String xattrName, byte[] value) {
+    String[] parsed = parse(xattrName);
+    try {
+      byte[] expected = XAttrHelper.getXAttr(verifyWith, path, parsed[0], parsed[1]);
+      if (!Arrays.equals(expected, value)) {
+        mismatches.increment();
+        LOGGER.error("xattr {} of path:{} read from the database differs from the namenode value", xattrName, path);
+      }
+    } catch (XAttrException e) {
+      LOGGER.warn("Could not verify xattr {} of path:{}. {}", xattrName, path, e.getMessage());
+    }
+  }
+
+  /**
+   * Collects the parts of several values, whatever order the rows come in.
+   */
+  static final class Parts<K> {
+    private final Map<K, TreeMap<Integer, byte[]>> parts = new HashMap<>();
+
+    void add(K key, int index, byte[] part) {
+      if (parts.computeIfAbsent(key, k -> new TreeMap<>()).put(index, part) != null) {
+        throw new IllegalStateException("xattr part " + index + " of " + key + " read twice");
+      }
+    }
+
+    Map<K, byte[]> values() {
+      Map<K, byte[]> values = new HashMap<>(parts.size() * 2);
+      for (Map.Entry<K, TreeMap<Integer, byte[]>> value : parts.entrySet()) {
+        ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+        for (byte[] part : value.getValue().values()) {
+          concatenated.write(part, 0, part.length);
+        }
+        values.put(value.getKey(), concatenated.toByteArray());
+      }
+      return values;
+    }
+  }
+
+  static String[] parse(String xattrName) {
+    int separator = xattrName.indexOf('.');
+    if (separator <= 0 || separator == xattrName.length() - 1) {
+      throw new IllegalArgumentException("xattr name should be namespace.name, got:" + xattrName);
+    }
+    return new String[]{xattrName.substring(0, separator), xattrName.substring(separator + 1)};
+  }
+
+  static byte namespaceOf(String namespace) {
+    int ordinal = NAMESPACES.indexOf(namespace.toLowerCase());
+    if (ordinal < 0) {
+      throw new IllegalArgumentException("unknown xattr namespace:" + namespace);
+    }
+    return (byte) ordinal;
+  }
+}
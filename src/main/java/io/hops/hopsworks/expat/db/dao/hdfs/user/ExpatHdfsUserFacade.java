@@ -20,13 +20,21 @@ import io.hops.hopsworks.expat.db.dao.ExpatAbstractFacade;
 
 import java.sql.Connection;
 import java.sql.JDBCType;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class ExpatHdfsUserFacade extends ExpatAbstractFacade<ExpatHdfsUser> {
   private static final String FIND_BY_NAME = "SELECT * FROM hops.hdfs_users WHERE name = ?";
   private static final String FIND_ALL_IN_GROUP = "SELECT * FROM hops.hdfs_users JOIN hops.hdfs_users_groups ON " +
     "id=user_id WHERE group_id = ?";
+  private static final String FIND_ALL_GROUP_MEMBERS = "SELECT g.name, u.name FROM hops.hdfs_users_groups ug " +
+    "JOIN hops.hdfs_groups g ON g.id = ug.group_id JOIN hops.hdfs_users u ON u.id = ug.user_id";
   private Connection connection;
   protected ExpatHdfsUserFacade(Class<ExpatHdfsUser> entityClass) {
     super(entityClass);
@@ -72,4 +80,19 @@ public class ExpatHdfsUserFacade extends ExpatAbstractFacade<ExpatHdfsUser> {
     List<ExpatHdfsUser> users = this.findByQuery(FIND_ALL_IN_GROUP, group.getId(), JDBCType.BIGINT);
     return users;
   }
+  
+  /**
+   * Reads the members of all the groups with one query.
+   * @return the names of the users of each group, keyed by group name. Groups without members are not in the map.
+   */
+  public Map<String, Set<String>> getUserNamesByGroup() throws SQLException {
+    Map<String, Set<String>> members = new HashMap<>();
+    try (Statement stmt = connection.createStatement();
+         ResultSet resultSet = stmt.executeQuery(FIND_ALL_GROUP_MEMBERS)) {
+      while (resultSet.next()) {
+        members.computeIfAbsent(resultSet.getString(1), group -> new HashSet<>()).add(resultSet.getString(2));
+      }
+    }
+    return members;
+  }
 }
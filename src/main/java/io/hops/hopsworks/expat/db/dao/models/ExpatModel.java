@@ -17,6 +17,7 @@
 package io.hops.hopsworks.expat.db.dao.models;
 
 import io.hops.hopsworks.expat.db.dao.ExpatAbstractEntity;
+import io.hops.hopsworks.expat.db.dao.RowMapper;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -53,11 +54,21 @@ public class ExpatModel extends ExpatAbstractEntity<ExpatModel> {
     this.projectId = projectId;
   }
   
+  public static final RowMapper.Factory<ExpatModel> ROW_MAPPER = columns -> {
+    int idColumn = columns.get("id");
+    int nameColumn = columns.get("name");
+    int projectIdColumn = columns.get("project_id");
+    return resultSet -> {
+      ExpatModel model = new ExpatModel();
+      model.id = resultSet.getInt(idColumn);
+      model.name = resultSet.getString(nameColumn);
+      model.projectId = resultSet.getInt(projectIdColumn);
+      return model;
+    };
+  };
+  
   @Override
   public ExpatModel getEntity(ResultSet resultSet) throws SQLException {
-    this.id = resultSet.getInt("id");
-    this.name = resultSet.getString("name");
-    this.projectId = resultSet.getInt("project_id");
-    return this;
+    return ROW_MAPPER.bind(resultSet).map(resultSet);
   }
 }
@@ -36,11 +36,11 @@ public class ExpatModelFacade extends ExpatAbstractFacade<ExpatModel> {
     "hopsworks.model");
   private Connection connection;
   protected ExpatModelFacade(Class<ExpatModel> entityClass) {
-    super(entityClass);
+    super(entityClass, ExpatModel.ROW_MAPPER);
   }
 
   public ExpatModelFacade(Class<ExpatModel> entityClass, Connection connection) {
-    super(entityClass);
+    super(entityClass, ExpatModel.ROW_MAPPER);
     this.connection = connection;
   }
 
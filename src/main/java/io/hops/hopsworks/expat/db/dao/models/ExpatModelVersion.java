@@ -17,6 +17,7 @@
 package io.hops.hopsworks.expat.db.dao.models;
 
 import io.hops.hopsworks.expat.db.dao.ExpatAbstractEntity;
+import io.hops.hopsworks.expat.db.dao.RowMapper;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -147,19 +148,37 @@ public class ExpatModelVersion extends ExpatAbstractEntity<ExpatModelVersion> {
     this.experimentProjectName = experimentProjectName;
   }
 
+  public static final RowMapper.Factory<ExpatModelVersion> ROW_MAPPER = columns -> {
+    int versionColumn = columns.get("version");
+    int modelIdColumn = columns.get("model_id");
+    int userIdColumn = columns.get("user_id");
+    int createdColumn = columns.get("created");
+    int descriptionColumn = columns.get("description");
+    int metricsColumn = columns.get("metrics");
+    int programColumn = columns.get("program");
+    int frameworkColumn = columns.get("framework");
+    int environmentColumn = columns.get("environment");
+    int experimentIdColumn = columns.get("experiment_id");
+    int experimentProjectNameColumn = columns.get("experiment_project_name");
+    return resultSet -> {
+      ExpatModelVersion modelVersion = new ExpatModelVersion();
+      modelVersion.version = resultSet.getInt(versionColumn);
+      modelVersion.modelId = resultSet.getInt(modelIdColumn);
+      modelVersion.userId = resultSet.getInt(userIdColumn);
+      modelVersion.created = resultSet.getDate(createdColumn);
+      modelVersion.description = resultSet.getString(descriptionColumn);
+      modelVersion.metrics = resultSet.getString(metricsColumn);
+      modelVersion.program = resultSet.getString(programColumn);
+      modelVersion.framework = resultSet.getString(frameworkColumn);
+      modelVersion.environment = resultSet.getString(environmentColumn);
+      modelVersion.experimentId = resultSet.getString(experimentIdColumn);
+      modelVersion.experimentProjectName = resultSet.getString(experimentProjectNameColumn);
+      return modelVersion;
+    };
+  };
+  
   @Override
   public ExpatModelVersion getEntity(ResultSet resultSet) throws SQLException {
-    this.setVersion(resultSet.getInt("version"));
-    this.setModelId(resultSet.getInt("model_id"));
-    this.setUserId(resultSet.getInt("user_id"));
-    this.setCreated(resultSet.getDate("created"));
-    this.setDescription(resultSet.getString("description"));
-    this.setMetrics(resultSet.getString("metrics"));
-    this.setProgram(resultSet.getString("program"));
-    this.setFramework(resultSet.getString("framework"));
-    this.setEnvironment(resultSet.getString("environment"));
-    this.setExperimentId(resultSet.getString("experiment_id"));
-    this.setExperimentProjectName(resultSet.getString("experiment_project_name"));
-    return this;
+    return ROW_MAPPER.bind(resultSet).map(resultSet);
   }
 }
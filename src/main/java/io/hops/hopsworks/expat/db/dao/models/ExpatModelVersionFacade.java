@@ -38,11 +38,11 @@ public class ExpatModelVersionFacade extends ExpatAbstractFacade<ExpatModelVersi
     "hopsworks.model_version");
   private Connection connection;
   protected ExpatModelVersionFacade(Class<ExpatModelVersion> entityClass) {
-    super(entityClass);
+    super(entityClass, ExpatModelVersion.ROW_MAPPER);
   }
 
   public ExpatModelVersionFacade(Class<ExpatModelVersion> entityClass, Connection connection) {
-    super(entityClass);
+    super(entityClass, ExpatModelVersion.ROW_MAPPER);
     this.connection = connection;
   }
 
@@ -60,6 +60,11 @@ public class ExpatModelVersionFacade extends ExpatAbstractFacade<ExpatModelVersi
   public String findByIdQuery() {
     return "SELECT * FROM hopsworks.model_version WHERE model_id = ? AND version = ?";
   }
+  
+  @Override
+  protected String[] idColumns() {
+    return new String[]{"model_id", "version"};
+  }
 
   public ExpatModelVersion findByModelIdAndVersion(Integer modelId, Integer version)
     throws IllegalAccessException, SQLException, InstantiationException {
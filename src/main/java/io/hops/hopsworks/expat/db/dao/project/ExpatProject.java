@@ -17,6 +17,7 @@
 package io.hops.hopsworks.expat.db.dao.project;
 
 import io.hops.hopsworks.expat.db.dao.ExpatAbstractEntity;
+import io.hops.hopsworks.expat.db.dao.RowMapper;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -117,19 +118,36 @@ public class ExpatProject extends ExpatAbstractEntity<ExpatProject> {
     this.dockerImage = dockerImage;
   }
   
+  public static final RowMapper.Factory<ExpatProject> ROW_MAPPER = columns -> {
+    int idColumn = columns.get("id");
+    int nameColumn = columns.get("projectname");
+    int ownerColumn = columns.get("username");
+    int createdColumn = columns.get("created");
+    int paymentTypeColumn = columns.get("payment_type");
+    int pythonEnvIdColumn = columns.get("python_env_id");
+    int descriptionColumn = columns.get("description");
+    int kafkaMaxNumTopicsColumn = columns.get("kafka_max_num_topics");
+    int lastQuotaUpdateColumn = columns.get("last_quota_update");
+    int dockerImageColumn = columns.get("docker_image");
+    return resultSet -> {
+      ExpatProject project = new ExpatProject();
+      project.id = resultSet.getInt(idColumn);
+      project.name = resultSet.getString(nameColumn);
+      project.owner = resultSet.getString(ownerColumn);
+      project.created = resultSet.getDate(createdColumn);
+      project.paymentType = resultSet.getString(paymentTypeColumn);
+      project.pythonEnvId = resultSet.getInt(pythonEnvIdColumn);
+      project.description = resultSet.getString(descriptionColumn);
+      project.kafkaMaxNumTopics = resultSet.getInt(kafkaMaxNumTopicsColumn);
+      project.lastQuotaUpdate = resultSet.getDate(lastQuotaUpdateColumn);
+      project.dockerImage = resultSet.getString(dockerImageColumn);
+      return project;
+    };
+  };
+  
   @Override
   public ExpatProject getEntity(ResultSet resultSet) throws SQLException {
-    this.id = resultSet.getInt("id");
-    this.name = resultSet.getString("projectname");
-    this.owner = resultSet.getString("username");
-    this.created = resultSet.getDate("created");
-    this.paymentType = resultSet.getString("payment_type");
-    this.pythonEnvId = resultSet.getInt("python_env_id");
-    this.description = resultSet.getString("description");
-    this.kafkaMaxNumTopics = resultSet.getInt("kafka_max_num_topics");
-    this.lastQuotaUpdate = resultSet.getDate("last_quota_update");
-    this.dockerImage = resultSet.getString("docker_image");
-    return this;
+    return ROW_MAPPER.bind(resultSet).map(resultSet);
   }
   
   @Override
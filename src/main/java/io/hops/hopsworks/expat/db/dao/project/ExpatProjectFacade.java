@@ -18,6 +18,7 @@ package io.hops.hopsworks.expat.db.dao.project;
 
 import io.hops.hopsworks.expat.db.DbConnectionFactory;
 import io.hops.hopsworks.expat.db.dao.ExpatAbstractFacade;
+import io.hops.hopsworks.expat.migrations.ProjectShard;
 import org.apache.commons.configuration2.ex.ConfigurationException;
 
 import java.sql.Connection;
@@ -29,14 +30,15 @@ public class ExpatProjectFacade extends ExpatAbstractFacade<ExpatProject> {
   private Connection connection;
 
   private static final String FIND_BY_NAME = "SELECT * FROM hopsworks.project WHERE projectname = ?";
+  private static final String FIND_IN_SHARD = "SELECT * FROM project WHERE id >= ? AND id < ? ORDER BY id";
   
   public ExpatProjectFacade(Class<ExpatProject> entityClass) throws SQLException, ConfigurationException {
-    super(entityClass);
+    super(entityClass, ExpatProject.ROW_MAPPER);
     this.connection = DbConnectionFactory.getConnection();
   }
   
   public ExpatProjectFacade(Class<ExpatProject> entityClass, Connection connection) {
-    super(entityClass);
+    super(entityClass, ExpatProject.ROW_MAPPER);
     this.connection = connection;
   }
   
@@ -67,4 +69,13 @@ public class ExpatProjectFacade extends ExpatAbstractFacade<ExpatProject> {
     }
     return projectList.get(0);
   }
+  
+  /**
+   * @return the projects with an id in the shard, in id order
+   */
+  public List<ExpatProject> findByShard(ProjectShard shard)
+    throws IllegalAccessException, SQLException, InstantiationException {
+    return this.findByQuery(FIND_IN_SHARD, new Object[]{shard.getStart(), shard.getEnd()},
+      new JDBCType[]{JDBCType.BIGINT, JDBCType.BIGINT});
+  }
 }
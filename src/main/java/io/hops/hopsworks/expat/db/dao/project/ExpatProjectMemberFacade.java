@@ -26,9 +26,10 @@ import java.sql.SQLException;
 import java.util.List;
 
 public class ExpatProjectMemberFacade extends ExpatAbstractFacade<ExpatProjectMember> {
-  private static final String GET_PROJECT_TEAM_BY_PROJECT_ID = "SELECT t.project_id, t.team_member, t.added, " +
+  private static final String GET_PROJECT_TEAM = "SELECT t.project_id, t.team_member, t.added, " +
     "t.team_role, p.projectname, u.username FROM project_team as t JOIN project as p ON " +
-    "project_id=id JOIN users as u ON team_member=email WHERE project_id=?";
+    "project_id=id JOIN users as u ON team_member=email";
+  private static final String GET_PROJECT_TEAM_BY_PROJECT_ID = GET_PROJECT_TEAM + " WHERE project_id=?";
   private Connection connection;
   
   public ExpatProjectMemberFacade(Class<ExpatProjectMember> entityClass)
@@ -57,8 +58,21 @@ public class ExpatProjectMemberFacade extends ExpatAbstractFacade<ExpatProjectMe
     return "SELECT * FROM project_team WHERE project_id = ? AND team_member = ?";
   }
   
+  @Override
+  protected String[] idColumns() {
+    return new String[]{"project_id", "team_member"};
+  }
+  
   public List<ExpatProjectMember> findByProjectId(Integer projectId) throws IllegalAccessException, SQLException,
     InstantiationException {
     return this.findByQuery(GET_PROJECT_TEAM_BY_PROJECT_ID, projectId, JDBCType.INTEGER);
   }
+  
+  /**
+   * @return the members of all the projects, with their project name and username
+   */
+  public List<ExpatProjectMember> findAllMembers() throws IllegalAccessException, SQLException,
+    InstantiationException {
+    return this.findByQuery(GET_PROJECT_TEAM, new Object[0], new JDBCType[0]);
+  }
 }
@@ -17,6 +17,9 @@
 
 package io.hops.hopsworks.expat.db.dao.user;
 
+import io.hops.hopsworks.expat.db.StatementCache;
+import io.hops.hopsworks.expat.db.dao.ExpatAbstractFacade;
+import io.hops.hopsworks.expat.db.dao.RowMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,7 +28,11 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ExpatUserFacade {
 
@@ -36,10 +43,21 @@ public class ExpatUserFacade {
   private final static String GET_USER_BY_USERNAME = "SELECT * FROM users WHERE username = ?";
   private final static String GET_USER_BY_EMAIL = "SELECT * FROM users WHERE email = ?";
   private final static String GET_USER_BY_UID = "SELECT * FROM users WHERE uid = ?";
+  private final static String GET_USERS_BY_UIDS = "SELECT * FROM users WHERE uid IN ";
 
   private final static String UPDATE_PWD = "UPDATE users SET password = ? WHERE uid = ?";
   private final static String UPDATE_MODE = "UPDATE users SET mode = ? WHERE uid = ?";
 
+  private final static RowMapper.Factory<ExpatUser> USER_MAPPER = columns -> {
+    int uidColumn = columns.get("uid");
+    int emailColumn = columns.get("email");
+    int passwordColumn = columns.get("password");
+    int usernameColumn = columns.get("username");
+    int saltColumn = columns.get("salt");
+    return userRS -> new ExpatUser(userRS.getInt(uidColumn), userRS.getString(usernameColumn),
+        userRS.getString(passwordColumn), userRS.getString(emailColumn), userRS.getString(saltColumn));
+  };
+
   public ExpatUser getExpatUserByUsername(Connection connection,
                                              String username) throws SQLException {
     return getSingleExpatUser(connection, GET_USER_BY_USERNAME, username);
@@ -55,15 +73,43 @@ public class ExpatUserFacade {
     return getSingleExpatUser(connection, GET_USER_BY_UID, String.valueOf(uid));
   }
 
+  /**
+   * Finds users by uid in chunks of {@link ExpatAbstractFacade#IN_CHUNK_SIZE} uids.
+   * @return the users found keyed by uid
+   */
+  public Map<Integer, ExpatUser> getExpatUsersByUids(Connection connection, Collection<Integer> uids)
+    throws SQLException {
+    Map<Integer, ExpatUser> result = new HashMap<>(uids.size() * 2);
+    List<Integer> uidList = new ArrayList<>(uids);
+    for (int from = 0; from < uidList.size(); from += ExpatAbstractFacade.IN_CHUNK_SIZE) {
+      List<Integer> chunk = uidList.subList(from, Math.min(from + ExpatAbstractFacade.IN_CHUNK_SIZE, uidList.size()));
+      String query = GET_USERS_BY_UIDS + "(" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+      try (PreparedStatement stmt = connection.prepareStatement(query)) {
+        for (int i = 0; i < chunk.size(); i++) {
+          stmt.setInt(i + 1, chunk.get(i));
+        }
+        try (ResultSet userRS = stmt.executeQuery()) {
+          RowMapper<ExpatUser> userMapper = USER_MAPPER.bind(userRS);
+          while (userRS.next()) {
+            ExpatUser user = userMapper.map(userRS);
+            result.put(user.getUid(), user);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
   private ExpatUser getSingleExpatUser(Connection connection,
                                        String query, String param) throws SQLException{
     ResultSet userRS = null;
-    try (PreparedStatement stmt = connection.prepareStatement(query)) {
+    try {
+      PreparedStatement stmt = StatementCache.prepare(connection, query);
       stmt.setString(1, param);
       userRS = stmt.executeQuery();
 
       if (userRS.next()) {
-        return getExpatUser(userRS);
+        return USER_MAPPER.bind(userRS).map(userRS);
       } else {
         return null;
       }
@@ -81,8 +127,9 @@ public class ExpatUserFacade {
 
     try (PreparedStatement stmt = connection.prepareStatement(GET_USERS)) {
       userRS = stmt.executeQuery();
+      RowMapper<ExpatUser> userMapper = USER_MAPPER.bind(userRS);
       while (userRS.next()) {
-        result.add(getExpatUser(userRS));
+        result.add(userMapper.map(userRS));
       }
     } finally {
       if (userRS != null) {
@@ -99,8 +146,9 @@ public class ExpatUserFacade {
 
     try (PreparedStatement stmt = connection.prepareStatement(GET_LOCAL_USERS)) {
       userRS = stmt.executeQuery();
+      RowMapper<ExpatUser> userMapper = USER_MAPPER.bind(userRS);
       while (userRS.next()) {
-        result.add(getExpatUser(userRS));
+        result.add(userMapper.map(userRS));
       }
     } finally {
       if (userRS != null) {
@@ -111,16 +159,6 @@ public class ExpatUserFacade {
     return result;
   }
 
-  private ExpatUser getExpatUser(ResultSet userRS) throws SQLException {
-    int uid = userRS.getInt("uid");
-    String email = userRS.getString("email");
-    String userPassword = userRS.getString("password");
-    String username = userRS.getString("username");
-    String salt = userRS.getString("salt");
-  
-    return new ExpatUser(uid, username, userPassword, email, salt);
-  }
-
   public void updateUserPassword(Connection connection,
                                  ExpatUser expatUser, String password, boolean dryRun) throws SQLException {
     try (PreparedStatement stmt = connection.prepareStatement(UPDATE_PWD)) {
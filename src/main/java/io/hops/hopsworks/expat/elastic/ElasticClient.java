@@ -16,13 +16,16 @@
  */
 package io.hops.hopsworks.expat.elastic;
 
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
+import io.hops.hopsworks.expat.json.JsonCodec;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpHost;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPost;
@@ -32,22 +35,74 @@ import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.util.EntityUtils;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 public class ElasticClient {
   private final static Logger LOGGER = LoggerFactory.getLogger(ElasticClient.class);
   
+  /**
+   * DELETE with a body, as taken by the point in time and scroll APIs.
+   */
+  private static class HttpDeleteWithBody extends HttpEntityEnclosingRequestBase {
+    HttpDeleteWithBody(URI uri) {
+      setURI(uri);
+    }
+    
+    @Override
+    public String getMethod() {
+      return HttpDelete.METHOD_NAME;
+    }
+  }
+  
+  /**
+   * Deletes the provenance index of the project. Once rewritten by {@link ElasticReindexer#rewrite}, the name of the
+   * index is an alias, which cannot be deleted as an index: the versions behind it are deleted instead, along with
+   * the previous versions kept for rollback.
+   * The project deletion of Hopsworks deletes the index by name as well, it has to resolve the alias the same way for
+   * the projects whose index was rewritten.
+   */
   public static void deleteProvenanceProjectIndex(CloseableHttpClient httpClient, HttpHost elastic, Long projectIId,
                                                   String elasticUser, String elasticPass) throws IOException {
-    deleteIndex(httpClient, elastic, elasticUser, elasticPass, projectIId + "__file_prov");
+    deleteIndexVersions(httpClient, elastic, elasticUser, elasticPass, projectIId + "__file_prov");
+  }
+  
+  /**
+   * Deletes the index or, when the name is an alias left by {@link ElasticReindexer#rewrite}, all the versions of the
+   * index kept behind it, which frees the name.
+   */
+  public static void deleteIndexVersions(CloseableHttpClient httpClient, HttpHost elastic, String elasticUser,
+                                         String elasticPass, String index) throws IOException {
+    List<String> versions;
+    try {
+      versions = listIndices(httpClient, elastic, elasticUser, elasticPass, index + "*");
+    } catch (URISyntaxException e) {
+      throw new IOException(e);
+    }
+    boolean deleted = false;
+    for (String version : versions) {
+      if (isIndexVersion(index, version)) {
+        deleteIndex(httpClient, elastic, elasticUser, elasticPass, version);
+        deleted = true;
+      }
+    }
+    if (!deleted) {
+      // logs the index as already deleted
+      deleteIndex(httpClient, elastic, elasticUser, elasticPass, index);
+    }
   }
   
   public static void deleteAppProvenanceIndex(CloseableHttpClient httpClient, HttpHost elastic,
@@ -164,6 +219,146 @@ public class ElasticClient {
     }
   }
   
+  /**
+   * Starts a sliced reindex that runs in the background on the cluster.
+   * @param slices number of slices or "auto"
+   * @param requestsPerSecond throttle of the reindex, unthrottled if not positive
+   * @return the id of the reindex task, to poll with {@link #getTask}
+   */
+  public static String startReindex(CloseableHttpClient httpClient, HttpHost elastic, String elasticUser,
+                                    String elasticPass, String fromIndex, String toIndex, Optional<String> script,
+                                    String slices, float requestsPerSecond)
+    throws IOException, URISyntaxException {
+    CloseableHttpResponse response = null;
+    try {
+      URIBuilder uriBuilder = new URIBuilder();
+      uriBuilder
+        .setPathSegments("_reindex")
+        .setParameter("wait_for_completion", "false")
+        .setParameter("refresh", "true")
+        .setParameter("slices", slices)
+        .setParameter("requests_per_second", requestsPerSecondParam(requestsPerSecond));
+      HttpPost request = new HttpPost(uriBuilder.build());
+      request.addHeader(HttpHeaders.CONTENT_TYPE, "application/json");
+      String encodedAuth = Base64.getEncoder().encodeToString((elasticUser + ":" + elasticPass).getBytes());
+      request.addHeader(HttpHeaders.AUTHORIZATION, "Basic " + encodedAuth);
+      String requestBody = getReindexBody(fromIndex, toIndex, script);
+      HttpEntity entity = new ByteArrayEntity(requestBody.getBytes(StandardCharsets.UTF_8));
+      request.setEntity(entity);
+      
+      LOGGER.info("Starting reindex from:{} to:{}", fromIndex, toIndex);
+      response = httpClient.execute(elastic, request);
+      JSONObject jsonResponse = new JSONObject(EntityUtils.toString(response.getEntity()));
+      int status = response.getStatusLine().getStatusCode();
+      if (status == 200) {
+        String taskId = jsonResponse.getString("task");
+        LOGGER.info("Started reindex from:{} to:{} task:{}", fromIndex, toIndex, taskId);
+        return taskId;
+      } else {
+        if (jsonResponse.getJSONObject("error").get("reason").toString().startsWith("no such index")) {
+          throw new IllegalStateException("Could not reindex - indices do not exist");
+        } else {
+          throw new IllegalStateException("Could not reindex:" + jsonResponse.getJSONObject("error").get("reason"));
+        }
+      }
+    } finally {
+      if (response != null) {
+        response.close();
+      }
+    }
+  }
+  
+  /**
+   * @return the task, with its {@code completed} flag, its {@code task.status} progress and, once completed, its
+   * {@code response} or {@code error}
+   */
+  public static JSONObject getTask(CloseableHttpClient httpClient, HttpHost elastic, String elasticUser,
+                                   String elasticPass, String taskId)
+    throws IOException, URISyntaxException {
+    CloseableHttpResponse response = null;
+    try {
+      URIBuilder uriBuilder = new URIBuilder()
+        .setPathSegments("_tasks", taskId);
+      HttpGet request = new HttpGet(uriBuilder.build());
+      request.addHeader(HttpHeaders.CONTENT_TYPE, "application/json");
+      String encodedAuth = Base64.getEncoder().encodeToString((elasticUser + ":" + elasticPass).getBytes());
+      request.addHeader(HttpHeaders.AUTHORIZATION, "Basic " + encodedAuth);
+      response = httpClient.execute(elastic, request);
+      JSONObject jsonResponse = new JSONObject(EntityUtils.toString(response.getEntity()));
+      int status = response.getStatusLine().getStatusCode();
+      if (status == 200) {
+        return jsonResponse;
+      } else {
+        throw new IllegalStateException("Could not get task:" + taskId + " " + jsonResponse.opt("error"));
+      }
+    } finally {
+      if (response != null) {
+        response.close();
+      }
+    }
+  }
+  
+  /**
+   * Changes the throttle of a running reindex, unthrottled if not positive.
+   */
+  public static void rethrottleReindex(CloseableHttpClient httpClient, HttpHost elastic, String elasticUser,
+                                       String elasticPass, String taskId, float requestsPerSecond)
+    throws IOException, URISyntaxException {
+    CloseableHttpResponse response = null;
+    try {
+      URIBuilder uriBuilder = new URIBuilder()
+        .setPathSegments("_reindex", taskId, "_rethrottle")
+        .setParameter("requests_per_second", requestsPerSecondParam(requestsPerSecond));
+      HttpPost request = new HttpPost(uriBuilder.build());
+      request.addHeader(HttpHeaders.CONTENT_TYPE, "application/json");
+      String encodedAuth = Base64.getEncoder().encodeToString((elasticUser + ":" + elasticPass).getBytes());
+      request.addHeader(HttpHeaders.AUTHORIZATION, "Basic " + encodedAuth);
+      response = httpClient.execute(elastic, request);
+      JSONObject jsonResponse = new JSONObject(EntityUtils.toString(response.getEntity()));
+      int status = response.getStatusLine().getStatusCode();
+      if (status == 200) {
+        LOGGER.info("Rethrottled reindex task:{} to:{} requests per second", taskId, requestsPerSecond);
+      } else {
+        throw new IllegalStateException("Could not rethrottle reindex task:" + taskId + " "
+          + jsonResponse.opt("error"));
+      }
+    } finally {
+      if (response != null) {
+        response.close();
+      }
+    }
+  }
+  
+  public static void cancelTask(CloseableHttpClient httpClient, HttpHost elastic, String elasticUser,
+                                String elasticPass, String taskId)
+    throws IOException, URISyntaxException {
+    CloseableHttpResponse response = null;
+    try {
+      URIBuilder uriBuilder = new URIBuilder()
+        .setPathSegments("_tasks", taskId, "_cancel");
+      HttpPost request = new HttpPost(uriBuilder.build());
+      request.addHeader(HttpHeaders.CONTENT_TYPE, "application/json");
+      String encodedAuth = Base64.getEncoder().encodeToString((elasticUser + ":" + elasticPass).getBytes());
+      request.addHeader(HttpHeaders.AUTHORIZATION, "Basic " + encodedAuth);
+      response = httpClient.execute(elastic, request);
+      JSONObject jsonResponse = new JSONObject(EntityUtils.toString(response.getEntity()));
+      int status = response.getStatusLine().getStatusCode();
+      if (status == 200) {
+        LOGGER.info("Cancelled task:{}", taskId);
+      } else {
+        throw new IllegalStateException("Could not cancel task:" + taskId + " " + jsonResponse.opt("error"));
+      }
+    } finally {
+      if (response != null) {
+        response.close();
+      }
+    }
+  }
+  
+  private static String requestsPerSecondParam(float requestsPerSecond) {
+    return requestsPerSecond > 0 ? Float.toString(requestsPerSecond) : "-1";
+  }
+  
   private static String getReindexBody(String fromIndex, String toIndex, Optional<String> script) {
     JsonObject bodyJson = new JsonObject();
     JsonObject sourceJson = new JsonObject();
@@ -283,6 +478,203 @@ public class ElasticClient {
     }
   }
   
+  /**
+   * @return the indices behind the alias, empty if there is no such alias, as when the name is that of an index
+   */
+  public static Set<String> getAliasIndices(CloseableHttpClient httpClient, HttpHost elastic, String elasticUser,
+                                            String elasticPass, String alias) throws IOException, URISyntaxException {
+    CloseableHttpResponse response = null;
+    try {
+      URIBuilder uriBuilder = new URIBuilder()
+        .setPathSegments("_alias", alias);
+      HttpGet request = new HttpGet(uriBuilder.build());
+      request.addHeader(HttpHeaders.CONTENT_TYPE, "application/json");
+      String encodedAuth = Base64.getEncoder().encodeToString((elasticUser + ":" + elasticPass).getBytes());
+      request.addHeader(HttpHeaders.AUTHORIZATION, "Basic " + encodedAuth);
+      response = httpClient.execute(elastic, request);
+      JSONObject jsonResponse = new JSONObject(EntityUtils.toString(response.getEntity()));
+      int status = response.getStatusLine().getStatusCode();
+      if (status == 200) {
+        return new HashSet<>(jsonResponse.keySet());
+      } else if (status == 404) {
+        return new HashSet<>();
+      } else {
+        throw new IllegalStateException("Could not get alias:" + alias + " " + jsonResponse.opt("error"));
+      }
+    } finally {
+      if (response != null) {
+        response.close();
+      }
+    }
+  }
+  
+  /**
+   * Index settings that describe one index rather than its configuration. They are set by the cluster when the index
+   * is created and are refused, or would be wrong, on a copy. Blocks are left out too, a write block would fail the
+   * copy into the new index.
+   */
+  private static final String[] INDEX_PRIVATE_SETTINGS = {"index.uuid", "index.creation_date", "index.provided_name",
+    "index.version", "index.history.uuid", "index.resize", "index.shrink", "index.routing.allocation.initial_recovery",
+    "index.verified_before_close", "index.blocks"};
+  
+  /**
+   * @return the settings of the index, or of the index behind the alias, in flat form ("index.number_of_shards"),
+   * without the ones only meaningful to that index, so that they can be used to create a copy of it
+   */
+  public static JSONObject getCopyableSettings(CloseableHttpClient httpClient, HttpHost elastic, String elasticUser,
+                                               String elasticPass, String index)
+    throws IOException, URISyntaxException {
+    CloseableHttpResponse response = null;
+    try {
+      URIBuilder uriBuilder = new URIBuilder()
+        .setPathSegments(index, "_settings")
+        .setParameter("flat_settings", "true");
+      HttpGet request = new HttpGet(uriBuilder.build());
+      request.addHeader(HttpHeaders.CONTENT_TYPE, "application/json");
+      String encodedAuth = Base64.getEncoder().encodeToString((elasticUser + ":" + elasticPass).getBytes());
+      request.addHeader(HttpHeaders.AUTHORIZATION, "Basic " + encodedAuth);
+      response = httpClient.execute(elastic, request);
+      JSONObject jsonResponse = new JSONObject(EntityUtils.toString(response.getEntity()));
+      int status = response.getStatusLine().getStatusCode();
+      if (status == 200 && jsonResponse.length() == 1) {
+        return copyableSettings(jsonResponse.getJSONObject(jsonResponse.keys().next()).getJSONObject("settings"));
+      } else {
+        throw new IllegalStateException("Could not get settings of index:" + index + " " + jsonResponse.opt("error"));
+      }
+    } finally {
+      if (response != null) {
+        response.close();
+      }
+    }
+  }
+  
+  static JSONObject copyableSettings(JSONObject flatSettings) {
+    JSONObject settings = new JSONObject();
+    for (String key : flatSettings.keySet()) {
+      boolean copyable = true;
+      for (String privateSetting : INDEX_PRIVATE_SETTINGS) {
+        if (key.equals(privateSetting) || key.startsWith(privateSetting + ".")) {
+          copyable = false;
+          break;
+        }
+      }
+      if (copyable) {
+        settings.put(key, flatSettings.get(key));
+      }
+    }
+    return settings;
+  }
+  
+  /**
+   * @return the mappings of the index, or of the index behind the alias
+   */
+  public static JSONObject getMapping(CloseableHttpClient httpClient, HttpHost elastic, String elasticUser,
+                                      String elasticPass, String index) throws IOException, URISyntaxException {
+    CloseableHttpResponse response = null;
+    try {
+      URIBuilder uriBuilder = new URIBuilder()
+        .setPathSegments(index, "_mapping");
+      HttpGet request = new HttpGet(uriBuilder.build());
+      request.addHeader(HttpHeaders.CONTENT_TYPE, "application/json");
+      String encodedAuth = Base64.getEncoder().encodeToString((elasticUser + ":" + elasticPass).getBytes());
+      request.addHeader(HttpHeaders.AUTHORIZATION, "Basic " + encodedAuth);
+      response = httpClient.execute(elastic, request);
+      JSONObject jsonResponse = new JSONObject(EntityUtils.toString(response.getEntity()));
+      int status = response.getStatusLine().getStatusCode();
+      if (status == 200 && jsonResponse.length() == 1) {
+        return jsonResponse.getJSONObject(jsonResponse.keys().next()).getJSONObject("mappings");
+      } else {
+        throw new IllegalStateException("Could not get mapping of index:" + index + " " + jsonResponse.opt("error"));
+      }
+    } finally {
+      if (response != null) {
+        response.close();
+      }
+    }
+  }
+  
+  /**
+   * Points the alias to a new index in one atomic update, so that readers and writers of the alias never see it
+   * missing. The previous index is either kept, only losing the alias, or deleted by the same update. An index
+   * with the name of the alias has to be deleted, as an alias cannot take the name of an existing index.
+   */
+  public static void swapAlias(CloseableHttpClient httpClient, HttpHost elastic, String elasticUser,
+                               String elasticPass, String alias, String fromIndex, String toIndex,
+                               boolean deleteFromIndex) throws IOException, URISyntaxException {
+    CloseableHttpResponse response = null;
+    try {
+      URIBuilder uriBuilder = new URIBuilder()
+        .setPathSegments("_aliases");
+      HttpPost request = new HttpPost(uriBuilder.build());
+      request.addHeader(HttpHeaders.CONTENT_TYPE, "application/json");
+      String encodedAuth = Base64.getEncoder().encodeToString((elasticUser + ":" + elasticPass).getBytes());
+      request.addHeader(HttpHeaders.AUTHORIZATION, "Basic " + encodedAuth);
+      JSONArray actions = new JSONArray();
+      actions.put(new JSONObject().put("add", new JSONObject().put("index", toIndex).put("alias", alias)));
+      if (deleteFromIndex || fromIndex.equals(alias)) {
+        actions.put(new JSONObject().put("remove_index", new JSONObject().put("index", fromIndex)));
+      } else {
+        actions.put(new JSONObject().put("remove", new JSONObject().put("index", fromIndex).put("alias", alias)));
+      }
+      String body = new JSONObject().put("actions", actions).toString();
+      HttpEntity entity = new ByteArrayEntity(body.getBytes(StandardCharsets.UTF_8));
+      request.setEntity(entity);
+      LOGGER.info("Swapping alias:{} from index:{} to index:{}", alias, fromIndex, toIndex);
+      response = httpClient.execute(elastic, request);
+      JSONObject jsonResponse = new JSONObject(EntityUtils.toString(response.getEntity()));
+      int status = response.getStatusLine().getStatusCode();
+      if (status == 200) {
+        LOGGER.info("Swapped alias:{} to index:{}", alias, toIndex);
+      } else {
+        throw new IllegalStateException("Could not swap alias:" + alias + " " + jsonResponse.opt("error"));
+      }
+    } finally {
+      if (response != null) {
+        response.close();
+      }
+    }
+  }
+  
+  /**
+   * @return the name of a version of an index kept behind an alias with the name of the index
+   */
+  public static String versionedIndex(String alias, int version) {
+    return alias + "_v" + version;
+  }
+  
+  /**
+   * @return the version of an index kept behind the alias, 1 for the original index with the name of the alias
+   */
+  public static int indexVersion(String alias, String index) {
+    Integer version = parseIndexVersion(alias, index);
+    if (version == null) {
+      throw new IllegalStateException("index:" + index + " is not a version of:" + alias);
+    }
+    return version;
+  }
+  
+  /**
+   * @return whether the index is the original index or one of the versions kept behind the alias
+   */
+  public static boolean isIndexVersion(String alias, String index) {
+    return parseIndexVersion(alias, index) != null;
+  }
+  
+  private static Integer parseIndexVersion(String alias, String index) {
+    if (index.equals(alias)) {
+      return 1;
+    }
+    String prefix = alias + "_v";
+    if (index.startsWith(prefix)) {
+      try {
+        return Integer.parseInt(index.substring(prefix.length()));
+      } catch (NumberFormatException e) {
+        // not one of our versions
+      }
+    }
+    return null;
+  }
+  
   public static Integer itemCount(CloseableHttpClient httpClient, HttpHost elastic,
     String elasticUser, String elasticPass, String index) throws IOException, URISyntaxException {
     CloseableHttpResponse response = null;
@@ -572,6 +964,182 @@ public class ElasticClient {
     }
   }
   
+  /**
+   * @return the names of the indices matching the pattern, aliases resolved to the indices behind them
+   */
+  public static List<String> listIndices(CloseableHttpClient httpClient, HttpHost elastic, String elasticUser,
+                                         String elasticPass, String indicesPattern)
+    throws URISyntaxException, IOException {
+    CloseableHttpResponse response = null;
+    try {
+      URIBuilder uriBuilder = new URIBuilder();
+      uriBuilder
+        .setPathSegments("_cat", "indices", indicesPattern)
+        .setParameter("format", "json")
+        .setParameter("h", "index");
+      HttpGet request = new HttpGet(uriBuilder.build());
+      request.addHeader(HttpHeaders.CONTENT_TYPE, "application/json");
+      String encodedAuth = Base64.getEncoder().encodeToString((elasticUser + ":" + elasticPass).getBytes());
+      request.addHeader(HttpHeaders.AUTHORIZATION, "Basic " + encodedAuth);
+      response = httpClient.execute(elastic, request);
+      String responseStr = EntityUtils.toString(response.getEntity());
+      int status = response.getStatusLine().getStatusCode();
+      if (status == 200) {
+        JSONArray jsonResponse = new JSONArray(responseStr);
+        List<String> indices = new ArrayList<>(jsonResponse.length());
+        for (int i = 0; i < jsonResponse.length(); i++) {
+          indices.add(jsonResponse.getJSONObject(i).getString("index"));
+        }
+        LOGGER.info("List elastic indices with pattern: {}", indicesPattern);
+        return indices;
+      } else {
+        throw new IllegalStateException("Could not list elastic indices:" + responseStr);
+      }
+    } finally {
+      if (response != null) {
+        response.close();
+      }
+    }
+  }
+  
+  /**
+   * Opens a point in time over the index, for consistent paging with search_after.
+   * @return the id of the point in time, empty if the cluster does not support points in time
+   */
+  public static Optional<String> openPointInTime(CloseableHttpClient httpClient, HttpHost elastic,
+                                                 String elasticUser, String elasticPass, String index,
+                                                 String keepAlive) throws URISyntaxException, IOException {
+    CloseableHttpResponse response = null;
+    try {
+      URIBuilder uriBuilder = new URIBuilder();
+      uriBuilder
+        .setPathSegments(index, "_pit")
+        .setParameter("keep_alive", keepAlive);
+      HttpPost request = new HttpPost(uriBuilder.build());
+      request.addHeader(HttpHeaders.CONTENT_TYPE, "application/json");
+      String encodedAuth = Base64.getEncoder().encodeToString((elasticUser + ":" + elasticPass).getBytes());
+      request.addHeader(HttpHeaders.AUTHORIZATION, "Basic " + encodedAuth);
+      response = httpClient.execute(elastic, request);
+      String responseStr = EntityUtils.toString(response.getEntity());
+      int status = response.getStatusLine().getStatusCode();
+      if (status == 200) {
+        return Optional.of(new JSONObject(responseStr).getString("id"));
+      } else {
+        LOGGER.info("Point in time not available on index:{} - {}", index, responseStr);
+        return Optional.empty();
+      }
+    } finally {
+      if (response != null) {
+        response.close();
+      }
+    }
+  }
+  
+  public static void closePointInTime(CloseableHttpClient httpClient, HttpHost elastic, String elasticUser,
+                                      String elasticPass, String pitId) throws URISyntaxException, IOException {
+    CloseableHttpResponse response = null;
+    try {
+      URIBuilder uriBuilder = new URIBuilder()
+        .setPathSegments("_pit");
+      HttpDeleteWithBody request = new HttpDeleteWithBody(uriBuilder.build());
+      request.addHeader(HttpHeaders.CONTENT_TYPE, "application/json");
+      String encodedAuth = Base64.getEncoder().encodeToString((elasticUser + ":" + elasticPass).getBytes());
+      request.addHeader(HttpHeaders.AUTHORIZATION, "Basic " + encodedAuth);
+      String body = new JSONObject().put("id", pitId).toString();
+      request.setEntity(new ByteArrayEntity(body.getBytes(StandardCharsets.UTF_8)));
+      response = httpClient.execute(elastic, request);
+      int status = response.getStatusLine().getStatusCode();
+      if (status != 200) {
+        LOGGER.warn("Could not close point in time:{}", EntityUtils.toString(response.getEntity()));
+      }
+    } finally {
+      if (response != null) {
+        response.close();
+      }
+    }
+  }
+  
+  /**
+   * Searches a point in time, the body names the point in time instead of the request naming an index.
+   */
+  public static ObjectNode searchPointInTime(CloseableHttpClient httpClient, HttpHost elastic, String elasticUser,
+                                             String elasticPass, String body)
+    throws URISyntaxException, IOException {
+    return searchPage(httpClient, elastic, elasticUser, elasticPass, new URIBuilder()
+      .setPathSegments("_search"), body);
+  }
+  
+  /**
+   * Searches the index keeping a scroll open for the following pages, see {@link #nextScroll}.
+   */
+  public static ObjectNode openScroll(CloseableHttpClient httpClient, HttpHost elastic, String elasticUser,
+                                      String elasticPass, String index, String body, String keepAlive)
+    throws URISyntaxException, IOException {
+    return searchPage(httpClient, elastic, elasticUser, elasticPass, new URIBuilder()
+      .setPathSegments(index, "_search")
+      .setParameter("scroll", keepAlive), body);
+  }
+  
+  public static ObjectNode nextScroll(CloseableHttpClient httpClient, HttpHost elastic, String elasticUser,
+                                      String elasticPass, String scrollId, String keepAlive)
+    throws URISyntaxException, IOException {
+    ObjectNode scroll = JsonCodec.newObject();
+    scroll.put("scroll", keepAlive);
+    scroll.put("scroll_id", scrollId);
+    String body = JsonCodec.write(scroll);
+    return searchPage(httpClient, elastic, elasticUser, elasticPass, new URIBuilder()
+      .setPathSegments("_search", "scroll"), body);
+  }
+  
+  private static ObjectNode searchPage(CloseableHttpClient httpClient, HttpHost elastic, String elasticUser,
+                                       String elasticPass, URIBuilder uriBuilder, String body)
+    throws URISyntaxException, IOException {
+    CloseableHttpResponse response = null;
+    try {
+      HttpPost request = new HttpPost(uriBuilder.build());
+      request.addHeader(HttpHeaders.CONTENT_TYPE, "application/json");
+      String encodedAuth = Base64.getEncoder().encodeToString((elasticUser + ":" + elasticPass).getBytes());
+      request.addHeader(HttpHeaders.AUTHORIZATION, "Basic " + encodedAuth);
+      request.setEntity(new ByteArrayEntity(body.getBytes(StandardCharsets.UTF_8)));
+      response = httpClient.execute(elastic, request);
+      String responseStr = EntityUtils.toString(response.getEntity());
+      int status = response.getStatusLine().getStatusCode();
+      if (status == 200) {
+        return JsonCodec.readObject(responseStr);
+      } else {
+        throw new IllegalStateException("Could not query elastic indices:" + responseStr);
+      }
+    } finally {
+      if (response != null) {
+        response.close();
+      }
+    }
+  }
+  
+  public static void clearScroll(CloseableHttpClient httpClient, HttpHost elastic, String elasticUser,
+                                 String elasticPass, String scrollId) throws URISyntaxException, IOException {
+    CloseableHttpResponse response = null;
+    try {
+      URIBuilder uriBuilder = new URIBuilder()
+        .setPathSegments("_search", "scroll");
+      HttpDeleteWithBody request = new HttpDeleteWithBody(uriBuilder.build());
+      request.addHeader(HttpHeaders.CONTENT_TYPE, "application/json");
+      String encodedAuth = Base64.getEncoder().encodeToString((elasticUser + ":" + elasticPass).getBytes());
+      request.addHeader(HttpHeaders.AUTHORIZATION, "Basic " + encodedAuth);
+      String body = new JSONObject().put("scroll_id", scrollId).toString();
+      request.setEntity(new ByteArrayEntity(body.getBytes(StandardCharsets.UTF_8)));
+      response = httpClient.execute(elastic, request);
+      int status = response.getStatusLine().getStatusCode();
+      if (status != 200) {
+        LOGGER.warn("Could not clear scroll:{}", EntityUtils.toString(response.getEntity()));
+      }
+    } finally {
+      if (response != null) {
+        response.close();
+      }
+    }
+  }
+  
   public static void deleteSnapshot(CloseableHttpClient httpClient, HttpHost elastic, String elasticUser,
                                     String elasticPass, String repoName, String snapshotName)
     throws URISyntaxException, IOException {
@@ -0,0 +1,356 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.elastic;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
+import io.hops.hopsworks.expat.configuration.ExpatConf;
+import org.apache.commons.configuration2.Configuration;
+import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.apache.http.HttpHost;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs reindexes as background tasks of the cluster, sliced, instead of holding a connection open until the copy
+ * ends. At most {@code maxConcurrent} reindexes run at once, the others wait for a free slot in submission order.
+ * Each running reindex is polled for its progress until it completes and is cancelled on the cluster if the poll is
+ * interrupted. The throttle applies to the reindexes started afterwards and, through {@link #rethrottle(float)}, to
+ * the ones already running. A reindexer built {@link #fromConf from the configuration} re-reads
+ * {@link ExpatConf#ELASTIC_REINDEX_REQUESTS_PER_SECOND} while it polls, so an operator can slow down or speed up the
+ * running reindexes by editing expat-site.xml.
+ * {@link #rewrite(String, Optional)} rewrites an index in place with a single copy, keeping its versions behind an
+ * alias with the name of the index, and {@link #restorePreviousVersion(String)} points the alias back to the version
+ * it replaced.
+ */
+public class ElasticReindexer implements AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ElasticReindexer.class);
+  
+  private final CloseableHttpClient httpClient;
+  private final HttpHost elastic;
+  private final String elasticUser;
+  private final String elasticPass;
+  private final int maxConcurrent;
+  private final String slices;
+  private final long pollIntervalMs;
+  private final boolean keepPreviousVersion;
+  private volatile float requestsPerSecond;
+  // whether the throttle follows the configuration file, and the value of the file last applied
+  private volatile boolean watchConf = false;
+  private float confRequestsPerSecond;
+  private final ExecutorService executor;
+  private final Set<String> runningTasks = ConcurrentHashMap.newKeySet();
+  private boolean closed = false;
+  
+  public ElasticReindexer(CloseableHttpClient httpClient, HttpHost elastic, String elasticUser, String elasticPass,
+                          int maxConcurrent, String slices, float requestsPerSecond, long pollIntervalMs,
+                          boolean keepPreviousVersion) {
+    if (maxConcurrent < 1) {
+      throw new IllegalArgumentException("max concurrent reindexes should be at least 1, got:" + maxConcurrent);
+    }
+    this.httpClient = httpClient;
+    this.elastic = elastic;
+    this.elasticUser = elasticUser;
+    this.elasticPass = elasticPass;
+    this.maxConcurrent = maxConcurrent;
+    this.slices = slices;
+    this.requestsPerSecond = requestsPerSecond;
+    this.pollIntervalMs = pollIntervalMs;
+    this.keepPreviousVersion = keepPreviousVersion;
+    this.executor = Executors.newFixedThreadPool(maxConcurrent,
+      new ThreadFactoryBuilder().setNameFormat("expat-reindex-%d").setDaemon(true).build());
+  }
+  
+  /**
+   * @return a reindexer sized and throttled by the {@link ExpatConf#ELASTIC_REINDEX} settings
+   */
+  public static ElasticReindexer fromConf(CloseableHttpClient httpClient, HttpHost elastic, String elasticUser,
+                                          String elasticPass) throws ConfigurationException {
+    Configuration conf = ConfigurationBuilder.getConfiguration();
+    float requestsPerSecond = conf.getFloat(ExpatConf.ELASTIC_REINDEX_REQUESTS_PER_SECOND,
+      ExpatConf.ELASTIC_REINDEX_REQUESTS_PER_SECOND_DEFAULT);
+    ElasticReindexer reindexer = new ElasticReindexer(httpClient, elastic, elasticUser, elasticPass,
+      conf.getInt(ExpatConf.ELASTIC_REINDEX_MAX_CONCURRENT, ExpatConf.ELASTIC_REINDEX_MAX_CONCURRENT_DEFAULT),
+      conf.getString(ExpatConf.ELASTIC_REINDEX_SLICES, ExpatConf.ELASTIC_REINDEX_SLICES_DEFAULT),
+      requestsPerSecond,
+      conf.getLong(ExpatConf.ELASTIC_REINDEX_POLL_INTERVAL_MS, ExpatConf.ELASTIC_REINDEX_POLL_INTERVAL_MS_DEFAULT),
+      conf.getBoolean(ExpatConf.ELASTIC_REINDEX_KEEP_PREVIOUS_VERSION,
+        ExpatConf.ELASTIC_REINDEX_KEEP_PREVIOUS_VERSION_DEFAULT));
+    reindexer.confRequestsPerSecond = requestsPerSecond;
+    reindexer.watchConf = true;
+    return reindexer;
+  }
+  
+  public int getMaxConcurrent() {
+    return maxConcurrent;
+  }
+  
+  /**
+   * Queues a reindex.
+   * @return a future completed with the response of the reindex task once it ends, completed exceptionally if the
+   * reindex could not start, failed or reported failures
+   */
+  public CompletableFuture<JSONObject> submit(String fromIndex, String toIndex, Optional<String> script) {
+    synchronized (this) {
+      if (closed) {
+        throw new IllegalStateException("reindexer is closed");
+      }
+    }
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return run(fromIndex, toIndex, script);
+      } catch (IOException | URISyntaxException e) {
+        throw new CompletionException(e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CompletionException(e);
+      }
+    }, executor);
+  }
+  
+  /**
+   * Reindexes and waits for the reindex to end.
+   */
+  public JSONObject reindex(String fromIndex, String toIndex, Optional<String> script)
+    throws IOException, InterruptedException {
+    try {
+      return submit(fromIndex, toIndex, script).get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException("Could not reindex from:" + fromIndex + " to:" + toIndex, cause);
+    }
+  }
+  
+  /**
+   * Copies the index, or the current version behind the alias with its name, into a new version with the same
+   * settings and mappings and points the alias to the new version, in one atomic update. The previous version is
+   * kept, unless configured otherwise, except for the original index that has to make room for the alias.
+   * @return the new version of the index
+   */
+  public String rewrite(String index, Optional<String> script) throws IOException, InterruptedException {
+    return rewrite(index, script, keepPreviousVersion);
+  }
+  
+  /**
+   * @param keepPrevious whether the previous version is kept for {@link #restorePreviousVersion(String)}
+   * @see #rewrite(String, Optional)
+   */
+  public String rewrite(String index, Optional<String> script, boolean keepPrevious)
+    throws IOException, InterruptedException {
+    try {
+      Set<String> versions = ElasticClient.getAliasIndices(httpClient, elastic, elasticUser, elasticPass, index);
+      if (versions.size() > 1) {
+        throw new IllegalStateException("alias:" + index + " points to several indices:" + versions);
+      }
+      String current = versions.isEmpty() ? index : versions.iterator().next();
+      String next = ElasticClient.versionedIndex(index, ElasticClient.indexVersion(index, current) + 1);
+      if (ElasticClient.indexExists(httpClient, elastic, elasticUser, elasticPass, next)) {
+        // left by a rewrite that did not reach the alias swap
+        ElasticClient.deleteIndex(httpClient, elastic, elasticUser, elasticPass, next);
+      }
+      JSONObject settings = ElasticClient.getCopyableSettings(httpClient, elastic, elasticUser, elasticPass, current);
+      JSONObject mapping = ElasticClient.getMapping(httpClient, elastic, elasticUser, elasticPass, current);
+      ElasticClient.createIndex(httpClient, elastic, elasticUser, elasticPass, next,
+        Optional.of(new JSONObject().put("settings", settings).put("mappings", mapping).toString()));
+      reindex(current, next, script);
+      ElasticClient.swapAlias(httpClient, elastic, elasticUser, elasticPass, index, current, next, !keepPrevious);
+      return next;
+    } catch (URISyntaxException e) {
+      throw new IOException(e);
+    }
+  }
+  
+  /**
+   * Points the alias with the name of the index back to the version the last {@link #rewrite} replaced and deletes
+   * the current version, in one atomic update, without copying any document.
+   * @return the version the alias points to, empty if there is no previous version to go back to: the index was not
+   * rewritten, the previous version was not kept, or it is the original index that the first rewrite deleted
+   */
+  public Optional<String> restorePreviousVersion(String index) throws IOException {
+    try {
+      Set<String> versions = ElasticClient.getAliasIndices(httpClient, elastic, elasticUser, elasticPass, index);
+      if (versions.isEmpty()) {
+        return Optional.empty();
+      }
+      if (versions.size() > 1) {
+        throw new IllegalStateException("alias:" + index + " points to several indices:" + versions);
+      }
+      String current = versions.iterator().next();
+      int version = ElasticClient.indexVersion(index, current);
+      if (version <= 2) {
+        // the previous version is the original index, deleted to make room for the alias
+        return Optional.empty();
+      }
+      String previous = ElasticClient.versionedIndex(index, version - 1);
+      if (!ElasticClient.indexExists(httpClient, elastic, elasticUser, elasticPass, previous)) {
+        return Optional.empty();
+      }
+      ElasticClient.swapAlias(httpClient, elastic, elasticUser, elasticPass, index, current, previous, true);
+      return Optional.of(previous);
+    } catch (URISyntaxException e) {
+      throw new IOException(e);
+    }
+  }
+  
+  private JSONObject run(String fromIndex, String toIndex, Optional<String> script)
+    throws IOException, URISyntaxException, InterruptedException {
+    String taskId = ElasticClient.startReindex(httpClient, elastic, elasticUser, elasticPass, fromIndex, toIndex,
+      script, slices, requestsPerSecond);
+    runningTasks.add(taskId);
+    boolean completed = false;
+    try {
+      while (true) {
+        JSONObject task = ElasticClient.getTask(httpClient, elastic, elasticUser, elasticPass, taskId);
+        JSONObject status = task.getJSONObject("task").optJSONObject("status");
+        if (task.optBoolean("completed")) {
+          completed = true;
+          return checkCompleted(fromIndex, toIndex, task);
+        }
+        if (status != null) {
+          LOGGER.info("Reindexing from:{} to:{} - {}/{} documents, {} batches", fromIndex, toIndex,
+            status.optLong("created") + status.optLong("updated") + status.optLong("deleted"),
+            status.optLong("total"), status.optLong("batches"));
+        }
+        if (watchConf) {
+          reloadThrottle();
+        }
+        Thread.sleep(pollIntervalMs);
+      }
+    } finally {
+      runningTasks.remove(taskId);
+      if (!completed) {
+        cancel(taskId);
+      }
+    }
+  }
+  
+  private JSONObject checkCompleted(String fromIndex, String toIndex, JSONObject task) {
+    if (task.has("error")) {
+      throw new IllegalStateException("failed to reindex from:" + fromIndex + " to:" + toIndex + " - "
+        + task.get("error"));
+    }
+    JSONObject response = task.optJSONObject("response");
+    if (response == null) {
+      throw new IllegalStateException("reindex from:" + fromIndex + " to:" + toIndex + " completed without response");
+    }
+    JSONArray failures = response.optJSONArray("failures");
+    if (failures != null && failures.length() != 0) {
+      throw new IllegalStateException("failed to reindex:" + failures);
+    }
+    LOGGER.info("Reindexed from:{} to:{} - {} documents in {}ms", fromIndex, toIndex,
+      response.optLong("created") + response.optLong("updated") + response.optLong("deleted"),
+      response.optLong("took"));
+    return response;
+  }
+  
+  private void cancel(String taskId) {
+    try {
+      ElasticClient.cancelTask(httpClient, elastic, elasticUser, elasticPass, taskId);
+    } catch (IOException | URISyntaxException | RuntimeException e) {
+      LOGGER.warn("Could not cancel reindex task:{}. {}", taskId, e.getMessage());
+    }
+  }
+  
+  /**
+   * Rethrottles the reindexes when the throttle of the configuration file changed since it was last applied. A file
+   * that cannot be read keeps the current throttle.
+   */
+  private void reloadThrottle() {
+    float configured;
+    try {
+      configured = ConfigurationBuilder.getConfiguration().getFloat(ExpatConf.ELASTIC_REINDEX_REQUESTS_PER_SECOND,
+        ExpatConf.ELASTIC_REINDEX_REQUESTS_PER_SECOND_DEFAULT);
+    } catch (ConfigurationException | RuntimeException e) {
+      LOGGER.warn("Could not read the reindex throttle, keeping {} requests per second. {}", requestsPerSecond,
+        e.getMessage());
+      return;
+    }
+    synchronized (this) {
+      if (configured == confRequestsPerSecond) {
+        return;
+      }
+      confRequestsPerSecond = configured;
+    }
+    LOGGER.info("Rethrottling reindexes from {} to {} requests per second", requestsPerSecond, configured);
+    try {
+      rethrottle(configured);
+    } catch (IOException | URISyntaxException | RuntimeException e) {
+      LOGGER.warn("Could not rethrottle the running reindexes. {}", e.getMessage());
+    }
+  }
+  
+  /**
+   * Changes the throttle of the running reindexes and of the ones started afterwards, unthrottled if not positive.
+   */
+  public void rethrottle(float requestsPerSecond) throws IOException, URISyntaxException {
+    this.requestsPerSecond = requestsPerSecond;
+    List<String> tasks = new ArrayList<>(runningTasks);
+    for (String taskId : tasks) {
+      try {
+        ElasticClient.rethrottleReindex(httpClient, elastic, elasticUser, elasticPass, taskId, requestsPerSecond);
+      } catch (IllegalStateException e) {
+        // the task completed in the meantime
+        if (runningTasks.contains(taskId)) {
+          throw e;
+        }
+      }
+    }
+  }
+  
+  /**
+   * Stops the threads, cancelling the reindexes still running. The http client belongs to the caller and stays open.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    executor.shutdownNow();
+    try {
+      if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        LOGGER.warn("Reindex threads did not stop, running tasks:{}", runningTasks);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
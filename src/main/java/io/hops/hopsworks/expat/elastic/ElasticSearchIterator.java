@@ -0,0 +1,203 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.elastic;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.hops.hopsworks.expat.json.JsonCodec;
+import org.apache.http.HttpHost;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+/**
+ * Iterates over all the hits of a query, one page at a time, so that the memory held does not depend on the number of
+ * hits. Pages are read from a point in time with search_after, or from a scroll on clusters without points in time.
+ * Only the requested source fields are transferred. The point in time or scroll is released once the last page is
+ * read or the iterator is closed. Failures to read a page surface from {@link #hasNext()} as
+ * {@link UncheckedIOException}.
+ */
+public class ElasticSearchIterator implements Iterator<ObjectNode>, AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ElasticSearchIterator.class);
+  private static final String KEEP_ALIVE = "2m";
+  
+  private final CloseableHttpClient httpClient;
+  private final HttpHost elastic;
+  private final String elasticUser;
+  private final String elasticPass;
+  private final String index;
+  private final ObjectNode query;
+  private final int pageSize;
+  private final ArrayNode sourceIncludes = JsonCodec.newArray();
+  
+  private boolean started = false;
+  private boolean done = false;
+  private String pitId;
+  private String scrollId;
+  private JsonNode searchAfter;
+  private ArrayNode page = JsonCodec.newArray();
+  private int next = 0;
+  
+  /**
+   * @param query the query clause of the search
+   * @param sourceIncludes the source fields to return, the whole source if empty
+   */
+  public ElasticSearchIterator(CloseableHttpClient httpClient, HttpHost elastic, String elasticUser,
+                               String elasticPass, String index, ObjectNode query, int pageSize,
+                               Collection<String> sourceIncludes) {
+    if (pageSize < 1) {
+      throw new IllegalArgumentException("page size should be at least 1, got:" + pageSize);
+    }
+    this.httpClient = httpClient;
+    this.elastic = elastic;
+    this.elasticUser = elasticUser;
+    this.elasticPass = elasticPass;
+    this.index = index;
+    this.query = query;
+    this.pageSize = pageSize;
+    sourceIncludes.forEach(this.sourceIncludes::add);
+  }
+  
+  @Override
+  public boolean hasNext() {
+    if (next < page.size()) {
+      return true;
+    }
+    if (done) {
+      return false;
+    }
+    try {
+      page = fetchPage();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (URISyntaxException e) {
+      throw new UncheckedIOException(new IOException(e));
+    }
+    next = 0;
+    if (page.size() < pageSize) {
+      release();
+    }
+    return next < page.size();
+  }
+  
+  /**
+   * @return the next hit, with its {@code _source} reduced to the requested fields
+   */
+  @Override
+  public ObjectNode next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return (ObjectNode) page.get(next++);
+  }
+  
+  private ArrayNode fetchPage() throws IOException, URISyntaxException {
+    ObjectNode response;
+    if (!started) {
+      started = true;
+      Optional<String> pit = ElasticClient.openPointInTime(httpClient, elastic, elasticUser, elasticPass, index,
+        KEEP_ALIVE);
+      if (pit.isPresent()) {
+        pitId = pit.get();
+        response = searchPointInTime();
+      } else {
+        ObjectNode body = searchBody();
+        body.putArray("sort").add("_doc");
+        response = ElasticClient.openScroll(httpClient, elastic, elasticUser, elasticPass, index,
+          JsonCodec.write(body), KEEP_ALIVE);
+        scrollId = JsonCodec.getText(response, "_scroll_id");
+      }
+    } else if (pitId != null) {
+      response = searchPointInTime();
+    } else {
+      response = ElasticClient.nextScroll(httpClient, elastic, elasticUser, elasticPass, scrollId, KEEP_ALIVE);
+      String nextScrollId = JsonCodec.getText(response, "_scroll_id");
+      if (nextScrollId != null) {
+        scrollId = nextScrollId;
+      }
+    }
+    JsonNode hits = response.path("hits").path("hits");
+    if (!hits.isArray()) {
+      throw new IOException("search of index:" + index + " returned no hits array");
+    }
+    ArrayNode hitsArray = (ArrayNode) hits;
+    if (pitId != null) {
+      String nextPitId = JsonCodec.getText(response, "pit_id");
+      if (nextPitId != null) {
+        pitId = nextPitId;
+      }
+      if (hitsArray.size() > 0) {
+        searchAfter = hitsArray.get(hitsArray.size() - 1).get("sort");
+      }
+    }
+    return hitsArray;
+  }
+  
+  private ObjectNode searchPointInTime() throws IOException, URISyntaxException {
+    ObjectNode body = searchBody();
+    ObjectNode pit = body.putObject("pit");
+    pit.put("id", pitId);
+    pit.put("keep_alive", KEEP_ALIVE);
+    body.putArray("sort").addObject().put("_shard_doc", "asc");
+    if (searchAfter != null) {
+      body.set("search_after", searchAfter);
+    }
+    return ElasticClient.searchPointInTime(httpClient, elastic, elasticUser, elasticPass, JsonCodec.write(body));
+  }
+  
+  private ObjectNode searchBody() {
+    ObjectNode body = JsonCodec.newObject();
+    body.put("size", pageSize);
+    body.put("track_total_hits", false);
+    body.set("query", query);
+    if (sourceIncludes.size() > 0) {
+      body.set("_source", sourceIncludes);
+    }
+    return body;
+  }
+  
+  private void release() {
+    done = true;
+    try {
+      if (pitId != null) {
+        ElasticClient.closePointInTime(httpClient, elastic, elasticUser, elasticPass, pitId);
+      } else if (scrollId != null) {
+        ElasticClient.clearScroll(httpClient, elastic, elasticUser, elasticPass, scrollId);
+      }
+    } catch (IOException | URISyntaxException e) {
+      LOGGER.warn("Could not release search of index:{}, it expires in {}. {}", index, KEEP_ALIVE, e.getMessage());
+    }
+    pitId = null;
+    scrollId = null;
+  }
+  
+  @Override
+  public void close() {
+    if (!done) {
+      release();
+    }
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2024, Hopsworks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.executor;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.hops.hopsworks.expat.migrations.MigrateStep;
+import io.hops.hopsworks.expat.migrations.MigrationContext;
+import io.hops.hopsworks.expat.migrations.MigrationException;
+import io.hops.hopsworks.expat.migrations.MigrationJournal;
+import io.hops.hopsworks.expat.migrations.MigrationResource;
+import io.hops.hopsworks.expat.migrations.ProjectShardedStep;
+import io.hops.hopsworks.expat.migrations.ResumableStep;
+import io.hops.hopsworks.expat.migrations.RollbackException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the steps of a version as a dependency graph. A step waits for every step it declares in
+ * {@link MigrateStep#dependsOn()} and for every earlier listed step it shares a resource with. Independent steps
+ * run concurrently on up to {@code workers} threads. Rollback walks the same graph in reverse.
+ * With a single worker the steps run in the order they are listed, exactly as before.
+ * Steps implementing {@link ResumableStep} get the {@link MigrationJournal} of the version being migrated, the journal
+ * of a step is cleared once the step is rolled back. When sharding is enabled the steps run under the leases of the
+ * {@link ProjectShardCoordinator}: steps implementing {@link ProjectShardedStep} go through the project shards leased
+ * by this process, any other step runs in the single process holding its lease.
+ */
+public class MigrationScheduler {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MigrationScheduler.class);
+
+  private final int workers;
+  private final String version;
+  private final ProjectShardCoordinator shards;
+  private final MigrationContext context;
+
+  public MigrationScheduler(int workers, String version, ProjectShardCoordinator shards, MigrationContext context) {
+    if (workers < 1) {
+      throw new IllegalArgumentException("number of migration workers should be at least 1, got:" + workers);
+    }
+    this.workers = workers;
+    this.version = version;
+    this.shards = shards;
+    this.context = context;
+  }
+
+  public void migrate(List<MigrateStep> steps) throws MigrationException {
+    try {
+      run(steps, false, step -> step.migrate(context));
+    } catch (MigrationException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new MigrationException("migration failed", e);
+    }
+  }
+
+  public void rollback(List<MigrateStep> steps) throws RollbackException {
+    try {
+      run(steps, true, step -> step.rollback(context));
+    } catch (RollbackException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RollbackException("rollback failed", e);
+    }
+  }
+
+  interface StepAction {
+    void apply(MigrateStep step) throws Exception;
+  }
+
+  private void run(List<MigrateStep> steps, boolean reverse, StepAction action) throws Exception {
+    int size = steps.size();
+    if (size == 0) {
+      return;
+    }
+    List<Set<Integer>> successors = buildGraph(steps, reverse);
+    int[] pending = new int[size];
+    for (Set<Integer> next : successors) {
+      for (Integer j : next) {
+        pending[j]++;
+      }
+    }
+    checkAcyclic(steps, successors, pending.clone());
+
+    //ties are broken by listing order so that a single worker keeps the expat-site.xml order
+    PriorityQueue<Integer> ready = new PriorityQueue<>(reverse ? Comparator.reverseOrder() :
+      Comparator.naturalOrder());
+    for (int i = 0; i < size; i++) {
+      if (pending[i] == 0) {
+        ready.add(i);
+      }
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(workers, size),
+      new ThreadFactoryBuilder().setNameFormat("expat-step-%d").build());
+    CompletionService<Integer> completion = new ExecutorCompletionService<>(executor);
+    int running = 0;
+    Exception failure = null;
+    try {
+      while (true) {
+        while (failure == null && running < workers && !ready.isEmpty()) {
+          int idx = ready.poll();
+          MigrateStep step = steps.get(idx);
+          LOGGER.info("Starting step:{}", step.getClass().getName());
+          completion.submit(() -> {
+            runStep(step, reverse, action);
+            return idx;
+          });
+          running++;
+        }
+        if (running == 0) {
+          break;
+        }
+        Future<Integer> finished = completion.take();
+        running--;
+        try {
+          int idx = finished.get();
+          LOGGER.info("Finished step:{}", steps.get(idx).getClass().getName());
+          for (Integer next : successors.get(idx)) {
+            if (--pending[next] == 0) {
+              ready.add(next);
+            }
+          }
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (failure == null) {
+            LOGGER.error("Step failed, waiting for {} running step(s) to finish", running);
+            failure = cause instanceof Exception ? (Exception) cause : e;
+          } else {
+            LOGGER.error("Concurrent step failed", cause);
+          }
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void runStep(MigrateStep step, boolean rollback, StepAction action) throws Exception {
+    StepAction run = action;
+    if (shards != null) {
+      run = s -> shards.run(version, s, rollback, action);
+    }
+    if (!(step instanceof ResumableStep)) {
+      run.apply(step);
+      return;
+    }
+    ResumableStep resumable = (ResumableStep) step;
+    try (MigrationJournal journal = MigrationJournal.open(version, step.getClass())) {
+      resumable.setJournal(journal);
+      run.apply(step);
+      if (rollback) {
+        journal.clear();
+      }
+    } finally {
+      resumable.setJournal(null);
+    }
+  }
+
+  private List<Set<Integer>> buildGraph(List<MigrateStep> steps, boolean reverse) {
+    int size = steps.size();
+    List<Set<Integer>> successors = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      successors.add(new TreeSet<>());
+    }
+    for (int j = 0; j < size; j++) {
+      MigrateStep step = steps.get(j);
+      for (int i = 0; i < size; i++) {
+        if (i == j) {
+          continue;
+        }
+        boolean declared = step.dependsOn().contains(steps.get(i).getClass());
+        boolean conflict = i < j && conflicts(steps.get(i), step);
+        if (declared || conflict) {
+          if (reverse) {
+            successors.get(j).add(i);
+          } else {
+            successors.get(i).add(j);
+          }
+          LOGGER.debug("Step:{} waits for:{}", step.getClass().getSimpleName(),
+            steps.get(i).getClass().getSimpleName());
+        }
+      }
+    }
+    return successors;
+  }
+
+  private boolean conflicts(MigrateStep a, MigrateStep b) {
+    Set<MigrationResource> aResources = a.resources();
+    Set<MigrationResource> bResources = b.resources();
+    if (aResources == null || bResources == null) {
+      return true;
+    }
+    for (MigrationResource aResource : aResources) {
+      for (MigrationResource bResource : bResources) {
+        if (aResource.conflictsWith(bResource)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private void checkAcyclic(List<MigrateStep> steps, List<Set<Integer>> successors, int[] pending) {
+    List<Integer> queue = new ArrayList<>();
+    for (int i = 0; i < pending.length; i++) {
+      if (pending[i] == 0) {
+        queue.add(i);
+      }
+    }
+    for (int k = 0; k < queue.size(); k++) {
+      for (Integer next : successors.get(queue.get(k))) {
+        if (--pending[next] == 0) {
+          queue.add(next);
+        }
+      }
+    }
+    if (queue.size() < steps.size()) {
+      List<String> cycle = new ArrayList<>();
+      for (int i = 0; i < pending.length; i++) {
+        if (pending[i] > 0) {
+          cycle.add(steps.get(i).getClass().getName());
+        }
+      }
+      throw new IllegalStateException("cyclic dependencies between steps:" + cycle);
+    }
+  }
+}
@@ -0,0 +1,380 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.executor;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.hops.hopsworks.expat.db.DbConnectionFactory;
+import io.hops.hopsworks.expat.migrations.MigrateStep;
+import io.hops.hopsworks.expat.migrations.ProjectShard;
+import io.hops.hopsworks.expat.migrations.ProjectShardedStep;
+import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits the project ids in ranges of {@code shardSize} and leases them, through a table in the hopsworks database, to
+ * the Expat processes migrating the same version. Every process runs a {@link ProjectShardedStep} once, the step goes
+ * through the ranges the process manages to lease with {@link ProjectShard#leased()}. Any other step has a single
+ * lease, only the process holding it runs the step. Processes heartbeat their leases while they work, the lease of a
+ * process that stops heartbeating expires after {@code leaseTimeout} seconds and is taken over by another process.
+ * A step is finished, and the process moves on, only once all the leases of the step are done.
+ * The leases of a step are dropped when the step runs in the other direction, so that a version migrated, rolled back
+ * and migrated again is processed again.
+ */
+public class ProjectShardCoordinator implements AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProjectShardCoordinator.class);
+
+  private static final String LEASE_TABLE = "expat_project_shard_lease";
+
+  private static final String CREATE_LEASE_TABLE = String.format(
+    "CREATE TABLE IF NOT EXISTS `%s` (\n" +
+    "`version` varchar(32) COLLATE latin1_general_cs NOT NULL,\n" +
+    "`step` varchar(255) COLLATE latin1_general_cs NOT NULL,\n" +
+    "`action` varchar(16) COLLATE latin1_general_cs NOT NULL,\n" +
+    "`shard_start` bigint NOT NULL,\n" +
+    "`shard_end` bigint NOT NULL,\n" +
+    "`owner` varchar(255) COLLATE latin1_general_cs DEFAULT NULL,\n" +
+    "`heartbeat` timestamp NULL DEFAULT NULL,\n" +
+    "`done` tinyint(1) NOT NULL DEFAULT '0',\n" +
+    "PRIMARY KEY (`version`,`step`,`action`,`shard_start`)\n" +
+    ") ENGINE=ndbcluster DEFAULT CHARSET=latin1 COLLATE=latin1_general_cs", LEASE_TABLE);
+
+  private static final String GET_PROJECT_ID_RANGE = "SELECT MIN(id), MAX(id) FROM project";
+  private static final String INSERT_SHARD = String.format("INSERT IGNORE INTO %s (version, step, action, " +
+    "shard_start, shard_end) VALUES (?, ?, ?, ?, ?)", LEASE_TABLE);
+  private static final String CLAIMABLE = "done = 0 AND (owner IS NULL OR owner = ? OR heartbeat IS NULL OR " +
+    "heartbeat < NOW() - INTERVAL ? SECOND)";
+  private static final String GET_CLAIMABLE_SHARDS = String.format("SELECT shard_start, shard_end FROM %s " +
+    "WHERE version = ? AND step = ? AND action = ? AND " + CLAIMABLE + " ORDER BY shard_start", LEASE_TABLE);
+  private static final String CLAIM_SHARD = String.format("UPDATE %s SET owner = ?, heartbeat = NOW() " +
+    "WHERE version = ? AND step = ? AND action = ? AND shard_start = ? AND " + CLAIMABLE, LEASE_TABLE);
+  private static final String COMPLETE_SHARD = String.format("UPDATE %s SET done = 1, heartbeat = NOW() " +
+    "WHERE version = ? AND step = ? AND action = ? AND shard_start = ? AND owner = ?", LEASE_TABLE);
+  private static final String RELEASE_SHARD = String.format("UPDATE %s SET owner = NULL, heartbeat = NULL " +
+    "WHERE version = ? AND step = ? AND action = ? AND shard_start = ? AND owner = ? AND done = 0", LEASE_TABLE);
+  private static final String DELETE_SHARDS = String.format("DELETE FROM %s WHERE version = ? AND step = ? AND " +
+    "action = ?", LEASE_TABLE);
+  private static final String COUNT_PENDING_SHARDS = String.format("SELECT COUNT(*) FROM %s " +
+    "WHERE version = ? AND step = ? AND action = ? AND done = 0", LEASE_TABLE);
+  private static final String HEARTBEAT = String.format("UPDATE %s SET heartbeat = NOW() " +
+    "WHERE owner = ? AND done = 0", LEASE_TABLE);
+
+  private static final String MIGRATE = "migrate";
+  private static final String ROLLBACK = "rollback";
+  // lease of the steps that are not split by project, it covers no project id
+  private static final ProjectShard WHOLE_STEP = new ProjectShard(-1, 0);
+
+  private final long shardSize;
+  private final int leaseTimeout;
+  private final String workerId;
+  private final Connection connection;
+  private final ScheduledExecutorService heartbeat;
+
+  public ProjectShardCoordinator(long shardSize, int leaseTimeout, String workerId)
+    throws ConfigurationException, SQLException {
+    if (shardSize < 1) {
+      throw new IllegalArgumentException("project shard size should be at least 1, got:" + shardSize);
+    }
+    if (leaseTimeout < 3) {
+      throw new IllegalArgumentException("shard lease timeout should be at least 3 seconds, got:" + leaseTimeout);
+    }
+    this.shardSize = shardSize;
+    this.leaseTimeout = leaseTimeout;
+    this.workerId = workerId;
+    this.connection = DbConnectionFactory.getConnection();
+    this.connection.setAutoCommit(true);
+    try (Statement stmt = connection.createStatement()) {
+      stmt.executeUpdate(CREATE_LEASE_TABLE);
+    }
+    this.heartbeat = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("expat-shard-heartbeat").setDaemon(true).build());
+    this.heartbeat.scheduleWithFixedDelay(this::heartbeat, leaseTimeout / 3, leaseTimeout / 3, TimeUnit.SECONDS);
+    LOGGER.info("Project sharding enabled, worker:{} shard size:{} lease timeout:{}s", workerId, shardSize,
+      leaseTimeout);
+  }
+
+  void run(String version, MigrateStep step, boolean rollback, MigrationScheduler.StepAction action)
+    throws Exception {
+    String stepName = step.getClass().getName();
+    String stepAction = rollback ? ROLLBACK : MIGRATE;
+    String undoneAction = rollback ? MIGRATE : ROLLBACK;
+    if (!(step instanceof ProjectShardedStep)) {
+      createShards(version, stepName, stepAction, undoneAction, Collections.singletonList(WHOLE_STEP));
+      if (next(version, stepName, stepAction) == null) {
+        LOGGER.info("Step:{} was run by another worker", stepName);
+        return;
+      }
+      try {
+        action.apply(step);
+      } catch (Exception e) {
+        release(version, stepName, stepAction, WHOLE_STEP);
+        throw e;
+      }
+      complete(version, stepName, stepAction, WHOLE_STEP);
+      return;
+    }
+    createShards(version, stepName, stepAction, undoneAction, projectShards());
+    Leases leases = new Leases(version, stepName, stepAction);
+    ProjectShard.setLeased(leases);
+    try {
+      action.apply(step);
+      leases.completeCurrent();
+    } catch (Exception e) {
+      leases.releaseCurrent();
+      throw e;
+    } finally {
+      ProjectShard.setLeased(null);
+    }
+  }
+
+  /**
+   * Leases the shards of a step one at a time, the shard returned last is done once the step asks for the next one.
+   */
+  private class Leases implements Iterable<ProjectShard>, Iterator<ProjectShard> {
+    private final String version;
+    private final String step;
+    private final String action;
+    private ProjectShard current;
+    private ProjectShard next;
+    private boolean exhausted;
+
+    private Leases(String version, String step, String action) {
+      this.version = version;
+      this.step = step;
+      this.action = action;
+    }
+
+    @Override
+    public Iterator<ProjectShard> iterator() {
+      return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (next != null) {
+        return true;
+      }
+      if (exhausted) {
+        return false;
+      }
+      try {
+        completeCurrent();
+        next = ProjectShardCoordinator.this.next(version, step, action);
+      } catch (SQLException e) {
+        throw new IllegalStateException("Could not lease the project shards of step:" + step, e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for the project shards of step:" + step, e);
+      }
+      exhausted = next == null;
+      return !exhausted;
+    }
+
+    @Override
+    public ProjectShard next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      current = next;
+      next = null;
+      LOGGER.info("Step:{} processing projects:{}", step, current);
+      return current;
+    }
+
+    private void completeCurrent() throws SQLException {
+      if (current != null) {
+        complete(version, step, action, current);
+        current = null;
+      }
+    }
+
+    private void releaseCurrent() {
+      if (current != null) {
+        release(version, step, action, current);
+        current = null;
+      }
+    }
+  }
+
+  /**
+   * Leases a shard of the step, waiting for the shards leased by other workers in case their lease expires.
+   * @return null once every shard of the step is done
+   */
+  private ProjectShard next(String version, String step, String action) throws SQLException, InterruptedException {
+    while (true) {
+      ProjectShard shard = claim(version, step, action);
+      if (shard != null) {
+        return shard;
+      }
+      int pending = countPending(version, step, action);
+      if (pending == 0) {
+        return null;
+      }
+      LOGGER.info("Step:{} waiting for {} lease(s) held by other workers", step, pending);
+      TimeUnit.SECONDS.sleep(leaseTimeout / 3);
+    }
+  }
+
+  private synchronized List<ProjectShard> projectShards() throws SQLException {
+    List<ProjectShard> shards = new ArrayList<>();
+    try (Statement stmt = connection.createStatement();
+         ResultSet rs = stmt.executeQuery(GET_PROJECT_ID_RANGE)) {
+      rs.next();
+      long min = rs.getLong(1);
+      if (rs.wasNull()) {
+        return shards;
+      }
+      long max = rs.getLong(2);
+      //shards are aligned on the shard size so that every worker computes the same ranges
+      for (long start = (min / shardSize) * shardSize; start <= max; start += shardSize) {
+        shards.add(new ProjectShard(start, start + shardSize));
+      }
+    }
+    return shards;
+  }
+
+  private synchronized void createShards(String version, String step, String action, String undoneAction,
+    List<ProjectShard> shards) throws SQLException {
+    try (PreparedStatement stmt = connection.prepareStatement(DELETE_SHARDS)) {
+      stmt.setString(1, version);
+      stmt.setString(2, step);
+      stmt.setString(3, undoneAction);
+      stmt.executeUpdate();
+    }
+    if (shards.isEmpty()) {
+      return;
+    }
+    try (PreparedStatement stmt = connection.prepareStatement(INSERT_SHARD)) {
+      for (ProjectShard shard : shards) {
+        stmt.setString(1, version);
+        stmt.setString(2, step);
+        stmt.setString(3, action);
+        stmt.setLong(4, shard.getStart());
+        stmt.setLong(5, shard.getEnd());
+        stmt.addBatch();
+      }
+      stmt.executeBatch();
+    }
+  }
+
+  private synchronized ProjectShard claim(String version, String step, String action) throws SQLException {
+    List<ProjectShard> candidates = new ArrayList<>();
+    try (PreparedStatement stmt = connection.prepareStatement(GET_CLAIMABLE_SHARDS)) {
+      stmt.setString(1, version);
+      stmt.setString(2, step);
+      stmt.setString(3, action);
+      stmt.setString(4, workerId);
+      stmt.setInt(5, leaseTimeout);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          candidates.add(new ProjectShard(rs.getLong(1), rs.getLong(2)));
+        }
+      }
+    }
+    //another worker may claim the same shard in between, the conditional update only succeeds for one of them
+    try (PreparedStatement stmt = connection.prepareStatement(CLAIM_SHARD)) {
+      for (ProjectShard candidate : candidates) {
+        stmt.setString(1, workerId);
+        stmt.setString(2, version);
+        stmt.setString(3, step);
+        stmt.setString(4, action);
+        stmt.setLong(5, candidate.getStart());
+        stmt.setString(6, workerId);
+        stmt.setInt(7, leaseTimeout);
+        if (stmt.executeUpdate() == 1) {
+          return candidate;
+        }
+      }
+    }
+    return null;
+  }
+
+  private synchronized void complete(String version, String step, String action, ProjectShard shard)
+    throws SQLException {
+    if (updateShard(COMPLETE_SHARD, version, step, action, shard) == 0) {
+      //the lease expired and was taken over, the other worker will redo the shard
+      LOGGER.warn("Lost the lease of projects:{} of step:{}", shard, step);
+    }
+  }
+
+  private synchronized void release(String version, String step, String action, ProjectShard shard) {
+    try {
+      updateShard(RELEASE_SHARD, version, step, action, shard);
+    } catch (SQLException e) {
+      LOGGER.warn("Failed to release the lease of projects:{} of step:{}. {}", shard, step, e.getMessage());
+    }
+  }
+
+  private int updateShard(String query, String version, String step, String action, ProjectShard shard)
+    throws SQLException {
+    try (PreparedStatement stmt = connection.prepareStatement(query)) {
+      stmt.setString(1, version);
+      stmt.setString(2, step);
+      stmt.setString(3, action);
+      stmt.setLong(4, shard.getStart());
+      stmt.setString(5, workerId);
+      return stmt.executeUpdate();
+    }
+  }
+
+  private synchronized int countPending(String version, String step, String action) throws SQLException {
+    try (PreparedStatement stmt = connection.prepareStatement(COUNT_PENDING_SHARDS)) {
+      stmt.setString(1, version);
+      stmt.setString(2, step);
+      stmt.setString(3, action);
+      try (ResultSet rs = stmt.executeQuery()) {
+        rs.next();
+        return rs.getInt(1);
+      }
+    }
+  }
+
+  private synchronized void heartbeat() {
+    try (PreparedStatement stmt = connection.prepareStatement(HEARTBEAT)) {
+      stmt.setString(1, workerId);
+      stmt.executeUpdate();
+    } catch (SQLException e) {
+      LOGGER.warn("Failed to heartbeat project shard leases. {}", e.getMessage());
+    }
+  }
+
+  @Override
+  public void close() {
+    heartbeat.shutdownNow();
+    synchronized (this) {
+      try {
+        connection.close();
+      } catch (SQLException e) {
+        LOGGER.warn("Failed to close shard lease connection. {}", e.getMessage());
+      }
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.json;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Json documents rewritten by the migrations, read into mutable Jackson trees. The fields of an object keep the order
+ * in which they were read, fields added or renamed go last, so rewriting the same document always gives the same
+ * output. Null fields of the values serialized with {@link #write(Object)} are left out.
+ */
+public final class JsonCodec {
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+    .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+  
+  private JsonCodec() {
+  }
+  
+  /**
+   * @throws JsonProcessingException if the content is not a json object
+   */
+  public static ObjectNode readObject(String json) throws JsonProcessingException {
+    ObjectNode node = MAPPER.readValue(json, ObjectNode.class);
+    if (node == null) {
+      throw MismatchedInputException.from(null, ObjectNode.class, "expected a json object, got: null");
+    }
+    return node;
+  }
+  
+  public static <T> T read(String json, Class<T> valueType) throws JsonProcessingException {
+    return MAPPER.readValue(json, valueType);
+  }
+  
+  public static String write(Object value) throws JsonProcessingException {
+    return MAPPER.writeValueAsString(value);
+  }
+  
+  public static ObjectNode newObject() {
+    return MAPPER.createObjectNode();
+  }
+  
+  public static ArrayNode newArray() {
+    return MAPPER.createArrayNode();
+  }
+  
+  /**
+   * @return the object field, null if the node has no such field or the field is not an object
+   */
+  public static ObjectNode getObject(JsonNode node, String field) {
+    JsonNode value = node.get(field);
+    return value != null && value.isObject() ? (ObjectNode) value : null;
+  }
+  
+  /**
+   * @return the text of the field, null if the node has no such field or the field is null
+   */
+  public static String getText(JsonNode node, String field) {
+    JsonNode value = node.get(field);
+    return value == null || value.isNull() ? null : value.asText();
+  }
+  
+  /**
+   * Moves the value of a field to a new name, after the other fields.
+   * @return whether the field existed
+   */
+  public static boolean rename(ObjectNode node, String field, String newField) {
+    JsonNode value = node.remove(field);
+    if (value == null) {
+      return false;
+    }
+    node.set(newField, value);
+    return true;
+  }
+  
+  /**
+   * @return whether the field existed
+   */
+  public static boolean remove(ObjectNode node, String field) {
+    return node.remove(field) != null;
+  }
+}
@@ -17,7 +17,41 @@
 
 package io.hops.hopsworks.expat.migrations;
 
+import java.util.Collections;
+import java.util.Set;
+
 public interface MigrateStep {
   void migrate() throws MigrationException;
   void rollback() throws RollbackException;
+  
+  /**
+   * Called by the runner instead of {@link #migrate()}. Steps that use the shared clients of the run override it.
+   */
+  default void migrate(MigrationContext context) throws MigrationException {
+    migrate();
+  }
+  
+  /**
+   * Called by the runner instead of {@link #rollback()}. Steps that use the shared clients of the run override it.
+   */
+  default void rollback(MigrationContext context) throws RollbackException {
+    rollback();
+  }
+  
+  /**
+   * Steps of the same version that have to complete before this step can start. Dependencies on steps that are
+   * not part of the version being migrated are ignored.
+   */
+  default Set<Class<? extends MigrateStep>> dependsOn() {
+    return Collections.emptySet();
+  }
+  
+  /**
+   * Resources modified by this step. Steps with conflicting resources keep the order in which they are listed in
+   * expat-site.xml. A step that does not declare its resources (null) is assumed to touch everything and is never run
+   * concurrently with any other step.
+   */
+  default Set<MigrationResource> resources() {
+    return null;
+  }
 }
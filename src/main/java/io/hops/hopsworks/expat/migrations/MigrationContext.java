@@ -0,0 +1,219 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations;
+
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.hops.hopsworks.common.hdfs.DistributedFileSystemOps;
+import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
+import io.hops.hopsworks.expat.configuration.ExpatConf;
+import io.hops.hopsworks.expat.db.DbConnectionFactory;
+import io.hops.hopsworks.expat.db.dao.ReferenceDataCache;
+import io.hops.hopsworks.expat.elastic.ElasticReindexer;
+import io.hops.hopsworks.expat.kubernetes.KubernetesClientFactory;
+import io.hops.hopsworks.expat.migrations.projects.util.DfsoProvider;
+import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.CookieSpecs;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.ssl.SSLContextBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Clients shared by the steps of a run, so that a version with many steps does not pay their setup cost once per step.
+ * Everything handed out is shared and thread safe, steps must not close the DFSOs, HTTP or Kubernetes clients they get
+ * from the context. Connections come from the pool and are returned to it by closing them.
+ * The context of a run is closed once, at process shutdown, through {@link ShutdownHook}.
+ */
+public class MigrationContext implements AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MigrationContext.class);
+
+  private final DfsoProvider dfsoProvider = new DfsoProvider();
+  private final Map<HttpHost, CloseableHttpClient> httpClients = new ConcurrentHashMap<>();
+  private final Map<HttpHost, ElasticReindexer> reindexers = new ConcurrentHashMap<>();
+  private final ReferenceDataCache referenceData = new ReferenceDataCache();
+  private KubernetesClient kubernetesClient;
+  private volatile boolean closed = false;
+
+  public Connection getConnection() throws ConfigurationException, SQLException {
+    return DbConnectionFactory.getConnection();
+  }
+
+  /**
+   * @return a connection, not from the pool, for batches of inserts whose generated keys are read, see
+   * {@link DbConnectionFactory#getConnectionWithoutBatchRewrite()}
+   */
+  public Connection getConnectionWithoutBatchRewrite() throws ConfigurationException, SQLException {
+    return DbConnectionFactory.getConnectionWithoutBatchRewrite();
+  }
+
+  /**
+   * @return a DFSO for the given user, created on first use and shared by all steps
+   */
+  public DistributedFileSystemOps getDfso(String user) {
+    checkOpen();
+    return dfsoProvider.get(user);
+  }
+
+  /**
+   * @return the provider of the shared DFSOs, for steps that need several clients of a user for parallel workers
+   */
+  public DfsoProvider getDfsoProvider() {
+    checkOpen();
+    return dfsoProvider;
+  }
+
+  /**
+   * @return the reference data cache shared by all steps
+   */
+  public ReferenceDataCache getReferenceData() {
+    checkOpen();
+    return referenceData;
+  }
+
+  /**
+   * @return a keep-alive HTTP client with a connection pool dedicated to the given endpoint. Certificates and host
+   * names are not verified, as in the clients the steps used to build themselves.
+   */
+  public CloseableHttpClient getHttpClient(HttpHost endpoint) throws ConfigurationException,
+    GeneralSecurityException {
+    checkOpen();
+    CloseableHttpClient client = httpClients.get(endpoint);
+    if (client != null) {
+      return client;
+    }
+    synchronized (httpClients) {
+      client = httpClients.get(endpoint);
+      if (client == null) {
+        client = createHttpClient();
+        httpClients.put(endpoint, client);
+      }
+      return client;
+    }
+  }
+
+  /**
+   * @return the reindexer of the given elastic endpoint, shared by all steps so that they share its limit of
+   * concurrent reindexes
+   */
+  public ElasticReindexer getElasticReindexer(HttpHost elastic, String elasticUser, String elasticPass)
+    throws ConfigurationException, GeneralSecurityException {
+    checkOpen();
+    CloseableHttpClient httpClient = getHttpClient(elastic);
+    synchronized (reindexers) {
+      ElasticReindexer reindexer = reindexers.get(elastic);
+      if (reindexer == null) {
+        reindexer = ElasticReindexer.fromConf(httpClient, elastic, elasticUser, elasticPass);
+        reindexers.put(elastic, reindexer);
+      }
+      return reindexer;
+    }
+  }
+
+  private CloseableHttpClient createHttpClient() throws ConfigurationException, GeneralSecurityException {
+    int maxConnections = ConfigurationBuilder.getConfiguration().getInt(ExpatConf.HTTP_MAX_CONNECTIONS_PER_ENDPOINT,
+      ExpatConf.HTTP_MAX_CONNECTIONS_PER_ENDPOINT_DEFAULT);
+    SSLConnectionSocketFactory sslSocketFactory = new SSLConnectionSocketFactory(
+      new SSLContextBuilder().loadTrustMaterial((x509Certificates, s) -> true).build(), NoopHostnameVerifier.INSTANCE);
+    Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+      .register("http", PlainConnectionSocketFactory.getSocketFactory())
+      .register("https", sslSocketFactory)
+      .build();
+    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(registry);
+    connectionManager.setMaxTotal(maxConnections);
+    connectionManager.setDefaultMaxPerRoute(maxConnections);
+    return HttpClients
+      .custom()
+      .setConnectionManager(connectionManager)
+      .setDefaultRequestConfig(RequestConfig.custom().setCookieSpec(CookieSpecs.IGNORE_COOKIES).build())
+      .build();
+  }
+
+  public synchronized KubernetesClient getKubernetesClient() throws ConfigurationException {
+    checkOpen();
+    if (kubernetesClient == null) {
+      kubernetesClient = KubernetesClientFactory.getClient();
+    }
+    return kubernetesClient;
+  }
+
+  private void checkOpen() {
+    if (closed) {
+      throw new IllegalStateException("migration context is closed");
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    for (ElasticReindexer reindexer : reindexers.values()) {
+      reindexer.close();
+    }
+    reindexers.clear();
+    for (CloseableHttpClient client : httpClients.values()) {
+      try {
+        client.close();
+      } catch (IOException e) {
+        LOGGER.warn("Failed to close http client. {}", e.getMessage());
+      }
+    }
+    httpClients.clear();
+    dfsoProvider.close();
+    referenceData.invalidate();
+    if (kubernetesClient != null) {
+      kubernetesClient.close();
+      kubernetesClient = null;
+    }
+  }
+
+  /**
+   * Closes the context of the run and the database pool, registered with the
+   * {@link io.hops.hopsworks.expat.executor.ShutdownManager} so that it runs after the steps are stopped.
+   */
+  public static class ShutdownHook implements Runnable {
+    private final MigrationContext context;
+
+    public ShutdownHook(MigrationContext context) {
+      this.context = context;
+    }
+
+    @Override
+    public void run() {
+      context.close();
+      DbConnectionFactory.close();
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations;
+
+import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
+import io.hops.hopsworks.expat.configuration.ExpatConf;
+import io.hops.hopsworks.expat.db.DbConnectionFactory;
+import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Units of work a step has completed for a version. A unit is committed as soon as it is done, on a connection of its
+ * own, so that it survives a failure of the step. In dry run mode the journal is only read.
+ */
+public class MigrationJournal implements AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MigrationJournal.class);
+
+  private static final String JOURNAL_TABLE = "expat_migration_journal";
+
+  private static final String CREATE_JOURNAL_TABLE = String.format(
+    "CREATE TABLE IF NOT EXISTS `%s` (\n" +
+    "`version` varchar(32) COLLATE latin1_general_cs NOT NULL,\n" +
+    "`step` varchar(255) COLLATE latin1_general_cs NOT NULL,\n" +
+    "`unit` varchar(255) COLLATE latin1_general_cs NOT NULL,\n" +
+    "`committed` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,\n" +
+    "PRIMARY KEY (`version`,`step`,`unit`)\n" +
+    ") ENGINE=ndbcluster DEFAULT CHARSET=latin1 COLLATE=latin1_general_cs", JOURNAL_TABLE);
+
+  private static final String GET_UNITS =
+    String.format("SELECT unit FROM %s WHERE version = ? AND step = ?", JOURNAL_TABLE);
+  private static final String INSERT_UNIT =
+    String.format("INSERT IGNORE INTO %s (version, step, unit) VALUES (?, ?, ?)", JOURNAL_TABLE);
+  private static final String DELETE_UNIT =
+    String.format("DELETE FROM %s WHERE version = ? AND step = ? AND unit = ?", JOURNAL_TABLE);
+  private static final String DELETE_UNITS =
+    String.format("DELETE FROM %s WHERE version = ? AND step = ?", JOURNAL_TABLE);
+
+  private final String version;
+  private final String step;
+  private final boolean dryRun;
+  private final Connection connection;
+  private final Set<String> committed = new HashSet<>();
+
+  private MigrationJournal(String version, String step, boolean dryRun, Connection connection) {
+    this.version = version;
+    this.step = step;
+    this.dryRun = dryRun;
+    this.connection = connection;
+  }
+
+  public static MigrationJournal open(String version, Class<? extends MigrateStep> step)
+    throws ConfigurationException, SQLException {
+    boolean dryRun = ConfigurationBuilder.getConfiguration().getBoolean(ExpatConf.DRY_RUN);
+    MigrationJournal journal = new MigrationJournal(version, step.getName(), dryRun,
+      DbConnectionFactory.getConnection());
+    try {
+      journal.load();
+    } catch (SQLException e) {
+      journal.close();
+      throw e;
+    }
+    return journal;
+  }
+
+  private void load() throws SQLException {
+    connection.setAutoCommit(true);
+    if (dryRun) {
+      if (!tableExists()) {
+        return;
+      }
+    } else {
+      try (Statement stmt = connection.createStatement()) {
+        stmt.executeUpdate(CREATE_JOURNAL_TABLE);
+      }
+    }
+    try (PreparedStatement stmt = connection.prepareStatement(GET_UNITS)) {
+      stmt.setString(1, version);
+      stmt.setString(2, step);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          committed.add(rs.getString(1));
+        }
+      }
+    }
+    if (!committed.isEmpty()) {
+      LOGGER.info("Resuming step:{} for version:{}, {} unit(s) already committed", step, version, committed.size());
+    }
+  }
+
+  private boolean tableExists() throws SQLException {
+    try (ResultSet rs = connection.getMetaData().getTables(connection.getCatalog(), null, JOURNAL_TABLE, null)) {
+      return rs.next();
+    }
+  }
+
+  public synchronized boolean isCommitted(String unit) {
+    return committed.contains(unit);
+  }
+
+  public synchronized void commit(String unit) throws SQLException {
+    if (!committed.add(unit) || dryRun) {
+      return;
+    }
+    try (PreparedStatement stmt = connection.prepareStatement(INSERT_UNIT)) {
+      stmt.setString(1, version);
+      stmt.setString(2, step);
+      stmt.setString(3, unit);
+      stmt.executeUpdate();
+    }
+  }
+
+  /**
+   * Forget a unit, used by rollbacks so that a later migration redoes the units that were rolled back.
+   */
+  public synchronized void uncommit(String unit) throws SQLException {
+    if (!committed.remove(unit) || dryRun) {
+      return;
+    }
+    try (PreparedStatement stmt = connection.prepareStatement(DELETE_UNIT)) {
+      stmt.setString(1, version);
+      stmt.setString(2, step);
+      stmt.setString(3, unit);
+      stmt.executeUpdate();
+    }
+  }
+
+  public synchronized void clear() throws SQLException {
+    committed.clear();
+    if (dryRun) {
+      return;
+    }
+    try (PreparedStatement stmt = connection.prepareStatement(DELETE_UNITS)) {
+      stmt.setString(1, version);
+      stmt.setString(2, step);
+      stmt.executeUpdate();
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    try {
+      connection.close();
+    } catch (SQLException e) {
+      LOGGER.warn("Failed to close journal connection. {}", e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2024, Hopsworks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations;
+
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Something a {@link MigrateStep} modifies. Two steps whose resources conflict are never run at the same time.
+ * <ul>
+ *   <li>DB tables match by name, a table without schema is assumed to be in the hopsworks schema.</li>
+ *   <li>HDFS paths match if one is a subtree of the other.</li>
+ *   <li>Elastic indices and K8s namespaces may use '*' wildcards.</li>
+ * </ul>
+ */
+public final class MigrationResource {
+  private static final String DEFAULT_SCHEMA = "hopsworks.";
+  private static final String WILDCARD = "*";
+
+  public enum Type {
+    DB_TABLE,
+    HDFS_PATH,
+    ELASTIC_INDEX,
+    K8S_NAMESPACE
+  }
+
+  private final Type type;
+  private final String name;
+
+  private MigrationResource(Type type, String name) {
+    if (name == null || name.isEmpty()) {
+      throw new IllegalArgumentException("resource name cannot be empty");
+    }
+    this.type = type;
+    this.name = name;
+  }
+
+  public static MigrationResource table(String table) {
+    String name = table.toLowerCase();
+    return new MigrationResource(Type.DB_TABLE, name.contains(".") ? name : DEFAULT_SCHEMA + name);
+  }
+
+  public static MigrationResource hdfs(String path) {
+    String name = path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    return new MigrationResource(Type.HDFS_PATH, name);
+  }
+
+  public static MigrationResource index(String index) {
+    return new MigrationResource(Type.ELASTIC_INDEX, index);
+  }
+
+  public static MigrationResource namespace(String namespace) {
+    return new MigrationResource(Type.K8S_NAMESPACE, namespace);
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public boolean conflictsWith(MigrationResource other) {
+    if (type != other.type) {
+      return false;
+    }
+    switch (type) {
+      case HDFS_PATH:
+        return isSubtree(name, other.name) || isSubtree(other.name, name);
+      case ELASTIC_INDEX:
+      case K8S_NAMESPACE:
+        return wildcardMatch(name, other.name);
+      default:
+        return name.equals(other.name);
+    }
+  }
+
+  private static boolean isSubtree(String parent, String child) {
+    if (parent.equals("/") || parent.equals(child)) {
+      return true;
+    }
+    return child.startsWith(parent + "/");
+  }
+
+  private static boolean wildcardMatch(String a, String b) {
+    boolean aWildcard = a.contains(WILDCARD);
+    boolean bWildcard = b.contains(WILDCARD);
+    if (aWildcard && bWildcard) {
+      //two patterns may always overlap, be conservative
+      return true;
+    } else if (aWildcard) {
+      return toPattern(a).matcher(b).matches();
+    } else if (bWildcard) {
+      return toPattern(b).matcher(a).matches();
+    } else {
+      return a.equals(b);
+    }
+  }
+
+  private static Pattern toPattern(String wildcard) {
+    StringBuilder regex = new StringBuilder();
+    for (String part : wildcard.split("\\*", -1)) {
+      if (regex.length() > 0) {
+        regex.append(".*");
+      }
+      regex.append(Pattern.quote(part));
+    }
+    return Pattern.compile(regex.toString());
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    MigrationResource that = (MigrationResource) o;
+    return type == that.type && Objects.equals(name, that.name);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(type, name);
+  }
+
+  @Override
+  public String toString() {
+    return type + ":" + name;
+  }
+}
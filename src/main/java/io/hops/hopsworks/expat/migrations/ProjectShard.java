@@ -0,0 +1,96 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations;
+
+import io.hops.hopsworks.expat.db.dao.project.ExpatProject;
+import io.hops.hopsworks.expat.db.dao.project.ExpatProjectFacade;
+import org.opensearch.common.CheckedBiConsumer;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Range of project ids, [start, end), a {@link ProjectShardedStep} works on. The runner hands the shards leased by
+ * the process to the thread running the step, the step goes through them with {@link #leased()} and only queries
+ * the projects of the shard it is on, usually through {@link #forEachLeased}. Without sharding the step gets a single
+ * shard with every project.
+ */
+public final class ProjectShard {
+  /**
+   * Every project, the only shard of a step when sharding is disabled.
+   */
+  public static final ProjectShard ALL = new ProjectShard(0, Long.MAX_VALUE);
+  
+  private static final ThreadLocal<Iterable<ProjectShard>> LEASED = new ThreadLocal<>();
+
+  private final long start;
+  private final long end;
+
+  public ProjectShard(long start, long end) {
+    if (end <= start) {
+      throw new IllegalArgumentException("empty project shard:[" + start + "," + end + ")");
+    }
+    this.start = start;
+    this.end = end;
+  }
+
+  public long getStart() {
+    return start;
+  }
+
+  public long getEnd() {
+    return end;
+  }
+
+  public boolean contains(long projectId) {
+    return start <= projectId && projectId < end;
+  }
+
+  /**
+   * The shards of the step running on the calling thread. A shard is leased when the iterator returns it and is done
+   * once the step asks for the next one, the iterator ends when every shard of the step is done, including the ones
+   * leased by other processes. Work that is not per project is done once, before or after going through the shards.
+   */
+  public static Iterable<ProjectShard> leased() {
+    Iterable<ProjectShard> leased = LEASED.get();
+    return leased == null ? Collections.singletonList(ALL) : leased;
+  }
+
+  /**
+   * Runs the work of a step on each leased shard, with the projects of the shard read in one query. The shard is done
+   * when the action returns, so the action commits the changes of the shard before returning.
+   */
+  public static void forEachLeased(ExpatProjectFacade projectFacade,
+    CheckedBiConsumer<ProjectShard, List<ExpatProject>, Exception> action) throws Exception {
+    for (ProjectShard shard : leased()) {
+      action.accept(shard, projectFacade.findByShard(shard));
+    }
+  }
+
+  public static void setLeased(Iterable<ProjectShard> leased) {
+    if (leased == null) {
+      LEASED.remove();
+    } else {
+      LEASED.set(leased);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "[" + start + "," + end + ")";
+  }
+}
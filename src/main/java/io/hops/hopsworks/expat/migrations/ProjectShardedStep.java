@@ -0,0 +1,25 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations;
+
+/**
+ * A {@link MigrateStep} that traverses the projects one by one. When sharding is enabled the runner splits the project
+ * ids in ranges, leased to the Expat processes running the same version, and every process runs the step once.
+ * The step goes through the ranges of {@link ProjectShard#leased()} and only processes the projects in them.
+ */
+public interface ProjectShardedStep extends MigrateStep {
+}
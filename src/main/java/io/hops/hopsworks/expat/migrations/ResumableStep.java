@@ -0,0 +1,29 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations;
+
+/**
+ * A {@link MigrateStep} that splits its work into units (projects, statistics, indices...) and records every unit it
+ * completes in a {@link MigrationJournal}. When a failed migration is restarted the units already in the journal are
+ * skipped instead of being redone.
+ */
+public interface ResumableStep extends MigrateStep {
+  /**
+   * Set by the runner before {@link #migrate()} or {@link #rollback()} is called and reset to null afterwards.
+   */
+  void setJournal(MigrationJournal journal);
+}
@@ -16,8 +16,11 @@
  */
 package io.hops.hopsworks.expat.migrations.dataset;
 
-import io.hops.hopsworks.expat.migrations.MigrateStep;
+import io.hops.hopsworks.expat.migrations.MigrationContext;
 import io.hops.hopsworks.expat.migrations.MigrationException;
+import io.hops.hopsworks.expat.migrations.MigrationJournal;
+import io.hops.hopsworks.expat.migrations.ProjectShardedStep;
+import io.hops.hopsworks.expat.migrations.ResumableStep;
 import io.hops.hopsworks.expat.migrations.RollbackException;
 import org.apache.commons.configuration2.ex.ConfigurationException;
 import org.slf4j.Logger;
@@ -25,21 +28,35 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.SQLException;
 
-public class FixDatasetPermission implements MigrateStep {
+public class FixDatasetPermission implements ResumableStep, ProjectShardedStep {
   private static final Logger LOGGER = LoggerFactory.getLogger(FixDatasetPermission.class);
   
   private FixDatasetPermissionHelper fixDatasetPermissionHelper;
+  private MigrationJournal journal;
   
-  private void setup() throws SQLException, ConfigurationException {
+  private void setup(MigrationContext context) throws SQLException, ConfigurationException {
     fixDatasetPermissionHelper = new FixDatasetPermissionHelper();
-    fixDatasetPermissionHelper.setup();
+    fixDatasetPermissionHelper.setup(context);
+    fixDatasetPermissionHelper.setJournal(journal);
+  }
+  
+  @Override
+  public void setJournal(MigrationJournal journal) {
+    this.journal = journal;
   }
   
   @Override
   public void migrate() throws MigrationException {
+    try (MigrationContext context = new MigrationContext()) {
+      migrate(context);
+    }
+  }
+  
+  @Override
+  public void migrate(MigrationContext context) throws MigrationException {
     LOGGER.info("Acl Migration started...");
     try {
-      setup();
+      setup(context);
       fixDatasetPermissionHelper.fixAllProjects();
     } catch (Exception e) {
       throw new MigrationException("Acl error", e);
@@ -50,9 +67,16 @@ public class FixDatasetPermission implements MigrateStep {
   
   @Override
   public void rollback() throws RollbackException {
+    try (MigrationContext context = new MigrationContext()) {
+      rollback(context);
+    }
+  }
+  
+  @Override
+  public void rollback(MigrationContext context) throws RollbackException {
     LOGGER.info("Acl Rollback started...");
     try {
-      setup();
+      setup(context);
       fixDatasetPermissionHelper.rollbackAllProject();
     } catch (Exception e) {
       throw new RollbackException("Acl error", e);
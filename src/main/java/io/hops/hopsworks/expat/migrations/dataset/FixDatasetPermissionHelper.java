@@ -17,28 +17,31 @@
 package io.hops.hopsworks.expat.migrations.dataset;
 
 import io.hops.hopsworks.common.constants.auth.AllowedRoles;
-import io.hops.hopsworks.common.hdfs.DistributedFileSystemOps;
 import io.hops.hopsworks.common.hdfs.FsPermissions;
 import io.hops.hopsworks.common.hdfs.HdfsUsersController;
 import io.hops.hopsworks.common.util.Settings;
 import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
 import io.hops.hopsworks.expat.configuration.ExpatConf;
-import io.hops.hopsworks.expat.db.DbConnectionFactory;
+import io.hops.hopsworks.expat.db.BatchWriter;
+import io.hops.hopsworks.expat.db.dao.ReferenceDataCache;
 import io.hops.hopsworks.expat.db.dao.dataset.ExpatDataset;
 import io.hops.hopsworks.expat.db.dao.dataset.ExpatDatasetFacade;
 import io.hops.hopsworks.expat.db.dao.dataset.ExpatDatasetSharedWith;
 import io.hops.hopsworks.expat.db.dao.dataset.ExpatDatasetSharedWithFacade;
 import io.hops.hopsworks.expat.db.dao.hdfs.inode.ExpatHdfsInode;
 import io.hops.hopsworks.expat.db.dao.hdfs.inode.ExpatHdfsInodeFacade;
-import io.hops.hopsworks.expat.db.dao.hdfs.user.ExpatHdfsGroup;
-import io.hops.hopsworks.expat.db.dao.hdfs.user.ExpatHdfsGroupFacade;
+import io.hops.hopsworks.expat.db.dao.hdfs.inode.ExpatInodeController;
 import io.hops.hopsworks.expat.db.dao.hdfs.user.ExpatHdfsUser;
 import io.hops.hopsworks.expat.db.dao.hdfs.user.ExpatHdfsUserFacade;
 import io.hops.hopsworks.expat.db.dao.project.ExpatProject;
 import io.hops.hopsworks.expat.db.dao.project.ExpatProjectFacade;
 import io.hops.hopsworks.expat.db.dao.project.ExpatProjectMember;
 import io.hops.hopsworks.expat.db.dao.project.ExpatProjectMemberFacade;
-import io.hops.hopsworks.expat.migrations.projects.util.HopsClient;
+import io.hops.hopsworks.expat.migrations.MigrationContext;
+import io.hops.hopsworks.expat.migrations.MigrationJournal;
+import io.hops.hopsworks.expat.migrations.ProjectShard;
+import io.hops.hopsworks.expat.migrations.projects.util.HdfsOperationExecutor;
+import io.hops.hopsworks.expat.migrations.projects.util.HdfsOperationExecutor.HdfsOperation;
 import io.hops.hopsworks.persistence.entity.dataset.DatasetAccessPermission;
 import io.hops.hopsworks.persistence.entity.project.team.ProjectRoleTypes;
 import org.apache.commons.configuration2.Configuration;
@@ -52,66 +55,96 @@ import org.apache.hadoop.fs.permission.FsPermission;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
+import java.sql.JDBCType;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
+/**
+ * Fixes, or rolls back, the groups, acls and permissions of the datasets of all the projects. The work is done in
+ * three phases:
+ * <ol>
+ *   <li>the datasets, inodes, owners, project teams, shares and group memberships are read in bulk,</li>
+ *   <li>the missing hdfs users and groups are created, all at once, and the changes of each dataset are worked out in
+ *   memory against the memberships read,</li>
+ *   <li>the hdfs changes of each project are applied by the workers of a {@link HdfsOperationExecutor}, the changes of
+ *   a project run in order while projects run in parallel.</li>
+ * </ol>
+ * The permissions stored in the database are updated, and the project is recorded in the journal, once all the hdfs
+ * changes of the project succeeded. The phases run once per
+ * {@link ProjectShard} of the step, the project teams and group memberships, needed by every shard, are read once.
+ */
 public class FixDatasetPermissionHelper {
   private static final Logger LOGGER = LoggerFactory.getLogger(FixDatasetPermission.class);
+  private static final String SRV_MANAGER = "srvmanager";
   
+  private MigrationContext context;
   private Connection connection;
   private ExpatProjectFacade projectFacade;
   private ExpatDatasetFacade datasetFacade;
   private ExpatDatasetSharedWithFacade datasetSharedWithFacade;
   private ExpatProjectMemberFacade projectMemberFacade;
-  private ExpatHdfsGroupFacade hdfsGroupFacade;
+  private ReferenceDataCache referenceData;
   private ExpatHdfsUserFacade hdfsUserFacade;
   private ExpatHdfsInodeFacade inodeFacade;
+  private ExpatInodeController inodeController;
   private String hopsUser;
+  private MigrationJournal journal;
+  private Map<Integer, List<ExpatProjectMember>> membersByProject;
+  private Map<String, Set<String>> groupMembers;
   
   private boolean dryrun;
   
   public FixDatasetPermissionHelper() {
   }
   
-  public void setup() throws SQLException, ConfigurationException {
+  public void setup(MigrationContext context) throws SQLException, ConfigurationException {
     Configuration conf = ConfigurationBuilder.getConfiguration();
+    this.context = context;
     this.hopsUser = conf.getString(ExpatConf.HOPS_CLIENT_USER);
-    this.connection = DbConnectionFactory.getConnection();
+    this.connection = context.getConnection();
     this.projectFacade = new ExpatProjectFacade(ExpatProject.class, this.connection);
     this.datasetFacade = new ExpatDatasetFacade(ExpatDataset.class, this.connection);
     this.datasetSharedWithFacade = new ExpatDatasetSharedWithFacade(ExpatDatasetSharedWith.class, this.connection);
     this.projectMemberFacade = new ExpatProjectMemberFacade(ExpatProjectMember.class, this.connection);
-    this.hdfsGroupFacade = new ExpatHdfsGroupFacade(ExpatHdfsGroup.class, this.connection);
+    this.referenceData = context.getReferenceData();
     this.hdfsUserFacade = new ExpatHdfsUserFacade(ExpatHdfsUser.class, this.connection);
     this.inodeFacade = new ExpatHdfsInodeFacade(ExpatHdfsInode.class, this.connection);
+    this.inodeController = new ExpatInodeController(this.connection);
     this.dryrun = conf.getBoolean(ExpatConf.DRY_RUN);
   }
   
-  public void fixAllProjects() throws SQLException, InstantiationException, IOException, IllegalAccessException {
-    DistributedFileSystemOps dfso = null;
-    try {
-      dfso = HopsClient.getDFSO(this.hopsUser);
-      fixPermission(dfso);
-    } finally {
-      if (dfso != null) {
-        dfso.close();
-      }
+  /**
+   * Projects are the unit of work, a project is recorded in the journal once all its datasets are fixed.
+   */
+  public void setJournal(MigrationJournal journal) {
+    this.journal = journal;
+  }
+  
+  public void fixAllProjects() throws Exception {
+    try (HdfsOperationExecutor hdfsOps = HdfsOperationExecutor.forUser(context.getDfsoProvider(), this.hopsUser)) {
+      loadMembers();
+      ProjectShard.forEachLeased(this.projectFacade,
+        (shard, shardProjects) -> fixPermission(shard, shardProjects, hdfsOps));
     }
   }
   
-  public void rollbackAllProject() throws SQLException, InstantiationException, IOException, IllegalAccessException {
-    DistributedFileSystemOps dfso = null;
-    try {
-      dfso = HopsClient.getDFSO(this.hopsUser);
-      rollbackPermission(dfso);
-    } finally {
-      if (dfso != null) {
-        dfso.close();
-      }
+  public void rollbackAllProject() throws Exception {
+    try (HdfsOperationExecutor hdfsOps = HdfsOperationExecutor.forUser(context.getDfsoProvider(), this.hopsUser)) {
+      loadMembers();
+      ProjectShard.forEachLeased(this.projectFacade,
+        (shard, shardProjects) -> rollbackPermission(shard, shardProjects, hdfsOps));
     }
   }
   
@@ -125,102 +158,331 @@ public class FixDatasetPermissionHelper {
     }
   }
   
-  private void fixPermission(DistributedFileSystemOps dfso) throws IllegalAccessException, SQLException,
-    InstantiationException, IOException {
-    List<ExpatProject> projects = this.projectFacade.findAll();
-    for (int i = 0; i < projects.size(); i++) {
-      LOGGER.info("====================== Fixing project={} ===========================", projects.get(i).getName());
-      fixPermission(projects.get(i), dfso);
-      LOGGER.info("====================== Done Fixing project={} ======================", projects.get(i).getName());
+  /**
+   * Rows read in bulk before any change is worked out.
+   */
+  private static class Snapshot {
+    private final Map<Integer, List<ExpatDataset>> datasetsByProject = new HashMap<>();
+    private final Map<Long, ExpatHdfsInode> inodes;
+    private final Map<Long, String> paths;
+    private final Map<Integer, ExpatHdfsUser> owners;
+    private final Map<Integer, List<ExpatProjectMember>> membersByProject;
+    private final Map<Integer, List<ExpatDatasetSharedWith>> sharedWithByDataset = new HashMap<>();
+    // names of the users of each hdfs group, kept up to date with the changes planned
+    private final Map<String, Set<String>> groupMembers;
+    
+    private Snapshot(Map<Long, ExpatHdfsInode> inodes, Map<Long, String> paths, Map<Integer, ExpatHdfsUser> owners,
+      Map<Integer, List<ExpatProjectMember>> membersByProject, Map<String, Set<String>> groupMembers) {
+      this.inodes = inodes;
+      this.paths = paths;
+      this.owners = owners;
+      this.membersByProject = membersByProject;
+      this.groupMembers = groupMembers;
+    }
+    
+    private List<ExpatDataset> datasets(ExpatProject project) {
+      return datasetsByProject.getOrDefault(project.getId(), Collections.emptyList());
+    }
+    
+    private List<ExpatProjectMember> members(Integer projectId) {
+      return membersByProject.getOrDefault(projectId, Collections.emptyList());
+    }
+    
+    private List<ExpatDatasetSharedWith> sharedWith(ExpatDataset dataset) {
+      return sharedWithByDataset.getOrDefault(dataset.getId(), Collections.emptyList());
+    }
+    
+    private Set<String> groupMembers(String group) {
+      return groupMembers.computeIfAbsent(group, g -> new HashSet<>());
+    }
+    
+    private String path(ExpatDataset dataset) {
+      return paths.get(dataset.getInodeId());
+    }
+    
+    private ExpatHdfsUser owner(ExpatDataset dataset) {
+      return owners.get(inodes.get(dataset.getInodeId()).getHdfsUser());
     }
-    LOGGER.info("Fixed {} projects.", projects.size());
   }
   
-  private void rollbackPermission(DistributedFileSystemOps dfso) throws IllegalAccessException, SQLException,
-    InstantiationException, IOException {
-    List<ExpatProject> projects = this.projectFacade.findAll();
-    for (int i = 0; i < projects.size(); i++) {
-      LOGGER.info("====================== Rollback project={} ===========================", projects.get(i).getName());
-      rollbackPermission(projects.get(i), dfso);
-      LOGGER.info("====================== Done Rolling back project={} ==================", projects.get(i).getName());
+  /**
+   * Reads the teams of all the projects, the datasets of a shard can be shared with projects of any shard, and the
+   * members of all the hdfs groups.
+   */
+  private void loadMembers() throws SQLException, IllegalAccessException, InstantiationException {
+    this.membersByProject = new HashMap<>();
+    for (ExpatProjectMember member : this.projectMemberFacade.findAllMembers()) {
+      this.membersByProject.computeIfAbsent(member.getProjectId(), id -> new ArrayList<>()).add(member);
     }
-    LOGGER.info("Rolledback {} projects.", projects.size());
+    this.groupMembers = this.hdfsUserFacade.getUserNamesByGroup();
   }
   
-  private void rollbackPermission(ExpatProject project, DistributedFileSystemOps dfso) throws IllegalAccessException,
-    SQLException, InstantiationException, IOException {
-    if (isUnderRemoval(project)) {
-      LOGGER.info("Skipped rollback permission for project={} because it is under removal.", project.getName());
-      return;
-    }
-    LOGGER.info("Rolling back datasets in project={}...", project.getName());
-    List<ExpatDataset> datasetList = this.datasetFacade.findByProjectId(project.getId());
-    for (ExpatDataset dataset : datasetList) {
-      rollbackDataset(dataset, project, dfso);
-    }
+  /**
+   * Permissions of a project to update in the database, as (permission, id) rows, once its hdfs changes succeeded.
+   */
+  private static class PermissionUpdates {
+    private final List<Object[]> datasets = new ArrayList<>();
+    private final List<Object[]> sharedWith = new ArrayList<>();
   }
   
-  private void rollbackDataset(ExpatDataset dataset, ExpatProject project, DistributedFileSystemOps dfso)
-    throws IllegalAccessException, SQLException, InstantiationException, IOException {
-    String datasetGroup = getHdfsGroupName(project.getName(), dataset);
-    String datasetAclGroup = getHdfsAclGroupName(project.getName(), dataset);
-    ExpatHdfsGroup hdfsDatasetGroup = this.hdfsGroupFacade.findByName(datasetGroup);
-    ExpatHdfsGroup hdfsDatasetAclGroup = this.hdfsGroupFacade.findByName(datasetAclGroup);
-    ExpatHdfsInode inode = this.inodeFacade.find(dataset.getInodeId());
-    ExpatHdfsUser hdfsUser = this.hdfsUserFacade.find(inode.getHdfsUser());
-    Path path = new Path(getPath(inode));
-    if (hdfsDatasetGroup == null) {
-      LOGGER.info("Failed to get group={} for dataset in path={}", datasetGroup, path.toString());
-      throw new IllegalStateException("Failed to get group=" + datasetGroup);
+  private Snapshot load(ProjectShard shard, List<ExpatProject> projects) throws SQLException, IllegalAccessException,
+    InstantiationException, ConfigurationException {
+    Set<Integer> projectIds = new HashSet<>();
+    for (ExpatProject project : projects) {
+      projectIds.add(project.getId());
+    }
+    Map<Integer, List<ExpatDataset>> datasetsByProject = new HashMap<>();
+    Set<Integer> datasetIds = new HashSet<>();
+    Set<Long> inodeIds = new HashSet<>();
+    this.datasetFacade.forEachInShard(shard, dataset -> {
+      if (projectIds.contains(dataset.getProjectId())) {
+        datasetsByProject.computeIfAbsent(dataset.getProjectId(), id -> new ArrayList<>()).add(dataset);
+        datasetIds.add(dataset.getId());
+        inodeIds.add(dataset.getInodeId());
+      }
+    });
+    Map<Long, ExpatHdfsInode> inodes = this.inodeFacade.findByIds(inodeIds, JDBCType.BIGINT);
+    if (inodes.size() < inodeIds.size()) {
+      inodeIds.removeAll(inodes.keySet());
+      throw new IllegalStateException("Dataset inodes not found: " + inodeIds);
+    }
+    Set<Integer> hdfsUserIds = new HashSet<>();
+    for (ExpatHdfsInode inode : inodes.values()) {
+      hdfsUserIds.add(inode.getHdfsUser());
+    }
+    Snapshot snapshot = new Snapshot(inodes, this.inodeController.getPaths(inodes.values()),
+      this.hdfsUserFacade.findByIds(hdfsUserIds, JDBCType.INTEGER), this.membersByProject, this.groupMembers);
+    snapshot.datasetsByProject.putAll(datasetsByProject);
+    this.datasetSharedWithFacade.forEachInShard(shard, sharedWith -> {
+      if (datasetIds.contains(sharedWith.getDatasetId())) {
+        snapshot.sharedWithByDataset.computeIfAbsent(sharedWith.getDatasetId(), id -> new ArrayList<>())
+          .add(sharedWith);
+      }
+    });
+    LOGGER.info("Loaded {} datasets of {} projects.", datasetIds.size(), projects.size());
+    return snapshot;
+  }
+  
+  private void fixPermission(ProjectShard shard, List<ExpatProject> shardProjects, HdfsOperationExecutor hdfsOps)
+    throws IllegalAccessException, SQLException, InstantiationException, IOException, ConfigurationException,
+    InterruptedException {
+    List<ExpatProject> projects = new ArrayList<>();
+    for (ExpatProject project : shardProjects) {
+      if (journal != null && journal.isCommitted(String.valueOf(project.getId()))) {
+        LOGGER.info("Skipped project={} because it was already fixed.", project.getName());
+        continue;
+      }
+      projects.add(project);
     }
+    Snapshot snapshot = load(shard, projects);
     
-    if (hdfsDatasetAclGroup != null) {
-      removeGroup(hdfsDatasetAclGroup, dfso);
+    // users and groups are shared by the projects, they are all created before the projects are fixed in parallel
+    Set<String> groups = new LinkedHashSet<>();
+    Set<String> users = new LinkedHashSet<>();
+    for (ExpatProject project : projects) {
+      if (isUnderRemoval(project, snapshot)) {
+        continue;
+      }
+      for (ExpatDataset dataset : snapshot.datasets(project)) {
+        groups.add(getHdfsGroupName(project.getName(), dataset));
+        groups.add(getHdfsAclGroupName(project.getName(), dataset));
+        addTeamUsers(users, datasetTeam(project, dataset, snapshot));
+      }
     }
+    createMissing(groups, users, hdfsOps);
     
-    rollbackPermission(dataset, path, inode, dfso);
+    Map<ExpatProject, CompletableFuture<Void>> pending = new LinkedHashMap<>();
+    Map<ExpatProject, PermissionUpdates> updates = new HashMap<>();
+    int failed;
+    try (BatchWriter datasetWriter = this.datasetFacade.permissionWriter(dryrun);
+         BatchWriter sharedWithWriter = this.datasetSharedWithFacade.permissionWriter(dryrun)) {
+      for (ExpatProject project : projects) {
+        if (isUnderRemoval(project, snapshot)) {
+          LOGGER.info("Skipped fix permission for project={} because it is under removal.", project.getName());
+          commit(project);
+          continue;
+        }
+        LOGGER.info("====================== Fixing project={} ===========================", project.getName());
+        List<HdfsOperation> operations = new ArrayList<>();
+        PermissionUpdates projectUpdates = new PermissionUpdates();
+        for (ExpatDataset dataset : snapshot.datasets(project)) {
+          fixDataset(dataset, project, snapshot, operations, projectUpdates);
+        }
+        updates.put(project, projectUpdates);
+        pending.put(project, submit(project, operations, hdfsOps));
+        commitCompleted(pending, updates, datasetWriter, sharedWithWriter, false);
+      }
+      hdfsOps.await();
+      failed = commitCompleted(pending, updates, datasetWriter, sharedWithWriter, true);
+    }
+    if (failed > 0) {
+      throw new IOException("Failed to fix " + failed + " projects, they are fixed again on the next run.");
+    }
+    LOGGER.info("Fixed {} projects.", projects.size());
+  }
+  
+  private void rollbackPermission(ProjectShard shard, List<ExpatProject> projects, HdfsOperationExecutor hdfsOps)
+    throws IllegalAccessException, SQLException, InstantiationException, IOException, ConfigurationException,
+    InterruptedException {
+    Snapshot snapshot = load(shard, projects);
     
-    List<ExpatProjectMember> datasetTeamCollection = new ArrayList<>();
-    List<ExpatProjectMember> projectMembers = this.projectMemberFacade.findByProjectId(project.getId());
-    datasetTeamCollection.addAll(projectMembers);
+    Set<String> users = new LinkedHashSet<>();
+    for (ExpatProject project : projects) {
+      if (isUnderRemoval(project, snapshot)) {
+        continue;
+      }
+      for (ExpatDataset dataset : snapshot.datasets(project)) {
+        addTeamUsers(users, datasetTeam(project, dataset, snapshot));
+      }
+    }
+    createMissing(Collections.emptySet(), users, hdfsOps);
     
-    List<ExpatDatasetSharedWith> datasetSharedWithList = this.datasetSharedWithFacade.findByDatasetId(dataset.getId());
-    for (ExpatDatasetSharedWith datasetSharedWith : datasetSharedWithList) {
-      if (datasetSharedWith.isAccepted()) {
-        projectMembers = this.projectMemberFacade.findByProjectId(datasetSharedWith.getProject());
-        datasetTeamCollection.addAll(projectMembers);
+    Map<ExpatProject, CompletableFuture<Void>> submitted = new LinkedHashMap<>();
+    for (ExpatProject project : projects) {
+      if (isUnderRemoval(project, snapshot)) {
+        LOGGER.info("Skipped rollback permission for project={} because it is under removal.", project.getName());
+        submitted.put(project, CompletableFuture.completedFuture(null));
+        continue;
+      }
+      LOGGER.info("====================== Rollback project={} ===========================", project.getName());
+      List<HdfsOperation> operations = new ArrayList<>();
+      for (ExpatDataset dataset : snapshot.datasets(project)) {
+        rollbackDataset(dataset, project, snapshot, operations);
+      }
+      submitted.put(project, submit(project, operations, hdfsOps));
+    }
+    Map<String, List<Exception>> errors = hdfsOps.await();
+    for (ExpatProject project : submitted.keySet()) {
+      if (journal != null && !errors.containsKey(project.getName())) {
+        journal.uncommit(String.valueOf(project.getId()));
       }
     }
-    addBackToGroup(datasetTeamCollection, hdfsDatasetGroup, hdfsUser, dfso);
+    if (!errors.isEmpty()) {
+      throw new IOException("Failed to roll back " + errors.size() + " projects, first:" +
+        errors.keySet().iterator().next(), errors.values().iterator().next().get(0));
+    }
+    LOGGER.info("Rolledback {} projects.", projects.size());
   }
   
-  private void addBackToGroup(List<ExpatProjectMember> datasetTeamCollection, ExpatHdfsGroup hdfsDatasetGroup,
-    ExpatHdfsUser hdfsUser, DistributedFileSystemOps dfso) throws SQLException, InstantiationException,
-    IllegalAccessException, IOException {
-    List<ExpatHdfsUser> hdfsDatasetGroupMembers = getMembers(hdfsDatasetGroup);
-    for (ExpatProjectMember projectTeam : datasetTeamCollection) {
-      addBackToGroup(projectTeam, hdfsDatasetGroupMembers, hdfsDatasetGroup, hdfsUser, dfso);
+  /**
+   * Queues the hdfs changes of a project, they run in order on one of the workers.
+   * @return completed once all the changes ran, exceptionally if one of them failed
+   */
+  private CompletableFuture<Void> submit(ExpatProject project, List<HdfsOperation> operations,
+    HdfsOperationExecutor hdfsOps) throws InterruptedException {
+    if (dryrun || operations.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
+    }
+    List<CompletableFuture<Void>> submitted = new ArrayList<>(operations.size());
+    for (HdfsOperation operation : operations) {
+      submitted.add(hdfsOps.submit(project.getName(), operation));
+    }
+    return CompletableFuture.allOf(submitted.toArray(new CompletableFuture[0]));
+  }
+  
+  /**
+   * Updates the permissions in the database, and records in the journal, the projects whose hdfs changes completed
+   * successfully. The database is left untouched for the projects that failed, they are fixed again on the next run.
+   * @param all wait for the changes still running instead of leaving them for a later call
+   * @return the number of projects that failed
+   */
+  private int commitCompleted(Map<ExpatProject, CompletableFuture<Void>> pending,
+    Map<ExpatProject, PermissionUpdates> updates, BatchWriter datasetWriter, BatchWriter sharedWithWriter, boolean all)
+    throws SQLException {
+    int failed = 0;
+    List<ExpatProject> completed = new ArrayList<>();
+    Iterator<Map.Entry<ExpatProject, CompletableFuture<Void>>> it = pending.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<ExpatProject, CompletableFuture<Void>> project = it.next();
+      if (!all && !project.getValue().isDone()) {
+        continue;
+      }
+      PermissionUpdates projectUpdates = updates.remove(project.getKey());
+      if (project.getValue().isCompletedExceptionally()) {
+        LOGGER.error("Failed fixing project={}", project.getKey().getName());
+        failed++;
+      } else {
+        for (Object[] row : projectUpdates.datasets) {
+          datasetWriter.add(row);
+        }
+        for (Object[] row : projectUpdates.sharedWith) {
+          sharedWithWriter.add(row);
+        }
+        completed.add(project.getKey());
+      }
+      it.remove();
+    }
+    datasetWriter.flush();
+    sharedWithWriter.flush();
+    for (ExpatProject project : completed) {
+      commit(project);
+      LOGGER.info("====================== Done Fixing project={} ======================", project.getName());
     }
+    return failed;
   }
   
-  private void addBackToGroup(ExpatProjectMember projectTeam, List<ExpatHdfsUser> hdfsDatasetGroupMembers,
-    ExpatHdfsGroup hdfsDatasetGroup, ExpatHdfsUser owner, DistributedFileSystemOps dfso) throws SQLException,
-    InstantiationException, IOException, IllegalAccessException {
-    if (projectTeam.getUsername().equals("srvmanager")) {
-      return;//Does this user need to be in groups?
+  private void commit(ExpatProject project) {
+    if (journal != null) {
+      journal.commit(String.valueOf(project.getId()));
     }
-    String hdfsUsername = getHdfsUserName(projectTeam.getProjectName(), projectTeam.getUsername());
-    ExpatHdfsUser hdfsUser = getOrCreateUser(hdfsUsername, dfso);
-    if (owner != null && owner.equals(hdfsUser)) {
-      return;
+  }
+  
+  private void createMissing(Set<String> groups, Set<String> users, HdfsOperationExecutor hdfsOps)
+    throws SQLException, InterruptedException, IOException {
+    int created = 0;
+    for (String group : groups) {
+      if (this.referenceData.getHdfsGroup(this.connection, group) == null) {
+        addGroup(group, hdfsOps);
+        created++;
+      }
+    }
+    for (String user : users) {
+      if (this.referenceData.getHdfsUser(this.connection, user) == null) {
+        addUser(user, hdfsOps);
+        created++;
+      }
     }
-    if (!hdfsDatasetGroupMembers.contains(hdfsUser)) {
-      addToGroup(hdfsUser, hdfsDatasetGroup, dfso);
+    if (created > 0 && !dryrun) {
+      hdfsOps.awaitSuccess();
+      this.referenceData.invalidateHdfsUsers();
+      this.referenceData.invalidateHdfsGroups();
+    }
+  }
+  
+  private void rollbackDataset(ExpatDataset dataset, ExpatProject project, Snapshot snapshot,
+    List<HdfsOperation> operations) throws SQLException {
+    String datasetGroup = getHdfsGroupName(project.getName(), dataset);
+    String datasetAclGroup = getHdfsAclGroupName(project.getName(), dataset);
+    Path path = new Path(snapshot.path(dataset));
+    if (this.referenceData.getHdfsGroup(this.connection, datasetGroup) == null) {
+      LOGGER.info("Failed to get group={} for dataset in path={}", datasetGroup, path.toString());
+      throw new IllegalStateException("Failed to get group=" + datasetGroup);
+    }
+    
+    if (this.referenceData.getHdfsGroup(this.connection, datasetAclGroup) != null) {
+      removeGroup(datasetAclGroup, operations);
+    }
+    
+    rollbackPermission(dataset, path, snapshot.inodes.get(dataset.getInodeId()), operations);
+    
+    ExpatHdfsUser owner = snapshot.owner(dataset);
+    Set<String> members = snapshot.groupMembers(datasetGroup);
+    for (ExpatProjectMember projectTeam : datasetTeam(project, dataset, snapshot)) {
+      if (projectTeam.getUsername().equals(SRV_MANAGER)) {
+        continue;//Does this user need to be in groups?
+      }
+      String hdfsUsername = getHdfsUserName(projectTeam.getProjectName(), projectTeam.getUsername());
+      if (isOwner(owner, hdfsUsername)) {
+        continue;
+      }
+      if (!members.contains(hdfsUsername)) {
+        addToGroup(hdfsUsername, datasetGroup, members, operations);
+      }
     }
   }
   
   private void rollbackPermission(ExpatDataset dataset, Path path, ExpatHdfsInode inode,
-    DistributedFileSystemOps dfso) throws IOException {
+    List<HdfsOperation> operations) {
     FsPermission fsPermission = FsPermission.createImmutable(inode.getPermission());
     FsPermission fsPermissionDefault = FsPermissions.rwxr_x___;
     FsPermission fsPermissionServiceDatasetDefault = FsPermissions.rwxrwx___;
@@ -228,114 +490,87 @@ public class FixDatasetPermissionHelper {
     if (isDefaultDataset(dataset.getName())) {
       if (dataset.getName().endsWith(".db") || dataset.getName().equals("TourData") ||
         dataset.getName().equals("TestJob") || dataset.getName().equals(Settings.BaseDataset.LOGS.getName())) {
-        setPermission(fsPermission, fsPermissionServiceDatasetDefaultT, path, dfso);
+        setPermission(fsPermission, fsPermissionServiceDatasetDefaultT, path, operations);
       } else {
-        setPermission(fsPermission, fsPermissionServiceDatasetDefault, path, dfso);
+        setPermission(fsPermission, fsPermissionServiceDatasetDefault, path, operations);
       }
     } else {
-      setPermission(fsPermission, fsPermissionDefault, path, dfso);
+      setPermission(fsPermission, fsPermissionDefault, path, operations);
     }
     
   }
   
   private void setPermission(FsPermission currentPermission, FsPermission fsPermission, Path path,
-    DistributedFileSystemOps dfso) throws IOException {
-    if (!dryrun && !currentPermission.equals(fsPermission)) {
-      dfso.setPermission(path, fsPermission);
-    }
+    List<HdfsOperation> operations) {
     if (!currentPermission.equals(fsPermission)) {
+      operations.add(dfso -> dfso.setPermission(path, fsPermission));
       LOGGER.info("Rolling back permission from={} to={} for dataset in path={}.", currentPermission, fsPermission,
         path);
     }
   }
   
-  private void fixPermission(ExpatProject expatProject, DistributedFileSystemOps dfso) throws IllegalAccessException,
-    SQLException, InstantiationException, IOException {
-    if (isUnderRemoval(expatProject)) {
-      LOGGER.info("Skipped fix permission for project={} because it is under removal.", expatProject.getName());
-      return;
-    }
-    LOGGER.info("Fixing datasets in project={}...", expatProject.getName());
-    List<ExpatDataset> datasetList = this.datasetFacade.findByProjectId(expatProject.getId());
-    for (ExpatDataset dataset : datasetList) {
-      fixDataset(dataset, expatProject, dfso);
-    }
-  }
-  
-  private void fixDataset(ExpatDataset dataset, ExpatProject expatProject, DistributedFileSystemOps dfso )
-    throws IllegalAccessException, SQLException, InstantiationException, IOException {
+  private void fixDataset(ExpatDataset dataset, ExpatProject expatProject, Snapshot snapshot,
+    List<HdfsOperation> operations, PermissionUpdates updates) {
     LOGGER.info("Fixing Dataset={} in project={}", dataset.getName(), expatProject.getName());
-    fixPermission(expatProject, dataset, dfso);
-  }
-  
-  private void fixPermission(ExpatProject expatProject, ExpatDataset dataset, DistributedFileSystemOps dfso)
-    throws IllegalAccessException, SQLException, InstantiationException, IOException {
     String datasetGroup = getHdfsGroupName(expatProject.getName(), dataset);
     String datasetAclGroup = getHdfsAclGroupName(expatProject.getName(), dataset);
-    ExpatHdfsGroup hdfsDatasetGroup = getOrCreateGroup(datasetGroup, dfso);
-    ExpatHdfsGroup hdfsDatasetAclGroup = getOrCreateGroup(datasetAclGroup, dfso);
-    ExpatHdfsInode inode = this.inodeFacade.find(dataset.getInodeId());
-    ExpatHdfsUser hdfsUser = this.hdfsUserFacade.find(inode.getHdfsUser());
-    Path path = new Path(getPath(inode));
-    if (!dryrun && hdfsDatasetGroup == null) {
-      LOGGER.info("Failed to add group={} for dataset in path={}", datasetGroup, path.toString());
-      throw new IllegalStateException("Failed to get group=" + datasetGroup);
-    } else if (hdfsDatasetGroup == null) {
-      hdfsDatasetGroup = new ExpatHdfsGroup();
-      hdfsDatasetGroup.setName(datasetGroup);
-    }
-    if (!dryrun && hdfsDatasetAclGroup == null) {
-      LOGGER.info("Failed to add group={} for dataset in path={}", datasetAclGroup, path.toString());
-      throw new IllegalStateException("Failed to get group=" + datasetAclGroup);
-    } else if (hdfsDatasetAclGroup == null) {
-      hdfsDatasetAclGroup = new ExpatHdfsGroup();
-      hdfsDatasetAclGroup.setName(datasetAclGroup);
-    }
+    Path path = new Path(snapshot.path(dataset));
+    ExpatHdfsUser owner = snapshot.owner(dataset);
     
-    setDatasetAcl(datasetAclGroup, path, dfso);
-  
-    dataset = setPermission(dataset);
+    setDatasetAcl(datasetAclGroup, path, operations);
+    
+    setPermission(dataset, updates);
     
     List<ExpatProjectMember> datasetTeamCollection = new ArrayList<>();
-    List<ExpatProjectMember> projectMembers = this.projectMemberFacade.findByProjectId(expatProject.getId());
+    List<ExpatProjectMember> projectMembers = snapshot.members(expatProject.getId());
     datasetTeamCollection.addAll(projectMembers);
-    testFsPermission(dataset, path, inode, dfso);
-    testAndFixPermissionForAllMembers(projectMembers, dfso, hdfsDatasetGroup, hdfsDatasetAclGroup, hdfsUser,
-      DatasetAccessPermission.valueOf(dataset.getPermission()));
-    List<ExpatDatasetSharedWith> datasetSharedWithList = this.datasetSharedWithFacade.findByDatasetId(dataset.getId());
-    for (ExpatDatasetSharedWith datasetSharedWith : datasetSharedWithList) {
-      setPermission(dataset,datasetSharedWith );
+    testFsPermission(dataset, path, snapshot.inodes.get(dataset.getInodeId()), operations);
+    testAndFixPermissionForAllMembers(projectMembers, snapshot, datasetGroup, datasetAclGroup, owner,
+      DatasetAccessPermission.valueOf(dataset.getPermission()), operations);
+    for (ExpatDatasetSharedWith datasetSharedWith : snapshot.sharedWith(dataset)) {
+      setPermission(dataset, datasetSharedWith, updates);
       if (datasetSharedWith.isAccepted()) {
-        projectMembers = this.projectMemberFacade.findByProjectId(datasetSharedWith.getProject());
+        projectMembers = snapshot.members(datasetSharedWith.getProject());
         datasetTeamCollection.addAll(projectMembers);
-        testAndFixPermissionForAllMembers(projectMembers, dfso, hdfsDatasetGroup, hdfsDatasetAclGroup, null,
-          DatasetAccessPermission.valueOf(datasetSharedWith.getPermission()));
+        testAndFixPermissionForAllMembers(projectMembers, snapshot, datasetGroup, datasetAclGroup, null,
+          DatasetAccessPermission.valueOf(datasetSharedWith.getPermission()), operations);
       }
     }
-    testAndRemoveUsersFromGroup(datasetTeamCollection, hdfsDatasetGroup, hdfsDatasetAclGroup, hdfsUser, dfso);
+    testAndRemoveUsersFromGroup(datasetTeamCollection, snapshot, datasetGroup, datasetAclGroup, owner, operations);
   }
   
-  private ExpatDataset setPermission(ExpatDataset dataset) throws SQLException, InstantiationException,
-    IllegalAccessException {
-    if (dataset.getPublicDs() > 0 && !DatasetAccessPermission.READ_ONLY.getValue().equals(dataset.getPermission())) {
-      if (!dryrun) {
-        datasetFacade.updatePermission(dataset.getId(), DatasetAccessPermission.READ_ONLY.getValue());
-        dataset = datasetFacade.find(dataset.getId());
-      } else {
-        dataset.setPermission(DatasetAccessPermission.READ_ONLY.getValue());
+  /**
+   * @return the members of the project of the dataset and of the projects it is shared with
+   */
+  private List<ExpatProjectMember> datasetTeam(ExpatProject project, ExpatDataset dataset, Snapshot snapshot) {
+    List<ExpatProjectMember> datasetTeamCollection = new ArrayList<>(snapshot.members(project.getId()));
+    for (ExpatDatasetSharedWith datasetSharedWith : snapshot.sharedWith(dataset)) {
+      if (datasetSharedWith.isAccepted()) {
+        datasetTeamCollection.addAll(snapshot.members(datasetSharedWith.getProject()));
       }
-      LOGGER.info("Updated dataset permission for public dataset id={} to read only.", dataset.getId());
+    }
+    return datasetTeamCollection;
+  }
+  
+  private void addTeamUsers(Set<String> users, List<ExpatProjectMember> datasetTeamCollection) {
+    for (ExpatProjectMember projectTeam : datasetTeamCollection) {
+      if (!projectTeam.getUsername().equals(SRV_MANAGER)) {
+        users.add(getHdfsUserName(projectTeam.getProjectName(), projectTeam.getUsername()));
+      }
+    }
+  }
+  
+  private void setPermission(ExpatDataset dataset, PermissionUpdates updates) {
+    if (dataset.getPublicDs() > 0 && !DatasetAccessPermission.READ_ONLY.getValue().equals(dataset.getPermission())) {
+      updates.datasets.add(new Object[]{DatasetAccessPermission.READ_ONLY.getValue(), dataset.getId()});
+      dataset.setPermission(DatasetAccessPermission.READ_ONLY.getValue());
+      LOGGER.info("Updating dataset permission for public dataset id={} to read only.", dataset.getId());
     } else if (isDefaultDataset(dataset.getName()) &&
       !DatasetAccessPermission.EDITABLE.getValue().equals(dataset.getPermission())) {
-      if (!dryrun) {
-        datasetFacade.updatePermission(dataset.getId(), DatasetAccessPermission.EDITABLE.getValue());
-        dataset = datasetFacade.find(dataset.getId());
-      } else {
-        dataset.setPermission(DatasetAccessPermission.EDITABLE.getValue());
-      }
-      LOGGER.info("Updated dataset permission for default dataset id={} to editable.", dataset.getId());
+      updates.datasets.add(new Object[]{DatasetAccessPermission.EDITABLE.getValue(), dataset.getId()});
+      dataset.setPermission(DatasetAccessPermission.EDITABLE.getValue());
+      LOGGER.info("Updating dataset permission for default dataset id={} to editable.", dataset.getId());
     }
-    return dataset;
   }
   
   private boolean isDefaultDataset(String datasetName) {
@@ -353,150 +588,109 @@ public class FixDatasetPermissionHelper {
       datasetName.equals("TestJob") || datasetName.equals("TourData");
   }
   
-  private void setPermission(ExpatDataset dataset, ExpatDatasetSharedWith datasetSharedWith) throws SQLException,
-    InstantiationException, IllegalAccessException {
+  private void setPermission(ExpatDataset dataset, ExpatDatasetSharedWith datasetSharedWith,
+    PermissionUpdates updates) {
     if (dataset.getPublicDs() > 0 &&
       !DatasetAccessPermission.READ_ONLY.getValue().equals(datasetSharedWith.getPermission())) {
-      if (!dryrun) {
-        datasetSharedWithFacade
-          .updatePermission(datasetSharedWith.getId(), DatasetAccessPermission.READ_ONLY.getValue());
-        datasetSharedWith = datasetSharedWithFacade.find(datasetSharedWith.getId());
-      }
-      LOGGER.info("Updated datasetSharedWith permission for shared public dataset id={}", datasetSharedWith.getId());
+      updates.sharedWith.add(new Object[]{DatasetAccessPermission.READ_ONLY.getValue(), datasetSharedWith.getId()});
+      LOGGER.info("Updating datasetSharedWith permission for shared public dataset id={}", datasetSharedWith.getId());
     }
   }
   
-  private void testAndRemoveUsersFromGroup(List<ExpatProjectMember> datasetTeamCollection,
-    ExpatHdfsGroup hdfsDatasetGroup, ExpatHdfsGroup hdfsDatasetAclGroup, ExpatHdfsUser hdfsUser,
-    DistributedFileSystemOps dfso) throws IllegalAccessException, SQLException, InstantiationException, IOException {
+  private void testAndRemoveUsersFromGroup(List<ExpatProjectMember> datasetTeamCollection, Snapshot snapshot,
+    String datasetGroup, String datasetAclGroup, ExpatHdfsUser owner, List<HdfsOperation> operations) {
     //Remove if member is not in team collection
-    List<ExpatHdfsUser> members =  !dryrun? this.hdfsUserFacade.getUsersInGroup(hdfsDatasetGroup) : new ArrayList<>();
-    for (ExpatHdfsUser hdfsUsers : members) {
-      testAndRemoveMember(datasetTeamCollection, hdfsDatasetGroup, hdfsUsers, hdfsUser, dfso);
-    }
-    List<ExpatHdfsUser> aclGroupMembers =  !dryrun? this.hdfsUserFacade.getUsersInGroup(hdfsDatasetAclGroup) :
-      new ArrayList<>();
-    for (ExpatHdfsUser hdfsUsers : aclGroupMembers) {
-      testAndRemoveMember(datasetTeamCollection, hdfsDatasetAclGroup, hdfsUsers, hdfsUser, dfso);
+    Set<String> team = new HashSet<>();
+    for (ExpatProjectMember projectTeam : datasetTeamCollection) {
+      team.add(getHdfsUserName(projectTeam.getProjectName(), projectTeam.getUsername()));
     }
+    testAndRemoveMembers(team, datasetGroup, snapshot.groupMembers(datasetGroup), owner, operations);
+    testAndRemoveMembers(team, datasetAclGroup, snapshot.groupMembers(datasetAclGroup), owner, operations);
   }
   
-  private void testAndRemoveMember(List<ExpatProjectMember> datasetTeamCollection, ExpatHdfsGroup hdfsDatasetGroup,
-    ExpatHdfsUser hdfsUser, ExpatHdfsUser owner, DistributedFileSystemOps dfso) throws IOException {
-    if (hdfsUser == null || hdfsUser.equals(owner)) {
-      return;
-    }
-    boolean found = false;
-    for (ExpatProjectMember projectTeam : datasetTeamCollection) {
-      String hdfsUsername = getHdfsUserName(projectTeam.getProjectName(), projectTeam.getUsername());
-      if (hdfsUser.getName().equals(hdfsUsername)) {
-        found = true;
+  private void testAndRemoveMembers(Set<String> team, String group, Set<String> members, ExpatHdfsUser owner,
+    List<HdfsOperation> operations) {
+    for (String member : new ArrayList<>(members)) {
+      if (!isOwner(owner, member) && !team.contains(member)) {
+        removeFromGroup(member, group, members, operations);
       }
     }
-    if (!found) {
-      removeFromGroup(hdfsUser, hdfsDatasetGroup, dfso);
-    }
   }
   
-  private void removeFromGroup(ExpatHdfsUser hdfsUser, ExpatHdfsGroup hdfsDatasetGroup, DistributedFileSystemOps dfso)
-    throws IOException {
-    if (!dryrun) {
-      dfso.removeUserFromGroup(hdfsUser.getName(), hdfsDatasetGroup.getName());
-    }
-    LOGGER.info("Removed user={} from group={}", hdfsUser.getName(), hdfsDatasetGroup.getName());
+  private boolean isOwner(ExpatHdfsUser owner, String hdfsUsername) {
+    return owner != null && owner.getName().equals(hdfsUsername);
   }
   
-  private void addToGroup(ExpatHdfsUser hdfsUser, ExpatHdfsGroup hdfsDatasetGroup, DistributedFileSystemOps dfso)
-    throws IOException {
-    if (!dryrun) {
-      dfso.addUserToGroup(hdfsUser.getName(), hdfsDatasetGroup.getName());
-    }
-    LOGGER.info("Added user={} to group={}", hdfsUser.getName(), hdfsDatasetGroup.getName());
+  private void removeFromGroup(String hdfsUser, String group, Set<String> members, List<HdfsOperation> operations) {
+    members.remove(hdfsUser);
+    operations.add(dfso -> dfso.removeUserFromGroup(hdfsUser, group));
+    LOGGER.info("Removed user={} from group={}", hdfsUser, group);
   }
   
-  private void removeGroup(ExpatHdfsGroup group, DistributedFileSystemOps dfso) throws IOException {
-    if (!dryrun) {
-      dfso.removeGroup(group.getName());
-    }
-    LOGGER.info("Remove group={}", group.getName());
+  private void addToGroup(String hdfsUser, String group, Set<String> members, List<HdfsOperation> operations) {
+    members.add(hdfsUser);
+    operations.add(dfso -> dfso.addUserToGroup(hdfsUser, group));
+    LOGGER.info("Added user={} to group={}", hdfsUser, group);
+  }
+  
+  private void removeGroup(String group, List<HdfsOperation> operations) {
+    operations.add(dfso -> dfso.removeGroup(group));
+    LOGGER.info("Remove group={}", group);
   }
   
   private String getHdfsUserName(String projectName, String username) {
     return projectName + HdfsUsersController.USER_NAME_DELIMITER + username;
   }
   
-  private void testAndFixPermissionForAllMembers(List<ExpatProjectMember> projectMembers, DistributedFileSystemOps dfso,
-    ExpatHdfsGroup hdfsDatasetGroup, ExpatHdfsGroup hdfsDatasetAclGroup, ExpatHdfsUser hdfsUser,
-    DatasetAccessPermission permission) throws SQLException, InstantiationException, IllegalAccessException,
-    IOException {
-    List<ExpatHdfsUser> hdfsDatasetGroupMembers = getMembers(hdfsDatasetGroup);
-    List<ExpatHdfsUser> hdfsDatasetAclGroupMembers = getMembers(hdfsDatasetAclGroup);
+  private void testAndFixPermissionForAllMembers(List<ExpatProjectMember> projectMembers, Snapshot snapshot,
+    String datasetGroup, String datasetAclGroup, ExpatHdfsUser owner, DatasetAccessPermission permission,
+    List<HdfsOperation> operations) {
+    Set<String> datasetGroupMembers = snapshot.groupMembers(datasetGroup);
+    Set<String> datasetAclGroupMembers = snapshot.groupMembers(datasetAclGroup);
     for (ExpatProjectMember projectTeam : projectMembers) {
-      testAndFixPermission(projectTeam, dfso, hdfsDatasetGroupMembers, hdfsDatasetAclGroupMembers, hdfsDatasetGroup,
-        hdfsDatasetAclGroup, hdfsUser, permission);
-    }
-  }
-  
-  private void testAndFixPermission(ExpatProjectMember projectTeam, DistributedFileSystemOps dfso,
-    List<ExpatHdfsUser> hdfsDatasetGroupMembers, List<ExpatHdfsUser> hdfsDatasetAclGroupMembers,
-    ExpatHdfsGroup hdfsDatasetGroup, ExpatHdfsGroup hdfsDatasetAclGroup, ExpatHdfsUser owner,
-    DatasetAccessPermission permission) throws SQLException, InstantiationException, IOException,
-    IllegalAccessException {
-    if (projectTeam.getUsername().equals("srvmanager")) {
-      return;//Does this user need to be in groups?
-    }
-    String hdfsUsername = getHdfsUserName(projectTeam.getProjectName(), projectTeam.getUsername());
-    ExpatHdfsUser hdfsUser = getOrCreateUser(hdfsUsername, dfso);
-    if (owner != null && owner.equals(hdfsUser)) {
-      return;
-    }
-    switch (permission) {
-      case EDITABLE:
-        if (!hdfsDatasetGroupMembers.contains(hdfsUser)) {
-          addToGroup(hdfsUser, hdfsDatasetGroup, dfso);
-        }
-        if (hdfsDatasetAclGroupMembers.contains(hdfsUser)) {
-          removeFromGroup(hdfsUser, hdfsDatasetAclGroup, dfso);
+      if (projectTeam.getUsername().equals(SRV_MANAGER)) {
+        continue;//Does this user need to be in groups?
+      }
+      String hdfsUsername = getHdfsUserName(projectTeam.getProjectName(), projectTeam.getUsername());
+      if (isOwner(owner, hdfsUsername)) {
+        continue;
+      }
+      boolean editor;
+      switch (permission) {
+        case EDITABLE:
+          editor = true;
+          break;
+        case READ_ONLY:
+          editor = false;
+          break;
+        case EDITABLE_BY_OWNERS:
+          editor = AllowedRoles.DATA_OWNER.equals(projectTeam.getTeamRole());
+          break;
+        default:
+          LOGGER.warn("Found a dataset with an unknown permission: group={}, project={}", datasetGroup,
+            projectTeam.getProjectName());
+          continue;
+      }
+      if (editor) {
+        if (!datasetGroupMembers.contains(hdfsUsername)) {
+          addToGroup(hdfsUsername, datasetGroup, datasetGroupMembers, operations);
         }
-        break;
-      case READ_ONLY:
-        if (hdfsDatasetGroupMembers.contains(hdfsUser)) {
-          removeFromGroup(hdfsUser, hdfsDatasetGroup, dfso);
+        if (datasetAclGroupMembers.contains(hdfsUsername)) {
+          removeFromGroup(hdfsUsername, datasetAclGroup, datasetAclGroupMembers, operations);
         }
-        if (!hdfsDatasetAclGroupMembers.contains(hdfsUser)) {
-          addToGroup(hdfsUser, hdfsDatasetAclGroup, dfso);
+      } else {
+        if (datasetGroupMembers.contains(hdfsUsername)) {
+          removeFromGroup(hdfsUsername, datasetGroup, datasetGroupMembers, operations);
         }
-        break;
-      case EDITABLE_BY_OWNERS:
-        if (AllowedRoles.DATA_OWNER.equals(projectTeam.getTeamRole())) {
-          if (!hdfsDatasetGroupMembers.contains(hdfsUser)) {
-            addToGroup(hdfsUser, hdfsDatasetGroup, dfso);
-          }
-          if (hdfsDatasetAclGroupMembers.contains(hdfsUser)) {
-            removeFromGroup(hdfsUser, hdfsDatasetAclGroup, dfso);
-          }
-        } else {
-          if (hdfsDatasetGroupMembers.contains(hdfsUser)) {
-            removeFromGroup(hdfsUser, hdfsDatasetGroup, dfso);
-          }
-          if (!hdfsDatasetAclGroupMembers.contains(hdfsUser)) {
-            addToGroup(hdfsUser, hdfsDatasetAclGroup, dfso);
-          }
+        if (!datasetAclGroupMembers.contains(hdfsUsername)) {
+          addToGroup(hdfsUsername, datasetAclGroup, datasetAclGroupMembers, operations);
         }
-        break;
-      default:
-        LOGGER.warn("Found a dataset with an unknown permission: group={}, project={}", hdfsDatasetGroup,
-          projectTeam.getProjectName());
+      }
     }
   }
   
-  private List<ExpatHdfsUser> getMembers(ExpatHdfsGroup group) throws IllegalAccessException, SQLException,
-    InstantiationException {
-    return this.hdfsUserFacade.getUsersInGroup(group);
-  }
-  
-  private void testFsPermission(ExpatDataset dataset, Path path, ExpatHdfsInode inode, DistributedFileSystemOps dfso)
-    throws IOException {
+  private void testFsPermission(ExpatDataset dataset, Path path, ExpatHdfsInode inode,
+    List<HdfsOperation> operations) {
     FsPermission fsPermission = FsPermission.createImmutable(inode.getPermission());
     FsPermission fsPermissionReadOnly = FsPermission.createImmutable((short) 00550);
     FsPermission fsPermissionReadOnlyT = FsPermission.createImmutable((short) 01550);
@@ -504,17 +698,17 @@ public class FixDatasetPermissionHelper {
     FsPermission fsPermissionDefaultT = FsPermissions.rwxrwx___T;
     if (dataset.getPublicDs() > 0 && !fsPermissionReadOnly.equals(fsPermission) &&
       !fsPermissionReadOnlyT.equals(fsPermission)) {
-      makeImmutable(path, dfso);
+      makeImmutable(path, operations);
       LOGGER.info("Make public Dataset at path={} immutable.", path.toString());
     }
     if (dataset.getPublicDs() == 0 && !fsPermissionDefault.equals(fsPermission) &&
       !fsPermissionDefaultT.equals(fsPermission)) {
-      undoImmutable(path, dfso);
+      undoImmutable(path, operations);
       LOGGER.info("Set default permission={} for Dataset at path={}.", fsPermissionDefault, path.toString());
     }
   }
   
-  private void makeImmutable(Path path, DistributedFileSystemOps dfso) throws IOException {
+  private void makeImmutable(Path path, List<HdfsOperation> operations) {
     List<AclEntry> aclEntries = new ArrayList<>();
     AclEntry aclEntryUser = new AclEntry.Builder()
       .setType(AclEntryType.USER)
@@ -534,10 +728,10 @@ public class FixDatasetPermissionHelper {
       .setPermission(FsAction.NONE)
       .build();
     aclEntries.add(aclEntryOther);
-    addAcl(aclEntries, path, dfso);
+    addAcl(aclEntries, path, operations);
   }
   
-  private void undoImmutable(Path path, DistributedFileSystemOps dfso) throws IOException {
+  private void undoImmutable(Path path, List<HdfsOperation> operations) {
     List<AclEntry> aclEntries = new ArrayList<>();
     AclEntry aclEntryUser = new AclEntry.Builder()
       .setType(AclEntryType.USER)
@@ -557,10 +751,10 @@ public class FixDatasetPermissionHelper {
       .setPermission(FsAction.NONE)
       .build();
     aclEntries.add(aclEntryOther);
-    addAcl(aclEntries, path, dfso);
+    addAcl(aclEntries, path, operations);
   }
   
-  private void setDatasetAcl(String aclGroup, Path path, DistributedFileSystemOps dfso) throws IOException {
+  private void setDatasetAcl(String aclGroup, Path path, List<HdfsOperation> operations) {
     List<AclEntry> aclEntries = new ArrayList<>();
     AclEntry aclEntryUser = new AclEntry.Builder()
       .setType(AclEntryType.USER)
@@ -594,66 +788,27 @@ public class FixDatasetPermissionHelper {
       .setPermission(FsAction.READ_EXECUTE)
       .build();
     aclEntries.add(aclEntryDefault);
-    addAcl(aclEntries, path, dfso);
-  }
-  
-  private void addAcl(List<AclEntry> aclEntries, Path path, DistributedFileSystemOps dfso) throws IOException {
-    if (!dryrun) {
-      dfso.getFilesystem().setAcl(path, aclEntries);
-    }
-    LOGGER.info("Adding acl={} for Dataset at path={}", aclEntries, path.toString());
+    addAcl(aclEntries, path, operations);
   }
   
-  private String getPath(ExpatHdfsInode inode) throws IllegalAccessException, SQLException, InstantiationException {
-    StringBuilder path = new StringBuilder(inode.getName());
-    ExpatHdfsInode parentInode = this.inodeFacade.find(inode.getParentId());
-    while (parentInode != null) {
-      path.insert(0, parentInode.getName() + File.separator);
-      parentInode = this.inodeFacade.find(parentInode.getParentId());
-    }
-    return path.toString();
-  }
   
-  private ExpatHdfsGroup getOrCreateGroup(String group, DistributedFileSystemOps dfso) throws IllegalAccessException,
-    SQLException, InstantiationException, IOException {
-    ExpatHdfsGroup hdfsGroup = this.hdfsGroupFacade.findByName(group);
-    if (!dryrun && hdfsGroup == null) {
-      addGroup(group, dfso);
-      hdfsGroup = this.hdfsGroupFacade.findByName(group);
-    }
-    return hdfsGroup;
-  }
-  
-  private ExpatHdfsUser getOrCreateUser(String username, DistributedFileSystemOps dfso) throws IllegalAccessException,
-    SQLException, InstantiationException, IOException {
-    ExpatHdfsUser hdfsUser = this.hdfsUserFacade.findByName(username);
-    if (!dryrun && hdfsUser == null) {
-      addUser(username, dfso);
-      hdfsUser = this.hdfsUserFacade.findByName(username);
-    }
-    return hdfsUser;
+  private void addAcl(List<AclEntry> aclEntries, Path path, List<HdfsOperation> operations) {
+    operations.add(dfso -> dfso.getFilesystem().setAcl(path, aclEntries));
+    LOGGER.info("Adding acl={} for Dataset at path={}", aclEntries, path.toString());
   }
   
-  private ExpatHdfsGroup addGroup(String group, DistributedFileSystemOps dfso)
-    throws IOException, IllegalAccessException, SQLException, InstantiationException {
-    ExpatHdfsGroup hdfsGroup = null;
+  private void addGroup(String group, HdfsOperationExecutor hdfsOps) throws InterruptedException {
     if (!dryrun) {
-      dfso.addGroup(group);
-      hdfsGroup = this.hdfsGroupFacade.findByName(group);
+      hdfsOps.submit(group, dfso -> dfso.addGroup(group));
     }
     LOGGER.info("Found and fixed a missing group: group={}", group);
-    return hdfsGroup;
   }
   
-  private ExpatHdfsUser addUser(String username, DistributedFileSystemOps dfso)
-    throws IOException, IllegalAccessException, SQLException, InstantiationException {
-    ExpatHdfsUser hdfsUser = null;
+  private void addUser(String username, HdfsOperationExecutor hdfsOps) throws InterruptedException {
     if (!dryrun) {
-      dfso.addGroup(username);
-      hdfsUser = this.hdfsUserFacade.findByName(username);
+      hdfsOps.submit(username, dfso -> dfso.addGroup(username));
     }
     LOGGER.info("Found and fixed a missing user: username={}", username);
-    return hdfsUser;
   }
   
   private String getHdfsAclGroupName(String projectName, ExpatDataset dataset) {
@@ -664,10 +819,8 @@ public class FixDatasetPermissionHelper {
     return projectName + HdfsUsersController.USER_NAME_DELIMITER + dataset.getName();
   }
   
-  private boolean isUnderRemoval(ExpatProject expatProject) throws IllegalAccessException, SQLException,
-    InstantiationException {
-    List<ExpatProjectMember> members = this.projectMemberFacade.findByProjectId(expatProject.getId());
-    for (ExpatProjectMember member : members) {
+  private boolean isUnderRemoval(ExpatProject expatProject, Snapshot snapshot) {
+    for (ExpatProjectMember member : snapshot.members(expatProject.getId())) {
       if (ProjectRoleTypes.UNDER_REMOVAL.equals(member.getTeamRole())) {
         return true;
       }
@@ -17,171 +17,48 @@
 
 package io.hops.hopsworks.expat.migrations.docker;
 
-import io.hops.hopsworks.expat.db.DbConnectionFactory;
-import io.hops.hopsworks.expat.migrations.MigrateStep;
-import io.hops.hopsworks.expat.migrations.MigrationException;
-import io.hops.hopsworks.expat.migrations.RollbackException;
-import org.apache.commons.configuration2.ex.ConfigurationException;
-import org.json.JSONArray;
-import org.json.JSONObject;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.hops.hopsworks.expat.migrations.jobs.JobConfigStep;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 
+public class JobsDockerCommandArgsMigration extends JobConfigStep {
 
-public class JobsDockerCommandArgsMigration implements MigrateStep {
-
-  private static final Logger LOGGER = LoggerFactory.getLogger(JobsDockerCommandArgsMigration.class);
-  private final static String GET_ALL_DOCKER_CONFIGURATIONS =
-          "SELECT id, json_config FROM jobs WHERE type = ?";
-  private final static String UPDATE_SPECIFIC_JOB_JSON_CONFIG = "UPDATE jobs SET json_config = ? WHERE id = ?";
-  protected Connection connection;
-
-  private void setup() throws SQLException, ConfigurationException {
-    connection = DbConnectionFactory.getConnection();
+  @Override
+  public boolean appliesTo(String jobType) {
+    return "DOCKER".equals(jobType);
   }
 
   @Override
-  public void migrate() throws MigrationException {
-    LOGGER.info("Starting docker jobs command args migration");
-    try {
-      setup();
-    } catch (SQLException | ConfigurationException ex) {
-      String errorMsg = "Could not initialize database connection";
-      LOGGER.error(errorMsg);
-      throw new MigrationException(errorMsg, ex);
+  public void transform(ObjectNode config) {
+    String args;
+    String command;
+    if (config.has("args")) {
+      args = config.get("args").asText();
+      config.remove("args");
+      config.put("defaultArgs", args);
     }
-
-    PreparedStatement getAllDockerJobsStmt = null;
-    PreparedStatement updateJSONConfigStmt = null;
-    try {
-      connection.setAutoCommit(false);
-      getAllDockerJobsStmt = connection.prepareStatement(GET_ALL_DOCKER_CONFIGURATIONS);
-      getAllDockerJobsStmt.setString(1, "DOCKER");
-      ResultSet jobsResultSet = getAllDockerJobsStmt.executeQuery();
-
-      updateJSONConfigStmt = connection.prepareStatement(UPDATE_SPECIFIC_JOB_JSON_CONFIG);
-      while (jobsResultSet.next()) {
-        String args;
-        String command;
-        int id = jobsResultSet.getInt(1);
-        String oldConfig = jobsResultSet.getString(2);
-        if(oldConfig != null) {
-
-          LOGGER.info("Trying to migrate JobID: " + id);
-          JSONObject config = new JSONObject(oldConfig);
-          LOGGER.info("config:" + config);
-          if (config.has("args")) {
-            args = config.getString("args");
-            config.remove("args");
-            config.put("defaultArgs", args);
-          }
-          if (config.has("command")) {
-            command = config.getString("command");
-            config.remove("command");
-            JSONArray commandList = new JSONArray();
-            commandList.put(command);
-            config.put("command", commandList);
-          }
-
-          String newConfig = config.toString();
-          LOGGER.info("newConfig:" + newConfig);
-          LOGGER.info("Successfully migrated JobID: " + id);
-
-          updateJSONConfigStmt.setString(1, newConfig);
-          updateJSONConfigStmt.setInt(2, id);
-          updateJSONConfigStmt.addBatch();
-        }
-      }
-      updateJSONConfigStmt.executeBatch();
-      connection.commit();
-      connection.setAutoCommit(true);
-    } catch(SQLException ex) {
-      String errorMsg = "Could not migrate job configurations";
-      LOGGER.error(errorMsg);
-      throw new MigrationException(errorMsg, ex);
-    } finally {
-      closeConnections(getAllDockerJobsStmt, updateJSONConfigStmt);
+    // an array command is already migrated
+    if (config.has("command") && config.get("command").isTextual()) {
+      command = config.get("command").asText();
+      config.remove("command");
+      config.putArray("command").add(command);
     }
-    LOGGER.info("Finished jobConfig migration");
   }
 
   @Override
-  public void rollback() throws RollbackException {
-    LOGGER.info("Starting docker jobs command args rollback.");
-    try {
-      setup();
-    } catch (SQLException | ConfigurationException ex) {
-      String errorMsg = "Could not initialize database connection";
-      LOGGER.error(errorMsg);
-      throw new RollbackException(errorMsg, ex);
+  public void revert(ObjectNode config) {
+    String defaultArgs;
+    if (config.has("defaultArgs")) {
+      defaultArgs = config.get("defaultArgs").asText();
+      config.remove("defaultArgs");
+      config.put("args", defaultArgs);
     }
-
-    PreparedStatement getAllDockerJobsStmt = null;
-    PreparedStatement updateJSONConfigStmt = null;
-    try {
-      connection.setAutoCommit(false);
-      getAllDockerJobsStmt = connection.prepareStatement(GET_ALL_DOCKER_CONFIGURATIONS);
-      getAllDockerJobsStmt.setString(1, "DOCKER");
-      ResultSet jobsResultSet = getAllDockerJobsStmt.executeQuery();
-
-      updateJSONConfigStmt = connection.prepareStatement(UPDATE_SPECIFIC_JOB_JSON_CONFIG);
-      while (jobsResultSet.next()) {
-        String defaultArgs;
-        int id = jobsResultSet.getInt(1);
-        String oldConfig = jobsResultSet.getString(2);
-        if(oldConfig != null) {
-
-          LOGGER.info("Trying to rollback JobID: " + id);
-          JSONObject config = new JSONObject(oldConfig);
-
-          if (config.has("defaultArgs")) {
-            defaultArgs = config.getString("defaultArgs");
-            config.remove("defaultArgs");
-            config.put("args", defaultArgs);
-          }
-          if (config.has("command")) {
-            JSONArray command = config.getJSONArray("command");
-            if (command != null && command.length() > 0) {
-              config.put("command", command.getString(0));
-            }
-          }
-          
-          String newConfig = config.toString();
-          LOGGER.info("Successfully rollbacked JobID: " + id);
-
-          updateJSONConfigStmt.setString(1, newConfig);
-          updateJSONConfigStmt.setInt(2, id);
-          updateJSONConfigStmt.addBatch();
-        }
-      }
-      updateJSONConfigStmt.executeBatch();
-      connection.commit();
-      connection.setAutoCommit(true);
-    } catch(SQLException ex) {
-      String errorMsg = "Could not rollback job configurations";
-      LOGGER.error(errorMsg);
-      throw new RollbackException(errorMsg, ex);
-    } finally {
-      closeConnections(getAllDockerJobsStmt, updateJSONConfigStmt);
-    }
-    LOGGER.info("Finished jobConfig rollback");
-  }
-
-  private void closeConnections(PreparedStatement stmt1, PreparedStatement stmt2) {
-    try {
-      if(stmt1 != null) {
-        stmt1.close();
-      }
-      if(stmt2 != null) {
-        stmt2.close();
+    if (config.has("command")) {
+      JsonNode command = config.get("command");
+      if (command.isArray() && command.size() > 0) {
+        config.put("command", command.get(0).asText());
       }
-    } catch(SQLException ex) {
-      //do nothing
     }
   }
 }
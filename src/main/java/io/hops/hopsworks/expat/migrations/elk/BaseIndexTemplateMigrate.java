@@ -16,11 +16,13 @@
  */
 package io.hops.hopsworks.expat.migrations.elk;
 
+import com.google.common.collect.Sets;
 import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
 import io.hops.hopsworks.expat.configuration.ExpatConf;
 import io.hops.hopsworks.expat.elastic.ElasticClient;
 import io.hops.hopsworks.expat.migrations.MigrateStep;
 import io.hops.hopsworks.expat.migrations.MigrationException;
+import io.hops.hopsworks.expat.migrations.MigrationResource;
 import io.hops.hopsworks.expat.migrations.RollbackException;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.ex.ConfigurationException;
@@ -38,6 +40,7 @@ import java.io.IOException;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Set;
 
 public class BaseIndexTemplateMigrate implements MigrateStep  {
   private static final Logger LOGGER = LoggerFactory.getLogger(BaseIndexTemplateMigrate.class);
@@ -122,6 +125,14 @@ public class BaseIndexTemplateMigrate implements MigrateStep  {
       .build();
   }
   
+  @Override
+  public Set<MigrationResource> resources() {
+    return Sets.newHashSet(
+      MigrationResource.index("_template/" + PROJECTS_INDEX),
+      MigrationResource.index("_template/" + FEATURESTORE_INDEX),
+      MigrationResource.index("_template/" + APP_PROVENANCE_INDEX));
+  }
+  
   @Override
   public void migrate() throws MigrationException {
     try {
@@ -16,9 +16,11 @@
  */
 package io.hops.hopsworks.expat.migrations.elk.snapshot;
 
+import com.google.common.collect.Sets;
 import io.hops.hopsworks.expat.configuration.ExpatConf;
 import io.hops.hopsworks.expat.elastic.ElasticClient;
 import io.hops.hopsworks.expat.migrations.MigrationException;
+import io.hops.hopsworks.expat.migrations.MigrationResource;
 import io.hops.hopsworks.expat.migrations.RollbackException;
 import org.apache.commons.configuration2.ex.ConfigurationException;
 
@@ -27,6 +29,7 @@ import java.net.URISyntaxException;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Set;
 
 public class CreateSnapshotRepo extends SnapshotRepo {
   
@@ -44,6 +47,11 @@ public class CreateSnapshotRepo extends SnapshotRepo {
       snapshotRepoName, snapshotRepoLocation);
   }
   
+  @Override
+  public Set<MigrationResource> resources() {
+    return Sets.newHashSet(MigrationResource.index("_snapshot"));
+  }
+  
   @Override
   public void migrate() throws MigrationException {
     Throwable tAux = null;
@@ -16,12 +16,14 @@
  */
 package io.hops.hopsworks.expat.migrations.elk.snapshot;
 
+import com.google.common.collect.Sets;
 import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
 import io.hops.hopsworks.expat.configuration.ExpatConf;
 import io.hops.hopsworks.expat.db.DbConnectionFactory;
 import io.hops.hopsworks.expat.elastic.ElasticClient;
 import io.hops.hopsworks.expat.migrations.MigrateStep;
 import io.hops.hopsworks.expat.migrations.MigrationException;
+import io.hops.hopsworks.expat.migrations.MigrationResource;
 import io.hops.hopsworks.expat.migrations.RollbackException;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.ex.ConfigurationException;
@@ -44,6 +46,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.LinkedList;
+import java.util.Set;
 
 public class SnapshotProvenanceIndices implements MigrateStep {
   private final static Logger LOGGER = LoggerFactory.getLogger(SnapshotProvenanceIndices.class);
@@ -114,6 +117,18 @@ public class SnapshotProvenanceIndices implements MigrateStep {
     }
   }
   
+  @Override
+  public Set<Class<? extends MigrateStep>> dependsOn() {
+    return Sets.newHashSet(CreateSnapshotRepo.class);
+  }
+  
+  @Override
+  public Set<MigrationResource> resources() {
+    return Sets.newHashSet(
+      MigrationResource.index("_snapshot"),
+      MigrationResource.index("*__file_prov"));
+  }
+  
   @Override
   public void migrate() throws MigrationException {
     Throwable tAux = null;
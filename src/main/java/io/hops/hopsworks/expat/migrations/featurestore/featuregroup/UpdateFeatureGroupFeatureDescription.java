@@ -17,18 +17,22 @@
 
 package io.hops.hopsworks.expat.migrations.featurestore.featuregroup;
 
+import com.google.common.collect.Sets;
 import io.hops.hopsworks.common.hdfs.DistributedFileSystemOps;
 import io.hops.hopsworks.common.provenance.core.dto.ProvCoreDTO;
 import io.hops.hopsworks.common.provenance.core.dto.ProvTypeDTO;
 import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
 import io.hops.hopsworks.expat.configuration.ExpatConf;
-import io.hops.hopsworks.expat.db.DbConnectionFactory;
+import io.hops.hopsworks.expat.db.dao.ReferenceDataCache;
+import io.hops.hopsworks.expat.db.dao.project.ExpatProject;
+import io.hops.hopsworks.expat.db.dao.user.ExpatUser;
 import io.hops.hopsworks.expat.epipe.EpipeRunner;
 import io.hops.hopsworks.expat.migrations.MigrateStep;
+import io.hops.hopsworks.expat.migrations.MigrationContext;
 import io.hops.hopsworks.expat.migrations.MigrationException;
+import io.hops.hopsworks.expat.migrations.MigrationResource;
 import io.hops.hopsworks.expat.migrations.RollbackException;
 import io.hops.hopsworks.expat.migrations.projects.search.featurestore.FeaturegroupXAttr;
-import io.hops.hopsworks.expat.migrations.projects.util.HopsClient;
 import io.hops.hopsworks.expat.migrations.projects.util.XAttrException;
 import io.hops.hopsworks.expat.migrations.projects.util.XAttrHelper;
 import org.apache.commons.configuration2.Configuration;
@@ -48,6 +52,7 @@ import org.opensearch.common.CheckedBiConsumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Set;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import java.io.IOException;
@@ -89,9 +94,6 @@ public class UpdateFeatureGroupFeatureDescription implements MigrateStep {
   private final static int GET_HIVE_MANAGED_FEATUREGROUPS_S_LOCATION = 6;
   private final static int GET_HIVE_MANAGED_FEATUREGROUPS_S_ID = 7;
   
-  private final static String GET_USER = "SELECT email FROM users WHERE uid=?";
-  private final static int GET_USER_W_ID = 1;
-  private final static int GET_USER_S_EMAIL = 1;
   private final static String GET_FG_DESCRIPTION =
     "SELECT PARAM_VALUE FROM metastore.TABLE_PARAMS " +
       "WHERE TBL_ID=? AND PARAM_KEY=?";
@@ -108,9 +110,6 @@ public class UpdateFeatureGroupFeatureDescription implements MigrateStep {
   private final static int GET_FG_FEATURES_W_TBL_ID = 1;
   private final static int GET_FG_FEATURES_S_NAME = 1;
   private final static int GET_FG_FEATURES_S_COMMENT = 2;
-  private final static String GET_PROJECT = "SELECT inode_name FROM project WHERE id=?";
-  private final static int GET_PROJECT_W_ID = 1;
-  private final static int GET_PROJECT_S_NAME = 1;
   private final static String INSERT_CACHED_FG_DESC = "INSERT INTO cached_feature " +
     "(cached_feature_group_id, name, description) VALUES (?,?,?)";
   private final static int INSERT_CACHED_FG_DESC_W_FG_ID = 1;
@@ -138,6 +137,8 @@ public class UpdateFeatureGroupFeatureDescription implements MigrateStep {
     "_hoodie_partition_path", "_hoodie_commit_time", "_hoodie_file_name", "_hoodie_commit_seqno");
   
   protected Connection connection = null;
+  private ReferenceDataCache referenceData;
+  // shared through the context, not closed by the step
   DistributedFileSystemOps dfso = null;
   private String hopsUser;
   SimpleDateFormat formatter;
@@ -151,21 +152,22 @@ public class UpdateFeatureGroupFeatureDescription implements MigrateStep {
   private CloseableHttpClient httpClient;
   private String epipeLocation;
   
-  private void setup()
+  private void setup(MigrationContext context)
     throws ConfigurationException, SQLException, JAXBException, KeyStoreException, NoSuchAlgorithmException,
            KeyManagementException {
     formatter = new SimpleDateFormat("yyyy-M-dd hh:mm:ss", Locale.ENGLISH);
     jaxbContextMigrate = jaxbContextMigrate();
     jaxbContextRollback = jaxbContextRollback();
     
-    connection = DbConnectionFactory.getConnection();
+    connection = context.getConnection();
+    referenceData = context.getReferenceData();
     
     Configuration conf = ConfigurationBuilder.getConfiguration();
     hopsUser = conf.getString(ExpatConf.HOPS_CLIENT_USER);
     if (hopsUser == null) {
       throw new ConfigurationException(ExpatConf.HOPS_CLIENT_USER + " cannot be null");
     }
-    dfso = HopsClient.getDFSO(hopsUser);
+    dfso = context.getDfso(hopsUser);
     dryrun = conf.getBoolean(ExpatConf.DRY_RUN);
   
     String elasticURI = conf.getString(ExpatConf.ELASTIC_URI);
@@ -201,16 +203,28 @@ public class UpdateFeatureGroupFeatureDescription implements MigrateStep {
     if(connection != null) {
       connection.close();
     }
-    if(dfso != null) {
-      dfso.close();
-    }
+  }
+  
+  @Override
+  public Set<MigrationResource> resources() {
+    return Sets.newHashSet(
+      MigrationResource.table("cached_feature"),
+      MigrationResource.table("cached_features"),
+      MigrationResource.hdfs("/apps/hive/warehouse"));
   }
   
   @Override
   public void migrate() throws MigrationException {
+    try (MigrationContext context = new MigrationContext()) {
+      migrate(context);
+    }
+  }
+  
+  @Override
+  public void migrate(MigrationContext context) throws MigrationException {
     LOGGER.info("featuregroup feature description migration");
     try {
-      setup();
+      setup(context);
       connection.setAutoCommit(false);
       if(dryrun) {
         traverseElements(dryRunCachedFG(), dryRunOnDemandFG());
@@ -234,9 +248,16 @@ public class UpdateFeatureGroupFeatureDescription implements MigrateStep {
   
   @Override
   public void rollback() throws RollbackException {
+    try (MigrationContext context = new MigrationContext()) {
+      rollback(context);
+    }
+  }
+  
+  @Override
+  public void rollback(MigrationContext context) throws RollbackException {
     LOGGER.info("featuregroup feature description rollback");
     try {
-      setup();
+      setup(context);
       connection.setAutoCommit(false);
       if(dryrun) {
         traverseElements(dryRunCachedFG(), dryRunOnDemandFG());
@@ -516,11 +537,6 @@ public class UpdateFeatureGroupFeatureDescription implements MigrateStep {
     return stmt;
   }
   
-  private PreparedStatement getFGUserStmt(int userId) throws SQLException {
-    PreparedStatement stmt = connection.prepareStatement(GET_USER);
-    stmt.setInt(GET_USER_W_ID, userId);
-    return stmt;
-  }
   private PreparedStatement getFGDescriptionStmt(ResultSet allFSFeaturegroupsResultSet) throws SQLException {
     PreparedStatement stmt = connection.prepareStatement(GET_FG_DESCRIPTION);
     stmt.setInt(GET_FG_DESCRIPTION_W_TBL_ID,
@@ -539,26 +555,12 @@ public class UpdateFeatureGroupFeatureDescription implements MigrateStep {
     stmt.setInt(GET_ON_DEMAND_FG_FEATURES_W_ID, fgId);
     return stmt;
   }
-  private PreparedStatement getProjectStmt(ResultSet allFeaturestoresResultSet) throws SQLException {
-    PreparedStatement stmt = connection.prepareStatement(GET_PROJECT);
-    stmt.setInt(GET_PROJECT_W_ID, allFeaturestoresResultSet.getInt(GET_ALL_FEATURESTORES_S_PROJECT_ID));
-    return stmt;
-  }
   private String getCreator(int userId) throws SQLException {
-    PreparedStatement fgUserStmt = null;
-    try {
-      fgUserStmt = getFGUserStmt(userId);
-      ResultSet fgUserResultSet = fgUserStmt.executeQuery();
-      if (fgUserResultSet.next()) {
-        return fgUserResultSet.getString(GET_USER_S_EMAIL);
-      } else {
-        throw new IllegalStateException("featuregroup creator not found");
-      }
-    } finally {
-      if(fgUserStmt != null) {
-        fgUserStmt.close();
-      }
+    ExpatUser user = referenceData.getUser(connection, userId);
+    if (user == null) {
+      throw new IllegalStateException("featuregroup creator not found");
     }
+    return user.getEmail();
   }
   
   private String getDescription(ResultSet allFSFeaturegroupsResultSet) throws SQLException {
@@ -653,20 +655,12 @@ public class UpdateFeatureGroupFeatureDescription implements MigrateStep {
   }
   
   private String getProjectName(ResultSet allFeaturestoreResultSet) throws SQLException {
-    PreparedStatement projectStmt = null;
-    try {
-      projectStmt = getProjectStmt(allFeaturestoreResultSet);
-      ResultSet projectsResultSet = projectStmt.executeQuery();
-      if (projectsResultSet.next()) {
-        return projectsResultSet.getString(GET_PROJECT_S_NAME);
-      } else {
-        throw new IllegalStateException("project parent not found");
-      }
-    } finally {
-      if(projectStmt != null) {
-        projectStmt.close();
-      }
+    ExpatProject project = referenceData.getProject(connection,
+      allFeaturestoreResultSet.getInt(GET_ALL_FEATURESTORES_S_PROJECT_ID));
+    if (project == null) {
+      throw new IllegalStateException("project parent not found");
     }
+    return project.getName();
   }
   
   
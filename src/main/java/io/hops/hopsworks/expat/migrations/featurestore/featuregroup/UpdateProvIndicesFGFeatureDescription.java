@@ -16,36 +16,41 @@
  */
 package io.hops.hopsworks.expat.migrations.featurestore.featuregroup;
 
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.lambdista.util.Try;
 import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
 import io.hops.hopsworks.expat.configuration.ExpatConf;
-import io.hops.hopsworks.expat.db.DbConnectionFactory;
 import io.hops.hopsworks.expat.elastic.ElasticClient;
+import io.hops.hopsworks.expat.elastic.ElasticReindexer;
 import io.hops.hopsworks.expat.epipe.EpipeRunner;
 import io.hops.hopsworks.expat.migrations.MigrateStep;
+import io.hops.hopsworks.expat.migrations.MigrationContext;
 import io.hops.hopsworks.expat.migrations.MigrationException;
+import io.hops.hopsworks.expat.migrations.MigrationResource;
 import io.hops.hopsworks.expat.migrations.RollbackException;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.ex.ConfigurationException;
 import org.apache.http.HttpHost;
-import org.apache.http.client.config.CookieSpecs;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.ssl.SSLContextBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.net.URISyntaxException;
-import java.security.KeyManagementException;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
+import java.security.GeneralSecurityException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Function;
 
 public class UpdateProvIndicesFGFeatureDescription implements MigrateStep {
@@ -102,15 +107,19 @@ public class UpdateProvIndicesFGFeatureDescription implements MigrateStep {
   private HttpHost elastic;
   private String elasticUser;
   private String elasticPass;
+  // shared through the context, not closed by the step
   private CloseableHttpClient httpClient;
+  private ElasticReindexer reindexer;
+  private boolean aliasMode;
   
-  private void setup()
-    throws ConfigurationException, KeyStoreException, NoSuchAlgorithmException, SQLException, KeyManagementException {
+  private void setup(MigrationContext context)
+    throws ConfigurationException, GeneralSecurityException, SQLException {
     Configuration conf = ConfigurationBuilder.getConfiguration();
   
     dryrun = conf.getBoolean(ExpatConf.DRY_RUN);
+    aliasMode = conf.getBoolean(ExpatConf.ELASTIC_REINDEX_ALIAS_MODE, ExpatConf.ELASTIC_REINDEX_ALIAS_MODE_DEFAULT);
   
-    connection = DbConnectionFactory.getConnection();
+    connection = context.getConnection();
     
     String elasticURI = conf.getString(ExpatConf.ELASTIC_URI);
     if (elasticURI == null) {
@@ -127,13 +136,8 @@ public class UpdateProvIndicesFGFeatureDescription implements MigrateStep {
       throw new ConfigurationException(ExpatConf.ELASTIC_PASS_KEY + " cannot be null");
     }
   
-    httpClient = HttpClients
-      .custom()
-      .setDefaultRequestConfig(RequestConfig.custom().setCookieSpec(
-        CookieSpecs.IGNORE_COOKIES).build())
-      .setSSLContext(new SSLContextBuilder().loadTrustMaterial((x509Certificates, s) -> true).build())
-      .setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE)
-      .build();
+    httpClient = context.getHttpClient(elastic);
+    reindexer = context.getElasticReindexer(elastic, elasticUser, elasticPass);
   }
   
   private void close() throws SQLException {
@@ -142,11 +146,26 @@ public class UpdateProvIndicesFGFeatureDescription implements MigrateStep {
     }
   }
   
+  @Override
+  public Set<MigrationResource> resources() {
+    return Sets.newHashSet(
+      MigrationResource.index("*__file_prov"),
+      MigrationResource.index("temp_*__file_prov"),
+      MigrationResource.index("*__file_prov_v*"));
+  }
+  
   @Override
   public void migrate() throws MigrationException {
+    try (MigrationContext context = new MigrationContext()) {
+      migrate(context);
+    }
+  }
+  
+  @Override
+  public void migrate(MigrationContext context) throws MigrationException {
     LOGGER.info("provenance indices - description re-mapping");
     try {
-      setup();
+      setup(context);
     
       if(dryrun) {
         traverseProvIndices((indexName) -> {
@@ -156,7 +175,7 @@ public class UpdateProvIndicesFGFeatureDescription implements MigrateStep {
       } else {
         EpipeRunner.waitForEpipeIdle(connection);
         EpipeRunner.stopEpipe();
-        traverseProvIndices(processIndex("migrate", migrateScript));
+        processIndices("migrate", migrateScript, false);
         EpipeRunner.restartEpipe();
       }
     } catch (Throwable e) {
@@ -172,9 +191,16 @@ public class UpdateProvIndicesFGFeatureDescription implements MigrateStep {
   
   @Override
   public void rollback() throws RollbackException {
+    try (MigrationContext context = new MigrationContext()) {
+      rollback(context);
+    }
+  }
+  
+  @Override
+  public void rollback(MigrationContext context) throws RollbackException {
     LOGGER.info("featuregroup feature description rollback");
     try {
-      setup();
+      setup(context);
       if(dryrun) {
         traverseProvIndices((indexName) -> {
           LOGGER.info("rollback prov index:{}", indexName);
@@ -182,7 +208,7 @@ public class UpdateProvIndicesFGFeatureDescription implements MigrateStep {
         });
       } else {
         EpipeRunner.stopEpipe();
-        traverseProvIndices(processIndex("rollback", rollbackScript));
+        processIndices("rollback", rollbackScript, true);
         EpipeRunner.restartEpipe();
       }
     } catch (Throwable e) {
@@ -236,25 +262,75 @@ public class UpdateProvIndicesFGFeatureDescription implements MigrateStep {
     }
   }
   
-  private Function<String, Try<String>> processIndex(String type, String script) {
-    return (String indexName) -> {
-      try {
-        if(!ElasticClient.indexExists(httpClient, elastic, elasticUser, elasticPass, indexName)) {
-          LOGGER.info("skipping project as prov index:{} does not exit", indexName);
-        } else {
-          LOGGER.info("{} prov index:{}", type, indexName);
-          ElasticClient.reindex(httpClient, elastic, elasticUser, elasticPass, indexName, "temp_" + indexName, script);
-          LOGGER.info("{} prov index:{} restructured mapping", type, indexName);
-          ElasticClient.deleteIndex(httpClient, elastic, elasticUser, elasticPass, indexName);
-          Thread.sleep(2000);
-          ElasticClient.reindex(httpClient, elastic, elasticUser, elasticPass, "temp_" + indexName, indexName);
-          ElasticClient.deleteIndex(httpClient, elastic, elasticUser, elasticPass, "temp_" + indexName);
-          LOGGER.info("{} prov index:{} completed", type, indexName);
+  /**
+   * Rewrites the prov indices, as many at once as the reindexer runs reindexes. Each index goes through its own
+   * reindex to a temp index and back, so that at most that many temp indices exist at a time.
+   * In alias mode each index is instead copied once into a new version that replaces it behind an alias with the name
+   * of the index. The rollback points the alias back to the version kept by the migration when there is one. The
+   * first migration of an index deletes the original index, which is then copied back with the rollback script.
+   */
+  private void processIndices(String type, String script, boolean rollback) throws Throwable {
+    ExecutorService executor = Executors.newFixedThreadPool(reindexer.getMaxConcurrent(),
+      new ThreadFactoryBuilder().setNameFormat("expat-prov-index-%d").setDaemon(true).build());
+    List<CompletableFuture<Void>> indices = new ArrayList<>();
+    try {
+      traverseProvIndices(indexName -> {
+        indices.add(CompletableFuture.runAsync(() -> {
+          try {
+            processIndex(type, script, rollback, indexName);
+          } catch (IOException e) {
+            throw new CompletionException(e);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+          }
+        }, executor));
+        return new Try.Success<>("submitted");
+      });
+      CompletableFuture.allOf(indices.toArray(new CompletableFuture[0])).get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof CompletionException && cause.getCause() != null ? cause.getCause() : cause;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+  
+  private void processIndex(String type, String script, boolean rollback, String indexName)
+    throws IOException, InterruptedException {
+    if(!ElasticClient.indexExists(httpClient, elastic, elasticUser, elasticPass, indexName)) {
+      LOGGER.info("skipping project as prov index:{} does not exit", indexName);
+    } else {
+      LOGGER.info("{} prov index:{}", type, indexName);
+      if (!aliasMode) {
+        copyBack(type, script, indexName);
+        return;
+      }
+      Optional<String> version;
+      if (!rollback) {
+        version = Optional.of(reindexer.rewrite(indexName, Optional.of(script)));
+      } else {
+        version = reindexer.restorePreviousVersion(indexName);
+        if (!version.isPresent()) {
+          // the migrated version is not one to go back to, so it is not kept
+          version = Optional.of(reindexer.rewrite(indexName, Optional.of(script), false));
         }
-        return new Try.Success<>("done");
-      } catch(IOException | URISyntaxException | InterruptedException e) {
-        return new Try.Failure<>(e);
       }
-    };
+      LOGGER.info("{} prov index:{} completed, now backed by:{}", type, indexName, version.get());
+    }
+  }
+  
+  /**
+   * An index left behind an alias by a rewrite in alias mode is turned back into a plain index, the versions behind
+   * the alias are deleted once copied.
+   */
+  private void copyBack(String type, String script, String indexName) throws IOException, InterruptedException {
+    reindexer.reindex(indexName, "temp_" + indexName, Optional.of(script));
+    LOGGER.info("{} prov index:{} restructured mapping", type, indexName);
+    ElasticClient.deleteIndexVersions(httpClient, elastic, elasticUser, elasticPass, indexName);
+    Thread.sleep(2000);
+    reindexer.reindex("temp_" + indexName, indexName, Optional.empty());
+    ElasticClient.deleteIndex(httpClient, elastic, elasticUser, elasticPass, "temp_" + indexName);
+    LOGGER.info("{} prov index:{} completed", type, indexName);
   }
 }
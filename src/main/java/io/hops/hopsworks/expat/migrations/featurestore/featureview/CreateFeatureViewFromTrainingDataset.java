@@ -10,10 +10,13 @@ import io.hops.hopsworks.common.featurestore.xattr.dto.FeaturestoreXAttrsConstan
 import io.hops.hopsworks.common.provenance.core.dto.ProvCoreDTO;
 import io.hops.hopsworks.common.provenance.core.dto.ProvTypeDTO;
 import io.hops.hopsworks.expat.db.dao.hdfs.inode.ExpatHdfsInode;
+import io.hops.hopsworks.expat.db.dao.hdfs.inode.ExpatXAttrReader;
 import io.hops.hopsworks.expat.migrations.MigrationException;
 import io.hops.hopsworks.expat.migrations.RollbackException;
 import io.hops.hopsworks.expat.migrations.projects.util.XAttrException;
 import io.hops.hopsworks.expat.migrations.projects.util.XAttrHelper;
+import io.hops.hopsworks.expat.migrations.projects.util.XAttrWriteFilter;
+import org.apache.commons.configuration2.ex.ConfigurationException;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.eclipse.persistence.jaxb.JAXBContextFactory;
@@ -77,12 +80,20 @@ public class CreateFeatureViewFromTrainingDataset extends FeatureStoreMigration
           "?, ?, ?, ?" +
           ")";
   private JAXBContext jaxbContext;
+  // feature view xattrs left by a previous run are not rewritten
+  private XAttrWriteFilter xattrWrites;
 
   public CreateFeatureViewFromTrainingDataset() throws JAXBException {
     super();
     jaxbContext = jaxbContextMigrate();
   }
 
+  @Override
+  protected void setup() throws ConfigurationException, SQLException {
+    super.setup();
+    xattrWrites = new XAttrWriteFilter(ExpatXAttrReader.create(connection, dfso));
+  }
+
   public void runMigration() throws MigrationException {
     // 1. Get all td
     // 2. Create fv from td
@@ -94,6 +105,9 @@ public class CreateFeatureViewFromTrainingDataset extends FeatureStoreMigration
       PreparedStatement getTrainingDatasetsStatement = connection.prepareStatement(GET_ALL_TRAINING_DATASETS);
       PreparedStatement insertFeatureViewStatement =
           connection.prepareStatement(INSERT_FEATURE_VIEW, Statement.RETURN_GENERATED_KEYS);
+      if (!dryRun) {
+        prefetchXAttrs(getTrainingDatasetsStatement);
+      }
       ResultSet trainingDatasets = getTrainingDatasetsStatement.executeQuery();
       Integer n = 0;
       while (trainingDatasets.next()) {
@@ -145,9 +159,12 @@ public class CreateFeatureViewFromTrainingDataset extends FeatureStoreMigration
       }
       insertFeatureViewStatement.close();
       getTrainingDatasetsStatement.close();
+      xattrWrites.checkVerified();
       connection.commit();
       connection.setAutoCommit(true);
       LOGGER.info(n + " training dataset records have been updated.");
+      LOGGER.info(xattrWrites.getApplied() + " feature view xattrs written, " + xattrWrites.getSkipped()
+          + " skipped as unchanged.");
     } catch (SQLException e) {
       throw new MigrationException("Migration failed. Cannot commit.", e);
     } finally {
@@ -261,7 +278,7 @@ public class CreateFeatureViewFromTrainingDataset extends FeatureStoreMigration
         val = sw.toString().getBytes();
       }
       if (!dryRun) {
-        XAttrHelper.upsertProvXAttr(dfso, featureViewFullPath,
+        XAttrHelper.upsertProvXAttrIfChanged(dfso, xattrWrites, featureViewFullPath,
             FeaturestoreXAttrsConstants.FEATURESTORE, val);
       }
     } catch (JAXBException | XAttrException e) {
@@ -351,6 +368,23 @@ public class CreateFeatureViewFromTrainingDataset extends FeatureStoreMigration
     return new Path(String.format(PATH_TO_FEATURE_VIEW, projectName, projectName));
   }
 
+  /**
+   * Reads the featurestore xattrs of the feature views about to be created with batched queries, the feature view
+   * directories of a project are siblings but every project has its own.
+   */
+  private void prefetchXAttrs(PreparedStatement getTrainingDatasetsStatement) throws MigrationException {
+    List<String> paths = new ArrayList<>();
+    try (ResultSet trainingDatasets = getTrainingDatasetsStatement.executeQuery()) {
+      while (trainingDatasets.next()) {
+        paths.add(getFeatureViewFullPath(trainingDatasets.getString("projectname"),
+            trainingDatasets.getString("name"), trainingDatasets.getInt("version")).toString());
+      }
+      xattrWrites.prefetch(paths, "provenance." + FeaturestoreXAttrsConstants.FEATURESTORE);
+    } catch (SQLException | IllegalAccessException | InstantiationException e) {
+      throw new MigrationException("Could not read the feature view xattrs", e);
+    }
+  }
+
   private Path getFeatureViewFullPath(String projectName, String featureViewName, Integer featureViewVersion) {
     return new Path(getFeatureViewPath(projectName),
         featureViewName + "_" + featureViewVersion);
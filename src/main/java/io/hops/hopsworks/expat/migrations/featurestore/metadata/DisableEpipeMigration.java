@@ -17,18 +17,22 @@
 
 package io.hops.hopsworks.expat.migrations.featurestore.metadata;
 
-import io.hops.hopsworks.common.hdfs.DistributedFileSystemOps;
 import io.hops.hopsworks.common.provenance.core.ProvXAttrs;
 import io.hops.hopsworks.common.provenance.core.Provenance;
 import io.hops.hopsworks.common.provenance.core.dto.ProvCoreDTO;
 import io.hops.hopsworks.common.provenance.core.dto.ProvTypeDTO;
 import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
 import io.hops.hopsworks.expat.configuration.ExpatConf;
-import io.hops.hopsworks.expat.db.DbConnectionFactory;
-import io.hops.hopsworks.expat.migrations.MigrateStep;
+import io.hops.hopsworks.expat.db.dao.hdfs.inode.ExpatXAttrReader;
+import io.hops.hopsworks.expat.db.dao.project.ExpatProject;
+import io.hops.hopsworks.expat.db.dao.project.ExpatProjectFacade;
+import io.hops.hopsworks.expat.migrations.MigrationContext;
+import io.hops.hopsworks.expat.migrations.ProjectShard;
+import io.hops.hopsworks.expat.migrations.ProjectShardedStep;
 import io.hops.hopsworks.expat.migrations.MigrationException;
 import io.hops.hopsworks.expat.migrations.RollbackException;
-import io.hops.hopsworks.expat.migrations.projects.util.HopsClient;
+import io.hops.hopsworks.expat.migrations.projects.util.HdfsOperationExecutor;
+import io.hops.hopsworks.expat.migrations.projects.util.XAttrWriteFilter;
 import io.hops.hopsworks.persistence.entity.hdfs.inode.Inode;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.ex.ConfigurationException;
@@ -43,21 +47,19 @@ import org.slf4j.LoggerFactory;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
-import java.io.IOException;
 import java.io.StringWriter;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
-public class DisableEpipeMigration implements MigrateStep {
+public class DisableEpipeMigration implements ProjectShardedStep {
   private final static Logger LOGGER = LoggerFactory.getLogger(DisableEpipeMigration.class);
   
-  private final static String GET_PROJECTS = "SELECT id, projectname FROM project";
-  private final static int GET_PROJECTS_S_ID = 1;
-  private final static int GET_PROJECTS_S_NAME = 2;
   private final static String GET_DATASETS = "SELECT inode_name FROM dataset WHERE projectId=?";
   private final static int GET_DATASETS_S_NAME = 1;
   private final static int GET_DATASETS_W_PROJ_ID = 1;
@@ -68,25 +70,30 @@ public class DisableEpipeMigration implements MigrateStep {
   private final static String UPDATE_VARIABLES = "UPDATE variables SET value=? WHERE id=?";
   private final static int UPDATE_VARIABLES_W_VALUE = 1;
   private final static int UPDATE_VARIABLES_W_ID = 2;
+  private final static String PROV_CORE_XATTR = "provenance." + ProvXAttrs.PROV_XATTR_CORE_VAL;
   
   protected Connection connection = null;
   private String hopsUser;
   boolean dryrun = false;
-  DistributedFileSystemOps dfso = null;
+  // namenode operations are pipelined, per path, over the shared clients of the hops user
+  private HdfsOperationExecutor hdfsOps;
+  // provenance core xattrs that already hold the target type are not rewritten
+  private XAttrWriteFilter xattrWrites;
   
   private JAXBContext context;
   Marshaller marshaller;
   
-  private void setup()
+  private void setup(MigrationContext migrationContext)
     throws ConfigurationException, SQLException, JAXBException {
-    connection = DbConnectionFactory.getConnection();
+    connection = migrationContext.getConnection();
     Configuration conf = ConfigurationBuilder.getConfiguration();
     hopsUser = conf.getString(ExpatConf.HOPS_CLIENT_USER);
     if (hopsUser == null) {
       throw new ConfigurationException(ExpatConf.HOPS_CLIENT_USER + " cannot be null");
     }
     dryrun = conf.getBoolean(ExpatConf.DRY_RUN);
-    dfso = HopsClient.getDFSO(hopsUser);
+    hdfsOps = HdfsOperationExecutor.forUser(migrationContext.getDfsoProvider(), hopsUser);
+    xattrWrites = new XAttrWriteFilter(ExpatXAttrReader.create(connection, migrationContext.getDfso(hopsUser)));
     
     Map<String, Object> properties = new HashMap<>();
     properties.put(MarshallerProperties.JSON_INCLUDE_ROOT, false);
@@ -100,6 +107,9 @@ public class DisableEpipeMigration implements MigrateStep {
   }
   
   private void close() throws SQLException {
+    if(hdfsOps != null) {
+      hdfsOps.close();
+    }
     if(connection != null) {
       connection.close();
     }
@@ -107,9 +117,16 @@ public class DisableEpipeMigration implements MigrateStep {
   
   @Override
   public void migrate() throws MigrationException {
+    try (MigrationContext migrationContext = new MigrationContext()) {
+      migrate(migrationContext);
+    }
+  }
+  
+  @Override
+  public void migrate(MigrationContext migrationContext) throws MigrationException {
     LOGGER.info("epipe disable migration");
     try {
-      setup();
+      setup(migrationContext);
       connection.setAutoCommit(false);
       updateVariable("DISABLED");
       traverseElements(migrateProject(), migrateDataset(), dryrun);
@@ -127,9 +144,16 @@ public class DisableEpipeMigration implements MigrateStep {
   
   @Override
   public void rollback() throws RollbackException {
+    try (MigrationContext migrationContext = new MigrationContext()) {
+      rollback(migrationContext);
+    }
+  }
+  
+  @Override
+  public void rollback(MigrationContext migrationContext) throws RollbackException {
     LOGGER.info("epipe disable tag rollback");
     try {
-      setup();
+      setup(migrationContext);
       connection.setAutoCommit(false);
       updateVariable("FULL");
       traverseElements(rollbackProject(), rollbackDataset(), dryrun);
@@ -149,6 +173,7 @@ public class DisableEpipeMigration implements MigrateStep {
     Integer projectId;
     String projectName;
     Long projectInodeId;
+    List<String> datasetNames = new ArrayList<>();
     String datasetName;
   }
   private void traverseElements(CheckedConsumer<ProcessState, Exception> projectAction,
@@ -161,45 +186,71 @@ public class DisableEpipeMigration implements MigrateStep {
       ResultSet rootProjInodeSet = rootProjInodeStmt.executeQuery();
       if(rootProjInodeSet.next()) {
         Long rootProjectInodeId = rootProjInodeSet.getLong(GET_PROJECT_INODE_S_ID);
-        try (PreparedStatement projStmt = connection.prepareStatement(GET_PROJECTS)) {
-          ResultSet projResultSet = projStmt.executeQuery();
-          while (projResultSet.next()) {
-            ProcessState state = new ProcessState();
-            state.projectId = projResultSet.getInt(GET_PROJECTS_S_ID);
-            state.projectName = projResultSet.getString(GET_PROJECTS_S_NAME);
-            LOGGER.info("project:{}", state.projectName);
-            try (PreparedStatement projInodeStmt = connection.prepareStatement(GET_PROJECT_INODE)) {
-              projInodeStmt.setLong(GET_PROJECT_INODE_W_PARENT_ID, rootProjectInodeId);
-              projInodeStmt.setString(GET_PROJECT_INODE_W_NAME, state.projectName);
-              ResultSet projInodeResultSet = projInodeStmt.executeQuery();
-              if (projInodeResultSet.next()) {
-                state.projectInodeId = projInodeResultSet.getLong(GET_PROJECT_INODE_S_ID);
-                LOGGER.info("project inode:{}", state.projectInodeId);
-                if (!dryRun) {
-                  projectAction.accept(state);
-                }
-                try (PreparedStatement datasetStmt = connection.prepareStatement(GET_DATASETS)) {
-                  datasetStmt.setInt(GET_DATASETS_W_PROJ_ID, state.projectId);
-                  ResultSet datasetResultSet = datasetStmt.executeQuery();
-                  while (datasetResultSet.next()) {
-                    state.datasetName = datasetResultSet.getString(GET_DATASETS_S_NAME);
-                    LOGGER.info("dataset:{}", state.datasetName);
-                    if (!dryRun) {
-                      datasetAction.accept(state);
-                    }
-                  }
-                  datasetResultSet.close();
-                }
-              }
-              projInodeResultSet.close();
+        ExpatProjectFacade projectFacade = new ExpatProjectFacade(ExpatProject.class, connection);
+        ProjectShard.forEachLeased(projectFacade, (shard, shardProjects) ->
+          traverseShard(shardProjects, rootProjectInodeId, projectAction, datasetAction, dryRun));
+        //the variable is updated by every worker, also when all the shards were leased by others
+        connection.commit();
+        LOGGER.info("provenance xattrs written:{} skipped as unchanged:{}", xattrWrites.getApplied(),
+          xattrWrites.getSkipped());
+      }
+      rootProjInodeSet.close();
+    }
+  }
+  
+  private void traverseShard(List<ExpatProject> shardProjects, Long rootProjectInodeId,
+                             CheckedConsumer<ProcessState, Exception> projectAction,
+                             CheckedConsumer<ProcessState, Exception> datasetAction,
+                             boolean dryRun)
+    throws Exception {
+    List<ProcessState> projects = new ArrayList<>();
+    for (ExpatProject project : shardProjects) {
+      ProcessState state = new ProcessState();
+      state.projectId = project.getId();
+      state.projectName = project.getName();
+      try (PreparedStatement projInodeStmt = connection.prepareStatement(GET_PROJECT_INODE)) {
+        projInodeStmt.setLong(GET_PROJECT_INODE_W_PARENT_ID, rootProjectInodeId);
+        projInodeStmt.setString(GET_PROJECT_INODE_W_NAME, state.projectName);
+        ResultSet projInodeResultSet = projInodeStmt.executeQuery();
+        if (projInodeResultSet.next()) {
+          state.projectInodeId = projInodeResultSet.getLong(GET_PROJECT_INODE_S_ID);
+          try (PreparedStatement datasetStmt = connection.prepareStatement(GET_DATASETS)) {
+            datasetStmt.setInt(GET_DATASETS_W_PROJ_ID, state.projectId);
+            ResultSet datasetResultSet = datasetStmt.executeQuery();
+            while (datasetResultSet.next()) {
+              state.datasetNames.add(datasetResultSet.getString(GET_DATASETS_S_NAME));
             }
+            datasetResultSet.close();
           }
-          projResultSet.close();
-          connection.commit();
+          projects.add(state);
+        } else {
+          LOGGER.info("project:{} has no inode", state.projectName);
+        }
+        projInodeResultSet.close();
+      }
+    }
+    if (!dryRun) {
+      //the project directories are spread over the partitions of /Projects, their xattrs are read in bulk
+      xattrWrites.prefetch(shardPaths(projects), PROV_CORE_XATTR);
+    }
+    for (ProcessState state : projects) {
+      LOGGER.info("project:{}", state.projectName);
+      LOGGER.info("project inode:{}", state.projectInodeId);
+      if (!dryRun) {
+        projectAction.accept(state);
+      }
+      for (String datasetName : state.datasetNames) {
+        state.datasetName = datasetName;
+        LOGGER.info("dataset:{}", state.datasetName);
+        if (!dryRun) {
+          datasetAction.accept(state);
         }
       }
-      rootProjInodeSet.close();
     }
+    //the variable update is committed only once every namenode operation of the shard succeeded
+    hdfsOps.awaitSuccess();
+    xattrWrites.checkVerified();
+    connection.commit();
   }
   
   private void updateVariable(String value) throws SQLException {
@@ -210,6 +261,17 @@ public class DisableEpipeMigration implements MigrateStep {
     }
   }
   
+  private List<String> shardPaths(List<ProcessState> projects) {
+    List<String> paths = new ArrayList<>();
+    for (ProcessState state : projects) {
+      paths.add(projectPath(state.projectName));
+      for (String datasetName : state.datasetNames) {
+        paths.add(datasetPath(state.projectName, datasetName));
+      }
+    }
+    return paths;
+  }
+  
   private String projectPath(String projectName) {
     return "/Projects/" + projectName;
   }
@@ -239,7 +301,7 @@ public class DisableEpipeMigration implements MigrateStep {
   private CheckedConsumer<ProcessState, Exception> migrateDataset() {
     return state -> {
       Path path = new Path(datasetPath(state.projectName, state.datasetName));
-      dfso.setMetaStatus(path, Inode.MetaStatus.DISABLED);
+      setMetaStatus(path, Inode.MetaStatus.DISABLED);
       setXAttr(path, new ProvCoreDTO(Provenance.Type.DISABLED.dto, state.projectInodeId));
     };
   }
@@ -249,10 +311,10 @@ public class DisableEpipeMigration implements MigrateStep {
       Path path = new Path(datasetPath(state.projectName, state.datasetName));
       if (state.datasetName.equals(state.projectName + "_Training_Datasets") ||
         state.datasetName.equals(state.projectName.toLowerCase() + "_featurestore.db")) {
-        dfso.setMetaStatus(path, Inode.MetaStatus.FULL_PROV_ENABLED);
+        setMetaStatus(path, Inode.MetaStatus.FULL_PROV_ENABLED);
         setXAttr(path, new ProvCoreDTO(Provenance.Type.FULL.dto, state.projectInodeId));
       } else if (state.datasetName.equals(state.projectName.toLowerCase() + ".db")) {
-        dfso.setMetaStatus(path, Inode.MetaStatus.META_ENABLED);
+        setMetaStatus(path, Inode.MetaStatus.META_ENABLED);
         setXAttr(path, new ProvCoreDTO(Provenance.Type.META.dto, state.projectInodeId));
       } else {
         switch (state.datasetName) {
@@ -260,13 +322,13 @@ public class DisableEpipeMigration implements MigrateStep {
           case "Resources":
           case "Statistics":
           case "Docker": {
-            dfso.setMetaStatus(path, Inode.MetaStatus.DISABLED);
+            setMetaStatus(path, Inode.MetaStatus.DISABLED);
             setXAttr(path, new ProvCoreDTO(Provenance.Type.DISABLED.dto, state.projectInodeId));
           }
             break;
           case "Models":
           case "Experiments": {
-            dfso.setMetaStatus(path, Inode.MetaStatus.FULL_PROV_ENABLED);
+            setMetaStatus(path, Inode.MetaStatus.FULL_PROV_ENABLED);
             setXAttr(path, new ProvCoreDTO(Provenance.Type.FULL.dto, state.projectInodeId));
           }
             break;
@@ -274,16 +336,27 @@ public class DisableEpipeMigration implements MigrateStep {
           case "DataValidation":
           case "Airflow":
           default:
-            dfso.setMetaStatus(path, Inode.MetaStatus.META_ENABLED);
+            setMetaStatus(path, Inode.MetaStatus.META_ENABLED);
             setXAttr(path, new ProvCoreDTO(Provenance.Type.META.dto, state.projectInodeId));
         }
       }
     };
   }
   
-  private void setXAttr(Path path, ProvCoreDTO xattr) throws JAXBException, IOException {
-    String provType = marshal(xattr);
-    dfso.setXAttr(path, "provenance." + ProvXAttrs.PROV_XATTR_CORE_VAL, provType.getBytes());
+  private void setMetaStatus(Path path, Inode.MetaStatus metaStatus) throws InterruptedException {
+    hdfsOps.submit(path.toString(), dfso -> dfso.setMetaStatus(path, metaStatus));
+  }
+  
+  private void setXAttr(Path path, ProvCoreDTO xattr)
+    throws JAXBException, InterruptedException, SQLException, MigrationException {
+    byte[] provType = marshal(xattr).getBytes();
+    if (xattrWrites.isUnchanged(path.toString(), PROV_CORE_XATTR, provType)) {
+      return;
+    }
+    hdfsOps.submit(path.toString(), dfso -> {
+      dfso.setXAttr(path, PROV_CORE_XATTR, provType);
+      xattrWrites.written(path.toString(), PROV_CORE_XATTR, provType);
+    });
   }
   
   public <V> String marshal(V obj) throws JAXBException {
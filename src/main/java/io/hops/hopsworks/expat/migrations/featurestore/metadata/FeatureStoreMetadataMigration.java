@@ -24,11 +24,16 @@ import io.hops.hopsworks.common.hdfs.DistributedFileSystemOps;
 import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
 import io.hops.hopsworks.expat.configuration.ExpatConf;
 import io.hops.hopsworks.expat.db.DbConnectionFactory;
-import io.hops.hopsworks.expat.migrations.MigrateStep;
+import io.hops.hopsworks.expat.db.dao.hdfs.inode.ExpatXAttrReader;
+import io.hops.hopsworks.expat.db.dao.project.ExpatProject;
+import io.hops.hopsworks.expat.db.dao.project.ExpatProjectFacade;
+import io.hops.hopsworks.expat.migrations.ProjectShard;
+import io.hops.hopsworks.expat.migrations.ProjectShardedStep;
 import io.hops.hopsworks.expat.migrations.MigrationException;
 import io.hops.hopsworks.expat.migrations.RollbackException;
 import io.hops.hopsworks.expat.migrations.projects.util.HopsClient;
 import io.hops.hopsworks.expat.migrations.projects.util.XAttrHelper;
+import io.hops.hopsworks.expat.migrations.projects.util.XAttrWriteFilter;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.ex.ConfigurationException;
 import org.apache.commons.io.Charsets;
@@ -51,12 +56,9 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
-public class FeatureStoreMetadataMigration implements MigrateStep {
+public class FeatureStoreMetadataMigration implements ProjectShardedStep {
   private final static Logger LOGGER = LoggerFactory.getLogger(FeatureStoreMetadataMigration.class);
   
-  private final static String GET_PROJECTS = "SELECT id, projectname from project";
-  private final static int GET_PROJECTS_S_ID = 1;
-  private final static int GET_PROJECTS_S_NAME = 2;
   private final static String GET_FS = "SELECT id, name FROM feature_store WHERE project_id=?";
   private final static int GET_FS_S_ID = 1;
   private final static int GET_FS_S_NAME = 2;
@@ -100,6 +102,8 @@ public class FeatureStoreMetadataMigration implements MigrateStep {
   SimpleDateFormat formatter;
   boolean dryrun = false;
   DistributedFileSystemOps dfso = null;
+  ExpatXAttrReader xattrReader;
+  XAttrWriteFilter xattrWrites;
   
   private void setup()
     throws ConfigurationException, SQLException {
@@ -115,6 +119,8 @@ public class FeatureStoreMetadataMigration implements MigrateStep {
     dryrun = conf.getBoolean(ExpatConf.DRY_RUN);
   
     dfso = HopsClient.getDFSO(hopsUser);
+    xattrReader = ExpatXAttrReader.create(connection, dfso);
+    xattrWrites = new XAttrWriteFilter(xattrReader);
   }
   
   private void close() throws SQLException {
@@ -129,7 +135,7 @@ public class FeatureStoreMetadataMigration implements MigrateStep {
     try {
       setup();
       connection.setAutoCommit(false);
-      traverseElements(migrateTags(dryrun), migrateKeywords(dryrun));
+      traverseElements(migrateTags(dryrun), migrateKeywords(dryrun), false);
       connection.setAutoCommit(true);
     } catch (Throwable e) {
       throw new MigrationException("error", e);
@@ -148,7 +154,9 @@ public class FeatureStoreMetadataMigration implements MigrateStep {
     try {
       setup();
       connection.setAutoCommit(false);
-      traverseElements(rollbackTags(dryrun), rollbackKeywords(dryrun));
+      traverseElements(rollbackTags(dryrun), rollbackKeywords(dryrun), !dryrun);
+      LOGGER.info("feature store tag xattrs written:{} skipped as unchanged:{}", xattrWrites.getApplied(),
+        xattrWrites.getSkipped());
       connection.setAutoCommit(true);
     } catch (Throwable e) {
       throw new RollbackException("error", e);
@@ -185,7 +193,8 @@ public class FeatureStoreMetadataMigration implements MigrateStep {
   }
   
   private void traverseElements(CheckedBiConsumer<ProcessState, ResultSet, Exception> tagAction,
-                                CheckedBiConsumer<ProcessState, ResultSet, Exception> keywordAction)
+                                CheckedBiConsumer<ProcessState, ResultSet, Exception> keywordAction,
+                                boolean prefetchXAttrs)
     throws Exception {
     BiMap<String, Integer> schemas = HashBiMap.create();
     try(PreparedStatement schemasStmt = connection.prepareStatement(GET_SCHEMAS)) {
@@ -196,28 +205,59 @@ public class FeatureStoreMetadataMigration implements MigrateStep {
         schemas.put(name, id);
       }
     }
-    try(PreparedStatement projStmt = connection.prepareStatement(GET_PROJECTS)) {
-      ResultSet projResultSet = projStmt.executeQuery();
-      while (projResultSet.next()) {
-        Integer projectId = projResultSet.getInt(GET_PROJECTS_S_ID);
-        String projectName = projResultSet.getString(GET_PROJECTS_S_NAME);
-        try(PreparedStatement fsStmt = connection.prepareStatement(GET_FS)) {
-          fsStmt.setInt(GET_FS_W_PROJECT_ID, projectId);
-          ResultSet fsResultSet = fsStmt.executeQuery();
-          while (fsResultSet.next()) {
-            Integer fsId = fsResultSet.getInt(GET_FS_S_ID);
-            String fsName = fsResultSet.getString(GET_FS_S_NAME);
-            ProcessState state = new ProcessState(projectName, fsId, fsName, schemas);
-            processArtifact(state.withArtifact("feature_group"), tagAction, keywordAction);
-            processArtifact(state.withArtifact("feature_view"), tagAction, keywordAction);
-            processArtifact(state.withArtifact("training_dataset"), tagAction, keywordAction);
-          }
-          fsResultSet.close();
+    ExpatProjectFacade projectFacade = new ExpatProjectFacade(ExpatProject.class, connection);
+    ProjectShard.forEachLeased(projectFacade, (shard, shardProjects) ->
+      traverseShard(shardProjects, schemas, tagAction, keywordAction, prefetchXAttrs));
+  }
+  
+  private void traverseShard(List<ExpatProject> shardProjects, BiMap<String, Integer> schemas,
+                             CheckedBiConsumer<ProcessState, ResultSet, Exception> tagAction,
+                             CheckedBiConsumer<ProcessState, ResultSet, Exception> keywordAction,
+                             boolean prefetchXAttrs)
+    throws Exception {
+    List<ProcessState> featureStores = new ArrayList<>();
+    for (ExpatProject project : shardProjects) {
+      String projectName = project.getName();
+      try(PreparedStatement fsStmt = connection.prepareStatement(GET_FS)) {
+        fsStmt.setInt(GET_FS_W_PROJECT_ID, project.getId());
+        ResultSet fsResultSet = fsStmt.executeQuery();
+        while (fsResultSet.next()) {
+          Integer fsId = fsResultSet.getInt(GET_FS_S_ID);
+          String fsName = fsResultSet.getString(GET_FS_S_NAME);
+          featureStores.add(new ProcessState(projectName, fsId, fsName, schemas));
         }
+        fsResultSet.close();
       }
-      projResultSet.close();
-      connection.commit();
     }
+    if (prefetchXAttrs) {
+      prefetchXAttrs(featureStores);
+    }
+    for (ProcessState state : featureStores) {
+      processArtifact(state.withArtifact("feature_group"), tagAction, keywordAction);
+      processArtifact(state.withArtifact("feature_view"), tagAction, keywordAction);
+      processArtifact(state.withArtifact("training_dataset"), tagAction, keywordAction);
+    }
+    xattrReader.checkVerified();
+    connection.commit();
+  }
+  
+  /**
+   * Reads the tags and keywords of all the artifacts of the feature stores with batched queries, ahead of the
+   * rollback rewriting them.
+   */
+  private void prefetchXAttrs(List<ProcessState> featureStores) throws Exception {
+    List<String> paths = new ArrayList<>();
+    CheckedBiConsumer<ProcessState, ResultSet, Exception> collectPath = (ProcessState state, ResultSet artifact) ->
+      paths.add(getArtifactPath(state.artifactType, state.projectName, state.fsName,
+        artifact.getString(GET_ARTIFACT_S_NAME), artifact.getInt(GET_ARTIFACT_S_VERSION)));
+    CheckedBiConsumer<ProcessState, ResultSet, Exception> skip = (ProcessState state, ResultSet artifact) -> { };
+    for (ProcessState state : featureStores) {
+      processArtifact(state.withArtifact("feature_group"), collectPath, skip);
+      processArtifact(state.withArtifact("feature_view"), collectPath, skip);
+      processArtifact(state.withArtifact("training_dataset"), collectPath, skip);
+    }
+    xattrWrites.prefetch(paths, "user.tags");
+    xattrWrites.prefetch(paths, "user.keywords");
   }
   
   private String getArtifactStmt(String artifactType) {
@@ -231,7 +271,7 @@ public class FeatureStoreMetadataMigration implements MigrateStep {
         String name = artifact.getString(GET_ARTIFACT_S_NAME);
         int version = artifact.getInt(GET_ARTIFACT_S_VERSION);
         String path = getArtifactPath(state.artifactType, state.projectName, state.fsName, name, version);
-        Map<String, String> tags = readTags(XAttrHelper.getXAttr(dfso, path, "user", "tags"));
+        Map<String, String> tags = readTags(xattrReader.getXAttr(path, "user.tags"));
         for (Map.Entry<String, String> tag : tags.entrySet()) {
           Integer schemaId = state.schemas.get(tag.getKey());
           if (schemaId == null) {
@@ -264,7 +304,7 @@ public class FeatureStoreMetadataMigration implements MigrateStep {
         String name = artifact.getString(GET_ARTIFACT_S_NAME);
         int version = artifact.getInt(GET_ARTIFACT_S_VERSION);
         String path = getArtifactPath(state.artifactType, state.projectName, state.fsName, name, version);
-        Set<String> keywords = readKeywords(XAttrHelper.getXAttr(dfso, path, "user", "keywords"));
+        Set<String> keywords = readKeywords(xattrReader.getXAttr(path, "user.keywords"));
         for (String keyword : keywords) {
           LOGGER.info("project:" + state.projectName + " " + state.artifactType
             + "<" + id + "," + name + "," + version + "> keyword:" + keyword);
@@ -315,7 +355,7 @@ public class FeatureStoreMetadataMigration implements MigrateStep {
           resultSet.close();
         }
         if(!dryRun && !tags.isEmpty()) {
-          XAttrHelper.insertXAttr(dfso, path, "user", "tags", writeTags(tags));
+          XAttrHelper.upsertXAttrIfChanged(dfso, xattrWrites, path, "user", "tags", writeTags(tags));
           for (Integer tagId : toDelete) {
             try (PreparedStatement deleteTagStmt = connection.prepareStatement(DELETE_TAGS)) {
               deleteTagStmt.setInt(DELETE_TAGS_W_ID, tagId);
@@ -353,7 +393,8 @@ public class FeatureStoreMetadataMigration implements MigrateStep {
           resultSet.close();
         }
         if(!dryRun && !keywords.isEmpty()) {
-          XAttrHelper.insertXAttr(dfso, path, "user", "keywords", writeKeywords(keywords));
+          XAttrHelper.upsertXAttrIfChanged(dfso, xattrWrites, path, "user", "keywords",
+            writeKeywords(keywords));
           for (Integer keywordId : toDelete) {
             try (PreparedStatement deleteKeywordStmt = connection.prepareStatement(DELETE_KEYWORDS)) {
               deleteKeywordStmt.setInt(DELETE_KEYWORDS_W_ID, keywordId);
@@ -17,13 +17,21 @@ package io.hops.hopsworks.expat.migrations.featurestore.statistics;
  *
  */
 
-import org.json.JSONArray;
-import org.json.JSONException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import org.json.JSONObject;
-import org.opensearch.common.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -32,6 +40,7 @@ import java.util.List;
 public class ExpatFeatureDescriptiveStatistics {
   
   protected static final Logger LOGGER = LoggerFactory.getLogger(ExpatFeatureDescriptiveStatistics.class);
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
   
   public Integer id;
   public String featureType;
@@ -61,121 +70,233 @@ public class ExpatFeatureDescriptiveStatistics {
   // histogram, correlations, kll <- from hdfs file
   public String extendedStatistics;
   
-  public static Collection<ExpatFeatureDescriptiveStatistics> parseStatisticsJsonString(String content) {
-    if (Strings.isNullOrEmpty(content)) {
-      LOGGER.info(String.format("[parseStatisticsJsonString] file content is null or empty"));
-      return null;
-    }
-    try {
-      JSONObject jsonContent = new JSONObject(content);
-      if (!jsonContent.has("columns")) {
-        LOGGER.info(String.format("[parseStatisticsJsonString] statistics json does not contain a 'columns' key"));
+  /**
+   * Parses a legacy statistics file while it is read. The descriptive statistics of each column are set on the
+   * entity, the extended statistics (correlations, histogram, kll and unique values) are copied token by token into
+   * {@link #extendedStatistics}, so no json tree of the file is built.
+   * @return the statistics per feature, null if the content is empty or not a valid statistics json
+   */
+  public static Collection<ExpatFeatureDescriptiveStatistics> parseStatistics(InputStream content) throws IOException {
+    try (JsonParser parser = JSON_FACTORY.createParser(content)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        LOGGER.info(String.format("[parseStatistics] file content is empty or not a json object"));
         return null;
       }
-      JSONArray columns = jsonContent.getJSONArray("columns");
-      HashMap<String, ExpatFeatureDescriptiveStatistics> descFdsMap = new HashMap<>();
-      for (int i = 0; i < columns.length(); i++) {
-        JSONObject colStats = (JSONObject) columns.get(i);
-        ExpatFeatureDescriptiveStatistics fds = ExpatFeatureDescriptiveStatistics.fromJSON(colStats);
-        descFdsMap.merge(fds.featureName, fds, (fds1, fds2) -> ExpatFeatureDescriptiveStatistics.merge(fds1, fds2));
+      HashMap<String, ExpatFeatureDescriptiveStatistics> descFdsMap = null;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        if (parser.nextToken() == JsonToken.START_ARRAY && field.equals("columns")) {
+          descFdsMap = new HashMap<>();
+          for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+            if (token != JsonToken.START_OBJECT) {
+              throw new JsonParseException(parser, "statistics of a column should be a json object");
+            }
+            ExpatFeatureDescriptiveStatistics fds = parseColumn(parser);
+            descFdsMap.merge(fds.featureName, fds, ExpatFeatureDescriptiveStatistics::merge);
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
+      if (descFdsMap == null) {
+        LOGGER.info(String.format("[parseStatistics] statistics json does not contain a 'columns' key"));
+        return null;
       }
       return descFdsMap.values();
-    } catch (JSONException e) {
-      LOGGER.info(String.format("[parseStatisticsJsonString] file content is not a valid JSON"));
+    } catch (JsonProcessingException e) {
+      LOGGER.info(String.format("[parseStatistics] file content is not a valid JSON: %s", e.getOriginalMessage()));
       return null;
     }
   }
   
-  public static ExpatFeatureDescriptiveStatistics fromJSON(JSONObject statsJson) {
+  /**
+   * Reads the statistics of a column, rejecting the values the legacy org.json parser rejected: json null, or any
+   * value of the wrong type, makes the whole file invalid. As before, the column, dataType and count are always
+   * checked, the other fields only when the column is not empty.
+   */
+  private static ExpatFeatureDescriptiveStatistics parseColumn(JsonParser parser) throws IOException {
     ExpatFeatureDescriptiveStatistics fds = new ExpatFeatureDescriptiveStatistics();
-    fds.featureName = statsJson.getString("column");
-    
-    if (statsJson.has("dataType")) {
-      fds.featureType = statsJson.getString("dataType");
-    }
-    
-    if (statsJson.has("count") && statsJson.getLong("count") == 0) {
-      // if empty data, ignore the rest of statistics
-      fds.count = 0L;
-      return fds;
-    }
+    Long count = null;
+    Long numRecordsNull = null;
+    Long numRecordsNonNull = null;
+    JsonParseException invalid = null;
     
-    // common for all data types
-    if (statsJson.has("numRecordsNull")) {
-      fds.numNullValues = statsJson.getLong("numRecordsNull");
-    }
-    if (statsJson.has("numRecordsNonNull")) {
-      fds.numNonNullValues = statsJson.getLong("numRecordsNonNull");
-    }
-    if (statsJson.has("numRecordsNull") && statsJson.has("numRecordsNonNull")) {
-      fds.count = Long.valueOf(statsJson.getInt("numRecordsNull") + statsJson.getInt("numRecordsNonNull"));
-    }
-    if (statsJson.has("count")) {
-      fds.count = statsJson.getLong("count");
-    }
-    if (statsJson.has("completeness")) {
-      fds.completeness = statsJson.getDouble("completeness");
+    // histogram, correlations, kll and unique values are kept as they are in the file
+    boolean hasExtendedStatistics = false;
+    ByteArrayOutputStream extendedStatistics = new ByteArrayOutputStream();
+    try (JsonGenerator generator = JSON_FACTORY.createGenerator(extendedStatistics)) {
+      generator.writeStartObject();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        switch (field) {
+          case "column":
+            fds.featureName = stringValue(parser, field);
+            continue;
+          case "dataType":
+            fds.featureType = stringValue(parser, field);
+            continue;
+          case "count":
+            count = longValue(parser, field);
+            continue;
+          default:
+        }
+        try {
+          switch (field) {
+            case "numRecordsNull":
+              numRecordsNull = longValue(parser, field);
+              break;
+            case "numRecordsNonNull":
+              numRecordsNonNull = longValue(parser, field);
+              break;
+            case "completeness":
+              fds.completeness = doubleValue(parser, field);
+              break;
+            case "approximateNumDistinctValues":
+              fds.approxNumDistinctValues = longValue(parser, field);
+              break;
+            // commmon for all data types if exact_uniqueness is enabled
+            case "uniqueness":
+              fds.uniqueness = doubleValue(parser, field);
+              break;
+            case "entropy":
+              fds.entropy = doubleValue(parser, field);
+              break;
+            case "distinctness":
+              fds.distinctness = doubleValue(parser, field);
+              break;
+            case "exactNumDistinctValues":
+              fds.exactNumDistinctValues = longValue(parser, field);
+              break;
+            // fractional / integral features
+            case "minimum":
+              fds.min = doubleValue(parser, field);
+              break;
+            case "maximum":
+              fds.max = doubleValue(parser, field);
+              break;
+            case "sum":
+              fds.sum = doubleValue(parser, field);
+              break;
+            case "mean":
+              fds.mean = doubleValue(parser, field);
+              break;
+            case "stdDev":
+              fds.stddev = doubleValue(parser, field);
+              break;
+            case "percentiles":
+              fds.percentiles = parseDoubles(parser, field);
+              break;
+            case "correlations":
+            case "histogram":
+            case "kll":
+            case "unique_values":
+              JsonToken expected = field.equals("kll") ? JsonToken.START_OBJECT : JsonToken.START_ARRAY;
+              if (parser.currentToken() != expected) {
+                throw new JsonParseException(parser, "'" + field + "' should be a json " +
+                  (expected == JsonToken.START_OBJECT ? "object" : "array"));
+              }
+              generator.writeFieldName(field);
+              generator.copyCurrentStructure(parser);
+              hasExtendedStatistics = true;
+              break;
+            default:
+              parser.skipChildren();
+          }
+        } catch (JsonParseException e) {
+          // only fails the file if the column is not empty, that is known once the whole column is read
+          parser.skipChildren();
+          if (invalid == null) {
+            invalid = e;
+          }
+        }
+      }
+      generator.writeEndObject();
     }
-    if (statsJson.has("approximateNumDistinctValues")) {
-      fds.approxNumDistinctValues = statsJson.getLong("approximateNumDistinctValues");
+    if (fds.featureName == null) {
+      throw new JsonParseException(parser, "statistics of a column should contain a 'column' key");
     }
     
-    // commmon for all data types if exact_uniqueness is enabled
-    if (statsJson.has("uniqueness")) {
-      fds.uniqueness = statsJson.getDouble("uniqueness");
-    }
-    if (statsJson.has("entropy")) {
-      fds.entropy = statsJson.getDouble("entropy");
-    }
-    if (statsJson.has("distinctness")) {
-      fds.distinctness = statsJson.getDouble("distinctness");
+    if (count != null && count == 0) {
+      // if empty data, ignore the rest of statistics
+      ExpatFeatureDescriptiveStatistics emptyFds = new ExpatFeatureDescriptiveStatistics();
+      emptyFds.featureName = fds.featureName;
+      emptyFds.featureType = fds.featureType;
+      emptyFds.count = 0L;
+      return emptyFds;
     }
-    if (statsJson.has("exactNumDistinctValues")) {
-      fds.exactNumDistinctValues = statsJson.getLong("exactNumDistinctValues");
+    if (invalid != null) {
+      throw invalid;
     }
-    
-    // fractional / integral features
-    if (statsJson.has("minimum")) {
-      fds.min = statsJson.getDouble("minimum");
+    fds.numNullValues = numRecordsNull;
+    fds.numNonNullValues = numRecordsNonNull;
+    if (count != null) {
+      fds.count = count;
+    } else if (numRecordsNull != null && numRecordsNonNull != null) {
+      fds.count = numRecordsNull + numRecordsNonNull;
     }
-    if (statsJson.has("maximum")) {
-      fds.max = statsJson.getDouble("maximum");
+    if (hasExtendedStatistics) {
+      fds.extendedStatistics = new String(extendedStatistics.toByteArray(), StandardCharsets.UTF_8);
     }
-    if (statsJson.has("sum")) {
-      fds.sum = statsJson.getDouble("sum");
+    return fds;
+  }
+  
+  private static String stringValue(JsonParser parser, String field) throws IOException {
+    if (parser.currentToken() != JsonToken.VALUE_STRING) {
+      throw new JsonParseException(parser, "'" + field + "' should be a string");
     }
-    if (statsJson.has("mean")) {
-      fds.mean = statsJson.getDouble("mean");
+    return parser.getText();
+  }
+  
+  private static Long longValue(JsonParser parser, String field) throws IOException {
+    return number(parser, field).longValue();
+  }
+  
+  private static Double doubleValue(JsonParser parser, String field) throws IOException {
+    return number(parser, field).doubleValue();
+  }
+  
+  /**
+   * Numbers and numeric strings are accepted, as org.json did. getValueAsLong and getValueAsDouble are not used
+   * since they turn null and other values into 0.
+   */
+  private static Number number(JsonParser parser, String field) throws IOException {
+    switch (parser.currentToken()) {
+      case VALUE_NUMBER_INT:
+      case VALUE_NUMBER_FLOAT:
+        return parser.getNumberValue();
+      case VALUE_STRING:
+        try {
+          return new BigDecimal(parser.getText().trim());
+        } catch (NumberFormatException e) {
+          throw new JsonParseException(parser, "'" + field + "' should be a number");
+        }
+      default:
+        throw new JsonParseException(parser, "'" + field + "' should be a number");
     }
-    if (statsJson.has("stdDev")) {
-      fds.stddev = statsJson.getDouble("stdDev");
+  }
+  
+  private static List<Double> parseDoubles(JsonParser parser, String field) throws IOException {
+    if (parser.currentToken() != JsonToken.START_ARRAY) {
+      throw new JsonParseException(parser, "'" + field + "' should be a json array of numbers");
     }
-    if (statsJson.has("percentiles")) {
-      JSONArray percJsonArray = statsJson.getJSONArray("percentiles");
-      fds.percentiles = new ArrayList<>();
-      for (int i = 0; i < percJsonArray.length(); i++) {
-        fds.percentiles.add(percJsonArray.getDouble(i));
+    List<Double> values = new ArrayList<>();
+    JsonParseException invalid = null;
+    // the array is read to its end so the caller can go on with the next field
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      try {
+        values.add(doubleValue(parser, field));
+      } catch (JsonParseException e) {
+        parser.skipChildren();
+        if (invalid == null) {
+          invalid = e;
+        }
       }
     }
-    
-    JSONObject extendedStatistics = new JSONObject();
-    if (statsJson.has("correlations")) {
-      extendedStatistics.put("correlations", statsJson.getJSONArray("correlations"));
-    }
-    if (statsJson.has("histogram")) {
-      extendedStatistics.put("histogram", statsJson.getJSONArray("histogram"));
-    }
-    if (statsJson.has("kll")) {
-      extendedStatistics.put("kll", statsJson.getJSONObject("kll"));
+    if (invalid != null) {
+      throw invalid;
     }
-    if (statsJson.has("unique_values")) {
-      extendedStatistics.put("unique_values", statsJson.getJSONArray("unique_values"));
-    }
-    if (extendedStatistics.length() > 0) {
-      fds.extendedStatistics = extendedStatistics.toString();
-    }
-    
-    return fds;
+    return values;
   }
   
   public static ExpatFeatureDescriptiveStatistics merge(ExpatFeatureDescriptiveStatistics fds1,
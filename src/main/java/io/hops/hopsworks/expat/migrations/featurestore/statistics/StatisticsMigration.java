@@ -17,15 +17,19 @@ package io.hops.hopsworks.expat.migrations.featurestore.statistics;
  *
  */
 
+import com.google.common.collect.Sets;
 import io.hops.hopsworks.common.hdfs.DistributedFileSystemOps;
 import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
 import io.hops.hopsworks.expat.configuration.ExpatConf;
-import io.hops.hopsworks.expat.db.DbConnectionFactory;
+import io.hops.hopsworks.expat.db.BatchWriter;
 import io.hops.hopsworks.expat.db.dao.hdfs.inode.ExpatInodeController;
-import io.hops.hopsworks.expat.migrations.MigrateStep;
+import io.hops.hopsworks.expat.migrations.MigrationContext;
 import io.hops.hopsworks.expat.migrations.MigrationException;
+import io.hops.hopsworks.expat.migrations.MigrationJournal;
+import io.hops.hopsworks.expat.migrations.MigrationResource;
+import io.hops.hopsworks.expat.migrations.ResumableStep;
 import io.hops.hopsworks.expat.migrations.RollbackException;
-import io.hops.hopsworks.expat.migrations.projects.util.HopsClient;
+import io.hops.hopsworks.expat.migrations.projects.util.HdfsOperationExecutor;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.ex.ConfigurationException;
 import org.apache.hadoop.fs.FileStatus;
@@ -37,6 +41,7 @@ import org.slf4j.LoggerFactory;
 import javax.sql.rowset.serial.SerialBlob;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectOutputStream;
 import java.sql.Blob;
 import java.sql.Connection;
@@ -44,23 +49,33 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
-public class StatisticsMigration implements MigrateStep {
+public class StatisticsMigration implements ResumableStep {
   
   protected static final Logger LOGGER = LoggerFactory.getLogger(StatisticsMigration.class);
   
+  protected MigrationContext context;
   protected Connection connection;
-  protected DistributedFileSystemOps dfso = null;
+  // reads and parses the old statistics files of the rows ahead of the one being inserted
+  protected HdfsOperationExecutor readOps;
+  // writes the extended statistics files and removes the old ones
+  protected HdfsOperationExecutor writeOps;
   protected boolean dryRun;
   protected String hopsUser;
+  // statistics ids whose statistics file has been migrated
+  protected MigrationJournal journal;
   
   protected ExpatInodeController inodeController;
   
@@ -132,6 +147,7 @@ public class StatisticsMigration implements MigrateStep {
   private final static String FEATURE_GROUP = "FEATURE_GROUP";
   private final static String TRAINING_DATASET = "TRAINING_DATASET";
   private Integer statisticsMigrationBatchSize;
+  private Integer statisticsMigrationReadAhead;
 
   private class FeatureGroupStatisticsCommitWindow {
     private Integer fgStatisticsId;
@@ -159,8 +175,35 @@ public class StatisticsMigration implements MigrateStep {
 
   public StatisticsMigration() {}
   
+  @Override
+  public void setJournal(MigrationJournal journal) {
+    this.journal = journal;
+  }
+  
+  @Override
+  public Set<MigrationResource> resources() {
+    return Sets.newHashSet(
+      MigrationResource.table("feature_descriptive_statistics"),
+      MigrationResource.table("feature_group_descriptive_statistics"),
+      MigrationResource.table("feature_group_statistics"),
+      MigrationResource.table("training_dataset_statistics"),
+      MigrationResource.table("training_dataset_descriptive_statistics"),
+      MigrationResource.table("test_dataset_descriptive_statistics"),
+      MigrationResource.table("val_dataset_descriptive_statistics"),
+      MigrationResource.table("feature_store_activity"),
+      MigrationResource.hdfs("/Projects"));
+  }
+  
   @Override
   public void migrate() throws MigrationException {
+    try (MigrationContext context = new MigrationContext()) {
+      migrate(context);
+    }
+  }
+  
+  @Override
+  public void migrate(MigrationContext context) throws MigrationException {
+    this.context = context;
     LOGGER.info("Starting migration of " + super.getClass().getName());
     
     try {
@@ -172,9 +215,10 @@ public class StatisticsMigration implements MigrateStep {
       LOGGER.error(errorMsg);
       close();
       throw new MigrationException(errorMsg, ex);
-    } catch (IOException | IllegalAccessException | InstantiationException ex) {
+    } catch (IOException | InterruptedException ex) {
       String errorMsg = "Could not migrate statistics";
       LOGGER.error(errorMsg);
+      close();
       throw new MigrationException(errorMsg, ex);
     }
     LOGGER.info("Finished migration of " + super.getClass().getName());
@@ -182,6 +226,14 @@ public class StatisticsMigration implements MigrateStep {
   
   @Override
   public void rollback() throws RollbackException {
+    try (MigrationContext context = new MigrationContext()) {
+      rollback(context);
+    }
+  }
+  
+  @Override
+  public void rollback(MigrationContext context) throws RollbackException {
+    this.context = context;
     LOGGER.info("Starting rollback of " + super.getClass().getName());
     try {
       setup();
@@ -196,8 +248,7 @@ public class StatisticsMigration implements MigrateStep {
     LOGGER.info("Finished rollback of " + super.toString());
   }
   
-  public void runMigration()
-    throws MigrationException, SQLException, IOException, IllegalAccessException, InstantiationException {
+  public void runMigration() throws MigrationException, SQLException, IOException, InterruptedException {
     PreparedStatement fdsStmt = null;
     
     try {
@@ -227,47 +278,70 @@ public class StatisticsMigration implements MigrateStep {
     }
   }
   
+  /**
+   * Legacy statistics of a fds row. The files are read and parsed by the read executor, while the rows before it are
+   * inserted.
+   */
+  private static class LegacyStatistics {
+    private final int statisticsId;
+    private final String entityType;
+    private final int entityId;
+    private final long commitTime;
+    private final String filePath;
+    private final boolean committed;
+    private Long windowStartCommitTime;
+    private long windowEndCommitTime;
+    // null if a statistics file could not be read or parsed
+    private List<LegacyStatisticsFile> files = new ArrayList<>();
+    private CompletableFuture<Void> read = CompletableFuture.completedFuture(null);
+    
+    private LegacyStatistics(int statisticsId, String entityType, int entityId, long commitTime,
+      long windowEndCommitTime, String filePath, boolean committed) {
+      this.statisticsId = statisticsId;
+      this.entityType = entityType;
+      this.entityId = entityId;
+      this.commitTime = commitTime;
+      this.windowEndCommitTime = windowEndCommitTime;
+      this.filePath = filePath;
+      this.committed = committed;
+    }
+  }
+  
+  private static class LegacyStatisticsFile {
+    private final String path;
+    private final Collection<ExpatFeatureDescriptiveStatistics> fdsList;
+    private final String splitName;
+    private final boolean beforeTransformation;
+    // directory of the extended statistics files
+    private final Path dirPath;
+    private final FileStatus fileStatus;
+    
+    private LegacyStatisticsFile(String path, Collection<ExpatFeatureDescriptiveStatistics> fdsList,
+      String splitName, boolean beforeTransformation, Path dirPath, FileStatus fileStatus) {
+      this.path = path;
+      this.fdsList = fdsList;
+      this.splitName = splitName;
+      this.beforeTransformation = beforeTransformation;
+      this.dirPath = dirPath;
+      this.fileStatus = fileStatus;
+    }
+  }
+  
   private void migrateFeatureDescriptiveStatistics(ResultSet fdsResultSet)
-    throws SQLException, MigrationException, IOException, IllegalAccessException, InstantiationException {
+    throws SQLException, MigrationException, IOException, InterruptedException {
     List<Integer> fdsIds = new ArrayList<>(); // keep track of temporary fds to be removed
     HashMap<Integer, Long> fgsEarliestFgCommitIds; // <fg id, earliest fg commit id>
-    boolean updateFgStatistics = false; // whether one or more fg stats need to be updated
-    boolean deleteFgStatistics = false; // whether one or more fg stats need to be deleted
-    boolean deleteTdStatistics = false; // whether one or more td stats need to be deleted
-    
-    // connections
-    PreparedStatement insertFdsStmt = null;
-    PreparedStatement insertFgFdsStmt = null;
-    PreparedStatement updateFgsStmt = null;
-    PreparedStatement deleteFgsStmt = null;
-    PreparedStatement deleteFgsActStmt = null;
-    PreparedStatement insertTrainDatasetFdsStmt = null;
-    PreparedStatement insertTestDatasetFdsStmt = null;
-    PreparedStatement insertValDatasetFdsStmt = null;
-    PreparedStatement deleteTdsStmt = null;
-    PreparedStatement deleteTdsActStmt = null;
     Set<Integer> deleteFGStatisticsIds = new HashSet<>();
     Set<Integer> deleteTDStatisticsIds = new HashSet<>();
     Set<FeatureGroupStatisticsCommitWindow> updatedFeatureGroupStatisticsCommitWindows = new HashSet<>();
-
-    try {
-      // earliest fg commit ids
-      fgsEarliestFgCommitIds = getEarliestFgCommitIds();
-      
-      // fds connection
-      insertFdsStmt = connection.prepareStatement(INSERT_FEATURE_DESCRIPTIVE_STATISTICS, new String[]{"id"});
-      // table between fg stats and fds
-      insertFgFdsStmt = connection.prepareStatement(INSERT_FEATURE_GROUP_DESCRIPTIVE_STATISTICS); // intermediate
-      // fg stats connection
-      updateFgsStmt = connection.prepareStatement(UPDATE_FEATURE_GROUP_DESCRIPTIVE_STATISTICS);
-      deleteFgsStmt = connection.prepareStatement(DELETE_FEATURE_GROUP_STATISTICS);
-      deleteFgsActStmt = connection.prepareStatement(DELETE_FEATURE_GROUP_STATISTICS_ACTIVITY);
-      // td stats connections
-      insertTrainDatasetFdsStmt = connection.prepareStatement(INSERT_TRAINING_DATASET_DESCRIPTIVE_STATISTICS);
-      insertTestDatasetFdsStmt = connection.prepareStatement(INSERT_TEST_DATASET_DESCRIPTIVE_STATISTICS);
-      insertValDatasetFdsStmt = connection.prepareStatement(INSERT_VAL_DATASET_DESCRIPTIVE_STATISTICS);
-      deleteTdsStmt = connection.prepareStatement(DELETE_TRAINING_DATASET_STATISTICS);
-      deleteTdsActStmt = connection.prepareStatement(DELETE_TRAINING_DATASET_STATISTICS_ACTIVITY);
+    
+    // earliest fg commit ids
+    fgsEarliestFgCommitIds = getEarliestFgCommitIds();
+    
+    try (StatisticsInserter inserter = new StatisticsInserter()) {
+      // rows whose files are read ahead, at most statisticsMigrationReadAhead of them so that the parsed statistics
+      // held in memory stay bounded
+      Deque<LegacyStatistics> readAhead = new ArrayDeque<>();
       
       // per fds - migrate stats
       while (fdsResultSet.next()) {
@@ -285,254 +359,179 @@ public class StatisticsMigration implements MigrateStep {
         
         fdsIds.add(statisticsId); // track temporary fds ids, to be removed after migration
         
+        // the old statistics file of a committed unit is already gone, only the db updates below are redone
+        boolean committed = journal != null && journal.isCommitted(String.valueOf(statisticsId));
+        if (committed) {
+          LOGGER.info(String.format("[migrateFeatureDescriptiveStatistics] -- statistics with id '%s' already " +
+            "migrated", statisticsId));
+        }
+        
+        LegacyStatistics statistics = new LegacyStatistics(statisticsId, entityType, entityId, commitTime,
+          windowEndCommitTime, filePath, committed);
         if (entityType.equals(FEATURE_GROUP)) {
           // get window start commit time
-          Long windowStartCommitTime = fgsEarliestFgCommitIds.getOrDefault(entityId, null);
+          statistics.windowStartCommitTime = fgsEarliestFgCommitIds.getOrDefault(entityId, null);
           LOGGER.info(String.format(
             "[migrateFeatureDescriptiveStatistics] -- window start commit is %s for feature group with id %s",
-            windowStartCommitTime == null ? "null" : String.valueOf(windowStartCommitTime), entityId));
-          if (windowStartCommitTime == null && windowEndCommitTime == 0) {
-            windowEndCommitTime = commitTime; // for non-time-travel-enabled fgs, set end window as committime
-          }
-          // migrate fg stats
-          boolean fdsInserted = migrateFeatureGroupStatistics(statisticsId, filePath, windowStartCommitTime,
-            windowEndCommitTime, insertFdsStmt, insertFgFdsStmt);
-          
-          if (fdsInserted) {
-            // set window start commit time if time travel-enabled fg
-            if (loadFeatureGroupStatisticsCommitWindow(updatedFeatureGroupStatisticsCommitWindows, statisticsId,
-                windowStartCommitTime)) {
-              updateFgStatistics = true;
-            }
-          } else {  // if fds not inserted
-            // this fg statistics could not be migrated to DB, so we delete the fg stats row.
-            LOGGER.info(String.format(
-              "[migrateFeatureDescriptiveStatistics] -- marking fg statistics for deletion, with id '%s' and " +
-                "feature group id '%s'", statisticsId, entityId));
-            deleteFGStatisticsIds.add(statisticsId);
-            deleteFgStatistics = true;
+            statistics.windowStartCommitTime == null ? "null" : String.valueOf(statistics.windowStartCommitTime),
+            entityId));
+          if (statistics.windowStartCommitTime == null && windowEndCommitTime == 0) {
+            // for non-time-travel-enabled fgs, set end window as committime
+            statistics.windowEndCommitTime = commitTime;
           }
         } else if (entityType.equals(TRAINING_DATASET)) {
-          boolean fdsInserted = migrateTrainingDatasetStatistics(statisticsId, filePath, commitTime, insertFdsStmt,
-            insertTrainDatasetFdsStmt, insertTestDatasetFdsStmt, insertValDatasetFdsStmt);
-          
-          if (!fdsInserted) {   // if fds not inserted
-            // this td statistics could not be migrated to DB, so we delete the td stats row.
-            LOGGER.info(String.format(
-              "[migrateFeatureDescriptiveStatistics] -- marking td statistics for deletion, with id '%s' and " +
-                "training dataset id '%s'", statisticsId, entityId));
-            deleteTDStatisticsIds.add(statisticsId);
-            deleteTdStatistics = true;
-          }
+          statistics.windowEndCommitTime = commitTime;
         } else {
           throw new MigrationException(
             "Unknown entity type: " + entityType + ". Expected values are " + FEATURE_GROUP + " or " +
               TRAINING_DATASET);
         }
-      }
-      
-      // update feature group statistics window start commits
-      if (updateFgStatistics) {
-        if (dryRun) {
-          LOGGER.info(String.format("[migrateFeatureDescriptiveStatistics] Update FGS: %s", updateFgsStmt.toString()));
-        } else {
-          updateFeatureGroupStatisticsCommitWindow(updateFgsStmt, updatedFeatureGroupStatisticsCommitWindows);
-        }
-      }
-      
-      // delete feature group statistics that failed to be migrated
-      if (deleteFgStatistics) {
-        if (dryRun) {
-          LOGGER.info(String.format("[migrateFeatureDescriptiveStatistics] Delete FGS: %s", deleteFgsStmt.toString()));
-          LOGGER.info(String.format("[migrateFeatureDescriptiveStatistics] Delete FGS ACTIVITY: %s",
-            deleteFgsActStmt.toString()));
-        } else {
-          deleteStatisticsBatch(deleteFgsStmt, deleteFGStatisticsIds, "FGS");
+        
+        if (!committed) {
+          statistics.read = readOps.submit(filePath, dfso -> readLegacyStatistics(statistics, dfso));
         }
-      }
-      
-      // delete training dataset statistics that failed to be migrated
-      if (deleteTdStatistics) {
-        if (dryRun) {
-          LOGGER.info(String.format("[migrateFeatureDescriptiveStatistics] Delete TDS: %s", deleteTdsStmt.toString()));
-          LOGGER.info(String.format("[migrateFeatureDescriptiveStatistics] Delete TDS ACTIVITY: %s",
-            deleteTdsActStmt.toString()));
-        } else {
-          deleteStatisticsBatch(deleteTdsStmt, deleteTDStatisticsIds, "TDS");
+        readAhead.add(statistics);
+        if (readAhead.size() >= statisticsMigrationReadAhead) {
+          migrateStatistics(readAhead.poll(), inserter, deleteFGStatisticsIds, deleteTDStatisticsIds,
+            updatedFeatureGroupStatisticsCommitWindows);
         }
       }
-
-      // delete temporary feature descriptive statistics
-      // NOTE: These feature descriptive statistics have become orphan. The deletion of orphan fds statistics and files
-      // is delegated to the StatisticsCleaner.
-      String fdsIdsStr = fdsIds.stream().map(String::valueOf).collect(Collectors.joining(", "));
-      LOGGER.info(String.format("[deleteFeatureDescriptiveStatistics] Delegate deletion of FDS: %s", fdsIdsStr));
-    } finally {
-      if (insertFdsStmt != null) {
-        insertFdsStmt.close();
+      while (!readAhead.isEmpty()) {
+        migrateStatistics(readAhead.poll(), inserter, deleteFGStatisticsIds, deleteTDStatisticsIds,
+          updatedFeatureGroupStatisticsCommitWindows);
       }
-      if (insertFgFdsStmt != null) {
-        insertFgFdsStmt.close();
-      }
-      if (updateFgsStmt != null) {
-        updateFgsStmt.close();
-      }
-      if (deleteFgsStmt != null) {
-        deleteFgsStmt.close();
-      }
-      if (deleteFgsActStmt != null) {
-        deleteFgsActStmt.close();
-      }
-      if (insertTrainDatasetFdsStmt != null) {
-        insertTrainDatasetFdsStmt.close();
-      }
-      if (insertTestDatasetFdsStmt != null) {
-        insertTestDatasetFdsStmt.close();
-      }
-      if (insertValDatasetFdsStmt != null) {
-        insertValDatasetFdsStmt.close();
-      }
-      if (deleteTdsStmt != null) {
-        deleteTdsStmt.close();
+      inserter.flush();
+    }
+    
+    // update feature group statistics window start commits
+    if (!updatedFeatureGroupStatisticsCommitWindows.isEmpty()) {
+      updateFeatureGroupStatisticsCommitWindow(updatedFeatureGroupStatisticsCommitWindows);
+    }
+    
+    // delete feature group statistics that failed to be migrated
+    if (!deleteFGStatisticsIds.isEmpty()) {
+      deleteStatisticsBatch(DELETE_FEATURE_GROUP_STATISTICS, deleteFGStatisticsIds, "FGS");
+    }
+    
+    // delete training dataset statistics that failed to be migrated
+    if (!deleteTDStatisticsIds.isEmpty()) {
+      deleteStatisticsBatch(DELETE_TRAINING_DATASET_STATISTICS, deleteTDStatisticsIds, "TDS");
+    }
+    
+    // delete temporary feature descriptive statistics
+    // NOTE: These feature descriptive statistics have become orphan. The deletion of orphan fds statistics and files
+    // is delegated to the StatisticsCleaner.
+    String fdsIdsStr = fdsIds.stream().map(String::valueOf).collect(Collectors.joining(", "));
+    LOGGER.info(String.format("[deleteFeatureDescriptiveStatistics] Delegate deletion of FDS: %s", fdsIdsStr));
+  }
+  
+  private void migrateStatistics(LegacyStatistics statistics, StatisticsInserter inserter,
+    Set<Integer> deleteFGStatisticsIds, Set<Integer> deleteTDStatisticsIds,
+    Set<FeatureGroupStatisticsCommitWindow> updatedFeatureGroupStatisticsCommitWindows)
+    throws SQLException, MigrationException, IOException, InterruptedException {
+    try {
+      statistics.read.join();
+    } catch (CompletionException e) {
+      throw new IOException("could not read statistics file at: " + statistics.filePath, e.getCause());
+    }
+    boolean isFeatureGroup = statistics.entityType.equals(FEATURE_GROUP);
+    if (statistics.committed || statistics.files != null) {
+      if (!statistics.committed) {
+        inserter.add(statistics);
       }
-      if (deleteTdsActStmt != null) {
-        deleteTdsActStmt.close();
+      // set window start commit time if time travel-enabled fg
+      if (isFeatureGroup) {
+        loadFeatureGroupStatisticsCommitWindow(updatedFeatureGroupStatisticsCommitWindows, statistics.statisticsId,
+          statistics.windowStartCommitTime);
       }
+    } else if (isFeatureGroup) {
+      // this fg statistics could not be migrated to DB, so we delete the fg stats row.
+      LOGGER.info(String.format(
+        "[migrateFeatureDescriptiveStatistics] -- marking fg statistics for deletion, with id '%s' and " +
+          "feature group id '%s'", statistics.statisticsId, statistics.entityId));
+      deleteFGStatisticsIds.add(statistics.statisticsId);
+    } else {
+      // this td statistics could not be migrated to DB, so we delete the td stats row.
+      LOGGER.info(String.format(
+        "[migrateFeatureDescriptiveStatistics] -- marking td statistics for deletion, with id '%s' and " +
+          "training dataset id '%s'", statistics.statisticsId, statistics.entityId));
+      deleteTDStatisticsIds.add(statistics.statisticsId);
+    }
+  }
+  
+  private void commitUnit(String unit) throws SQLException {
+    if (journal != null) {
+      journal.commit(unit);
     }
   }
   
-  private boolean migrateFeatureGroupStatistics(int statisticsId, String filePath, Long windowStartCommitTime,
-    Long windowEndCommitTime, PreparedStatement insertFdsStmt, PreparedStatement insertIntermediateStmt)
-    throws SQLException, IOException, MigrationException, IllegalAccessException, InstantiationException {
+  private void readLegacyStatistics(LegacyStatistics statistics, DistributedFileSystemOps dfso) throws IOException {
+    if (statistics.entityType.equals(FEATURE_GROUP)) {
+      readFeatureGroupStatistics(statistics, dfso);
+    } else {
+      readTrainingDatasetStatistics(statistics, dfso);
+    }
+  }
+  
+  private void readFeatureGroupStatistics(LegacyStatistics statistics, DistributedFileSystemOps dfso)
+    throws IOException {
+    String filePath = statistics.filePath;
     // read and parse old hdfs file with statistics
-    Collection<ExpatFeatureDescriptiveStatistics> fdsList = readAndParseLegacyStatistics(filePath);
+    Collection<ExpatFeatureDescriptiveStatistics> fdsList = readAndParseLegacyStatistics(filePath, dfso);
     if (fdsList == null) {
       LOGGER.info(String.format("[migrateFeatureGroupStatistics] -- skipping fds row due to invalid " +
           "statistics file at '%s'", filePath));
-      return false;  // skipping fds
+      statistics.files = null;  // skipping fds
+      return;
     }
     
-    // get stats file parent directory
+    // get owner, permissions and group, the extended statistics are written next to the old file
     Path oldFilePath = new Path(filePath);
-    Path parentDirPath = oldFilePath.getParent();
-    
-    // get owner, permissions and group
-    FileStatus fileStatus = dfso.getFileStatus(oldFilePath);
-    
-    // insert feature descriptive statistics
-    insertFeatureDescriptiveStatistics(statisticsId, fdsList, insertIntermediateStmt, insertFdsStmt,
-      windowStartCommitTime, windowEndCommitTime, false, null, parentDirPath, fileStatus);
-    
-    // remove old hfds file
-    if (dryRun) {
-      LOGGER.info(String.format("[migrateFeatureGroupStatistics] Remove old hdfs stats file at: %s", filePath));
-    } else {
-      LOGGER.info(String.format("[migrateFeatureGroupStatistics] Remove old hdfs stats file at: %s", filePath));
-      dfso.rm(filePath, false);
-    }
-    
-    return true; // fds stored in the database
+    statistics.files.add(new LegacyStatisticsFile(filePath, fdsList, null, false, oldFilePath.getParent(),
+      dfso.getFileStatus(oldFilePath)));
   }
   
-  private boolean migrateTrainingDatasetStatistics(int statisticsId, String filePath, Long commitTime,
-    PreparedStatement insertFdsStmt, PreparedStatement insertTrainDatasetFdsStmt,
-    PreparedStatement insertTestDatasetFdsStmt, PreparedStatement insertValDatasetFdsStmt)
-    throws SQLException, IOException, MigrationException, IllegalAccessException, InstantiationException {
-    
+  private void readTrainingDatasetStatistics(LegacyStatistics statistics, DistributedFileSystemOps dfso)
+    throws IOException {
+    String filePath = statistics.filePath;
     if (!dfso.exists(filePath)) {
       LOGGER.info("[migrateTrainingDatasetStatistics] statistics file does not exist: " + filePath);
-      return false;
+      statistics.files = null;
+      return;
     }
     
     // get owner, permissions and group
     Path oldFilePath = new Path(filePath);
     FileStatus fileStatus = dfso.getFileStatus(oldFilePath);
     
-    if (dfso.isDir(filePath)) { // training dataset with splits
-      Path parentDirPath = oldFilePath;
-      
-      // train split stats
-      String trainSplitFilePath = filePath + "/" + SPLIT_NAME_TRAIN + "_" + commitTime + ".json";
-      Collection<ExpatFeatureDescriptiveStatistics> fdsList = readAndParseLegacyStatistics(trainSplitFilePath);
-      if (fdsList == null) {
-        LOGGER.info(String.format("[migrateTrainingDatasetStatistics] -- skipping fds row due to invalid " +
-          "statistics file at '%s'", filePath));
-        return false;  // skipping fds
-      }
-      // inserts fds and intermediate (train_fds) rows
-      insertFeatureDescriptiveStatistics(statisticsId, fdsList, insertTrainDatasetFdsStmt, insertFdsStmt, null,
-        commitTime, false, SPLIT_NAME_TRAIN, parentDirPath, fileStatus);
-      if (dryRun) {
-        LOGGER.info(
-          String.format("[migrateTrainingDatasetStatistics] Remove old hdfs stats file at: %s", trainSplitFilePath));
-      } else {
-        LOGGER.info(
-          String.format("[migrateTrainingDatasetStatistics] Remove old hdfs stats file at: %s", trainSplitFilePath));
-        dfso.rm(trainSplitFilePath, false); // remove old hfds file
-      }
-      
-      // test split stats
-      String testSplitFilePath = filePath + "/" + SPLIT_NAME_TEST + "_" + commitTime + ".json";
-      fdsList = readAndParseLegacyStatistics(testSplitFilePath);
-      if (fdsList == null) {
-        LOGGER.info(String.format("[migrateTrainingDatasetStatistics] -- skipping fds row due to invalid " +
-          "statistics file at '%s'", filePath));
-        return false;  // skipping fds
-      }
-      // inserts fds and intermediate (test_fds) rows
-      insertFeatureDescriptiveStatistics(statisticsId, fdsList, insertTestDatasetFdsStmt, insertFdsStmt, null,
-        commitTime, false, SPLIT_NAME_TEST, parentDirPath, fileStatus);
-      if (dryRun) {
-        LOGGER.info(
-          String.format("[migrateTrainingDatasetStatistics] Remove old hdfs stats file at: %s", testSplitFilePath));
-      } else {
-        LOGGER.info(
-          String.format("[migrateTrainingDatasetStatistics] Remove old hdfs stats file at: %s", testSplitFilePath));
-        dfso.rm(testSplitFilePath, false); // remove old hfds file
-      }
-      
-      // val split stats
-      String valSplitFilePath = filePath + "/" + SPLIT_NAME_VALIDATION + "_" + commitTime + ".json";
-      if (dfso.exists(valSplitFilePath)) {
-        fdsList = readAndParseLegacyStatistics(valSplitFilePath);
+    if (dfso.isDir(filePath)) { // training dataset with splits, the validation split is optional
+      for (String splitName : new String[]{SPLIT_NAME_TRAIN, SPLIT_NAME_TEST, SPLIT_NAME_VALIDATION}) {
+        String splitFilePath = filePath + "/" + splitName + "_" + statistics.commitTime + ".json";
+        if (splitName.equals(SPLIT_NAME_VALIDATION) && !dfso.exists(splitFilePath)) {
+          continue;
+        }
+        Collection<ExpatFeatureDescriptiveStatistics> fdsList = readAndParseLegacyStatistics(splitFilePath, dfso);
         if (fdsList == null) {
           LOGGER.info(String.format("[migrateTrainingDatasetStatistics] -- skipping fds row due to invalid " +
             "statistics file at '%s'", filePath));
-          return false;  // skipping fds
-        }
-        // inserts fds and intermediate (val_fds) rows
-        insertFeatureDescriptiveStatistics(statisticsId, fdsList, insertValDatasetFdsStmt, insertFdsStmt, null,
-          commitTime, false, SPLIT_NAME_VALIDATION, parentDirPath, fileStatus);
-        if (dryRun) {
-          LOGGER.info(
-            String.format("[migrateTrainingDatasetStatistics] Remove old hdfs stats file at: %s", valSplitFilePath));
-        } else {
-          LOGGER.info(
-            String.format("[migrateTrainingDatasetStatistics] Remove old hdfs stats file at: %s", valSplitFilePath));
-          dfso.rm(valSplitFilePath, false); // remove old hfds file
+          statistics.files = null;  // skipping fds
+          return;
         }
+        statistics.files.add(new LegacyStatisticsFile(splitFilePath, fdsList, splitName, false, oldFilePath,
+          fileStatus));
       }
     } else { // otherwise, either whole training dataset statistics or tr. functions statistics json file
-      Collection<ExpatFeatureDescriptiveStatistics> fdsList = readAndParseLegacyStatistics(filePath);
+      Collection<ExpatFeatureDescriptiveStatistics> fdsList = readAndParseLegacyStatistics(filePath, dfso);
       if (fdsList == null) {
         LOGGER.info(String.format("[migrateTrainingDatasetStatistics] -- skipping fds row due to invalid " +
           "statistics file at '%s'", filePath));
-        return false;  // skipping fds
+        statistics.files = null;  // skipping fds
+        return;
       }
       boolean beforeTransformation = filePath.contains("transformation_fn");
-      Path parentDirPath = oldFilePath.getParent();
-      // inserts fds and intermediate (train_fds) rows
-      insertFeatureDescriptiveStatistics(statisticsId, fdsList, insertTrainDatasetFdsStmt, insertFdsStmt, null,
-        commitTime, beforeTransformation, null, parentDirPath, fileStatus);
-      if (dryRun) {
-        LOGGER.info(String.format("[migrateTrainingDatasetStatistics] Remove old hdfs stats file at: %s", filePath));
-      } else {
-        LOGGER.info(String.format("[migrateTrainingDatasetStatistics] Remove old hdfs stats file at: %s", filePath));
-        dfso.rm(filePath, false); // remove old hfds file
-      }
+      statistics.files.add(new LegacyStatisticsFile(filePath, fdsList, null, beforeTransformation,
+        oldFilePath.getParent(), fileStatus));
     }
-    
-    return true;  // fds stored in the database
   }
   
   private HashMap<Integer, Long> getEarliestFgCommitIds() throws SQLException {
@@ -559,18 +558,17 @@ public class StatisticsMigration implements MigrateStep {
     }
   }
   
-  private Collection<ExpatFeatureDescriptiveStatistics> readAndParseLegacyStatistics(String filePath) {
-    // read file content
-    String fileContent;
+  private Collection<ExpatFeatureDescriptiveStatistics> readAndParseLegacyStatistics(String filePath,
+    DistributedFileSystemOps dfso) {
     try {
       if (!dfso.exists(filePath)) {
         LOGGER.info(String.format("[readAndParseLegacyStatistics] statistics file does not exist at '%s'",filePath));
         return null; // no file content to parse
       }
-      fileContent = dfso.cat(filePath);
-      
-      // parse feature descriptive statistics
-      return ExpatFeatureDescriptiveStatistics.parseStatisticsJsonString(fileContent);
+      // parse feature descriptive statistics while the file is read
+      try (InputStream fileContent = dfso.open(filePath)) {
+        return ExpatFeatureDescriptiveStatistics.parseStatistics(fileContent);
+      }
     } catch (IOException e) {
       LOGGER.info(String.format("[readAndParseLegacyStatistics] failed to read the file '%s' with error '%s'",
         filePath, e.getMessage()));
@@ -578,48 +576,124 @@ public class StatisticsMigration implements MigrateStep {
     }
   }
   
-  private void insertFeatureDescriptiveStatistics(int statisticsId,
-    Collection<ExpatFeatureDescriptiveStatistics> fdsList, PreparedStatement insertIntermediateStmt,
-    PreparedStatement insertFdsStmt, Long windowStartCommitTime, Long windowEndCommitTime, boolean beforeTransformation,
-    String splitName, Path dirPath, FileStatus fileStatus)
-    throws SQLException, MigrationException, IOException, IllegalAccessException, InstantiationException {
-    if (fdsList.isEmpty()) {
-      return; // nothing to insert
+  /**
+   * Inserts the feature descriptive statistics of several statistics rows with one batch. The extended statistics
+   * files are written by the write executor while the batch fills, the rows are inserted once they are all written,
+   * and the old statistics files are removed once the rows are committed.
+   */
+  private class StatisticsInserter implements AutoCloseable {
+    private final PreparedStatement insertFdsStmt;
+    // tables between fg/td stats and fds
+    private final PreparedStatement insertFgFdsStmt;
+    private final PreparedStatement insertTrainDatasetFdsStmt;
+    private final PreparedStatement insertTestDatasetFdsStmt;
+    private final PreparedStatement insertValDatasetFdsStmt;
+    private final List<LegacyStatistics> pending = new ArrayList<>();
+    private int pendingFds = 0;
+    
+    private StatisticsInserter() throws SQLException {
+      insertFdsStmt = connection.prepareStatement(INSERT_FEATURE_DESCRIPTIVE_STATISTICS, new String[]{"id"});
+      insertFgFdsStmt = connection.prepareStatement(INSERT_FEATURE_GROUP_DESCRIPTIVE_STATISTICS);
+      insertTrainDatasetFdsStmt = connection.prepareStatement(INSERT_TRAINING_DATASET_DESCRIPTIVE_STATISTICS);
+      insertTestDatasetFdsStmt = connection.prepareStatement(INSERT_TEST_DATASET_DESCRIPTIVE_STATISTICS);
+      insertValDatasetFdsStmt = connection.prepareStatement(INSERT_VAL_DATASET_DESCRIPTIVE_STATISTICS);
     }
     
-    // insert feature descriptive statistics rows
-    for (ExpatFeatureDescriptiveStatistics fds : fdsList) {
-      // create extended statistics file, if needed
-      fds.extendedStatistics =
-        createExtendedStatisticsFile(windowStartCommitTime, windowEndCommitTime, fds.featureName,
-          fds.extendedStatistics, beforeTransformation, splitName, dirPath, fileStatus);
-      // set statement parameters
-      setFdsStatementParameters(insertFdsStmt, fds);
-      // add to batch
-      insertFdsStmt.addBatch();
+    private void add(LegacyStatistics statistics)
+      throws SQLException, MigrationException, IOException, InterruptedException {
+      for (LegacyStatisticsFile file : statistics.files) {
+        for (ExpatFeatureDescriptiveStatistics fds : file.fdsList) {
+          // create extended statistics file, if needed
+          fds.extendedStatistics = createExtendedStatisticsFile(statistics.windowStartCommitTime,
+            statistics.windowEndCommitTime, fds.featureName, fds.extendedStatistics, file.beforeTransformation,
+            file.splitName, file.dirPath, file.fileStatus);
+          setFdsStatementParameters(insertFdsStmt, fds);
+          insertFdsStmt.addBatch();
+          pendingFds++;
+        }
+      }
+      pending.add(statistics);
+      if (pendingFds >= statisticsMigrationBatchSize) {
+        flush();
+      }
     }
     
-    if (dryRun) {
-      LOGGER.info(
-        String.format("[insertFeatureDescriptiveStatistics] Insert batch of FDS: %s", insertFdsStmt.toString()));
-    } else {
-      LOGGER.info(
-        String.format("[insertFeatureDescriptiveStatistics] Insert batch of FDS: %s", insertFdsStmt.toString()));
-      
-      // insert fds
-      insertFdsStmt.executeBatch();
-      connection.commit();
+    private PreparedStatement intermediateStatement(LegacyStatistics statistics, LegacyStatisticsFile file) {
+      if (statistics.entityType.equals(FEATURE_GROUP)) {
+        return insertFgFdsStmt;
+      } else if (SPLIT_NAME_TEST.equals(file.splitName)) {
+        return insertTestDatasetFdsStmt;
+      } else if (SPLIT_NAME_VALIDATION.equals(file.splitName)) {
+        return insertValDatasetFdsStmt;
+      }
+      return insertTrainDatasetFdsStmt;
+    }
+    
+    private void flush() throws SQLException, IOException, InterruptedException {
+      if (pending.isEmpty()) {
+        return;
+      }
+      LOGGER.info(String.format("[insertFeatureDescriptiveStatistics] Insert batch of FDS: %d rows of %d statistics",
+        pendingFds, pending.size()));
+      if (dryRun) {
+        insertFdsStmt.clearBatch();
+      } else {
+        // the fds rows point to the extended statistics files
+        writeOps.awaitSuccess();
+        
+        // insert fds
+        insertFdsStmt.executeBatch();
+        
+        // insert intermediate table rows, the generated keys come in the order of the batch. The batch is not
+        // rewritten into a multi-row insert, every key is the one of its own row
+        try (ResultSet generatedKeys = insertFdsStmt.getGeneratedKeys()) {
+          for (LegacyStatistics statistics : pending) {
+            for (LegacyStatisticsFile file : statistics.files) {
+              PreparedStatement insertIntermediateStmt = intermediateStatement(statistics, file);
+              for (int i = 0; i < file.fdsList.size(); i++) {
+                if (!generatedKeys.next()) {
+                  throw new SQLException("Missing generated id of feature descriptive statistics of statistics: " +
+                    statistics.statisticsId);
+                }
+                insertIntermediateStmt.setInt(1, statistics.statisticsId);
+                insertIntermediateStmt.setInt(2, generatedKeys.getInt(1));
+                insertIntermediateStmt.addBatch();
+              }
+            }
+          }
+        }
+        insertFgFdsStmt.executeBatch();
+        insertTrainDatasetFdsStmt.executeBatch();
+        insertTestDatasetFdsStmt.executeBatch();
+        insertValDatasetFdsStmt.executeBatch();
+        connection.commit();
+      }
       
-      // insert intermediate table rows
-      ResultSet generatedKeys = insertFdsStmt.getGeneratedKeys();
-      while (generatedKeys.next()) {
-        Integer fdsId = generatedKeys.getInt(1);
-        insertIntermediateStmt.setInt(1, statisticsId);
-        insertIntermediateStmt.setInt(2, fdsId);
-        insertIntermediateStmt.addBatch();
+      // remove old hdfs files, once their statistics are in the database
+      for (LegacyStatistics statistics : pending) {
+        for (LegacyStatisticsFile file : statistics.files) {
+          LOGGER.info(String.format("[insertFeatureDescriptiveStatistics] Remove old hdfs stats file at: %s",
+            file.path));
+          if (!dryRun) {
+            writeOps.submit(file.path, dfso -> dfso.rm(file.path, false));
+          }
+        }
       }
-      insertIntermediateStmt.executeBatch();
-      connection.commit();
+      writeOps.awaitSuccess();
+      for (LegacyStatistics statistics : pending) {
+        commitUnit(String.valueOf(statistics.statisticsId));
+      }
+      pending.clear();
+      pendingFds = 0;
+    }
+    
+    @Override
+    public void close() throws SQLException {
+      insertFdsStmt.close();
+      insertFgFdsStmt.close();
+      insertTrainDatasetFdsStmt.close();
+      insertTestDatasetFdsStmt.close();
+      insertValDatasetFdsStmt.close();
     }
   }
   
@@ -680,7 +754,7 @@ public class StatisticsMigration implements MigrateStep {
   
   private String createExtendedStatisticsFile(Long windowStartCommitTime, Long windowEndCommitTime, String featureName,
     String extendedStatistics, Boolean beforeTransformation, String splitName, Path dirPath, FileStatus fileStatus)
-    throws IOException, MigrationException, SQLException, IllegalAccessException, InstantiationException {
+    throws InterruptedException {
     if (extendedStatistics == null || extendedStatistics.isEmpty()) {
       return null; // no extended stats to persist
     }
@@ -708,9 +782,11 @@ public class StatisticsMigration implements MigrateStep {
       LOGGER.info(String.format(
         "[createExtendedStatisticsFile] Create FDS hdfs file at: %s with owner: %s, group: %s and content: %s",
         filePath, owner, group, "extendedStatistics"));
-      // create file
-      dfso.create(filePath, extendedStatistics);
-      setOwnershipAndPermissions(filePath, owner, permissions, group, dfso);
+      // create file, the write executor bounds the files being written
+      writeOps.submit(filePath.toString(), dfso -> {
+        dfso.create(filePath, extendedStatistics);
+        setOwnershipAndPermissions(filePath, owner, permissions, group, dfso);
+      });
     }
     return filePath.toString();
   }
@@ -739,44 +815,30 @@ public class StatisticsMigration implements MigrateStep {
     return true;
   }
 
-  private void updateFeatureGroupStatisticsCommitWindow(PreparedStatement updateFgsStmt,
-      Set<FeatureGroupStatisticsCommitWindow> listToUpdate) throws SQLException {
-    int c = 1;
-    for (FeatureGroupStatisticsCommitWindow e : listToUpdate) {
-      updateFgsStmt.setLong(1, e.windowStartCommitTime);
-      updateFgsStmt.setInt(2, e.fgStatisticsId);
-      updateFgsStmt.addBatch();
-      if (c % statisticsMigrationBatchSize == 0) {
-        LOGGER.info(String.format("[migrateFeatureDescriptiveStatistics] Update FGS: %s", updateFgsStmt.toString()));
-        updateFgsStmt.executeBatch();
-        connection.commit();
+  private void updateFeatureGroupStatisticsCommitWindow(Set<FeatureGroupStatisticsCommitWindow> listToUpdate)
+      throws SQLException {
+    try (BatchWriter writer = new BatchWriter(connection, UPDATE_FEATURE_GROUP_DESCRIPTIVE_STATISTICS, dryRun)
+        .withBatchSize(statisticsMigrationBatchSize).withCommitOnFlush(true)) {
+      for (FeatureGroupStatisticsCommitWindow e : listToUpdate) {
+        writer.add(e.windowStartCommitTime, e.fgStatisticsId);
       }
-      c++;
+      writer.flush();
+      LOGGER.info(String.format("[migrateFeatureDescriptiveStatistics] Updated FGS: %d rows",
+          writer.getAffectedRows()));
     }
-    LOGGER.info(String.format("[migrateFeatureDescriptiveStatistics] Update FGS: %s", updateFgsStmt.toString()));
-    updateFgsStmt.executeBatch();
-    connection.commit();
   }
   
-  private void deleteStatisticsBatch(PreparedStatement deleteStatisticsStmt, Set<Integer> statisticsIdsToDelete,
-      String log)
+  private void deleteStatisticsBatch(String deleteStatisticsQuery, Set<Integer> statisticsIdsToDelete, String log)
       throws SQLException {
-    int c = 1;
-    for (Integer id : statisticsIdsToDelete) {
-      deleteStatisticsStmt.setInt(1, id);
-      deleteStatisticsStmt.addBatch();
-      if (c % statisticsMigrationBatchSize == 0) {
-        LOGGER.info(String.format("[migrateFeatureDescriptiveStatistics] Delete %s: %s", log,
-            deleteStatisticsStmt.toString()));
-        deleteStatisticsStmt.executeBatch();
-        connection.commit();
+    try (BatchWriter writer = new BatchWriter(connection, deleteStatisticsQuery, dryRun)
+        .withBatchSize(statisticsMigrationBatchSize).withCommitOnFlush(true)) {
+      for (Integer id : statisticsIdsToDelete) {
+        writer.add(id);
       }
-      c++;
+      writer.flush();
+      LOGGER.info(String.format("[migrateFeatureDescriptiveStatistics] Deleted %s: %d rows", log,
+          writer.getAffectedRows()));
     }
-    LOGGER.info(String.format("[migrateFeatureDescriptiveStatistics] Delete %s: %s", log,
-        deleteStatisticsStmt.toString()));
-    deleteStatisticsStmt.executeBatch();
-    connection.commit();
   }
   
   private byte[] convertPercentilesToByteArray(List<Double> percentilesList) {
@@ -807,21 +869,31 @@ public class StatisticsMigration implements MigrateStep {
   }
   
   protected void setup() throws ConfigurationException, SQLException {
-    connection = DbConnectionFactory.getConnection();
+    // the fds ids are read from the generated keys of a batch
+    connection = context.getConnectionWithoutBatchRewrite();
     
     Configuration conf = ConfigurationBuilder.getConfiguration();
     hopsUser = conf.getString(ExpatConf.HOPS_CLIENT_USER);
     if (hopsUser == null) {
       throw new ConfigurationException(ExpatConf.HOPS_CLIENT_USER + " cannot be null");
     }
-    dfso = HopsClient.getDFSO(hopsUser);
+    readOps = HdfsOperationExecutor.forUser(context.getDfsoProvider(), hopsUser);
+    writeOps = HdfsOperationExecutor.forUser(context.getDfsoProvider(), hopsUser);
     dryRun = conf.getBoolean(ExpatConf.DRY_RUN);
     inodeController = new ExpatInodeController(this.connection);
     this.statisticsMigrationBatchSize = Integer.parseInt(System.getProperty("statisticsmigrationbatch", "100"));
     LOGGER.info("Statistics migration batch size: " + statisticsMigrationBatchSize);
+    this.statisticsMigrationReadAhead = Integer.parseInt(System.getProperty("statisticsmigrationreadahead", "64"));
+    LOGGER.info("Statistics migration read ahead: " + statisticsMigrationReadAhead);
   }
   
   protected void close() {
+    if (readOps != null) {
+      readOps.close();
+    }
+    if (writeOps != null) {
+      writeOps.close();
+    }
     if (connection != null) {
       try {
         connection.close();
@@ -829,8 +901,5 @@ public class StatisticsMigration implements MigrateStep {
         LOGGER.error("failed to close jdbc connection", ex);
       }
     }
-    if (dfso != null) {
-      dfso.close();
-    }
   }
 }
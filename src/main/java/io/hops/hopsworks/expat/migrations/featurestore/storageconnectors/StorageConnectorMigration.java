@@ -1,22 +1,20 @@
 package io.hops.hopsworks.expat.migrations.featurestore.storageconnectors;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Strings;
-import io.hops.hopsworks.common.hdfs.DistributedFileSystemOps;
 import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
 import io.hops.hopsworks.expat.configuration.ExpatConf;
-import io.hops.hopsworks.expat.db.DbConnectionFactory;
+import io.hops.hopsworks.expat.json.JsonCodec;
 import io.hops.hopsworks.expat.migrations.MigrateStep;
+import io.hops.hopsworks.expat.migrations.MigrationContext;
 import io.hops.hopsworks.expat.migrations.MigrationException;
 import io.hops.hopsworks.expat.migrations.RollbackException;
-import io.hops.hopsworks.expat.migrations.projects.util.HopsClient;
+import io.hops.hopsworks.expat.migrations.projects.util.HdfsOperationExecutor;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.ex.ConfigurationException;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.permission.FsPermission;
-import org.json.JSONArray;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,12 +31,11 @@ public class StorageConnectorMigration implements MigrateStep {
   private static final Logger LOGGER = LoggerFactory.getLogger(StorageConnectorMigration.class);
   
   protected Connection connection;
-  DistributedFileSystemOps dfso = null;
+  // one chain of namenode operations per project, run over the shared clients of the hops user
+  private HdfsOperationExecutor hdfsOps;
   private boolean dryRun;
   private String hopsUser;
   
-  private ObjectMapper objectMapper = new ObjectMapper();
-  
   private final static String STORAGE_CONNECTORS_RESOURCE_SUBDIR= "storage_connector_resources";
   private final static String FEATURESTORE_HIVE_DB_DIR = "hdfs:///apps/hive/warehouse/%s_featurestore.db";
   
@@ -56,15 +53,15 @@ public class StorageConnectorMigration implements MigrateStep {
     "UPDATE feature_store_jdbc_connector SET arguments = ? WHERE id = ?";
   private final static String GET_PROJECT_NAMES = "SELECT projectname FROM project";
   
-  private void setup() throws ConfigurationException, SQLException {
-    connection = DbConnectionFactory.getConnection();
+  private void setup(MigrationContext context) throws ConfigurationException, SQLException {
+    connection = context.getConnection();
     
     Configuration conf = ConfigurationBuilder.getConfiguration();
     hopsUser = conf.getString(ExpatConf.HOPS_CLIENT_USER);
     if (hopsUser == null) {
       throw new ConfigurationException(ExpatConf.HOPS_CLIENT_USER + " cannot be null");
     }
-    dfso = HopsClient.getDFSO(hopsUser);
+    hdfsOps = HdfsOperationExecutor.forUser(context.getDfsoProvider(), hopsUser);
     dryRun = conf.getBoolean(ExpatConf.DRY_RUN);
   }
   
@@ -76,17 +73,24 @@ public class StorageConnectorMigration implements MigrateStep {
         LOGGER.error("failed to close jdbc connection", ex);
       }
     }
-    if(dfso != null) {
-      dfso.close();
+    if(hdfsOps != null) {
+      hdfsOps.close();
     }
   }
   
   @Override
   public void migrate() throws MigrationException {
+    try (MigrationContext context = new MigrationContext()) {
+      migrate(context);
+    }
+  }
+  
+  @Override
+  public void migrate(MigrationContext context) throws MigrationException {
     LOGGER.info("Starting storage connector migration");
     
     try {
-      setup();
+      setup(context);
     } catch (ConfigurationException | SQLException ex) {
       String errorMsg = "Could not initialize database connection";
       LOGGER.error(errorMsg);
@@ -106,9 +110,16 @@ public class StorageConnectorMigration implements MigrateStep {
   
   @Override
   public void rollback() throws RollbackException {
+    try (MigrationContext context = new MigrationContext()) {
+      rollback(context);
+    }
+  }
+  
+  @Override
+  public void rollback(MigrationContext context) throws RollbackException {
     LOGGER.info("Starting storage connector rollback");
     try {
-      setup();
+      setup(context);
     } catch (ConfigurationException | SQLException ex) {
       String errorMsg = "Could not initialize database connection";
       LOGGER.error(errorMsg);
@@ -202,22 +213,25 @@ public class StorageConnectorMigration implements MigrateStep {
         // check if project is feature store enabled by checking if the feature store hive db exists
         currentProjectName = projectNamesResultSet.getString("projectname");
         Path featureStorePath = new Path(String.format(FEATURESTORE_HIVE_DB_DIR, currentProjectName));
-        if (dfso.exists(featureStorePath)) {
-          FileStatus fileStatus = dfso.getFileStatus(featureStorePath);
-          FsPermission featureStoreDbPermissions = fileStatus.getPermission();
-          String owner = fileStatus.getOwner();
-          String group = fileStatus.getGroup();
-          Path storageConnectorResourcePath = new Path(featureStorePath + "/" + STORAGE_CONNECTORS_RESOURCE_SUBDIR);
-          if (!dryRun && !dfso.exists(storageConnectorResourcePath)) {
-            dfso.mkdir(storageConnectorResourcePath, featureStoreDbPermissions);
-            dfso.setOwner(storageConnectorResourcePath, owner, group);
+        hdfsOps.submit(featureStorePath.toString(), dfso -> {
+          if (dfso.exists(featureStorePath)) {
+            FileStatus fileStatus = dfso.getFileStatus(featureStorePath);
+            FsPermission featureStoreDbPermissions = fileStatus.getPermission();
+            String owner = fileStatus.getOwner();
+            String group = fileStatus.getGroup();
+            Path storageConnectorResourcePath = new Path(featureStorePath + "/" + STORAGE_CONNECTORS_RESOURCE_SUBDIR);
+            if (!dryRun && !dfso.exists(storageConnectorResourcePath)) {
+              dfso.mkdir(storageConnectorResourcePath, featureStoreDbPermissions);
+              dfso.setOwner(storageConnectorResourcePath, owner, group);
+            }
           }
-        }
+        });
       }
+      hdfsOps.awaitSuccess();
 
       connection.commit();
       connection.setAutoCommit(true);
-    } catch (SQLException | IOException e) {
+    } catch (SQLException | IOException | InterruptedException e) {
       close();
       throw new MigrationException("error", e);
     }
@@ -304,17 +318,20 @@ public class StorageConnectorMigration implements MigrateStep {
         // check if project is feature store enabled by checking if the feature store hive db exists
         currentProjectName = projectNamesResultSet.getString("projectname");
         Path featureStorePath = new Path(String.format(FEATURESTORE_HIVE_DB_DIR, currentProjectName));
-        if (dfso.exists(featureStorePath)) {
-          Path storageConnectorResourcePath = new Path(featureStorePath + "/" + STORAGE_CONNECTORS_RESOURCE_SUBDIR);
-          if (!dryRun && dfso.exists(storageConnectorResourcePath)) {
-            dfso.rm(storageConnectorResourcePath, true);
+        hdfsOps.submit(featureStorePath.toString(), dfso -> {
+          if (dfso.exists(featureStorePath)) {
+            Path storageConnectorResourcePath = new Path(featureStorePath + "/" + STORAGE_CONNECTORS_RESOURCE_SUBDIR);
+            if (!dryRun && dfso.exists(storageConnectorResourcePath)) {
+              dfso.rm(storageConnectorResourcePath, true);
+            }
           }
-        }
+        });
       }
+      hdfsOps.awaitSuccess();
       
       connection.commit();
       connection.setAutoCommit(true);
-    } catch (SQLException | IOException e) {
+    } catch (SQLException | IOException | InterruptedException e) {
       close();
       throw new RollbackException("error", e);
     }
@@ -361,7 +378,7 @@ public class StorageConnectorMigration implements MigrateStep {
     }
     
     try {
-      OptionDTO[] optionArray = objectMapper.readValue(arguments, OptionDTO[].class);
+      OptionDTO[] optionArray = JsonCodec.read(arguments, OptionDTO[].class);
       return Arrays.asList(optionArray);
     } catch (JsonProcessingException e) {
       throw new MigrationException("error", e);
@@ -369,10 +386,14 @@ public class StorageConnectorMigration implements MigrateStep {
   }
   
   // new fromOptions
-  public String fromOptions(List<OptionDTO> options) {
+  public String fromOptions(List<OptionDTO> options) throws MigrationException {
     if (options == null || options.isEmpty()) {
       return null;
     }
-    return new JSONArray(options).toString();
+    try {
+      return JsonCodec.write(options);
+    } catch (JsonProcessingException e) {
+      throw new MigrationException("error", e);
+    }
   }
 }
@@ -0,0 +1,117 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations.jobs;
+
+import com.google.common.collect.Sets;
+import io.hops.hopsworks.expat.migrations.MigrateStep;
+import io.hops.hopsworks.expat.migrations.MigrationException;
+import io.hops.hopsworks.expat.migrations.MigrationResource;
+import io.hops.hopsworks.expat.migrations.RollbackException;
+import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The {@link JobConfigStep}s of a version run as one step, applying all their transformers with a single scan of the
+ * jobs table, in the order the steps are listed. Rollback reverts them in reverse order.
+ */
+public class JobConfigMigration implements MigrateStep {
+  private static final Logger LOGGER = LoggerFactory.getLogger(JobConfigMigration.class);
+  
+  private final List<JobConfigStep> steps;
+  
+  public JobConfigMigration(List<JobConfigStep> steps) {
+    this.steps = new ArrayList<>(steps);
+  }
+  
+  /**
+   * @return the steps with the job configuration steps replaced by one {@link JobConfigMigration}, in the position of
+   * the first of them. The steps are returned as they are if there are less than two job configuration steps.
+   */
+  public static List<MigrateStep> fuse(List<MigrateStep> steps) {
+    List<JobConfigStep> jobConfigSteps = steps.stream()
+      .filter(step -> step instanceof JobConfigStep)
+      .map(step -> (JobConfigStep) step)
+      .collect(Collectors.toList());
+    if (jobConfigSteps.size() < 2) {
+      return steps;
+    }
+    JobConfigMigration fused = new JobConfigMigration(jobConfigSteps);
+    LOGGER.info("Running job configuration steps with one scan of the jobs table: {}", fused.getStepNames());
+    List<MigrateStep> fusedSteps = new ArrayList<>();
+    for (MigrateStep step : steps) {
+      if (step == jobConfigSteps.get(0)) {
+        fusedSteps.add(fused);
+      } else if (!(step instanceof JobConfigStep)) {
+        fusedSteps.add(step);
+      }
+    }
+    return fusedSteps;
+  }
+  
+  private List<String> getStepNames() {
+    return steps.stream().map(step -> step.getClass().getName()).collect(Collectors.toList());
+  }
+  
+  @Override
+  public void migrate() throws MigrationException {
+    LOGGER.info("Starting jobConfig migration of " + getStepNames());
+    try {
+      new JobConfigPipeline(steps).migrate();
+    } catch (SQLException | ConfigurationException | InterruptedException | IOException ex) {
+      String errorMsg = "Could not migrate job configurations";
+      LOGGER.error(errorMsg);
+      throw new MigrationException(errorMsg, ex);
+    }
+    LOGGER.info("Finished jobConfig migration of " + getStepNames());
+  }
+  
+  @Override
+  public void rollback() throws RollbackException {
+    LOGGER.info("Starting jobConfig rollback of " + getStepNames());
+    try {
+      new JobConfigPipeline(steps).rollback();
+    } catch (SQLException | ConfigurationException | InterruptedException | IOException ex) {
+      String errorMsg = "Could not rollback job configurations";
+      LOGGER.error(errorMsg);
+      throw new RollbackException(errorMsg, ex);
+    }
+    LOGGER.info("Finished jobConfig rollback of " + getStepNames());
+  }
+  
+  @Override
+  public Set<Class<? extends MigrateStep>> dependsOn() {
+    Set<Class<? extends MigrateStep>> dependencies = new HashSet<>();
+    for (JobConfigStep step : steps) {
+      dependencies.addAll(step.dependsOn());
+    }
+    return dependencies;
+  }
+  
+  @Override
+  public Set<MigrationResource> resources() {
+    return Sets.newHashSet(MigrationResource.table("jobs"));
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations.jobs;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
+import io.hops.hopsworks.expat.configuration.ExpatConf;
+import io.hops.hopsworks.expat.db.BatchWriter;
+import io.hops.hopsworks.expat.db.DbConnectionFactory;
+import io.hops.hopsworks.expat.json.JsonCodec;
+import org.apache.commons.configuration2.Configuration;
+import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Applies a chain of {@link JobConfigTransformer} to the json_config of every job with one scan of the jobs table.
+ * The rows are streamed, the configurations are parsed and transformed on {@link ExpatConf#JOB_CONFIG_WORKERS}
+ * threads, and the configurations that changed are written back in batches. Rollback applies the inverse of the
+ * transformers in reverse order.
+ * The batches are committed in a single transaction at the end of the scan: the transformers are not all idempotent,
+ * so a run that fails half way leaves the table as it was instead of partly migrated.
+ */
+public class JobConfigPipeline {
+  private static final Logger LOGGER = LoggerFactory.getLogger(JobConfigPipeline.class);
+  
+  private static final String GET_JOB_CONFIGURATIONS = "SELECT id, type, json_config FROM jobs";
+  private static final String UPDATE_JOB_CONFIGURATION = "UPDATE jobs SET json_config = ? WHERE id = ?";
+  // configurations transformed ahead of the one being written, per worker
+  private static final int READ_AHEAD_PER_WORKER = 16;
+  
+  private final List<JobConfigTransformer> transformers;
+  
+  public JobConfigPipeline(List<? extends JobConfigTransformer> transformers) {
+    this.transformers = new ArrayList<>(transformers);
+  }
+  
+  public void migrate() throws SQLException, ConfigurationException, InterruptedException, IOException {
+    run(transformers, false);
+  }
+  
+  public void rollback() throws SQLException, ConfigurationException, InterruptedException, IOException {
+    List<JobConfigTransformer> reversed = new ArrayList<>(transformers);
+    Collections.reverse(reversed);
+    run(reversed, true);
+  }
+  
+  private static class JobConfig {
+    private final int id;
+    // the new configuration, null if it did not change
+    private final Future<String> transformed;
+    
+    private JobConfig(int id, Future<String> transformed) {
+      this.id = id;
+      this.transformed = transformed;
+    }
+  }
+  
+  private void run(List<JobConfigTransformer> chain, boolean revert)
+    throws SQLException, ConfigurationException, InterruptedException, IOException {
+    Configuration conf = ConfigurationBuilder.getConfiguration();
+    boolean dryRun = conf.getBoolean(ExpatConf.DRY_RUN);
+    int workers = conf.getInt(ExpatConf.JOB_CONFIG_WORKERS, ExpatConf.JOB_CONFIG_WORKERS_DEFAULT);
+    
+    ExecutorService executor = Executors.newFixedThreadPool(workers,
+      new ThreadFactoryBuilder().setNameFormat("expat-job-config-%d").setDaemon(true).build());
+    long scanned = 0;
+    // the rows are streamed on a connection of their own, the updates are written on the other one
+    try (Connection streamConnection = DbConnectionFactory.getConnection();
+         Connection connection = DbConnectionFactory.getConnection();
+         PreparedStatement stmt = streamConnection.prepareStatement(GET_JOB_CONFIGURATIONS,
+           ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+      // row by row streaming in the MySQL driver
+      stmt.setFetchSize(Integer.MIN_VALUE);
+      connection.setAutoCommit(false);
+      try (ResultSet jobs = stmt.executeQuery();
+           BatchWriter writer = new BatchWriter(connection, UPDATE_JOB_CONFIGURATION, dryRun)) {
+        Deque<JobConfig> pending = new ArrayDeque<>();
+        while (jobs.next()) {
+          scanned++;
+          int id = jobs.getInt(1);
+          String jobType = jobs.getString(2);
+          String json = jobs.getString(3);
+          if (json == null) {
+            continue;
+          }
+          pending.add(new JobConfig(id, executor.submit(() -> transform(chain, revert, jobType, json))));
+          if (pending.size() >= workers * READ_AHEAD_PER_WORKER) {
+            write(pending.poll(), writer);
+          }
+        }
+        while (!pending.isEmpty()) {
+          write(pending.poll(), writer);
+        }
+        writer.flush();
+        connection.commit();
+        LOGGER.info("{} jobs scanned, {} configurations {}", scanned, writer.getRows(),
+          revert ? "rolled back" : "migrated");
+      } catch (SQLException | InterruptedException | IOException | RuntimeException e) {
+        connection.rollback();
+        throw e;
+      } finally {
+        connection.setAutoCommit(true);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+  
+  /**
+   * @return the transformed configuration, null if the transformers left it as it was
+   */
+  static String transform(List<JobConfigTransformer> chain, boolean revert, String jobType, String json)
+    throws IOException {
+    ObjectNode config = JsonCodec.readObject(json);
+    ObjectNode original = config.deepCopy();
+    boolean applied = false;
+    for (JobConfigTransformer transformer : chain) {
+      if (transformer.appliesTo(jobType)) {
+        if (revert) {
+          transformer.revert(config);
+        } else {
+          transformer.transform(config);
+        }
+        applied = true;
+      }
+    }
+    // configurations the transformers left as they were are not written back
+    if (!applied || config.equals(original)) {
+      return null;
+    }
+    return JsonCodec.write(config);
+  }
+  
+  private void write(JobConfig jobConfig, BatchWriter writer) throws SQLException, InterruptedException, IOException {
+    String config;
+    try {
+      config = jobConfig.transformed.get();
+    } catch (ExecutionException e) {
+      throw new IOException("Could not transform the configuration of JobID: " + jobConfig.id, e.getCause());
+    }
+    if (config != null) {
+      LOGGER.info("Updating configuration of JobID: " + jobConfig.id);
+      writer.add(config, jobConfig.id);
+    }
+  }
+}
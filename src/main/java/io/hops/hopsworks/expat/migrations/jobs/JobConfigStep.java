@@ -0,0 +1,70 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations.jobs;
+
+import com.google.common.collect.Sets;
+import io.hops.hopsworks.expat.migrations.MigrateStep;
+import io.hops.hopsworks.expat.migrations.MigrationException;
+import io.hops.hopsworks.expat.migrations.MigrationResource;
+import io.hops.hopsworks.expat.migrations.RollbackException;
+import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Step that only transforms the json_config of the jobs. Run on its own it scans the jobs table for itself, within a
+ * version it is fused with the other job configuration steps by {@link JobConfigMigration}.
+ */
+public abstract class JobConfigStep implements MigrateStep, JobConfigTransformer {
+  private static final Logger LOGGER = LoggerFactory.getLogger(JobConfigStep.class);
+  
+  @Override
+  public void migrate() throws MigrationException {
+    LOGGER.info("Starting jobConfig migration of " + getClass().getName());
+    try {
+      new JobConfigPipeline(Collections.singletonList(this)).migrate();
+    } catch (SQLException | ConfigurationException | InterruptedException | IOException ex) {
+      String errorMsg = "Could not migrate job configurations";
+      LOGGER.error(errorMsg);
+      throw new MigrationException(errorMsg, ex);
+    }
+    LOGGER.info("Finished jobConfig migration of " + getClass().getName());
+  }
+  
+  @Override
+  public void rollback() throws RollbackException {
+    LOGGER.info("Starting jobConfig rollback of " + getClass().getName());
+    try {
+      new JobConfigPipeline(Collections.singletonList(this)).rollback();
+    } catch (SQLException | ConfigurationException | InterruptedException | IOException ex) {
+      String errorMsg = "Could not rollback job configurations";
+      LOGGER.error(errorMsg);
+      throw new RollbackException(errorMsg, ex);
+    }
+    LOGGER.info("Finished jobConfig rollback of " + getClass().getName());
+  }
+  
+  @Override
+  public Set<MigrationResource> resources() {
+    return Sets.newHashSet(MigrationResource.table("jobs"));
+  }
+}
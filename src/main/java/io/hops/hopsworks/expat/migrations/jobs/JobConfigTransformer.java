@@ -0,0 +1,44 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations.jobs;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Transformation of the json_config of the jobs. The transformers of a version are applied together by a
+ * {@link JobConfigPipeline}, so the jobs table is scanned and rewritten once whatever the number of transformers.
+ */
+public interface JobConfigTransformer {
+  
+  /**
+   * @param jobType the type column of the job
+   * @return whether the configurations of jobs of this type are transformed
+   */
+  default boolean appliesTo(String jobType) {
+    return true;
+  }
+  
+  /**
+   * Converts the configuration of a job to the format of the version, in place.
+   */
+  void transform(ObjectNode config);
+  
+  /**
+   * Converts the configuration of a job back to the format of the previous version, in place.
+   */
+  void revert(ObjectNode config);
+}
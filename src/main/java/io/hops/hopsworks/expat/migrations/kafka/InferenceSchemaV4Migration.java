@@ -19,7 +19,9 @@ package io.hops.hopsworks.expat.migrations.kafka;
 
 import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
 import io.hops.hopsworks.expat.configuration.ExpatConf;
+import io.hops.hopsworks.expat.db.BatchWriter;
 import io.hops.hopsworks.expat.db.DbConnectionFactory;
+import io.hops.hopsworks.expat.db.KeysetScanner;
 import io.hops.hopsworks.expat.migrations.MigrateStep;
 import io.hops.hopsworks.expat.migrations.MigrationException;
 import io.hops.hopsworks.expat.migrations.RollbackException;
@@ -41,7 +43,7 @@ public class InferenceSchemaV4Migration implements MigrateStep {
   private boolean dryRun;
   
   // queries
-  private final static String GET_PROJECT_IDS = "SELECT id FROM project";
+
   private final static String GET_SUBJECT_COMPATIBILITIES = "SELECT id FROM subjects_compatibility " +
     "WHERE subject = ?";
   private final static String UPDATE_SUBJECT_COMPATIBILITY = "UPDATE subjects_compatibility SET compatibility = ? " +
@@ -77,9 +79,7 @@ public class InferenceSchemaV4Migration implements MigrateStep {
       throw new MigrationException(errorMsg, ex);
     }
   
-    PreparedStatement getProjectIdsStmt = null;
     PreparedStatement getSubjectsCompatibilityStmt = null;
-    PreparedStatement updateSubjectCompatibilityStmt = null;
     PreparedStatement insertSchemaStmt = null;
     PreparedStatement getSchemaStmt = null;
     PreparedStatement insertSubjectStmt = null;
@@ -93,60 +93,56 @@ public class InferenceSchemaV4Migration implements MigrateStep {
       ResultSet subjectResultSet = getSubjectsCompatibilityStmt.executeQuery();
       
       // -- update subject compatibilities to NONE
-      updateSubjectCompatibilityStmt = connection.prepareStatement(UPDATE_SUBJECT_COMPATIBILITY);
-      while (subjectResultSet.next()) {
-        int id = subjectResultSet.getInt(1);
-        updateSubjectCompatibilityStmt.setString(1, SCHEMA_COMPATIBILITY_NONE);
-        updateSubjectCompatibilityStmt.setInt(2, id);
-        updateSubjectCompatibilityStmt.addBatch();
-      }
-      if (dryRun) {
-        LOGGER.info(updateSubjectCompatibilityStmt.toString());
-      } else {
-        updateSubjectCompatibilityStmt.executeBatch();
+      try (BatchWriter updateSubjectCompatibilityWriter = new BatchWriter(connection, UPDATE_SUBJECT_COMPATIBILITY,
+        dryRun)) {
+        while (subjectResultSet.next()) {
+          updateSubjectCompatibilityWriter.add(SCHEMA_COMPATIBILITY_NONE, subjectResultSet.getInt(1));
+        }
+        updateSubjectCompatibilityWriter.flush();
       }
       
       // Create schema and subject
-      // -- per project
-      getProjectIdsStmt = connection.prepareStatement(GET_PROJECT_IDS);
-      ResultSet projectIdsResultSet = getProjectIdsStmt.executeQuery();
+      // -- per project, committed per chunk of projects
       String inferenceSchemaV4 = (new Schema.Parser().parse(INFERENCE_SCHEMA_VERSION_4)).toString();
-      while(projectIdsResultSet.next()) {
+      insertSchemaStmt = connection.prepareStatement(INSERT_SCHEMA);
+      getSchemaStmt = connection.prepareStatement(GET_SCHEMA);
+      insertSubjectStmt = connection.prepareStatement(INSERT_SUBJECT);
+      PreparedStatement projectInsertSchemaStmt = insertSchemaStmt;
+      PreparedStatement projectGetSchemaStmt = getSchemaStmt;
+      PreparedStatement projectInsertSubjectStmt = insertSubjectStmt;
+      new KeysetScanner(connection, "project", "id", "id").scan(projectIdsResultSet -> {
         int projectId = projectIdsResultSet.getInt(1);
   
         // -- create schema
-        insertSchemaStmt = connection.prepareStatement(INSERT_SCHEMA);
-        insertSchemaStmt.setString(1, inferenceSchemaV4);
-        insertSchemaStmt.setInt(2, projectId);
+        projectInsertSchemaStmt.setString(1, inferenceSchemaV4);
+        projectInsertSchemaStmt.setInt(2, projectId);
         if (dryRun) {
-          LOGGER.info(insertSchemaStmt.toString());
+          LOGGER.info(projectInsertSchemaStmt.toString());
         } else {
-          insertSchemaStmt.execute();
+          projectInsertSchemaStmt.execute();
         }
-        getSchemaStmt = connection.prepareStatement(GET_SCHEMA);
-        getSchemaStmt.setString(1, inferenceSchemaV4);
-        getSchemaStmt.setInt(2, projectId);
+        projectGetSchemaStmt.setString(1, inferenceSchemaV4);
+        projectGetSchemaStmt.setInt(2, projectId);
         int schemaId = -1;
         if (dryRun) {
-          LOGGER.info(getSchemaStmt.toString());
+          LOGGER.info(projectGetSchemaStmt.toString());
         } else {
-          ResultSet schemaResultSet = getSchemaStmt.executeQuery();
+          ResultSet schemaResultSet = projectGetSchemaStmt.executeQuery();
           schemaResultSet.next(); // schema was inserted above
           schemaId = schemaResultSet.getInt(1);
         }
         
         // -- create subject
-        insertSubjectStmt = connection.prepareStatement(INSERT_SUBJECT);
-        insertSubjectStmt.setString(1, INFERENCE_SCHEMA_NAME);
-        insertSubjectStmt.setInt(2, 4);
-        insertSubjectStmt.setInt(3, schemaId);
-        insertSubjectStmt.setInt(4, projectId);
+        projectInsertSubjectStmt.setString(1, INFERENCE_SCHEMA_NAME);
+        projectInsertSubjectStmt.setInt(2, 4);
+        projectInsertSubjectStmt.setInt(3, schemaId);
+        projectInsertSubjectStmt.setInt(4, projectId);
         if (dryRun) {
-          LOGGER.info(insertSubjectStmt.toString());
+          LOGGER.info(projectInsertSubjectStmt.toString());
         } else {
-          insertSubjectStmt.execute();
+          projectInsertSubjectStmt.execute();
         }
-      }
+      });
       
       connection.commit();
       connection.setAutoCommit(true);
@@ -155,8 +151,7 @@ public class InferenceSchemaV4Migration implements MigrateStep {
       LOGGER.error(errorMsg);
       throw new MigrationException(errorMsg, ex);
     } finally {
-      closeConnections(getSubjectsCompatibilityStmt, updateSubjectCompatibilityStmt, getProjectIdsStmt,
-        insertSchemaStmt, getSchemaStmt, insertSubjectStmt);
+      closeConnections(getSubjectsCompatibilityStmt, insertSchemaStmt, getSchemaStmt, insertSubjectStmt);
     }
     LOGGER.info("Finished inferenceschema v4 migration");
   }
@@ -172,40 +167,40 @@ public class InferenceSchemaV4Migration implements MigrateStep {
       throw new RollbackException(errorMsg, ex);
     }
   
-    PreparedStatement getProjectIdsStmt = null;
     PreparedStatement deleteSchemaStmt = null;
     PreparedStatement deleteSubjectStmt = null;
     try {
       connection.setAutoCommit(false);
       
       // Delete schema and subject
-      // -- per project
-      getProjectIdsStmt = connection.prepareStatement(GET_PROJECT_IDS);
-      ResultSet projectIdsResultSet = getProjectIdsStmt.executeQuery();
-      while(projectIdsResultSet.next()) {
+      // -- per project, committed per chunk of projects
+      String inferenceSchemaV4 = (new Schema.Parser().parse(INFERENCE_SCHEMA_VERSION_4)).toString();
+      deleteSubjectStmt = connection.prepareStatement(DELETE_SUBJECT);
+      deleteSchemaStmt = connection.prepareStatement(DELETE_SCHEMA);
+      PreparedStatement projectDeleteSubjectStmt = deleteSubjectStmt;
+      PreparedStatement projectDeleteSchemaStmt = deleteSchemaStmt;
+      new KeysetScanner(connection, "project", "id", "id").scan(projectIdsResultSet -> {
         int projectId = projectIdsResultSet.getInt(1);
   
         // -- delete subject
-        deleteSubjectStmt = connection.prepareStatement(DELETE_SUBJECT);
-        deleteSubjectStmt.setString(1, INFERENCE_SCHEMA_NAME);
-        deleteSubjectStmt.setInt(2, 4);
-        deleteSubjectStmt.setInt(3, projectId);
+        projectDeleteSubjectStmt.setString(1, INFERENCE_SCHEMA_NAME);
+        projectDeleteSubjectStmt.setInt(2, 4);
+        projectDeleteSubjectStmt.setInt(3, projectId);
         if (dryRun) {
-          LOGGER.info(deleteSubjectStmt.toString());
+          LOGGER.info(projectDeleteSubjectStmt.toString());
         } else {
-          deleteSubjectStmt.execute();
+          projectDeleteSubjectStmt.execute();
         }
   
         // -- delete schema
-        deleteSchemaStmt = connection.prepareStatement(DELETE_SCHEMA);
-        deleteSchemaStmt.setString(1, (new Schema.Parser().parse(INFERENCE_SCHEMA_VERSION_4)).toString());
-        deleteSchemaStmt.setInt(2, projectId);
+        projectDeleteSchemaStmt.setString(1, inferenceSchemaV4);
+        projectDeleteSchemaStmt.setInt(2, projectId);
         if (dryRun) {
-          LOGGER.info(deleteSchemaStmt.toString());
+          LOGGER.info(projectDeleteSchemaStmt.toString());
         } else {
-          deleteSchemaStmt.execute();
+          projectDeleteSchemaStmt.execute();
         }
-      }
+      });
     
       connection.commit();
       connection.setAutoCommit(true);
@@ -214,7 +209,7 @@ public class InferenceSchemaV4Migration implements MigrateStep {
       LOGGER.error(errorMsg);
       throw new RollbackException(errorMsg, ex);
     } finally {
-      closeConnections(getProjectIdsStmt, deleteSchemaStmt, deleteSubjectStmt);
+      closeConnections(deleteSchemaStmt, deleteSubjectStmt);
     }
     LOGGER.info("Finished inferenceschema v4 rollback");
   }
@@ -21,9 +21,8 @@ import io.fabric8.kubernetes.api.model.Namespace;
 import io.fabric8.kubernetes.api.model.NamespaceBuilder;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClientException;
-import io.hops.hopsworks.expat.db.DbConnectionFactory;
-import io.hops.hopsworks.expat.kubernetes.KubernetesClientFactory;
 import io.hops.hopsworks.expat.migrations.MigrateStep;
+import io.hops.hopsworks.expat.migrations.MigrationContext;
 import io.hops.hopsworks.expat.migrations.MigrationException;
 import io.hops.hopsworks.expat.migrations.RollbackException;
 import org.apache.commons.configuration2.ex.ConfigurationException;
@@ -41,18 +40,25 @@ public class CreateNS implements MigrateStep {
 
   @Override
   public void migrate() throws MigrationException {
+    try (MigrationContext context = new MigrationContext()) {
+      migrate(context);
+    }
+  }
+
+  @Override
+  public void migrate(MigrationContext context) throws MigrationException {
     KubernetesClient client;
     try {
-      client = KubernetesClientFactory.getClient();
+      client = context.getKubernetesClient();
     } catch (ConfigurationException e) {
       throw new MigrationException("Cannot read the configuration", e);
     }
 
-    Connection dbConn;
+    Connection dbConn = null;
     Statement stmt = null;
     ResultSet resultSet = null;
     try {
-      dbConn = DbConnectionFactory.getConnection();
+      dbConn = context.getConnection();
       stmt = dbConn.createStatement();
       resultSet = stmt.executeQuery("SELECT projectname FROM project");
 
@@ -89,23 +95,38 @@ public class CreateNS implements MigrateStep {
           // Nothing to do here.
         }
       }
+
+      if (dbConn != null) {
+        try {
+          dbConn.close();
+        } catch (SQLException e) {
+          // Nothing to do here.
+        }
+      }
     }
   }
 
   @Override
   public void rollback() throws RollbackException {
+    try (MigrationContext context = new MigrationContext()) {
+      rollback(context);
+    }
+  }
+
+  @Override
+  public void rollback(MigrationContext context) throws RollbackException {
     KubernetesClient client;
     try {
-      client = KubernetesClientFactory.getClient();
+      client = context.getKubernetesClient();
     } catch (ConfigurationException e) {
       throw new RollbackException("Cannot read the configuration", e);
     }
 
-    Connection dbConn;
+    Connection dbConn = null;
     Statement stmt = null;
     ResultSet resultSet = null;
     try {
-      dbConn = DbConnectionFactory.getConnection();
+      dbConn = context.getConnection();
       stmt = dbConn.createStatement();
       resultSet = stmt.executeQuery("SELECT projectname FROM project");
 
@@ -144,6 +165,14 @@ public class CreateNS implements MigrateStep {
           // Nothing to do here.
         }
       }
+
+      if (dbConn != null) {
+        try {
+          dbConn.close();
+        } catch (SQLException e) {
+          // Nothing to do here.
+        }
+      }
     }
   }
 }
@@ -16,65 +16,72 @@ package io.hops.hopsworks.expat.migrations.models;
  *
  */
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Sets;
 import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
 import io.hops.hopsworks.expat.configuration.ExpatConf;
-import io.hops.hopsworks.expat.db.DbConnectionFactory;
+import io.hops.hopsworks.expat.db.dao.ReferenceDataCache;
 import io.hops.hopsworks.expat.db.dao.hdfs.inode.ExpatHdfsInode;
 import io.hops.hopsworks.expat.db.dao.hdfs.inode.ExpatInodeController;
 import io.hops.hopsworks.expat.db.dao.hdfs.user.ExpatHdfsUser;
-import io.hops.hopsworks.expat.db.dao.hdfs.user.ExpatHdfsUserFacade;
 import io.hops.hopsworks.expat.db.dao.models.ExpatModel;
 import io.hops.hopsworks.expat.db.dao.models.ExpatModelVersion;
 import io.hops.hopsworks.expat.db.dao.models.ExpatModelsController;
 import io.hops.hopsworks.expat.db.dao.project.ExpatProject;
-import io.hops.hopsworks.expat.db.dao.project.ExpatProjectFacade;
 import io.hops.hopsworks.expat.db.dao.user.ExpatUser;
-import io.hops.hopsworks.expat.db.dao.user.ExpatUserFacade;
 import io.hops.hopsworks.expat.elastic.ElasticClient;
-import io.hops.hopsworks.expat.migrations.MigrateStep;
+import io.hops.hopsworks.expat.elastic.ElasticSearchIterator;
+import io.hops.hopsworks.expat.json.JsonCodec;
+import io.hops.hopsworks.expat.migrations.MigrationContext;
 import io.hops.hopsworks.expat.migrations.MigrationException;
+import io.hops.hopsworks.expat.migrations.MigrationJournal;
+import io.hops.hopsworks.expat.migrations.MigrationResource;
+import io.hops.hopsworks.expat.migrations.ResumableStep;
 import io.hops.hopsworks.expat.migrations.RollbackException;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.ex.ConfigurationException;
 import org.apache.http.HttpHost;
-import org.apache.http.client.config.CookieSpecs;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.ssl.SSLContextBuilder;
-import org.json.JSONArray;
-import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
 import java.security.GeneralSecurityException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.Set;
 
-public class OpenSearchToRonDBMigration implements MigrateStep {
+public class OpenSearchToRonDBMigration implements ResumableStep {
   private final static Logger LOGGER = LoggerFactory.getLogger(OpenSearchToRonDBMigration.class);
+  // the fields of the model state documents read by the migration
+  private final static List<String> MODEL_SOURCE_FIELDS = Arrays.asList("xattr_prov.model_summary",
+    "create_timestamp", "user_id");
 
   protected ExpatModelsController expatModelsController;
   protected ExpatInodeController expatInodeController;
-  protected ExpatProjectFacade expatProjectFacade;
-  protected ExpatHdfsUserFacade expatHdfsUserFacade;
-  protected ExpatUserFacade expatUserFacade;
+  protected ReferenceDataCache referenceData;
 
   protected boolean dryRun;
+  // file provenance indices whose model versions have been migrated
+  protected MigrationJournal journal;
 
   protected Connection connection;
+  // shared through the context, not closed by the step
   private CloseableHttpClient httpClient;
   private HttpHost elastic;
   private String elasticUser;
   private String elasticPass;
+  private int searchPageSize;
 
-  private void setup()
+  private void setup(MigrationContext context)
     throws SQLException, ConfigurationException, GeneralSecurityException {
-    connection = DbConnectionFactory.getConnection();
+    connection = context.getConnection();
     Configuration conf = ConfigurationBuilder.getConfiguration();
     String elasticURI = conf.getString(ExpatConf.ELASTIC_URI);
 
@@ -91,44 +98,53 @@ public class OpenSearchToRonDBMigration implements MigrateStep {
     if (elasticPass == null) {
       throw new ConfigurationException(ExpatConf.ELASTIC_PASS_KEY + " cannot be null");
     }
-    httpClient = HttpClients
-      .custom()
-      .setDefaultRequestConfig(RequestConfig.custom().setCookieSpec(CookieSpecs.IGNORE_COOKIES).build())
-      .setSSLContext(new SSLContextBuilder().loadTrustMaterial((x509Certificates, s) -> true).build())
-      .setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE)
-      .build();
+    httpClient = context.getHttpClient(elastic);
     this.expatModelsController = new ExpatModelsController(this.connection);
     this.expatInodeController = new ExpatInodeController(this.connection);
-    this.expatProjectFacade = new ExpatProjectFacade(ExpatProject.class, this.connection);
-    this.expatUserFacade = new ExpatUserFacade();
-    this.expatHdfsUserFacade = new ExpatHdfsUserFacade(ExpatHdfsUser.class, this.connection);
+    this.referenceData = context.getReferenceData();
     this.dryRun = conf.getBoolean(ExpatConf.DRY_RUN);
+    this.searchPageSize = conf.getInt(ExpatConf.ELASTIC_SEARCH_PAGE_SIZE, ExpatConf.ELASTIC_SEARCH_PAGE_SIZE_DEFAULT);
   }
 
-  private void close() throws SQLException, IOException {
+  private void close() throws SQLException {
     if(connection != null) {
       connection.close();
     }
-    if(httpClient != null) {
-      httpClient.close();
-    }
   }
 
+  @Override
+  public void setJournal(MigrationJournal journal) {
+    this.journal = journal;
+  }
+
+  @Override
+  public Set<MigrationResource> resources() {
+    return Sets.newHashSet(
+      MigrationResource.table("model"),
+      MigrationResource.table("model_version"));
+  }
+  
   @Override
   public void migrate() throws MigrationException {
+    try (MigrationContext context = new MigrationContext()) {
+      migrate(context);
+    }
+  }
+
+  @Override
+  public void migrate(MigrationContext context) throws MigrationException {
     try {
-      setup();
+      setup(context);
       LOGGER.info("Getting all file provenance indices");
-      JSONObject fileProvIndices = ElasticClient.getIndicesByRegex(httpClient, elastic, elasticUser, elasticPass,
+      List<String> fileProvIndices = ElasticClient.listIndices(httpClient, elastic, elasticUser, elasticPass,
         "*__file_prov");
-      if (fileProvIndices.length() == 10000) {
-        throw new MigrationException("Unexpected large amount of file provenance indices detected. This migration " +
-                "does not handle more than 10000 file provenance indices. " +
-                "Migration needs to be fixed to handle pagination");
-      }
-      if (fileProvIndices.length() > 0) {
-        LOGGER.info("Found {} file provenance indices to migrate", fileProvIndices.keySet().size());
-        for(String fileProvIndexName: fileProvIndices.keySet()) {
+      if (!fileProvIndices.isEmpty()) {
+        LOGGER.info("Found {} file provenance indices to migrate", fileProvIndices.size());
+        for(String fileProvIndexName: fileProvIndices) {
+          if (journal != null && journal.isCommitted(fileProvIndexName)) {
+            LOGGER.info("Model versions of index {} already migrated, skipping", fileProvIndexName);
+            continue;
+          }
           long projectInodeId = Long.parseLong(fileProvIndexName.substring(0, fileProvIndexName.indexOf("__")));
           ExpatHdfsInode projectInode = expatInodeController.getInodeById(projectInodeId);
           if (projectInode == null) {
@@ -141,7 +157,7 @@ public class OpenSearchToRonDBMigration implements MigrateStep {
               LOGGER.info("Project " + projectName + " does NOT have a Models dataset. Continue...");
               continue;
             }
-            String query = "{\"track_total_hits\":true,\"from\":0,\"size\":10000,\"query\":{\"bool\":" +
+            String query = "{\"bool\":" +
                     "{\"must\":[{\"term\":{\"entry_type\":" +
                     "{\"value\":\"state\",\"boost\":1.0}}},{\"bool\":{\"should\":[{\"term\":{\"project_i_id\":" +
                     "{\"value\":\"" + projectInode.getId() + "\",\"boost\":1.0}}}]" +
@@ -152,73 +168,56 @@ public class OpenSearchToRonDBMigration implements MigrateStep {
                     "{\"value\":\"" + modelDatasetInode.getId() + "\",\"boost\":1.0}}}]" +
                     ",\"adjust_pure_negative\":true,\"boost\":1.0}},{\"exists\":" +
                     "{\"field\":\"xattr_prov.model_summary.value\",\"boost\":1.0}}]," +
-                    "\"adjust_pure_negative\":true,\"boost\":1.0}}}";
-
-            JSONObject resp = ElasticClient.search(httpClient, elastic, elasticUser, elasticPass, fileProvIndexName,
-                    query);
+                    "\"adjust_pure_negative\":true,\"boost\":1.0}}";
 
-            JSONObject modelSearchHits = resp.getJSONObject("hits");
-            int totalHits = modelSearchHits.getJSONObject("total").getInt("value");
-            JSONArray modelHits = modelSearchHits.getJSONArray("hits");
-            if(totalHits > modelHits.length()) {
-              throw new MigrationException("There are more documents in opensearch than what will be consumed by" +
-                      " the migration, totalHits=" + totalHits + ", modelHits=" + modelHits.length());
-            }
-            if (modelHits.length() > 0) {
-              LOGGER.info("Migrating {} model versions for project {}", modelHits.length(), projectInode.getName());
-              for (int y = 0; y < modelHits.length(); y++) {
-                JSONObject modelHit = modelHits.getJSONObject(y);
-                JSONObject source = modelHit.getJSONObject("_source");
-                JSONObject xattrProv = source.getJSONObject("xattr_prov");
-                JSONObject modelSummary = xattrProv.getJSONObject("model_summary");
-                JSONObject value = modelSummary.getJSONObject("value");
+            int migrated = 0;
+            try (ElasticSearchIterator modelHits = new ElasticSearchIterator(httpClient, elastic, elasticUser,
+                    elasticPass, fileProvIndexName, JsonCodec.readObject(query), searchPageSize, MODEL_SOURCE_FIELDS)) {
+              while (modelHits.hasNext()) {
+                ObjectNode modelHit = modelHits.next();
+                ObjectNode source = JsonCodec.getObject(modelHit, "_source");
+                if (source == null) {
+                  throw new MigrationException("_source missing from model hit: " + modelHit);
+                }
+                ObjectNode value = modelSummaryValue(source);
 
-                ExpatProject expatProject = expatProjectFacade.findByProjectName(projectInode.getName());
+                ExpatProject expatProject = referenceData.getProject(connection, projectInode.getName());
                 Integer userId = getModelVersionCreator(expatProject, source);
 
                 String modelName = null;
                 if (value.has("name")) {
-                  modelName = value.getString("name");
+                  modelName = value.get("name").asText();
                 } else {
-                  throw new MigrationException("name field missing from model: " + source.toString(4));
+                  throw new MigrationException("name field missing from model: " + source);
                 }
 
                 Integer version = null;
                 if (value.has("version")) {
-                  version = value.getInt("version");
+                  version = intValue(value, "version", source);
                 } else {
-                  throw new MigrationException("version field missing from model: " + source.toString(4));
+                  throw new MigrationException("version field missing from model: " + source);
                 }
 
                 Long created = new Date().getTime();
-                if (source.has("create_timestamp") && !value.isNull("create_timestamp")) {
-                  created = source.getLong("create_timestamp");
+                if (source.has("create_timestamp") && value.hasNonNull("create_timestamp")) {
+                  created = source.get("create_timestamp").asLong();
                 }
 
-                String description = null;
-                if (value.has("description") && !value.isNull("description")) {
-                  description = value.getString("description");
-                }
+                String description = JsonCodec.getText(value, "description");
 
                 String metrics = null;
-                if (value.has("metrics") && !value.isNull("metrics")) {
-                  Object metricsObj;
-                  metricsObj = value.get("metrics");
-                  if (metricsObj instanceof JSONObject) {
-                    JSONObject migratedMetrics = new JSONObject();
-                    migratedMetrics.put("attributes", metricsObj);
-                    metrics = migratedMetrics.toString();
-                  }
+                ObjectNode metricsObj = JsonCodec.getObject(value, "metrics");
+                if (metricsObj != null) {
+                  ObjectNode migratedMetrics = JsonCodec.newObject();
+                  migratedMetrics.set("attributes", metricsObj);
+                  metrics = JsonCodec.write(migratedMetrics);
                 }
 
-                String program = null;
-                if (value.has("program") && !value.isNull("program")) {
-                  program = value.getString("program");
-                }
+                String program = JsonCodec.getText(value, "program");
 
                 String framework = "PYTHON";
-                if (value.has("framework") && !value.isNull("framework")) {
-                  framework = value.getString("framework");
+                if (value.hasNonNull("framework")) {
+                  framework = value.get("framework").asText();
                 }
 
                 String environment = null;
@@ -227,15 +226,8 @@ public class OpenSearchToRonDBMigration implements MigrateStep {
                           projectName, modelName, version);
                 }
 
-                String experimentId = null;
-                if (value.has("experimentId") && !value.isNull("experimentId")) {
-                  experimentId = value.getString("experimentId");
-                }
-
-                String experimentProjectName = null;
-                if (value.has("experimentProjectName") && !value.isNull("experimentProjectName")) {
-                  experimentProjectName = value.getString("experimentProjectName");
-                }
+                String experimentId = JsonCodec.getText(value, "experimentId");
+                String experimentProjectName = JsonCodec.getText(value, "experimentProjectName");
 
                 ExpatModel expatModel = expatModelsController.getByProjectAndName(expatProject.getId(), modelName);
                 if (expatModel == null) {
@@ -248,36 +240,70 @@ public class OpenSearchToRonDBMigration implements MigrateStep {
                         framework, environment, experimentId, experimentProjectName, dryRun);
                 LOGGER.info("Successfully migrated model {} version {} for project {}", expatModel.getName(), version,
                         expatProject.getName());
+                migrated++;
               }
+            }
+            if (migrated > 0) {
+              LOGGER.info("Migrated {} model versions for project {}", migrated, projectInode.getName());
             } else {
               LOGGER.info("Found no model versions to migrate for project {}", projectInode.getName());
             }
+            if (journal != null) {
+              journal.commit(fileProvIndexName);
+            }
           }
         }
       }
     } catch (SQLException | ConfigurationException | GeneralSecurityException | IOException | URISyntaxException |
              IllegalAccessException | InstantiationException e) {
       throw new MigrationException("error", e);
+    } catch (UncheckedIOException e) {
+      throw new MigrationException("error", e.getCause());
     } finally {
       try {
         close();
-      } catch (SQLException | IOException e) {
+      } catch (SQLException e) {
         throw new MigrationException("error on close", e);
       }
     }
   }
 
-  private Integer getModelVersionCreator(ExpatProject project, JSONObject source)
-    throws SQLException, IllegalAccessException, InstantiationException {
+  /**
+   * @return the model summary written by hopsworks in the provenance xattr of the model version
+   */
+  private ObjectNode modelSummaryValue(ObjectNode source) throws MigrationException {
+    ObjectNode xattrProv = JsonCodec.getObject(source, "xattr_prov");
+    ObjectNode modelSummary = xattrProv == null ? null : JsonCodec.getObject(xattrProv, "model_summary");
+    ObjectNode value = modelSummary == null ? null : JsonCodec.getObject(modelSummary, "value");
+    if (value == null) {
+      throw new MigrationException("xattr_prov.model_summary.value missing from model: " + source);
+    }
+    return value;
+  }
+  
+  private int intValue(ObjectNode parent, String field, ObjectNode source) throws MigrationException {
+    JsonNode node = parent.get(field);
+    if (node.isIntegralNumber() && node.canConvertToInt()) {
+      return node.intValue();
+    }
+    try {
+      return Integer.parseInt(node.asText());
+    } catch (NumberFormatException e) {
+      throw new MigrationException(field + " field of model is not an integer: " + source, e);
+    }
+  }
+  
+  private Integer getModelVersionCreator(ExpatProject project, ObjectNode source)
+    throws SQLException, IllegalAccessException, InstantiationException, MigrationException {
     if(!source.has("user_id")) {
       return getProjectCreator(project);
     }
-    ExpatHdfsUser expatHdfsUser = expatHdfsUserFacade.find(source.getInt("user_id"));
+    ExpatHdfsUser expatHdfsUser = referenceData.getHdfsUser(connection, intValue(source, "user_id", source));
     if(expatHdfsUser == null) {
       return getProjectCreator(project);
     }
     String hopsworksUsername = expatHdfsUser.getName().split("__")[1];
-    ExpatUser user = expatUserFacade.getExpatUserByUsername(connection, hopsworksUsername);
+    ExpatUser user = referenceData.getUserByUsername(connection, hopsworksUsername);
     if(user == null) {
       return getProjectCreator(project);
     }
@@ -286,7 +312,7 @@ public class OpenSearchToRonDBMigration implements MigrateStep {
 
   private Integer getProjectCreator(ExpatProject project) throws SQLException {
     LOGGER.info("Fallback to project creator for model version " + project.getOwner());
-    return expatUserFacade.getExpatUserByEmail(connection, project.getOwner()).getUid();
+    return referenceData.getUserByEmail(connection, project.getOwner()).getUid();
   }
 
   @Override
@@ -18,20 +18,16 @@ package io.hops.hopsworks.expat.migrations.projects.appprovenance;
 
 import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
 import io.hops.hopsworks.expat.configuration.ExpatConf;
-import io.hops.hopsworks.expat.db.DbConnectionFactory;
 import io.hops.hopsworks.expat.elastic.ElasticClient;
+import io.hops.hopsworks.expat.elastic.ElasticReindexer;
 import io.hops.hopsworks.expat.migrations.MigrateStep;
+import io.hops.hopsworks.expat.migrations.MigrationContext;
 import io.hops.hopsworks.expat.migrations.MigrationException;
 import io.hops.hopsworks.expat.migrations.RollbackException;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.ex.ConfigurationException;
 import org.apache.http.HttpHost;
-import org.apache.http.client.config.CookieSpecs;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.ssl.SSLContextBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,12 +36,15 @@ import java.net.URISyntaxException;
 import java.security.GeneralSecurityException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Optional;
 
 public class ReindexV1 implements MigrateStep {
   private final static Logger LOGGER = LoggerFactory.getLogger(ReindexV1.class);
   
   protected Connection connection;
+  // shared through the context, not closed by the step
   private CloseableHttpClient httpClient;
+  private ElasticReindexer reindexer;
   private HttpHost elastic;
   private String elasticUser;
   private String elasticPass;
@@ -54,9 +53,9 @@ public class ReindexV1 implements MigrateStep {
   private String oldIndex = "app_prov";
   private String newIndex = "app_provenance";
   
-  private void setup()
+  private void setup(MigrationContext context)
     throws SQLException, ConfigurationException, GeneralSecurityException {
-    connection = DbConnectionFactory.getConnection();
+    connection = context.getConnection();
     Configuration conf = ConfigurationBuilder.getConfiguration();
     String elasticURI = conf.getString(ExpatConf.ELASTIC_URI);
     
@@ -73,27 +72,27 @@ public class ReindexV1 implements MigrateStep {
     if (elasticPass == null) {
       throw new ConfigurationException(ExpatConf.ELASTIC_PASS_KEY + " cannot be null");
     }
-    httpClient = HttpClients
-      .custom()
-      .setDefaultRequestConfig(RequestConfig.custom().setCookieSpec(CookieSpecs.IGNORE_COOKIES).build())
-      .setSSLContext(new SSLContextBuilder().loadTrustMaterial((x509Certificates, s) -> true).build())
-      .setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE)
-      .build();
+    httpClient = context.getHttpClient(elastic);
+    reindexer = context.getElasticReindexer(elastic, elasticUser, elasticPass);
   }
   
-  private void close() throws SQLException, IOException {
+  private void close() throws SQLException {
     if(connection != null) {
       connection.close();
     }
-    if(httpClient != null) {
-      httpClient.close();
-    }
   }
   
   @Override
   public void migrate() throws MigrationException {
+    try (MigrationContext context = new MigrationContext()) {
+      migrate(context);
+    }
+  }
+  
+  @Override
+  public void migrate(MigrationContext context) throws MigrationException {
     try {
-      setup();
+      setup(context);
       LOGGER.info("migrate - reindexing");
       if(!ElasticClient.indexExists(httpClient, elastic, elasticUser, elasticPass, oldIndex)) {
         LOGGER.info("migrate - missing <old> index:" + oldIndex);
@@ -104,7 +103,7 @@ public class ReindexV1 implements MigrateStep {
         return;
       }
       int initNewCount = ElasticClient.itemCount(httpClient, elastic, elasticUser, elasticPass, newIndex);
-      ElasticClient.reindex(httpClient, elastic, elasticUser, elasticPass, oldIndex, newIndex);
+      reindexer.reindex(oldIndex, newIndex, Optional.empty());
       int oldCount = ElasticClient.itemCount(httpClient, elastic, elasticUser, elasticPass, oldIndex);
       int reindexNewCount = ElasticClient.itemCount(httpClient, elastic, elasticUser, elasticPass, newIndex);
       if(oldCount != reindexNewCount) {
@@ -114,10 +113,13 @@ public class ReindexV1 implements MigrateStep {
       LOGGER.info("migrate - reindexed");
     } catch (SQLException | ConfigurationException | GeneralSecurityException | IOException | URISyntaxException e) {
       throw new MigrationException("error", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MigrationException("error", e);
     } finally {
       try {
         close();
-      } catch (SQLException | IOException e) {
+      } catch (SQLException e) {
         throw new MigrationException("error on close", e);
       }
     }
@@ -125,8 +127,15 @@ public class ReindexV1 implements MigrateStep {
   
   @Override
   public void rollback() throws RollbackException {
+    try (MigrationContext context = new MigrationContext()) {
+      rollback(context);
+    }
+  }
+  
+  @Override
+  public void rollback(MigrationContext context) throws RollbackException {
     try {
-      setup();
+      setup(context);
       LOGGER.info("rollback - reindexing");
       if(!ElasticClient.indexExists(httpClient, elastic, elasticUser, elasticPass, oldIndex)) {
         LOGGER.info("rollback - missing <old> index:" + oldIndex);
@@ -137,7 +146,7 @@ public class ReindexV1 implements MigrateStep {
         return;
       }
       int initOldCount = ElasticClient.itemCount(httpClient, elastic, elasticUser, elasticPass, oldIndex);
-      ElasticClient.reindex(httpClient, elastic, elasticUser, elasticPass, newIndex, oldIndex);
+      reindexer.reindex(newIndex, oldIndex, Optional.empty());
       int newCount = ElasticClient.itemCount(httpClient, elastic, elasticUser, elasticPass, newIndex);
       int reindexOldCount = ElasticClient.itemCount(httpClient, elastic, elasticUser, elasticPass, oldIndex);
       if(newCount != reindexOldCount) {
@@ -148,10 +157,13 @@ public class ReindexV1 implements MigrateStep {
       LOGGER.info("rollback - reindexed");
     } catch (SQLException | ConfigurationException | GeneralSecurityException | IOException | URISyntaxException e) {
       throw new RollbackException("error", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RollbackException("error", e);
     } finally {
       try {
         close();
-      } catch (SQLException | IOException e) {
+      } catch (SQLException e) {
         throw new RollbackException("error on close", e);
       }
     }
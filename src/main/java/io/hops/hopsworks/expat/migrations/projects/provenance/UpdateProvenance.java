@@ -24,8 +24,10 @@ import io.hops.hopsworks.common.provenance.util.functional.CheckedConsumer;
 import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
 import io.hops.hopsworks.expat.configuration.ExpatConf;
 import io.hops.hopsworks.expat.db.DbConnectionFactory;
+import io.hops.hopsworks.expat.db.KeysetScanner;
 import io.hops.hopsworks.expat.elastic.ElasticClient;
-import io.hops.hopsworks.expat.migrations.MigrateStep;
+import io.hops.hopsworks.expat.migrations.ProjectShard;
+import io.hops.hopsworks.expat.migrations.ProjectShardedStep;
 import io.hops.hopsworks.expat.migrations.MigrationException;
 import io.hops.hopsworks.expat.migrations.RollbackException;
 import io.hops.hopsworks.expat.migrations.projects.util.XAttrException;
@@ -60,10 +62,10 @@ import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
 
-public class UpdateProvenance implements MigrateStep {
+public class UpdateProvenance implements ProjectShardedStep {
   private final static Logger LOGGER = LoggerFactory.getLogger(UpdateProvenance.class);
   
-  private final static String GET_ALL_PROJECTS = "SELECT id, partition_id, inode_pid, inode_name FROM project";
+  private final static String GET_ALL_PROJECTS_COLUMNS = "id, partition_id, inode_pid, inode_name";
   private final static int GET_ALL_PROJECTS_S_ID = 1;
   private final static int GET_ALL_PROJECTS_S_PARTITION_ID = 2;
   private final static int GET_ALL_PROJECTS_S_INODE_PID = 3;
@@ -180,19 +182,28 @@ public class UpdateProvenance implements MigrateStep {
     throws E, SQLException, ConfigurationException, IOException, GeneralSecurityException {
     setup();
     
-    PreparedStatement allProjectsStmt = null;
-    PreparedStatement projectInodeStmt = null;
-    PreparedStatement allProjectDatasetsStmt = null;
-    PreparedStatement datasetInodeStmt = null;
     try {
       connection.setAutoCommit(false);
-      //get all projects
-      allProjectsStmt = connection.prepareStatement(GET_ALL_PROJECTS);
-      ResultSet allProjectsResultSet = allProjectsStmt.executeQuery();
-      
-      while (allProjectsResultSet.next()) {
-        //get project inode
-        projectInodeStmt = getProjectInodeStmt(allProjectsResultSet);
+      //get the projects of each shard, the changes are committed per chunk of projects
+      for (ProjectShard shard : ProjectShard.leased()) {
+        traverseShard(shard, projectAction, datasetAction);
+      }
+      connection.commit();
+      connection.setAutoCommit(true);
+    } finally {
+      close();
+    }
+  }
+  
+  private <E extends Exception> void traverseShard(ProjectShard shard,
+    CheckedConsumer<ProjectParams, E> projectAction, CheckedConsumer<DatasetParams, E> datasetAction)
+    throws E, SQLException {
+    KeysetScanner allProjectsScanner = new KeysetScanner(connection, "project", "id", GET_ALL_PROJECTS_COLUMNS)
+      .startAfter(shard.getStart() - 1).endBefore(shard.getEnd());
+    allProjectsScanner.scan(allProjectsResultSet -> {
+      //get project inode
+      try (PreparedStatement projectInodeStmt = getProjectInodeStmt(allProjectsResultSet);
+           PreparedStatement allProjectDatasetsStmt = getProjectDatasetsStmt(allProjectsResultSet)) {
         ResultSet projectInodeResultSet = projectInodeStmt.executeQuery();
         if(!projectInodeResultSet.next()) {
           throw new IllegalStateException("project inode not found");
@@ -201,49 +212,29 @@ public class UpdateProvenance implements MigrateStep {
         ProjectParams projectParams = ProjectParams.instance(allProjectsResultSet, projectInodeResultSet);
         LOGGER.info("processing project:{}", projectParams.projectName);
         //get all project datasets
-        allProjectDatasetsStmt = getProjectDatasetsStmt(allProjectsResultSet);
         ResultSet allProjectDatasetsResultSet = allProjectDatasetsStmt.executeQuery();
-  
+        
         while(allProjectDatasetsResultSet.next()) {
           //get dataset inode
-          datasetInodeStmt = getDatasetInodeStmt(allProjectDatasetsResultSet);
-          ResultSet datasetInodeResultSet = datasetInodeStmt.executeQuery();
-          if(!datasetInodeResultSet.next()) {
-            throw new IllegalStateException("dataset inode not found");
+          try (PreparedStatement datasetInodeStmt = getDatasetInodeStmt(allProjectDatasetsResultSet)) {
+            ResultSet datasetInodeResultSet = datasetInodeStmt.executeQuery();
+            if(!datasetInodeResultSet.next()) {
+              throw new IllegalStateException("dataset inode not found");
+            }
+            //update dataset meta status xattr and meta enabled column
+            DatasetParams datasetParams = DatasetParams.instance(projectParams, allProjectDatasetsResultSet,
+              datasetInodeResultSet);
+            LOGGER.debug("processing dataset:{}", datasetParams.datasetName);
+            datasetAction.accept(datasetParams);
+            LOGGER.debug("processed dataset:{}", datasetParams.datasetName);
           }
-          //update dataset meta status xattr and meta enabled column
-          DatasetParams datasetParams = DatasetParams.instance(projectParams, allProjectDatasetsResultSet,
-            datasetInodeResultSet);
-          LOGGER.debug("processing dataset:{}", datasetParams.datasetName);
-          datasetAction.accept(datasetParams);
-          LOGGER.debug("processed dataset:{}", datasetParams.datasetName);
-          datasetInodeStmt.close();
         }
         //update project meta status xattr
         
         projectAction.accept(projectParams);
         LOGGER.info("processed project:{}", projectParams.projectName);
-        projectInodeStmt.close();
-        allProjectDatasetsStmt.close();
       }
-      allProjectsStmt.close();
-      connection.commit();
-      connection.setAutoCommit(true);
-    } finally {
-      if(allProjectsStmt != null) {
-        allProjectsStmt.close();
-      }
-      if(projectInodeStmt != null) {
-        projectInodeStmt.close();
-      }
-      if(allProjectDatasetsStmt != null) {
-        allProjectDatasetsStmt.close();
-      }
-      if(datasetInodeStmt != null) {
-        datasetInodeStmt.close();
-      }
-      close();
-    }
+    });
   }
   
   private CheckedConsumer<ProjectParams, MigrationException> projectMigrate(DistributedFileSystemOps dfso) {
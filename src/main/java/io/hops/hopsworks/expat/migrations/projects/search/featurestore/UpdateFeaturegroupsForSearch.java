@@ -21,11 +21,14 @@ import io.hops.hopsworks.common.provenance.core.dto.ProvCoreDTO;
 import io.hops.hopsworks.common.provenance.core.dto.ProvTypeDTO;
 import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
 import io.hops.hopsworks.expat.configuration.ExpatConf;
-import io.hops.hopsworks.expat.db.DbConnectionFactory;
+import io.hops.hopsworks.expat.db.dao.ReferenceDataCache;
+import io.hops.hopsworks.expat.db.dao.hdfs.inode.ExpatXAttrReader;
+import io.hops.hopsworks.expat.db.dao.project.ExpatProject;
+import io.hops.hopsworks.expat.db.dao.user.ExpatUser;
 import io.hops.hopsworks.expat.migrations.MigrateStep;
+import io.hops.hopsworks.expat.migrations.MigrationContext;
 import io.hops.hopsworks.expat.migrations.MigrationException;
 import io.hops.hopsworks.expat.migrations.RollbackException;
-import io.hops.hopsworks.expat.migrations.projects.util.HopsClient;
 import io.hops.hopsworks.expat.migrations.projects.util.XAttrException;
 import io.hops.hopsworks.expat.migrations.projects.util.XAttrHelper;
 import org.apache.commons.configuration2.Configuration;
@@ -72,9 +75,6 @@ public class UpdateFeaturegroupsForSearch implements MigrateStep {
   private final static int GET_HIVE_MANAGED_FEATUREGROUPS_S_TBL_ID = 5;
   private final static int GET_HIVE_MANAGED_FEATUREGROUPS_S_LOCATION = 6;
   
-  private final static String GET_USER = "SELECT email FROM users WHERE uid=?";
-  private final static int GET_USER_W_ID = 1;
-  private final static int GET_USER_S_EMAIL = 1;
   private final static String GET_FG_DESCRIPTION =
     "SELECT PARAM_VALUE FROM metastore.TABLE_PARAMS " +
     "WHERE TBL_ID=? AND PARAM_KEY=?";
@@ -87,29 +87,31 @@ public class UpdateFeaturegroupsForSearch implements MigrateStep {
     "ON t.SD_ID=s.SD_ID AND s.CD_ID=c.CD_ID WHERE t.TBL_ID = ?";
   private final static int GET_FG_FEATURES_W_TBL_ID = 1;
   private final static int GET_FG_FEATURES_S_NAME = 1;
-  private final static String GET_PROJECT = "SELECT inode_name FROM project WHERE id=?";
-  private final static int GET_PROJECT_W_ID = 1;
-  private final static int GET_PROJECT_S_NAME = 1;
   
   protected Connection connection = null;
+  private ReferenceDataCache referenceData;
+  // shared through the context, not closed by the step
   DistributedFileSystemOps dfso = null;
+  ExpatXAttrReader xattrReader;
   private String hopsUser;
   SimpleDateFormat formatter;
   JAXBContext jaxbContext;
   boolean dryrun = false;
   
-  public void setup() throws ConfigurationException, SQLException, JAXBException {
+  public void setup(MigrationContext context) throws ConfigurationException, SQLException, JAXBException {
     formatter = new SimpleDateFormat("yyyy-M-dd hh:mm:ss", Locale.ENGLISH);
     jaxbContext = jaxbContext();
     
-    connection = DbConnectionFactory.getConnection();
+    connection = context.getConnection();
+    referenceData = context.getReferenceData();
     
     Configuration conf = ConfigurationBuilder.getConfiguration();
     hopsUser = conf.getString(ExpatConf.HOPS_CLIENT_USER);
     if (hopsUser == null) {
       throw new ConfigurationException(ExpatConf.HOPS_CLIENT_USER + " cannot be null");
     }
-    dfso = HopsClient.getDFSO(hopsUser);
+    dfso = context.getDfso(hopsUser);
+    xattrReader = ExpatXAttrReader.create(connection, dfso);
     dryrun = conf.getBoolean(ExpatConf.DRY_RUN);
   }
   
@@ -117,9 +119,6 @@ public class UpdateFeaturegroupsForSearch implements MigrateStep {
     if(connection != null) {
       connection.close();
     }
-    if(dfso != null) {
-      dfso.close();
-    }
   }
   
   public JAXBContext getJaxbContext() throws JAXBException {
@@ -133,9 +132,16 @@ public class UpdateFeaturegroupsForSearch implements MigrateStep {
 
   @Override
   public void migrate() throws MigrationException {
+    try (MigrationContext context = new MigrationContext()) {
+      migrate(context);
+    }
+  }
+  
+  @Override
+  public void migrate(MigrationContext context) throws MigrationException {
     LOGGER.info("featuregroup search migration");
     try {
-      setup();
+      setup(context);
       if(dryrun) {
         traverseElements(dryRunFeaturegroup());
       } else {
@@ -154,9 +160,16 @@ public class UpdateFeaturegroupsForSearch implements MigrateStep {
   
   @Override
   public void rollback() throws RollbackException {
+    try (MigrationContext context = new MigrationContext()) {
+      rollback(context);
+    }
+  }
+  
+  @Override
+  public void rollback(MigrationContext context) throws RollbackException {
     LOGGER.info("featuregroup search rollback");
     try {
-      setup();
+      setup(context);
       if(dryrun) {
         traverseElements(dryRunFeaturegroup());
       } else {
@@ -192,6 +205,7 @@ public class UpdateFeaturegroupsForSearch implements MigrateStep {
         allFSFeaturegroupsStmt.close();
       }
       allFeaturestoresStmt.close();
+      xattrReader.checkVerified();
       connection.commit();
       connection.setAutoCommit(true);
     } finally {
@@ -230,7 +244,7 @@ public class UpdateFeaturegroupsForSearch implements MigrateStep {
         xattr = new FeaturegroupXAttr.FullDTO(featurestoreId, description, createDate.getTime(), creator);
       }
     
-      byte[] existingVal = dfso.getXAttr(new Path(featuregroupPath), "provenance.featurestore");
+      byte[] existingVal = xattrReader.getXAttr(featuregroupPath, "provenance.featurestore");
       if(existingVal == null) {
         LOGGER.info("featuregroup:{} rollbacked (no value)", featuregroupPath);
       } else {
@@ -303,11 +317,6 @@ public class UpdateFeaturegroupsForSearch implements MigrateStep {
     stmt.setInt(GET_HIVE_MANAGED_FEATUREGROUPS_W_FS_ID, allFeaturestoresResultSet.getInt(GET_ALL_FEATURESTORES_S_ID));
     return stmt;
   }
-  private PreparedStatement getFGUserStmt(ResultSet allFSFeaturegroupsResultSet) throws SQLException {
-    PreparedStatement stmt = connection.prepareStatement(GET_USER);
-    stmt.setInt(GET_USER_W_ID, allFSFeaturegroupsResultSet.getInt(GET_HIVE_MANAGED_FEATUREGROUPS_S_CREATOR));
-    return stmt;
-  }
   private PreparedStatement getFGDescriptionStmt(ResultSet allFSFeaturegroupsResultSet) throws SQLException {
     PreparedStatement stmt = connection.prepareStatement(GET_FG_DESCRIPTION);
     stmt.setInt(GET_FG_DESCRIPTION_W_TBL_ID,
@@ -320,26 +329,13 @@ public class UpdateFeaturegroupsForSearch implements MigrateStep {
     stmt.setInt(GET_FG_FEATURES_W_TBL_ID, allFSFeaturegroupsResultSet.getInt(GET_HIVE_MANAGED_FEATUREGROUPS_S_TBL_ID));
     return stmt;
   }
-  private PreparedStatement getProjectStmt(ResultSet allFeaturestoresResultSet) throws SQLException {
-    PreparedStatement stmt = connection.prepareStatement(GET_PROJECT);
-    stmt.setInt(GET_PROJECT_W_ID, allFeaturestoresResultSet.getInt(GET_ALL_FEATURESTORES_S_PROJECT_ID));
-    return stmt;
-  }
   private String getCreator(ResultSet allFSFeaturegroupsResultSet) throws SQLException {
-    PreparedStatement fgUserStmt = null;
-    try {
-      fgUserStmt = getFGUserStmt(allFSFeaturegroupsResultSet);
-      ResultSet fgUserResultSet = fgUserStmt.executeQuery();
-      if (fgUserResultSet.next()) {
-        return fgUserResultSet.getString(GET_USER_S_EMAIL);
-      } else {
-        throw new IllegalStateException("featuregroup creator not found");
-      }
-    } finally {
-      if(fgUserStmt != null) {
-        fgUserStmt.close();
-      }
+    ExpatUser user = referenceData.getUser(connection,
+      allFSFeaturegroupsResultSet.getInt(GET_HIVE_MANAGED_FEATUREGROUPS_S_CREATOR));
+    if (user == null) {
+      throw new IllegalStateException("featuregroup creator not found");
     }
+    return user.getEmail();
   }
   
   private String getDescription(ResultSet allFSFeaturegroupsResultSet) throws SQLException {
@@ -377,20 +373,12 @@ public class UpdateFeaturegroupsForSearch implements MigrateStep {
   }
   
   private String getProjectName(ResultSet allFeaturestoreResultSet) throws SQLException {
-    PreparedStatement projectStmt = null;
-    try {
-      projectStmt = getProjectStmt(allFeaturestoreResultSet);
-      ResultSet projectsResultSet = projectStmt.executeQuery();
-      if (projectsResultSet.next()) {
-        return projectsResultSet.getString(GET_PROJECT_S_NAME);
-      } else {
-        throw new IllegalStateException("project parent not found");
-      }
-    } finally {
-      if(projectStmt != null) {
-        projectStmt.close();
-      }
+    ExpatProject project = referenceData.getProject(connection,
+      allFeaturestoreResultSet.getInt(GET_ALL_FEATURESTORES_S_PROJECT_ID));
+    if (project == null) {
+      throw new IllegalStateException("project parent not found");
     }
+    return project.getName();
   }
   
   private JAXBContext jaxbContext() throws JAXBException {
@@ -17,21 +17,24 @@
 
 package io.hops.hopsworks.expat.migrations.projects.search.featurestore;
 
+import com.google.common.collect.Sets;
 import io.hops.hopsworks.common.hdfs.DistributedFileSystemOps;
 import io.hops.hopsworks.common.provenance.core.dto.ProvCoreDTO;
 import io.hops.hopsworks.common.provenance.core.dto.ProvTypeDTO;
 import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
 import io.hops.hopsworks.expat.configuration.ExpatConf;
-import io.hops.hopsworks.expat.db.DbConnectionFactory;
+import io.hops.hopsworks.expat.db.dao.ReferenceDataCache;
+import io.hops.hopsworks.expat.db.dao.hdfs.inode.ExpatXAttrReader;
+import io.hops.hopsworks.expat.db.dao.project.ExpatProject;
 import io.hops.hopsworks.expat.migrations.MigrateStep;
+import io.hops.hopsworks.expat.migrations.MigrationContext;
 import io.hops.hopsworks.expat.migrations.MigrationException;
+import io.hops.hopsworks.expat.migrations.MigrationResource;
 import io.hops.hopsworks.expat.migrations.RollbackException;
-import io.hops.hopsworks.expat.migrations.projects.util.HopsClient;
 import io.hops.hopsworks.expat.migrations.projects.util.XAttrException;
 import io.hops.hopsworks.expat.migrations.projects.util.XAttrHelper;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.ex.ConfigurationException;
-import org.apache.hadoop.fs.Path;
 import org.eclipse.persistence.jaxb.JAXBContextFactory;
 import org.eclipse.persistence.jaxb.MarshallerProperties;
 import org.eclipse.persistence.oxm.MediaType;
@@ -39,6 +42,7 @@ import org.opensearch.common.CheckedBiConsumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Set;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
@@ -66,27 +70,29 @@ public class UpdateFeaturegroupsForType implements MigrateStep {
   private final static int GET_ALL_FEATUREGROUPS_S_NAME = 1;
   private final static int GET_ALL_FEATUREGROUPS_S_VERSION = 2;
   private final static int GET_ALL_FEATUREGROUPS_S_TYPE = 3;
-  private final static String GET_PROJECT = "SELECT inode_name FROM project WHERE id=?";
-  private final static int GET_PROJECT_W_ID = 1;
-  private final static int GET_PROJECT_S_NAME = 1;
 
   protected Connection connection = null;
+  private ReferenceDataCache referenceData;
+  // shared through the context, not closed by the step
   DistributedFileSystemOps dfso = null;
+  ExpatXAttrReader xattrReader;
   private String hopsUser;
   JAXBContext jaxbContext;
   boolean dryrun = false;
 
-  private void setup() throws ConfigurationException, SQLException, JAXBException {
+  private void setup(MigrationContext context) throws ConfigurationException, SQLException, JAXBException {
     jaxbContext = jaxbContext();
 
-    connection = DbConnectionFactory.getConnection();
+    connection = context.getConnection();
+    referenceData = context.getReferenceData();
 
     Configuration conf = ConfigurationBuilder.getConfiguration();
     hopsUser = conf.getString(ExpatConf.HOPS_CLIENT_USER);
     if (hopsUser == null) {
       throw new ConfigurationException(ExpatConf.HOPS_CLIENT_USER + " cannot be null");
     }
-    dfso = HopsClient.getDFSO(hopsUser);
+    dfso = context.getDfso(hopsUser);
+    xattrReader = ExpatXAttrReader.create(connection, dfso);
     dryrun = conf.getBoolean(ExpatConf.DRY_RUN);
   }
 
@@ -94,16 +100,25 @@ public class UpdateFeaturegroupsForType implements MigrateStep {
     if(connection != null) {
       connection.close();
     }
-    if(dfso != null) {
-      dfso.close();
-    }
   }
 
+  @Override
+  public Set<MigrationResource> resources() {
+    return Sets.newHashSet(MigrationResource.hdfs("/apps/hive/warehouse"));
+  }
+  
   @Override
   public void migrate() throws MigrationException {
+    try (MigrationContext context = new MigrationContext()) {
+      migrate(context);
+    }
+  }
+  
+  @Override
+  public void migrate(MigrationContext context) throws MigrationException {
     LOGGER.info("featuregroup type migration");
     try {
-      setup();
+      setup(context);
       if(dryrun) {
         traverseElements(dryRunFeaturegroup());
       } else {
@@ -122,9 +137,16 @@ public class UpdateFeaturegroupsForType implements MigrateStep {
 
   @Override
   public void rollback() throws RollbackException {
+    try (MigrationContext context = new MigrationContext()) {
+      rollback(context);
+    }
+  }
+  
+  @Override
+  public void rollback(MigrationContext context) throws RollbackException {
     LOGGER.info("featuregroup type rollback");
     try {
-      setup();
+      setup(context);
       if(dryrun) {
         traverseElements(dryRunFeaturegroup());
       } else {
@@ -159,6 +181,7 @@ public class UpdateFeaturegroupsForType implements MigrateStep {
         allFSFeaturegroupsStmt.close();
       }
       allFeaturestoresStmt.close();
+      xattrReader.checkVerified();
       connection.commit();
       connection.setAutoCommit(true);
     } finally {
@@ -181,7 +204,7 @@ public class UpdateFeaturegroupsForType implements MigrateStep {
       String featuregroupPath = getFeaturegroupPath(projectName, featuregroupName, featuregroupVersion);
       LOGGER.info("featuregroup:{}", featuregroupPath);
 
-      byte[] existingVal = dfso.getXAttr(new Path(featuregroupPath), "provenance.featurestore");
+      byte[] existingVal = xattrReader.getXAttr(featuregroupPath, "provenance.featurestore");
       FeaturegroupXAttr.FullDTO existingXattr = jaxbUnmarshal(jaxbContext, existingVal);
 
       if(existingXattr == null) {
@@ -216,7 +239,7 @@ public class UpdateFeaturegroupsForType implements MigrateStep {
       String featuregroupPath = getFeaturegroupPath(projectName, featuregroupName, featuregroupVersion);
       LOGGER.info("featuregroup:{}", featuregroupPath);
 
-      byte[] existingVal = dfso.getXAttr(new Path(featuregroupPath), "provenance.featurestore");
+      byte[] existingVal = xattrReader.getXAttr(featuregroupPath, "provenance.featurestore");
       FeaturegroupXAttr.FullDTO xattr = jaxbUnmarshal(jaxbContext, existingVal);
       if(xattr == null) {
         LOGGER.info("featuregroup:{} no xattr fg value", featuregroupPath);
@@ -254,7 +277,7 @@ public class UpdateFeaturegroupsForType implements MigrateStep {
       String featuregroupPath = getFeaturegroupPath(projectName, featuregroupName, featuregroupVersion);
       LOGGER.info("featuregroup:{}", featuregroupPath);
 
-      byte[] existingVal = dfso.getXAttr(new Path(featuregroupPath), "provenance.featurestore");
+      byte[] existingVal = xattrReader.getXAttr(featuregroupPath, "provenance.featurestore");
       FeaturegroupXAttr.FullDTO xattr = jaxbUnmarshal(jaxbContext, existingVal);
       if(xattr == null) {
         LOGGER.info("featuregroup:{} no xattr fg value", featuregroupPath);
@@ -277,27 +300,14 @@ public class UpdateFeaturegroupsForType implements MigrateStep {
     return stmt;
   }
 
-  private PreparedStatement getProjectStmt(ResultSet allFeaturestoresResultSet) throws SQLException {
-    PreparedStatement stmt = connection.prepareStatement(GET_PROJECT);
-    stmt.setInt(GET_PROJECT_W_ID, allFeaturestoresResultSet.getInt(GET_ALL_FEATURESTORES_S_PROJECT_ID));
-    return stmt;
-  }
 
   private String getProjectName(ResultSet allFeaturestoreResultSet) throws SQLException {
-    PreparedStatement projectStmt = null;
-    try {
-      projectStmt = getProjectStmt(allFeaturestoreResultSet);
-      ResultSet projectsResultSet = projectStmt.executeQuery();
-      if (projectsResultSet.next()) {
-        return projectsResultSet.getString(GET_PROJECT_S_NAME);
-      } else {
-        throw new IllegalStateException("project parent not found");
-      }
-    } finally {
-      if(projectStmt != null) {
-        projectStmt.close();
-      }
+    ExpatProject project = referenceData.getProject(connection,
+      allFeaturestoreResultSet.getInt(GET_ALL_FEATURESTORES_S_PROJECT_ID));
+    if (project == null) {
+      throw new IllegalStateException("project parent not found");
     }
+    return project.getName();
   }
 
   private JAXBContext jaxbContext() throws JAXBException {
@@ -21,11 +21,14 @@ import io.hops.hopsworks.common.provenance.core.dto.ProvCoreDTO;
 import io.hops.hopsworks.common.provenance.core.dto.ProvTypeDTO;
 import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
 import io.hops.hopsworks.expat.configuration.ExpatConf;
-import io.hops.hopsworks.expat.db.DbConnectionFactory;
+import io.hops.hopsworks.expat.db.dao.ReferenceDataCache;
+import io.hops.hopsworks.expat.db.dao.hdfs.inode.ExpatXAttrReader;
+import io.hops.hopsworks.expat.db.dao.project.ExpatProject;
+import io.hops.hopsworks.expat.db.dao.user.ExpatUser;
 import io.hops.hopsworks.expat.migrations.MigrateStep;
+import io.hops.hopsworks.expat.migrations.MigrationContext;
 import io.hops.hopsworks.expat.migrations.MigrationException;
 import io.hops.hopsworks.expat.migrations.RollbackException;
-import io.hops.hopsworks.expat.migrations.projects.util.HopsClient;
 import io.hops.hopsworks.expat.migrations.projects.util.XAttrHelper;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.ex.ConfigurationException;
@@ -69,32 +72,31 @@ public class UpdateTrainingdatasetsForSearch implements MigrateStep {
   private final static int GET_TRAININGDATASET_S_CREATED = 3;
   private final static int GET_TRAININGDATASET_S_CREATOR = 4;
   private final static int GET_TRAININGDATASET_S_DESCRIPTION = 5;
-  private final static String GET_USER = "SELECT email FROM users WHERE uid=?";
-  private final static int GET_USER_W_ID = 1;
-  private final static int GET_USER_S_EMAIL = 1;
-  private final static String GET_PROJECT = "SELECT inode_name FROM project WHERE id=?";
-  private final static int GET_PROJECT_W_ID = 1;
-  private final static int GET_PROJECT_S_NAME = 1;
   
   protected Connection connection = null;
+  private ReferenceDataCache referenceData;
+  // shared through the context, not closed by the step
   DistributedFileSystemOps dfso = null;
+  ExpatXAttrReader xattrReader;
   private String hopsUser;
   SimpleDateFormat formatter;
   JAXBContext jaxbContext;
   boolean dryrun = false;
   
-  private void setup() throws ConfigurationException, SQLException, JAXBException {
+  private void setup(MigrationContext context) throws ConfigurationException, SQLException, JAXBException {
     formatter = new SimpleDateFormat("yyyy-M-dd hh:mm:ss", Locale.ENGLISH);
     jaxbContext = jaxbContext();
     
-    connection = DbConnectionFactory.getConnection();
+    connection = context.getConnection();
+    referenceData = context.getReferenceData();
     
     Configuration conf = ConfigurationBuilder.getConfiguration();
     hopsUser = conf.getString(ExpatConf.HOPS_CLIENT_USER);
     if (hopsUser == null) {
       throw new ConfigurationException(ExpatConf.HOPS_CLIENT_USER + " cannot be null");
     }
-    dfso = HopsClient.getDFSO(hopsUser);
+    dfso = context.getDfso(hopsUser);
+    xattrReader = ExpatXAttrReader.create(connection, dfso);
     dryrun = conf.getBoolean(ExpatConf.DRY_RUN);
   }
   
@@ -102,16 +104,20 @@ public class UpdateTrainingdatasetsForSearch implements MigrateStep {
     if(connection != null) {
       connection.close();
     }
-    if(dfso != null) {
-      dfso.close();
-    }
   }
   
   @Override
   public void migrate() throws MigrationException {
+    try (MigrationContext context = new MigrationContext()) {
+      migrate(context);
+    }
+  }
+  
+  @Override
+  public void migrate(MigrationContext context) throws MigrationException {
     LOGGER.info("trainingdataset search migration");
     try {
-      setup();
+      setup(context);
       if(dryrun) {
         traverseElements(dryRunTrainingdataset());
       } else {
@@ -130,9 +136,16 @@ public class UpdateTrainingdatasetsForSearch implements MigrateStep {
   
   @Override
   public void rollback() throws RollbackException {
+    try (MigrationContext context = new MigrationContext()) {
+      rollback(context);
+    }
+  }
+  
+  @Override
+  public void rollback(MigrationContext context) throws RollbackException {
     LOGGER.info("trainingdataset search rollback");
     try {
-      setup();
+      setup(context);
       if(dryrun) {
         traverseElements(dryRunTrainingdataset());
       } else {
@@ -168,6 +181,7 @@ public class UpdateTrainingdatasetsForSearch implements MigrateStep {
         allFSTrainingdatasetsStmt.close();
       }
       allFeaturestoresStmt.close();
+      xattrReader.checkVerified();
       connection.commit();
       connection.setAutoCommit(true);
     } finally {
@@ -198,7 +212,7 @@ public class UpdateTrainingdatasetsForSearch implements MigrateStep {
         LOGGER.warn("xattr too large - skipping attaching features to trainingdataset");
         xattr = new TrainingDatasetXAttrDTO(featurestoreId, description, createDate, creator);
       }
-      byte[] existingVal = dfso.getXAttr(new Path(trainingdatasetPath), "provenance.featurestore");
+      byte[] existingVal = xattrReader.getXAttr(trainingdatasetPath, "provenance.featurestore");
       if(existingVal == null) {
         LOGGER.info("featuregroup:{} rollbacked (no value)", trainingdatasetPath);
       } else {
@@ -262,49 +276,23 @@ public class UpdateTrainingdatasetsForSearch implements MigrateStep {
     stmt.setInt(GET_TRAININGDATASET_W_FS_ID, allFeaturestoresResultSet.getInt(GET_ALL_FEATURESTORES_S_ID));
     return stmt;
   }
-  private PreparedStatement getFGUserStmt(ResultSet allFSTrainingdatasetsResultSet) throws SQLException {
-    PreparedStatement stmt = connection.prepareStatement(GET_USER);
-    stmt.setInt(GET_USER_W_ID, allFSTrainingdatasetsResultSet.getInt(GET_TRAININGDATASET_S_CREATOR));
-    return stmt;
-  }
-  private PreparedStatement getProjectStmt(ResultSet allFeaturestoresResultSet) throws SQLException {
-    PreparedStatement stmt = connection.prepareStatement(GET_PROJECT);
-    stmt.setInt(GET_PROJECT_W_ID, allFeaturestoresResultSet.getInt(GET_ALL_FEATURESTORES_S_PROJECT_ID));
-    return stmt;
-  }
   
   private String getCreator(ResultSet allFSTrainingdatasetsResultSet) throws SQLException {
-    PreparedStatement fgUserStmt = null;
-    try {
-      fgUserStmt = getFGUserStmt(allFSTrainingdatasetsResultSet);
-      ResultSet fgUserResultSet = fgUserStmt.executeQuery();
-      if (fgUserResultSet.next()) {
-        return fgUserResultSet.getString(GET_USER_S_EMAIL);
-      } else {
-        throw new IllegalStateException("trainingdataset creator not found");
-      }
-    } finally {
-      if(fgUserStmt != null) {
-        fgUserStmt.close();
-      }
+    ExpatUser user = referenceData.getUser(connection,
+      allFSTrainingdatasetsResultSet.getInt(GET_TRAININGDATASET_S_CREATOR));
+    if (user == null) {
+      throw new IllegalStateException("trainingdataset creator not found");
     }
+    return user.getEmail();
   }
   
   private String getProjectName(ResultSet allFeaturestoreResultSet) throws SQLException {
-    PreparedStatement projectStmt = null;
-    try {
-      projectStmt = getProjectStmt(allFeaturestoreResultSet);
-      ResultSet projectsResultSet = projectStmt.executeQuery();
-      if (projectsResultSet.next()) {
-        return projectsResultSet.getString(GET_PROJECT_S_NAME);
-      } else {
-        throw new IllegalStateException("project parent not found");
-      }
-    } finally {
-      if(projectStmt != null) {
-        projectStmt.close();
-      }
+    ExpatProject project = referenceData.getProject(connection,
+      allFeaturestoreResultSet.getInt(GET_ALL_FEATURESTORES_S_PROJECT_ID));
+    if (project == null) {
+      throw new IllegalStateException("project parent not found");
     }
+    return project.getName();
   }
   
   private JAXBContext jaxbContext() throws JAXBException {
@@ -0,0 +1,98 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations.projects.util;
+
+import io.hops.hopsworks.common.hdfs.DistributedFileSystemOps;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out {@link DistributedFileSystemOps} built from the hadoop configuration read once by {@link HopsClient}.
+ * {@link #get(String)} returns the same client for a user on every call. {@link #get(String, int)} returns several
+ * clients for a user, each with its own {@link UserGroupInformation} and so its own hdfs client, for workers that
+ * talk to the namenode in parallel. Clients are owned by the provider, callers must not close them.
+ */
+public class DfsoProvider implements AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(DfsoProvider.class);
+
+  private final Map<String, List<DistributedFileSystemOps>> clients = new HashMap<>();
+  private boolean closed = false;
+
+  /**
+   * @return the shared client of the user, created on first use
+   */
+  public DistributedFileSystemOps get(String user) {
+    return get(user, 1).get(0);
+  }
+
+  /**
+   * @return count distinct clients of the user, the first one being the client returned by {@link #get(String)}
+   */
+  public synchronized List<DistributedFileSystemOps> get(String user, int count) {
+    if (count < 1) {
+      throw new IllegalArgumentException("number of clients should be at least 1, got:" + count);
+    }
+    checkOpen();
+    List<DistributedFileSystemOps> userClients = clients.computeIfAbsent(user, u -> new ArrayList<>());
+    while (userClients.size() < count) {
+      userClients.add(create(user));
+    }
+    return Collections.unmodifiableList(new ArrayList<>(userClients.subList(0, count)));
+  }
+
+  private DistributedFileSystemOps create(String user) {
+    Configuration conf = new Configuration(HopsClient.getConfiguration());
+    UserGroupInformation ugi = UserGroupInformation.createRemoteUser(user);
+    LOGGER.debug("Creating hdfs client for user:{}", user);
+    return new DistributedFileSystemOps(ugi, conf);
+  }
+
+  private void checkOpen() {
+    if (closed) {
+      throw new IllegalStateException("dfso provider is closed");
+    }
+  }
+
+  /**
+   * Closes every client handed out, further requests fail.
+   */
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    for (Map.Entry<String, List<DistributedFileSystemOps>> userClients : clients.entrySet()) {
+      for (DistributedFileSystemOps dfso : userClients.getValue()) {
+        try {
+          dfso.close();
+        } catch (RuntimeException e) {
+          LOGGER.warn("Failed to close hdfs client of user:{}. {}", userClients.getKey(), e.getMessage());
+        }
+      }
+    }
+    clients.clear();
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations.projects.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.hops.hopsworks.common.hdfs.DistributedFileSystemOps;
+import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
+import io.hops.hopsworks.expat.configuration.ExpatConf;
+import org.apache.commons.configuration2.Configuration;
+import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs namenode operations asynchronously, with at most {@code maxInFlight} of them submitted and not yet completed.
+ * {@link #submit(String, HdfsOperation)} blocks once the cap is reached, so a migration loop can submit as fast as it
+ * reads rows without queueing unbounded work. Operations on the same path run in the order they were submitted, once
+ * an operation failed on a path the operations submitted after it on that path are skipped, until {@link #await()}.
+ * Operations on different paths run concurrently, spread over the given clients. Failures are collected per path and
+ * returned, then forgotten, by {@link #await()}, so each phase of a migration only sees its own failures.
+ */
+public class HdfsOperationExecutor implements AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(HdfsOperationExecutor.class);
+  private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+  public interface HdfsOperation {
+    void apply(DistributedFileSystemOps dfso) throws IOException;
+  }
+
+  private final List<DistributedFileSystemOps> clients;
+  private final int maxInFlight;
+  private final Semaphore inFlight;
+  private final ExecutorService executor;
+  // last operation submitted on each path with operations in flight, or that failed since the last await
+  private final Map<String, CompletableFuture<Void>> tails = new HashMap<>();
+  private final Map<String, List<Exception>> errors = new LinkedHashMap<>();
+  private boolean closed = false;
+
+  public HdfsOperationExecutor(List<DistributedFileSystemOps> clients, int maxInFlight) {
+    if (clients.isEmpty()) {
+      throw new IllegalArgumentException("at least one hdfs client is needed");
+    }
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("max in flight operations should be at least 1, got:" + maxInFlight);
+    }
+    this.clients = new ArrayList<>(clients);
+    this.maxInFlight = maxInFlight;
+    this.inFlight = new Semaphore(maxInFlight);
+    this.executor = Executors.newFixedThreadPool(maxInFlight,
+      new ThreadFactoryBuilder().setNameFormat("expat-hdfs-%d").setDaemon(true).build());
+  }
+
+  /**
+   * @return an executor over the clients of the user, sized by {@link ExpatConf#HOPS_CLIENT_MAX_IN_FLIGHT_OPS} and
+   * {@link ExpatConf#HOPS_CLIENT_CONNECTIONS}
+   */
+  public static HdfsOperationExecutor forUser(DfsoProvider provider, String user) throws ConfigurationException {
+    Configuration conf = ConfigurationBuilder.getConfiguration();
+    int maxInFlight = conf.getInt(ExpatConf.HOPS_CLIENT_MAX_IN_FLIGHT_OPS,
+      ExpatConf.HOPS_CLIENT_MAX_IN_FLIGHT_OPS_DEFAULT);
+    int connections = conf.getInt(ExpatConf.HOPS_CLIENT_CONNECTIONS, ExpatConf.HOPS_CLIENT_CONNECTIONS_DEFAULT);
+    return new HdfsOperationExecutor(provider.get(user, Math.max(1, Math.min(connections, maxInFlight))),
+      maxInFlight);
+  }
+
+  /**
+   * Queues an operation on a path, blocking while the cap of operations in flight is reached.
+   * @return a future completed once the operation ran, completed exceptionally if it or an earlier operation on the
+   * same path failed since the last {@link #await()}
+   */
+  public CompletableFuture<Void> submit(String path, HdfsOperation operation) throws InterruptedException {
+    if (closed) {
+      throw new IllegalStateException("hdfs operation executor is closed");
+    }
+    inFlight.acquire();
+    CompletableFuture<Void> result;
+    synchronized (tails) {
+      CompletableFuture<Void> previous = tails.getOrDefault(path, DONE);
+      result = previous.handleAsync((ignored, failure) -> {
+        if (failure != null) {
+          throw new CompletionException(new IOException("skipped after an earlier operation failed on:" + path,
+            unwrap(failure)));
+        }
+        run(path, operation);
+        return null;
+      }, executor);
+      tails.put(path, result);
+    }
+    CompletableFuture<Void> submitted = result;
+    result.whenComplete((ignored, failure) -> {
+      if (failure == null) {
+        synchronized (tails) {
+          tails.remove(path, submitted);
+        }
+      }
+      // a failed operation stays the tail of its path, so the operations submitted after it are skipped even once
+      // it completed
+      inFlight.release();
+    });
+    return result;
+  }
+
+  private void run(String path, HdfsOperation operation) {
+    DistributedFileSystemOps dfso = clients.get(Math.floorMod(path.hashCode(), clients.size()));
+    try {
+      operation.apply(dfso);
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Operation failed on path:{}. {}", path, e.getMessage());
+      synchronized (errors) {
+        errors.computeIfAbsent(path, p -> new ArrayList<>()).add(e);
+      }
+      throw new CompletionException(e);
+    }
+  }
+
+  private static Throwable unwrap(Throwable failure) {
+    return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+  }
+
+  /**
+   * Waits for all the operations submitted so far, then forgets their failures: the operations submitted afterwards
+   * run whatever failed before.
+   * @return the failures of the operations since the last call, grouped by path, skipped operations are not included
+   */
+  public Map<String, List<Exception>> await() throws InterruptedException {
+    inFlight.acquire(maxInFlight);
+    inFlight.release(maxInFlight);
+    synchronized (tails) {
+      tails.clear();
+    }
+    synchronized (errors) {
+      Map<String, List<Exception>> pathErrors = getErrors();
+      errors.clear();
+      return pathErrors;
+    }
+  }
+
+  /**
+   * Waits for all the operations submitted so far.
+   * @throws IOException if any of them failed, with the first failure as cause
+   */
+  public void awaitSuccess() throws InterruptedException, IOException {
+    Map<String, List<Exception>> pathErrors = await();
+    if (!pathErrors.isEmpty()) {
+      Map.Entry<String, List<Exception>> first = pathErrors.entrySet().iterator().next();
+      throw new IOException("hdfs operations failed on " + pathErrors.size() + " paths, first:" + first.getKey(),
+        first.getValue().get(0));
+    }
+  }
+
+  /**
+   * @return the failures of the operations since the last {@link #await()}, grouped by path
+   */
+  public Map<String, List<Exception>> getErrors() {
+    synchronized (errors) {
+      Map<String, List<Exception>> copy = new LinkedHashMap<>();
+      for (Map.Entry<String, List<Exception>> pathErrors : errors.entrySet()) {
+        copy.put(pathErrors.getKey(), Collections.unmodifiableList(new ArrayList<>(pathErrors.getValue())));
+      }
+      return copy;
+    }
+  }
+
+  /**
+   * Waits for the operations in flight and stops the threads. The clients belong to the caller and stay open.
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        executor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -25,7 +25,27 @@ import java.io.File;
 import java.io.IOException;
 
 public class HopsClient {
+  private static Configuration configuration;
+  
+  /**
+   * Creates a new client, owned by the caller. Steps that get a MigrationContext should use the shared clients of
+   * its {@link DfsoProvider} instead.
+   */
   public static DistributedFileSystemOps getDFSO(String clientUser) {
+    Configuration conf = new Configuration(getConfiguration());
+    UserGroupInformation superUser = UserGroupInformation.createRemoteUser(clientUser);
+    DistributedFileSystemOps dfso = new DistributedFileSystemOps(superUser, conf);
+    return dfso;
+  }
+  
+  /**
+   * @return the hadoop configuration read from HADOOP_HOME, parsed on first use. Callers must copy it before
+   * changing it.
+   */
+  static synchronized Configuration getConfiguration() {
+    if (configuration != null) {
+      return configuration;
+    }
     String hadoopHome = System.getenv("HADOOP_HOME");
     if(hadoopHome == null || hadoopHome.equals("")) {
       throw new IllegalArgumentException("env HADOOP_HOME is not set");
@@ -49,10 +69,10 @@ public class HopsClient {
     conf.addResource(hadoopPath);
     conf.addResource(hdfsPath);
     conf.set(CommonConfigurationKeys.FS_PERMISSIONS_UMASK_KEY, "0007");
-    
-    UserGroupInformation superUser = UserGroupInformation.createRemoteUser(clientUser);
-    DistributedFileSystemOps dfso = new DistributedFileSystemOps(superUser, conf);
-    return dfso;
+    //load the resources now, copies share nothing with it afterwards
+    conf.size();
+    configuration = conf;
+    return configuration;
   }
   
   public static void removeXAttr(DistributedFileSystemOps dfso, String path, String name) throws IOException {
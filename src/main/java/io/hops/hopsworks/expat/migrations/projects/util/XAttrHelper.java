@@ -17,10 +17,12 @@
 package io.hops.hopsworks.expat.migrations.projects.util;
 
 import io.hops.hopsworks.common.hdfs.DistributedFileSystemOps;
+import io.hops.hopsworks.expat.migrations.MigrationException;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.ipc.RemoteException;
 
 import java.io.IOException;
+import java.sql.SQLException;
 
 public class XAttrHelper {
   private final static String XATTR_PROV_NAMESPACE = "provenance";
@@ -43,6 +45,33 @@ public class XAttrHelper {
     return hasPrevious;
   }
   
+  /**
+   * Writes the xattr only if it does not already hold value.
+   * @return true if the xattr was written, false if the write was skipped
+   */
+  public static boolean upsertXAttrIfChanged(DistributedFileSystemOps udfso, XAttrWriteFilter writeFilter,
+    String path, String namespace, String name, byte[] value) throws XAttrException {
+    if (name == null || name.isEmpty()) {
+      throw new XAttrException("missing xattr name");
+    }
+    String xattrName = getXAttrName(namespace, name);
+    try {
+      if (writeFilter.isUnchanged(path, xattrName, value)) {
+        return false;
+      }
+    } catch (SQLException | MigrationException e) {
+      throw new XAttrException("metadata error", e);
+    }
+    addXAttrInt(udfso, path, namespace, name, value);
+    writeFilter.written(path, xattrName, value);
+    return true;
+  }
+  
+  public static boolean upsertProvXAttrIfChanged(DistributedFileSystemOps udfso, XAttrWriteFilter writeFilter,
+    String path, String name, byte[] value) throws XAttrException {
+    return upsertXAttrIfChanged(udfso, writeFilter, path, XATTR_PROV_NAMESPACE, name, value);
+  }
+  
   private static void addXAttrInt(DistributedFileSystemOps udfso, String path, String namespace, String name,
     byte[] value) throws XAttrException {
     try {
@@ -0,0 +1,117 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations.projects.util;
+
+import io.hops.hopsworks.expat.db.dao.hdfs.inode.ExpatXAttrReader;
+import io.hops.hopsworks.expat.migrations.MigrationException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which xattr writes of a step can be skipped because the xattr already holds the value to be written.
+ * Rewriting an xattr with the same value is not free: every write is picked by epipe and reindexed in elastic.
+ * <p/>
+ * The stored values are read through an {@link ExpatXAttrReader}, which reads the xattrs of all the siblings of a
+ * path with one query, or with {@link #prefetch(Collection, String)} for paths spread over many directories. Only a
+ * SHA-256 digest of each value is kept. Use it through {@link XAttrHelper#upsertXAttrIfChanged} or, for writes done
+ * elsewhere, with {@link #isUnchanged(String, String, byte[])} and {@link #written(String, String, byte[])}.
+ */
+public class XAttrWriteFilter {
+  private final ExpatXAttrReader reader;
+  // digest of the stored value keyed by xattr name and path, null digests are xattrs known to be missing
+  private final Map<String, Map<String, byte[]>> digests = new HashMap<>();
+  private final LongAdder skipped = new LongAdder();
+  private final LongAdder applied = new LongAdder();
+  
+  public XAttrWriteFilter(ExpatXAttrReader reader) {
+    this.reader = reader;
+  }
+  
+  /**
+   * Reads the stored values of an xattr of many paths with batched queries.
+   * @param xattrName namespace and name of the xattr, e.g. provenance.core
+   */
+  public synchronized void prefetch(Collection<String> paths, String xattrName)
+    throws SQLException, IllegalAccessException, InstantiationException {
+    Map<String, byte[]> values = reader.getXAttrsByPath(paths, xattrName);
+    Map<String, byte[]> known = digests.computeIfAbsent(xattrName, name -> new HashMap<>());
+    for (String path : paths) {
+      byte[] value = values.get(path);
+      known.put(path, value == null ? null : digest(value));
+    }
+  }
+  
+  /**
+   * @return true if the xattr already holds value, the write is then counted as skipped
+   */
+  public synchronized boolean isUnchanged(String path, String xattrName, byte[] value)
+    throws SQLException, MigrationException {
+    Map<String, byte[]> known = digests.computeIfAbsent(xattrName, name -> new HashMap<>());
+    byte[] stored;
+    if (known.containsKey(path)) {
+      stored = known.get(path);
+    } else {
+      byte[] storedValue = reader.getXAttr(path, xattrName);
+      stored = storedValue == null ? null : digest(storedValue);
+      known.put(path, stored);
+    }
+    if (stored != null && Arrays.equals(stored, digest(value))) {
+      skipped.increment();
+      return true;
+    }
+    return false;
+  }
+  
+  /**
+   * Records a write done by the caller, so that writing the same value again is skipped.
+   */
+  public synchronized void written(String path, String xattrName, byte[] value) {
+    digests.computeIfAbsent(xattrName, name -> new HashMap<>()).put(path, digest(value));
+    applied.increment();
+  }
+  
+  public long getSkipped() {
+    return skipped.sum();
+  }
+  
+  public long getApplied() {
+    return applied.sum();
+  }
+  
+  /**
+   * See {@link ExpatXAttrReader#checkVerified()}.
+   */
+  public void checkVerified() throws MigrationException {
+    reader.checkVerified();
+  }
+  
+  private static byte[] digest(byte[] value) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(value);
+    } catch (NoSuchAlgorithmException e) {
+      // every JVM provides SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+}
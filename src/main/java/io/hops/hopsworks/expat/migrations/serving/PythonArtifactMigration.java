@@ -17,14 +17,18 @@
 
 package io.hops.hopsworks.expat.migrations.serving;
 
+import com.google.common.collect.Sets;
 import io.hops.hopsworks.common.hdfs.DistributedFileSystemOps;
 import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
 import io.hops.hopsworks.expat.configuration.ExpatConf;
+import io.hops.hopsworks.expat.db.BatchWriter;
 import io.hops.hopsworks.expat.db.DbConnectionFactory;
+import io.hops.hopsworks.expat.db.KeysetScanner;
 import io.hops.hopsworks.expat.db.dao.util.ExpatVariables;
 import io.hops.hopsworks.expat.db.dao.util.ExpatVariablesFacade;
 import io.hops.hopsworks.expat.migrations.MigrateStep;
 import io.hops.hopsworks.expat.migrations.MigrationException;
+import io.hops.hopsworks.expat.migrations.MigrationResource;
 import io.hops.hopsworks.expat.migrations.RollbackException;
 import io.hops.hopsworks.expat.migrations.projects.util.HopsClient;
 import org.apache.commons.codec.digest.DigestUtils;
@@ -50,6 +54,7 @@ import java.sql.SQLException;
 import java.sql.Types;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Stack;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
@@ -63,7 +68,7 @@ public class PythonArtifactMigration implements MigrateStep {
   private String hopsUser;
   private ExpatVariablesFacade expatVariablesFacade;
   
-  private final static String GET_PROJECTS = "SELECT id, projectname FROM project";
+  private final static String GET_PROJECTS_COLUMNS = "id, projectname";
   private final static String GET_SERVINGS = "SELECT id, model_path, model_version, artifact_version, model_server " +
     "FROM serving WHERE project_id = ?";
   private final static String GET_SERVINGS_WITH_PRED = "SELECT id, model_name, model_version, artifact_version, " +
@@ -84,6 +89,13 @@ public class PythonArtifactMigration implements MigrateStep {
   private final static String PREDICTOR_PREFIX = "predictor-";
   private final static String NEW_PREDICTOR_NAME = "%s_%s";
   
+  @Override
+  public Set<MigrationResource> resources() {
+    return Sets.newHashSet(
+      MigrationResource.table("serving"),
+      MigrationResource.hdfs("/Projects"));
+  }
+  
   @Override
   public void migrate() throws MigrationException {
     LOGGER.info("Starting python artifacts migration");
@@ -107,101 +119,95 @@ public class PythonArtifactMigration implements MigrateStep {
       throw new MigrationException(errorMsg, ex);
     }
   
-    PreparedStatement getProjectsStmt = null;
     PreparedStatement getServingsStmt = null;
-    PreparedStatement updateServingWithPredStmt = null;
+    BatchWriter updateServingWithPredWriter = null;
     DistributedFileSystemOps dfso = null;
     try {
       connection.setAutoCommit(false);
       dfso = HopsClient.getDFSO(hopsUser);
+      DistributedFileSystemOps projectDfso = dfso;
   
-      boolean updateServings = false;
-      updateServingWithPredStmt = connection.prepareStatement(UPDATE_SERVING_WITH_PRED);
+      updateServingWithPredWriter = new BatchWriter(connection, UPDATE_SERVING_WITH_PRED, dryRun);
+      BatchWriter updateServingWriter = updateServingWithPredWriter;
+      getServingsStmt = connection.prepareStatement(GET_SERVINGS);
+      PreparedStatement getProjectServingsStmt = getServingsStmt;
       
-      // -- per project
-      getProjectsStmt = connection.prepareStatement(GET_PROJECTS);
-      ResultSet projectsResultSet = getProjectsStmt.executeQuery();
-      while(projectsResultSet.next()) {
-        // parse project query results
-        int projectId = projectsResultSet.getInt(1);
-        String projectName = projectsResultSet.getString(2);
+      // -- per project, serving updates are committed per chunk of projects
+      new KeysetScanner(connection, "project", "id", GET_PROJECTS_COLUMNS)
+        .withChunkListener(lastProjectId -> updateServingWriter.flush())
+        .<IOException, ReflectiveOperationException>scan(projectsResultSet -> {
+          // parse project query results
+          int projectId = projectsResultSet.getInt(1);
+          String projectName = projectsResultSet.getString(2);
         
-        HashSet<String> keepModelArtifacts = new HashSet<>();
+          HashSet<String> keepModelArtifacts = new HashSet<>();
         
-        // -- per serving
-        getServingsStmt = connection.prepareStatement(GET_SERVINGS);
-        getServingsStmt.setInt(1, projectId);
-        ResultSet servingsResultSet = getServingsStmt.executeQuery();
-        while(servingsResultSet.next()) {
-          // parse serving query result
-          int servingId = servingsResultSet.getInt(1);
-          String modelPath = servingsResultSet.getString(2);
-          int modelVersion = servingsResultSet.getInt(3);
-          int artifactVersion = servingsResultSet.getInt(4);
-          int modelServer = servingsResultSet.getInt(5);
-          String newModelPath = extractNewModelPath(projectName, modelPath);
-          String predictor = extractPredictorFilename(modelPath);
+          // -- per serving
+          getProjectServingsStmt.setInt(1, projectId);
+          ResultSet servingsResultSet = getProjectServingsStmt.executeQuery();
+          while(servingsResultSet.next()) {
+            // parse serving query result
+            int servingId = servingsResultSet.getInt(1);
+            String modelPath = servingsResultSet.getString(2);
+            int modelVersion = servingsResultSet.getInt(3);
+            int artifactVersion = servingsResultSet.getInt(4);
+            int modelServer = servingsResultSet.getInt(5);
+            String newModelPath = extractNewModelPath(projectName, modelPath);
+            String predictor = extractPredictorFilename(modelPath);
           
-          if (isKubeInstalled) {
-            // if kubernetes is installed
-            if (artifactVersion == 0) {
-              // and artifact is model-only
-              String modelName = extractModelName(projectName, modelPath);
-              if (modelServer == 0) {
-                // if tensorflow serving and artifact version 0, add this model to be ignored when deleting artifacts
-                // with version 0
-                keepModelArtifacts.add(modelName + "/" + modelVersion);
-                continue;
+            if (isKubeInstalled) {
+              // if kubernetes is installed
+              if (artifactVersion == 0) {
+                // and artifact is model-only
+                String modelName = extractModelName(projectName, modelPath);
+                if (modelServer == 0) {
+                  // if tensorflow serving and artifact version 0, add this model to be ignored when deleting artifacts
+                  // with version 0
+                  keepModelArtifacts.add(modelName + "/" + modelVersion);
+                  continue;
+                }
+                if (modelServer == 1) {
+                  // if flask server
+                  if (!modelPath.endsWith(".py")) {
+                    // if model path does not point to a script, it's been already updated
+                    keepModelArtifacts.add(modelName + "/" + modelVersion);
+                    continue; // ignore serving
+                  }
+                  // migrate artifact
+                  int newArtifactVersion = migratePythonArtifact(projectName, modelName, modelVersion, predictor,
+                    projectDfso);
+                  // update serving
+                  updateServing(servingId, newModelPath, newArtifactVersion, predictor, updateServingWriter);
+                }
               }
+            } else {
+              // if kubernetes is not installed, we don't create artifacts but we have to update python servings
               if (modelServer == 1) {
                 // if flask server
-                if (!modelPath.endsWith(".py")) {
-                  // if model path does not point to a script, it's been already updated
-                  keepModelArtifacts.add(modelName + "/" + modelVersion);
-                  continue; // ignore serving
+                if (modelPath.endsWith(".py")) {
+                  // if model path points to a script, the serving hasn't been updated yet.
+                  // In non-kubernetes installations, predictor contains the full path to the script
+                  updateServing(servingId, newModelPath, null, modelPath, updateServingWriter);
                 }
-                // migrate artifact
-                int newArtifactVersion = migratePythonArtifact(projectName, modelName, modelVersion, predictor, dfso);
-                // update serving
-                updateServing(servingId, newModelPath, newArtifactVersion, predictor, updateServingWithPredStmt);
-                updateServings = true;
-              }
-            }
-          } else {
-            // if kubernetes is not installed, we don't create artifacts but we have to update python servings
-            if (modelServer == 1) {
-              // if flask server
-              if (modelPath.endsWith(".py")) {
-                // if model path points to a script, the serving hasn't been updated yet.
-                // In non-kubernetes installations, predictor contains the full path to the script
-                updateServing(servingId, newModelPath, null, modelPath, updateServingWithPredStmt);
-                updateServings = true;
               }
             }
-          }
-        } // -- end -- per serving
+          } // -- end -- per serving
         
-        if (isKubeInstalled) {
-          // delete unused version 0 artifacts
-          deletePythonArtifacts(projectName, keepModelArtifacts, dfso);
-        }
-      } // -- end -- per project
-      
-      // update servings
-      if (dryRun) {
-        LOGGER.info(updateServingWithPredStmt.toString());
-      } else {
-        if (updateServings) { updateServingWithPredStmt.executeBatch(); }
-      }
+          if (isKubeInstalled) {
+            // delete unused version 0 artifacts
+            deletePythonArtifacts(projectName, keepModelArtifacts, projectDfso);
+          }
+        }); // -- end -- per project
       
       connection.commit();
       connection.setAutoCommit(true);
-    } catch(IllegalAccessException | InstantiationException | IllegalStateException | IOException | SQLException ex) {
+    } catch(ReflectiveOperationException | IllegalStateException | IOException | SQLException ex) {
       String errorMsg = "Could not migrate python artifact";
       LOGGER.error(errorMsg);
       throw new MigrationException(errorMsg, ex);
     } finally {
-      closeConnections(getProjectsStmt, getServingsStmt, updateServingWithPredStmt);
+      closeConnections(getServingsStmt);
+      closeWriter(updateServingWithPredWriter);
       if (dfso != null) {
         dfso.close();
       }
@@ -232,14 +238,14 @@ public class PythonArtifactMigration implements MigrateStep {
       throw new RollbackException(errorMsg, ex);
     }
   
-    PreparedStatement getProjectsStmt = null;
     PreparedStatement getServingsWithPredStmt = null;
-    PreparedStatement updateServingStmt = null;
+    BatchWriter updateServingWriter = null;
     PreparedStatement existsServingPredictorStmt = null;
     DistributedFileSystemOps dfso = null;
     try {
       connection.setAutoCommit(false);
       dfso = HopsClient.getDFSO(hopsUser);
+      DistributedFileSystemOps projectDfso = dfso;
   
       existsServingPredictorStmt = connection.prepareStatement(EXISTS_SERVING_PREDICTOR_COLUMN);
       ResultSet existsResultSet = existsServingPredictorStmt.executeQuery();
@@ -247,106 +253,100 @@ public class PythonArtifactMigration implements MigrateStep {
         // if predictor column does not exist, rollback was already done
         // do nothing
       } else {
-        boolean updateServings = false;
-        updateServingStmt = connection.prepareStatement(UPDATE_SERVING);
+        updateServingWriter = new BatchWriter(connection, UPDATE_SERVING, dryRun);
+        BatchWriter projectUpdateServingWriter = updateServingWriter;
+        getServingsWithPredStmt = connection.prepareStatement(GET_SERVINGS_WITH_PRED);
+        PreparedStatement getProjectServingsStmt = getServingsWithPredStmt;
         
-        // -- per project
-        getProjectsStmt = connection.prepareStatement(GET_PROJECTS);
-        ResultSet projectsResultSet = getProjectsStmt.executeQuery();
-        while(projectsResultSet.next()) {
-          // parse project query results
-          int projectId = projectsResultSet.getInt(1);
-          String projectName = projectsResultSet.getString(2);
+        // -- per project, serving updates are committed per chunk of projects
+        new KeysetScanner(connection, "project", "id", GET_PROJECTS_COLUMNS)
+          .withChunkListener(lastProjectId -> projectUpdateServingWriter.flush())
+          .<IOException, ReflectiveOperationException>scan(projectsResultSet -> {
+            // parse project query results
+            int projectId = projectsResultSet.getInt(1);
+            String projectName = projectsResultSet.getString(2);
     
-          HashSet<String> keepModelArtifacts = new HashSet<>();
-          HashSet<String> createModelArtifactV0 = new HashSet<>();
+            HashSet<String> keepModelArtifacts = new HashSet<>();
+            HashSet<String> createModelArtifactV0 = new HashSet<>();
     
-          // -- per serving
-          getServingsWithPredStmt = connection.prepareStatement(GET_SERVINGS_WITH_PRED);
-          getServingsWithPredStmt.setInt(1, projectId);
-          ResultSet servingsResultSet = getServingsWithPredStmt.executeQuery();
-          while (servingsResultSet.next()) {
-            // parse serving query result
-            int servingId = servingsResultSet.getInt(1);
-            String modelName = servingsResultSet.getString(2);
-            int modelVersion = servingsResultSet.getInt(3);
-            int artifactVersion = servingsResultSet.getInt(4);
-            int modelServer = servingsResultSet.getInt(5);
-            String predictor = servingsResultSet.getString(6);
-            String newPredictor = String.format(NEW_PREDICTOR_NAME, artifactVersion, predictor);
+            // -- per serving
+            getProjectServingsStmt.setInt(1, projectId);
+            ResultSet servingsResultSet = getProjectServingsStmt.executeQuery();
+            while (servingsResultSet.next()) {
+              // parse serving query result
+              int servingId = servingsResultSet.getInt(1);
+              String modelName = servingsResultSet.getString(2);
+              int modelVersion = servingsResultSet.getInt(3);
+              int artifactVersion = servingsResultSet.getInt(4);
+              int modelServer = servingsResultSet.getInt(5);
+              String predictor = servingsResultSet.getString(6);
+              String newPredictor = String.format(NEW_PREDICTOR_NAME, artifactVersion, predictor);
             
-            if (modelServer == 1) {
-              // if flask
-              if (artifactVersion > 0) {
-                // and artifact version > 0
-                if (isKubeInstalled) {
-                  // Keep track of model name for later creation of artifact version 0
-                  createModelArtifactV0.add(modelName + "/" + modelVersion);
-  
-                  // Copy predictor script to model version folder if it doesn't already exists.
-                  Path modelVersionPath = new Path(String.format(MODEL_VERSION_PATH, projectName, modelName,
-                    modelVersion));
-                  FileStatus fileStatus = dfso.getFileStatus(modelVersionPath);
-                  FsPermission permission = fileStatus.getPermission();
-                  String username = fileStatus.getOwner();
-                  String group = fileStatus.getGroup();
-                  Path artifactVersionPath = new Path(String.format(ARTIFACT_VERSION_PATH, projectName, modelName,
-                    modelVersion, artifactVersion));
+              if (modelServer == 1) {
+                // if flask
+                if (artifactVersion > 0) {
+                  // and artifact version > 0
+                  if (isKubeInstalled) {
+                    // Keep track of model name for later creation of artifact version 0
+                    createModelArtifactV0.add(modelName + "/" + modelVersion);
+  
+                    // Copy predictor script to model version folder if it doesn't already exists.
+                    Path modelVersionPath = new Path(String.format(MODEL_VERSION_PATH, projectName, modelName,
+                      modelVersion));
+                    FileStatus fileStatus = projectDfso.getFileStatus(modelVersionPath);
+                    FsPermission permission = fileStatus.getPermission();
+                    String username = fileStatus.getOwner();
+                    String group = fileStatus.getGroup();
+                    Path artifactVersionPath = new Path(String.format(ARTIFACT_VERSION_PATH, projectName, modelName,
+                      modelVersion, artifactVersion));
                   
-                  copyPredictorFileToModelVersionFolder(modelVersionPath, artifactVersionPath, predictor, newPredictor,
-                    permission, username, group, dfso);
-  
-                  // Delete artifact version
-                  if (dryRun) {
-                    LOGGER.info("Delete artifact version directory: " + artifactVersionPath.toString());
-                  } else {
-                    dfso.rm(artifactVersionPath, true);
+                    copyPredictorFileToModelVersionFolder(modelVersionPath, artifactVersionPath, predictor,
+                      newPredictor, permission, username, group, projectDfso);
+  
+                    // Delete artifact version
+                    if (dryRun) {
+                      LOGGER.info("Delete artifact version directory: " + artifactVersionPath.toString());
+                    } else {
+                      projectDfso.rm(artifactVersionPath, true);
+                    }
                   }
-                }
                 
-                // Update serving
-                // - modelPath -> predictor script in model version folder
-                // - artifactVersion -> 0 or null (no k8s)
-                // - predictor -> will be removed
-                String scriptPath = String.format(MODEL_VERSION_PATH + "/%s", projectName, modelName, modelVersion,
-                  newPredictor);
-                updateServing(servingId, scriptPath, isKubeInstalled ? 0 : null, null, updateServingStmt);
-                updateServings = true;
-              } else {
-                // and artifact version = 0
-                LOGGER.info(String.format("Migration of MODEL-ONLY artifact ignored for model %s and version " +
-                  "%s in project %s", modelName, modelVersion, projectName));
-              }
-            } else if(modelServer == 0) {
-              if (isKubeInstalled) {
-                // if tensorflow serving, keep track of model name/version to avoid removing its artifacts
-                keepModelArtifacts.add(modelName + "/" + modelVersion);
+                  // Update serving
+                  // - modelPath -> predictor script in model version folder
+                  // - artifactVersion -> 0 or null (no k8s)
+                  // - predictor -> will be removed
+                  String scriptPath = String.format(MODEL_VERSION_PATH + "/%s", projectName, modelName, modelVersion,
+                    newPredictor);
+                  updateServing(servingId, scriptPath, isKubeInstalled ? 0 : null, null, projectUpdateServingWriter);
+                } else {
+                  // and artifact version = 0
+                  LOGGER.info(String.format("Migration of MODEL-ONLY artifact ignored for model %s and version " +
+                    "%s in project %s", modelName, modelVersion, projectName));
+                }
+              } else if(modelServer == 0) {
+                if (isKubeInstalled) {
+                  // if tensorflow serving, keep track of model name/version to avoid removing its artifacts
+                  keepModelArtifacts.add(modelName + "/" + modelVersion);
+                }
               }
-            }
-          } // -- end -- per serving
+            } // -- end -- per serving
   
-          if (isKubeInstalled) {
-            // Delete unused artifacts and create artifact version 0 for python servings
-            deleteNewAndCreateV0Artifacts(projectName, keepModelArtifacts, createModelArtifactV0, dfso);
-          }
-        } // -- end -- per project
-  
-        // update servings
-        if (dryRun) {
-          LOGGER.info(updateServingStmt.toString());
-        } else {
-          if (updateServings) { updateServingStmt.executeBatch(); }
-        }
+            if (isKubeInstalled) {
+              // Delete unused artifacts and create artifact version 0 for python servings
+              deleteNewAndCreateV0Artifacts(projectName, keepModelArtifacts, createModelArtifactV0, projectDfso);
+            }
+          }); // -- end -- per project
       }
       
       connection.commit();
       connection.setAutoCommit(true);
-    } catch(IllegalStateException | SQLException | IOException | IllegalAccessException | InstantiationException ex) {
+    } catch(ReflectiveOperationException | IllegalStateException | IOException | SQLException ex) {
       String errorMsg = "Could not rollback python artifact";
       LOGGER.error(errorMsg);
       throw new RollbackException(errorMsg, ex);
     } finally {
-      closeConnections(getProjectsStmt, getServingsWithPredStmt, updateServingStmt, existsServingPredictorStmt);
+      closeConnections(getServingsWithPredStmt, existsServingPredictorStmt);
+      closeWriter(updateServingWriter);
       if (dfso != null) {
         dfso.close();
       }
@@ -400,20 +400,21 @@ public class PythonArtifactMigration implements MigrateStep {
   }
   
   private void updateServing(int servingId, String modelPath, Integer artifactVersion, String predictor,
-      PreparedStatement updateServingStmt) throws SQLException {
-    updateServingStmt.setString(1, modelPath);
-    if (artifactVersion != null) {
-      updateServingStmt.setInt(2, artifactVersion);
-    } else {
-      updateServingStmt.setNull(2, Types.INTEGER);
-    }
-    if (predictor != null) {
-      updateServingStmt.setString(3, predictor);
-      updateServingStmt.setInt(4, servingId);
-    } else {
-      updateServingStmt.setInt(3, servingId);
-    }
-    updateServingStmt.addBatch();
+      BatchWriter updateServingWriter) throws SQLException {
+    updateServingWriter.add(updateServingStmt -> {
+      updateServingStmt.setString(1, modelPath);
+      if (artifactVersion != null) {
+        updateServingStmt.setInt(2, artifactVersion);
+      } else {
+        updateServingStmt.setNull(2, Types.INTEGER);
+      }
+      if (predictor != null) {
+        updateServingStmt.setString(3, predictor);
+        updateServingStmt.setInt(4, servingId);
+      } else {
+        updateServingStmt.setInt(3, servingId);
+      }
+    });
   }
   
   private void copyFilesToArtifactFolder(Path modelVersionPath, Path artifactVersionDirPath,
@@ -822,6 +823,16 @@ public class PythonArtifactMigration implements MigrateStep {
     expatVariablesFacade = new ExpatVariablesFacade(ExpatVariables.class, connection);
   }
   
+  private void closeWriter(BatchWriter writer) {
+    try {
+      if (writer != null) {
+        writer.close();
+      }
+    } catch(SQLException ex) {
+      //do nothing
+    }
+  }
+  
   private void closeConnections(PreparedStatement... stmts) {
     try {
       for (PreparedStatement stmt : stmts) {
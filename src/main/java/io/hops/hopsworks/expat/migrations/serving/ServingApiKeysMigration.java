@@ -16,6 +16,7 @@
 
 package io.hops.hopsworks.expat.migrations.serving;
 
+import com.google.common.collect.Sets;
 import io.fabric8.kubernetes.api.model.ObjectMetaBuilder;
 import io.fabric8.kubernetes.api.model.Secret;
 import io.fabric8.kubernetes.api.model.SecretBuilder;
@@ -29,6 +30,7 @@ import io.hops.hopsworks.expat.db.dao.util.ExpatVariablesFacade;
 import io.hops.hopsworks.expat.kubernetes.KubernetesClientFactory;
 import io.hops.hopsworks.expat.migrations.MigrateStep;
 import io.hops.hopsworks.expat.migrations.MigrationException;
+import io.hops.hopsworks.expat.migrations.MigrationResource;
 import io.hops.hopsworks.expat.migrations.RollbackException;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.configuration2.Configuration;
@@ -49,6 +51,7 @@ import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class ServingApiKeysMigration implements MigrateStep {
@@ -101,6 +104,14 @@ public class ServingApiKeysMigration implements MigrateStep {
   private final static String SERVING_API_KEY_SECRET_SUFFIX = "--serving";
   private final static String SERVING_API_KEY_SECRET_PREFIX = "api-key";
   
+  @Override
+  public Set<MigrationResource> resources() {
+    return Sets.newHashSet(
+      MigrationResource.table("api_key"),
+      MigrationResource.table("api_key_scope"),
+      MigrationResource.namespace("*"));
+  }
+  
   @Override
   public void migrate() throws MigrationException {
     LOGGER.info("Starting serving api keys migration");
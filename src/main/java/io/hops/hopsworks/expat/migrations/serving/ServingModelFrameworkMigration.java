@@ -20,18 +20,17 @@ import io.hops.hopsworks.common.hdfs.DistributedFileSystemOps;
 import io.hops.hopsworks.expat.configuration.ConfigurationBuilder;
 import io.hops.hopsworks.expat.configuration.ExpatConf;
 import io.hops.hopsworks.expat.db.DbConnectionFactory;
+import io.hops.hopsworks.expat.db.dao.hdfs.inode.ExpatXAttrReader;
 import io.hops.hopsworks.expat.migrations.MigrateStep;
 import io.hops.hopsworks.expat.migrations.MigrationException;
 import io.hops.hopsworks.expat.migrations.RollbackException;
 import io.hops.hopsworks.expat.migrations.projects.util.HopsClient;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.ex.ConfigurationException;
-import org.apache.hadoop.fs.Path;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -75,6 +74,7 @@ public class ServingModelFrameworkMigration implements MigrateStep {
     try {
       connection.setAutoCommit(false);
       dfso = HopsClient.getDFSO(hopsUser);
+      ExpatXAttrReader xattrReader = ExpatXAttrReader.create(connection, dfso);
       
       // -- per serving
       updateServingStmt = connection.prepareStatement(UPDATE_SERVING);
@@ -88,13 +88,14 @@ public class ServingModelFrameworkMigration implements MigrateStep {
         
         // get model framework attr:
         // NOTE: PYTHON is considered as default value
-        ModelFramework modelFramework = getModelFramework(dfso, modelPath, modelVersion);
+        ModelFramework modelFramework = getModelFramework(xattrReader, modelPath, modelVersion);
         
         // add serving update to batch
         updateServingStmt.setInt(1, modelFramework.ordinal()); // model_framework
         updateServingStmt.setInt(2, servingId);
         updateServingStmt.addBatch();
       }
+      xattrReader.checkVerified();
       
       // update servings
       if (dryRun) {
@@ -105,7 +106,7 @@ public class ServingModelFrameworkMigration implements MigrateStep {
       
       connection.commit();
       connection.setAutoCommit(true);
-    } catch (IllegalStateException | SQLException ex) {
+    } catch (IllegalStateException | SQLException | ConfigurationException ex) {
       String errorMsg = "Could not migrate serving model framework";
       LOGGER.error(errorMsg);
       throw new MigrationException(errorMsg, ex);
@@ -123,16 +124,15 @@ public class ServingModelFrameworkMigration implements MigrateStep {
     // noop
   }
   
-  private ModelFramework getModelFramework(DistributedFileSystemOps dfso, String modelPath, Integer modelVersion) {
+  private ModelFramework getModelFramework(ExpatXAttrReader xattrReader, String modelPath, Integer modelVersion)
+    throws SQLException, MigrationException {
     String modelVersionPath = modelPath + "/" + modelVersion;
-    byte[] modelSummaryBytes = null;
-    try {
-      modelSummaryBytes = dfso.getXAttr(new Path(modelVersionPath), MODEL_SUMMARY_XATTR_NAMESPACE_NAME);
-    } catch (IOException ex) {
-      LOGGER.info("Model framework XAttr not found in model version directory '%s', using default value instead",
+    // the versions of a model are siblings, their model summaries are read with one query
+    byte[] modelSummaryBytes = xattrReader.getXAttr(modelVersionPath, MODEL_SUMMARY_XATTR_NAMESPACE_NAME);
+    if (modelSummaryBytes == null) {
+      LOGGER.info("Model framework XAttr not found in model version directory '{}', using default value instead",
         modelVersionPath);
-    }
-    if (modelSummaryBytes != null) {
+    } else {
       JSONObject modelSummary = new JSONObject(new String(modelSummaryBytes));
       if (modelSummary.has("framework")) {
         String framework = modelSummary.getString("framework");
@@ -0,0 +1,55 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.db.dao;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.sql.rowset.RowSetMetaDataImpl;
+import java.sql.SQLException;
+
+public class TestColumnIndex {
+
+  private static ColumnIndex columns(String... labels) throws SQLException {
+    RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+    metaData.setColumnCount(labels.length);
+    for (int i = 0; i < labels.length; i++) {
+      metaData.setColumnLabel(i + 1, labels[i]);
+    }
+    return ColumnIndex.of(metaData);
+  }
+
+  @Test
+  public void testLabelsAreCaseInsensitive() throws SQLException {
+    ColumnIndex columns = columns("id", "projectId", "INODE_NAME");
+    Assert.assertEquals(1, columns.get("ID"));
+    Assert.assertEquals(2, columns.get("projectid"));
+    Assert.assertEquals(3, columns.get("inode_name"));
+  }
+
+  @Test
+  public void testFirstOccurrenceWins() throws SQLException {
+    // as ResultSet.findColumn, for joins selecting the same column name twice
+    ColumnIndex columns = columns("id", "name", "ID");
+    Assert.assertEquals(1, columns.get("id"));
+  }
+
+  @Test(expected = SQLException.class)
+  public void testMissingColumn() throws SQLException {
+    columns("id").get("name");
+  }
+}
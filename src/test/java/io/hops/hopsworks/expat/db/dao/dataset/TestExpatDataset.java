@@ -0,0 +1,112 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.db.dao.dataset;
+
+import io.hops.hopsworks.expat.db.dao.ColumnIndex;
+import io.hops.hopsworks.expat.db.dao.RowMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import java.sql.SQLException;
+import java.sql.Types;
+
+public class TestExpatDataset {
+
+  // the columns of the dataset table, in an order and case other than the ones the mapper reads them in
+  private static final String[] LABELS = {"PERMISSION", "feature_store_id", "projectId", "dstype", "public_ds_id",
+    "public_ds", "searchable", "description", "inode_name", "inode_id", "id"};
+  private static final int[] TYPES = {Types.VARCHAR, Types.INTEGER, Types.INTEGER, Types.VARCHAR, Types.VARCHAR,
+    Types.INTEGER, Types.BOOLEAN, Types.VARCHAR, Types.VARCHAR, Types.BIGINT, Types.INTEGER};
+
+  static CachedRowSet rows(Object[]... rows) throws SQLException {
+    RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+    metaData.setColumnCount(LABELS.length);
+    for (int i = 0; i < LABELS.length; i++) {
+      metaData.setColumnName(i + 1, LABELS[i]);
+      metaData.setColumnLabel(i + 1, LABELS[i]);
+      metaData.setColumnType(i + 1, TYPES[i]);
+      metaData.setNullable(i + 1, RowSetMetaDataImpl.columnNullable);
+    }
+    CachedRowSet rowSet = RowSetProvider.newFactory().createCachedRowSet();
+    rowSet.setMetaData(metaData);
+    for (Object[] row : rows) {
+      rowSet.moveToInsertRow();
+      for (int i = 0; i < row.length; i++) {
+        rowSet.updateObject(i + 1, row[i]);
+      }
+      rowSet.insertRow();
+    }
+    rowSet.moveToCurrentRow();
+    rowSet.beforeFirst();
+    return rowSet;
+  }
+
+  @Test
+  public void testRowMapper() throws SQLException {
+    CachedRowSet rowSet = rows(
+      new Object[]{"EDITABLE", 5, 3, "DATASET", "pub", 1, true, "desc", "Resources", 42L, 7},
+      new Object[]{"READ_ONLY", null, 4, "FEATURESTORE", null, 0, false, null, "fs.db", 43L, 8});
+    RowMapper<ExpatDataset> mapper = ExpatDataset.ROW_MAPPER.bind(rowSet);
+
+    Assert.assertTrue(rowSet.next());
+    ExpatDataset dataset = mapper.map(rowSet);
+    Assert.assertEquals(Integer.valueOf(7), dataset.getId());
+    Assert.assertEquals(Long.valueOf(42L), dataset.getInodeId());
+    Assert.assertEquals("Resources", dataset.getName());
+    Assert.assertEquals("desc", dataset.getDescription());
+    Assert.assertTrue(dataset.isSearchable());
+    Assert.assertEquals(1, dataset.getPublicDs());
+    Assert.assertEquals("pub", dataset.getPublicDsId());
+    Assert.assertEquals("DATASET", dataset.getDsType());
+    Assert.assertEquals(Integer.valueOf(3), dataset.getProjectId());
+    Assert.assertEquals(Integer.valueOf(5), dataset.getFeatureStoreId());
+    Assert.assertEquals("EDITABLE", dataset.getPermission());
+
+    Assert.assertTrue(rowSet.next());
+    dataset = mapper.map(rowSet);
+    Assert.assertEquals(Integer.valueOf(8), dataset.getId());
+    Assert.assertEquals("fs.db", dataset.getName());
+    Assert.assertNull(dataset.getDescription());
+    Assert.assertFalse(dataset.isSearchable());
+    Assert.assertNull(dataset.getPublicDsId());
+    // getInt of a null column, as when the columns were read by label
+    Assert.assertEquals(Integer.valueOf(0), dataset.getFeatureStoreId());
+    Assert.assertEquals("READ_ONLY", dataset.getPermission());
+    Assert.assertFalse(rowSet.next());
+  }
+
+  @Test
+  public void testGetEntity() throws SQLException {
+    CachedRowSet rowSet = rows(new Object[]{"EDITABLE", 5, 3, "DATASET", "pub", 1, true, "desc", "Resources", 42L, 7});
+    Assert.assertTrue(rowSet.next());
+    ExpatDataset dataset = new ExpatDataset().getEntity(rowSet);
+    Assert.assertEquals(Integer.valueOf(7), dataset.getId());
+    Assert.assertEquals("Resources", dataset.getName());
+    Assert.assertEquals("EDITABLE", dataset.getPermission());
+  }
+
+  @Test(expected = SQLException.class)
+  public void testMissingColumn() throws SQLException {
+    RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+    metaData.setColumnCount(1);
+    metaData.setColumnLabel(1, "id");
+    ExpatDataset.ROW_MAPPER.create(ColumnIndex.of(metaData));
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.db.dao.hdfs.inode;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+public class TestExpatXAttrReader {
+
+  @Test
+  public void testPartsConcatenatedInIndexOrder() {
+    ExpatXAttrReader.Parts<Long> parts = new ExpatXAttrReader.Parts<>();
+    parts.add(1L, 2, bytes("baz"));
+    parts.add(2L, 0, bytes("single"));
+    parts.add(1L, 0, bytes("foo"));
+    parts.add(1L, 1, bytes("bar"));
+
+    Map<Long, byte[]> values = parts.values();
+    Assert.assertEquals(2, values.size());
+    Assert.assertEquals("foobarbaz", new String(values.get(1L), StandardCharsets.UTF_8));
+    Assert.assertEquals("single", new String(values.get(2L), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testPartsKeepEmptyValues() {
+    ExpatXAttrReader.Parts<String> parts = new ExpatXAttrReader.Parts<>();
+    parts.add("fg_1", 0, new byte[0]);
+
+    Assert.assertArrayEquals(new byte[0], parts.values().get("fg_1"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testPartsRejectDuplicateIndex() {
+    ExpatXAttrReader.Parts<String> parts = new ExpatXAttrReader.Parts<>();
+    parts.add("fg_1", 0, bytes("foo"));
+    parts.add("fg_1", 0, bytes("bar"));
+  }
+
+  @Test
+  public void testNamespaceOrdinals() {
+    // ordinals of XAttr.NameSpace as stored by HopsFS
+    Assert.assertEquals(0, ExpatXAttrReader.namespaceOf("user"));
+    Assert.assertEquals(1, ExpatXAttrReader.namespaceOf("trusted"));
+    Assert.assertEquals(2, ExpatXAttrReader.namespaceOf("security"));
+    Assert.assertEquals(3, ExpatXAttrReader.namespaceOf("system"));
+    Assert.assertEquals(4, ExpatXAttrReader.namespaceOf("raw"));
+    Assert.assertEquals(5, ExpatXAttrReader.namespaceOf("provenance"));
+    Assert.assertEquals(5, ExpatXAttrReader.namespaceOf("PROVENANCE"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownNamespace() {
+    ExpatXAttrReader.namespaceOf("hops");
+  }
+
+  @Test
+  public void testParseName() {
+    Assert.assertArrayEquals(new String[]{"provenance", "featurestore"},
+      ExpatXAttrReader.parse("provenance.featurestore"));
+    Assert.assertArrayEquals(new String[]{"user", "tags.v2"}, ExpatXAttrReader.parse("user.tags.v2"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParseNameWithoutNamespace() {
+    ExpatXAttrReader.parse("tags");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParseNameWithoutName() {
+    ExpatXAttrReader.parse("user.");
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.elastic;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestElasticClient {
+
+  @Test
+  public void testCopyableSettings() {
+    JSONObject settings = new JSONObject()
+      .put("index.number_of_shards", "3")
+      .put("index.number_of_replicas", "1")
+      .put("index.refresh_interval", "1s")
+      .put("index.analysis.analyzer.prov.type", "custom")
+      .put("index.analysis.filter.stop.stopwords", new JSONArray().put("a").put("the"))
+      .put("index.uuid", "k2LsVz2qRcW")
+      .put("index.creation_date", "1700000000000")
+      .put("index.provided_name", "12__file_prov")
+      .put("index.version.created", "7100299")
+      .put("index.version.upgraded", "7100299")
+      .put("index.history.uuid", "h1")
+      .put("index.routing.allocation.initial_recovery._id", "n1")
+      .put("index.routing.allocation.include._tier_preference", "data_content")
+      .put("index.resize.source.name", "src")
+      .put("index.blocks.write", "true")
+      .put("index.versioned", "kept");
+
+    JSONObject copyable = ElasticClient.copyableSettings(settings);
+    Assert.assertEquals(new JSONObject()
+      .put("index.number_of_shards", "3")
+      .put("index.number_of_replicas", "1")
+      .put("index.refresh_interval", "1s")
+      .put("index.analysis.analyzer.prov.type", "custom")
+      .put("index.analysis.filter.stop.stopwords", new JSONArray().put("a").put("the"))
+      .put("index.routing.allocation.include._tier_preference", "data_content")
+      .put("index.versioned", "kept").toMap(), copyable.toMap());
+  }
+
+  @Test
+  public void testIndexVersion() {
+    Assert.assertEquals(1, ElasticClient.indexVersion("12__file_prov", "12__file_prov"));
+    String v3 = ElasticClient.versionedIndex("12__file_prov", 3);
+    Assert.assertEquals("12__file_prov_v3", v3);
+    Assert.assertEquals(3, ElasticClient.indexVersion("12__file_prov", v3));
+    Assert.assertTrue(ElasticClient.isIndexVersion("12__file_prov", "12__file_prov_v2"));
+    Assert.assertFalse(ElasticClient.isIndexVersion("12__file_prov", "12__file_prov_vx"));
+    Assert.assertFalse(ElasticClient.isIndexVersion("12__file_prov", "12__file_provenance"));
+    Assert.assertFalse(ElasticClient.isIndexVersion("1__file_prov", "12__file_prov"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testNotAnIndexVersion() {
+    ElasticClient.indexVersion("12__file_prov", "12__file_prov_backup");
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.json;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestJsonCodec {
+
+  @Test
+  public void testWriteKeepsReadOrder() throws JsonProcessingException {
+    String json = "{\"b\":1,\"a\":{\"z\":true,\"y\":null},\"c\":[3,2,1]}";
+    Assert.assertEquals(json, JsonCodec.write(JsonCodec.readObject(json)));
+  }
+
+  @Test
+  public void testRenameMovesFieldLast() throws JsonProcessingException {
+    ObjectNode node = JsonCodec.readObject("{\"a\":1,\"b\":2,\"c\":3}");
+    Assert.assertTrue(JsonCodec.rename(node, "a", "A"));
+    Assert.assertEquals("{\"b\":2,\"c\":3,\"A\":1}", JsonCodec.write(node));
+    Assert.assertTrue(JsonCodec.rename(node, "c", "c"));
+    Assert.assertEquals("{\"b\":2,\"A\":1,\"c\":3}", JsonCodec.write(node));
+  }
+
+  @Test
+  public void testRenameReplacesExistingField() throws JsonProcessingException {
+    ObjectNode node = JsonCodec.readObject("{\"a\":1,\"b\":2,\"c\":3}");
+    Assert.assertTrue(JsonCodec.rename(node, "c", "a"));
+    // the replaced field keeps its position
+    Assert.assertEquals("{\"a\":3,\"b\":2}", JsonCodec.write(node));
+  }
+
+  @Test
+  public void testRenameMissingField() throws JsonProcessingException {
+    ObjectNode node = JsonCodec.readObject("{\"a\":1}");
+    Assert.assertFalse(JsonCodec.rename(node, "b", "c"));
+    Assert.assertEquals("{\"a\":1}", JsonCodec.write(node));
+  }
+
+  @Test
+  public void testRemove() throws JsonProcessingException {
+    ObjectNode node = JsonCodec.readObject("{\"a\":1,\"b\":null}");
+    Assert.assertTrue(JsonCodec.remove(node, "b"));
+    Assert.assertFalse(JsonCodec.remove(node, "b"));
+    Assert.assertEquals("{\"a\":1}", JsonCodec.write(node));
+  }
+
+  @Test
+  public void testGetters() throws JsonProcessingException {
+    ObjectNode node = JsonCodec.readObject("{\"a\":1,\"b\":null,\"c\":{\"d\":\"e\"}}");
+    Assert.assertEquals("1", JsonCodec.getText(node, "a"));
+    Assert.assertNull(JsonCodec.getText(node, "b"));
+    Assert.assertNull(JsonCodec.getText(node, "x"));
+    Assert.assertEquals("e", JsonCodec.getText(JsonCodec.getObject(node, "c"), "d"));
+    Assert.assertNull(JsonCodec.getObject(node, "a"));
+    Assert.assertNull(JsonCodec.getObject(node, "x"));
+  }
+
+  @Test(expected = JsonProcessingException.class)
+  public void testReadObjectRejectsNull() throws JsonProcessingException {
+    JsonCodec.readObject("null");
+  }
+
+  @Test(expected = JsonProcessingException.class)
+  public void testReadObjectRejectsArray() throws JsonProcessingException {
+    JsonCodec.readObject("[]");
+  }
+
+  public static class Value {
+    public String name = "a";
+    public String empty = null;
+  }
+
+  @Test
+  public void testWriteLeavesOutNullFields() throws JsonProcessingException {
+    Assert.assertEquals("{\"name\":\"a\"}", JsonCodec.write(new Value()));
+  }
+}
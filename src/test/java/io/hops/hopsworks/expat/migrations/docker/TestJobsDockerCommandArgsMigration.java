@@ -0,0 +1,60 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations.docker;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.hops.hopsworks.expat.json.JsonCodec;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestJobsDockerCommandArgsMigration {
+
+  private static final String DOCKER = "{\"type\":\"dockerJobConfiguration\",\"command\":\"python\"," +
+    "\"args\":\"a.py -v\"}";
+
+  @Test
+  public void testTransformAndRevert() throws JsonProcessingException {
+    ObjectNode config = JsonCodec.readObject(DOCKER);
+    JobsDockerCommandArgsMigration migration = new JobsDockerCommandArgsMigration();
+
+    migration.transform(config);
+    Assert.assertEquals("{\"type\":\"dockerJobConfiguration\",\"defaultArgs\":\"a.py -v\",\"command\":[\"python\"]}",
+      JsonCodec.write(config));
+    migration.revert(config);
+    // the command is replaced in place, the args go last
+    Assert.assertEquals("{\"type\":\"dockerJobConfiguration\",\"command\":\"python\",\"args\":\"a.py -v\"}",
+      JsonCodec.write(config));
+  }
+
+  @Test
+  public void testTransformSkipsMigrated() throws JsonProcessingException {
+    String migrated = "{\"type\":\"dockerJobConfiguration\",\"command\":[\"python\"],\"defaultArgs\":\"a.py\"}";
+    ObjectNode config = JsonCodec.readObject(migrated);
+    new JobsDockerCommandArgsMigration().transform(config);
+
+    Assert.assertEquals(migrated, JsonCodec.write(config));
+  }
+
+  @Test
+  public void testRevertSkipsNotMigrated() throws JsonProcessingException {
+    ObjectNode config = JsonCodec.readObject(DOCKER);
+    new JobsDockerCommandArgsMigration().revert(config);
+
+    Assert.assertEquals(DOCKER, JsonCodec.write(config));
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations.docker;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.hops.hopsworks.expat.json.JsonCodec;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestJobsDockerResourcesMigration {
+
+  private static final String DOCKER = "{\"type\":\"dockerJobConfiguration\",\"imagePath\":\"img\",\"memory\":2048," +
+    "\"cores\":2,\"gpus\":1}";
+  private static final String MIGRATED = "{\"type\":\"dockerJobConfiguration\",\"imagePath\":\"img\"," +
+    "\"resourceConfig\":{\"type\":\"dockerResourcesConfiguration\",\"memory\":2048,\"cores\":2,\"gpus\":1}}";
+
+  @Test
+  public void testTransformAndRevert() throws JsonProcessingException {
+    ObjectNode config = JsonCodec.readObject(DOCKER);
+    JobsDockerResourcesMigration migration = new JobsDockerResourcesMigration();
+
+    migration.transform(config);
+    Assert.assertEquals(MIGRATED, JsonCodec.write(config));
+    migration.revert(config);
+    Assert.assertEquals(DOCKER, JsonCodec.write(config));
+  }
+
+  @Test
+  public void testTransformDefaults() throws JsonProcessingException {
+    ObjectNode config = JsonCodec.readObject("{\"type\":\"dockerJobConfiguration\"}");
+    new JobsDockerResourcesMigration().transform(config);
+
+    Assert.assertEquals("{\"type\":\"dockerJobConfiguration\",\"resourceConfig\":" +
+      "{\"type\":\"dockerResourcesConfiguration\",\"memory\":1024,\"cores\":1,\"gpus\":0}}", JsonCodec.write(config));
+  }
+
+  @Test
+  public void testTransformSkipsMigrated() throws JsonProcessingException {
+    ObjectNode config = JsonCodec.readObject(MIGRATED);
+    new JobsDockerResourcesMigration().transform(config);
+
+    Assert.assertEquals(MIGRATED, JsonCodec.write(config));
+  }
+
+  @Test
+  public void testRevertSkipsNotMigrated() throws JsonProcessingException {
+    ObjectNode config = JsonCodec.readObject(DOCKER);
+    new JobsDockerResourcesMigration().revert(config);
+
+    Assert.assertEquals(DOCKER, JsonCodec.write(config));
+  }
+
+  @Test
+  public void testAppliesTo() {
+    JobsDockerResourcesMigration migration = new JobsDockerResourcesMigration();
+    Assert.assertTrue(migration.appliesTo("DOCKER"));
+    Assert.assertTrue(migration.appliesTo("PYTHON"));
+    Assert.assertFalse(migration.appliesTo("SPARK"));
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations.featurestore.statistics;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * The org.json based parser that {@link ExpatFeatureDescriptiveStatistics#parseStatistics} replaced, as it was before,
+ * to compare the two.
+ */
+class LegacyStatisticsParser {
+
+  static Collection<ExpatFeatureDescriptiveStatistics> parse(String content) {
+    if (content == null || content.isEmpty()) {
+      return null;
+    }
+    try {
+      JSONObject jsonContent = new JSONObject(content);
+      if (!jsonContent.has("columns")) {
+        return null;
+      }
+      JSONArray columns = jsonContent.getJSONArray("columns");
+      HashMap<String, ExpatFeatureDescriptiveStatistics> descFdsMap = new HashMap<>();
+      for (int i = 0; i < columns.length(); i++) {
+        JSONObject colStats = (JSONObject) columns.get(i);
+        ExpatFeatureDescriptiveStatistics fds = fromJSON(colStats);
+        descFdsMap.merge(fds.featureName, fds, ExpatFeatureDescriptiveStatistics::merge);
+      }
+      return descFdsMap.values();
+    } catch (JSONException | ClassCastException e) {
+      // a column that is not an object failed the migration of the file
+      return null;
+    }
+  }
+
+  private static ExpatFeatureDescriptiveStatistics fromJSON(JSONObject statsJson) {
+    ExpatFeatureDescriptiveStatistics fds = new ExpatFeatureDescriptiveStatistics();
+    fds.featureName = statsJson.getString("column");
+    if (statsJson.has("dataType")) {
+      fds.featureType = statsJson.getString("dataType");
+    }
+    if (statsJson.has("count") && statsJson.getLong("count") == 0) {
+      fds.count = 0L;
+      return fds;
+    }
+    if (statsJson.has("numRecordsNull")) {
+      fds.numNullValues = statsJson.getLong("numRecordsNull");
+    }
+    if (statsJson.has("numRecordsNonNull")) {
+      fds.numNonNullValues = statsJson.getLong("numRecordsNonNull");
+    }
+    if (statsJson.has("numRecordsNull") && statsJson.has("numRecordsNonNull")) {
+      fds.count = Long.valueOf(statsJson.getInt("numRecordsNull") + statsJson.getInt("numRecordsNonNull"));
+    }
+    if (statsJson.has("count")) {
+      fds.count = statsJson.getLong("count");
+    }
+    if (statsJson.has("completeness")) {
+      fds.completeness = statsJson.getDouble("completeness");
+    }
+    if (statsJson.has("approximateNumDistinctValues")) {
+      fds.approxNumDistinctValues = statsJson.getLong("approximateNumDistinctValues");
+    }
+    if (statsJson.has("uniqueness")) {
+      fds.uniqueness = statsJson.getDouble("uniqueness");
+    }
+    if (statsJson.has("entropy")) {
+      fds.entropy = statsJson.getDouble("entropy");
+    }
+    if (statsJson.has("distinctness")) {
+      fds.distinctness = statsJson.getDouble("distinctness");
+    }
+    if (statsJson.has("exactNumDistinctValues")) {
+      fds.exactNumDistinctValues = statsJson.getLong("exactNumDistinctValues");
+    }
+    if (statsJson.has("minimum")) {
+      fds.min = statsJson.getDouble("minimum");
+    }
+    if (statsJson.has("maximum")) {
+      fds.max = statsJson.getDouble("maximum");
+    }
+    if (statsJson.has("sum")) {
+      fds.sum = statsJson.getDouble("sum");
+    }
+    if (statsJson.has("mean")) {
+      fds.mean = statsJson.getDouble("mean");
+    }
+    if (statsJson.has("stdDev")) {
+      fds.stddev = statsJson.getDouble("stdDev");
+    }
+    if (statsJson.has("percentiles")) {
+      JSONArray percJsonArray = statsJson.getJSONArray("percentiles");
+      fds.percentiles = new ArrayList<>();
+      for (int i = 0; i < percJsonArray.length(); i++) {
+        fds.percentiles.add(percJsonArray.getDouble(i));
+      }
+    }
+    JSONObject extendedStatistics = new JSONObject();
+    if (statsJson.has("correlations")) {
+      extendedStatistics.put("correlations", statsJson.getJSONArray("correlations"));
+    }
+    if (statsJson.has("histogram")) {
+      extendedStatistics.put("histogram", statsJson.getJSONArray("histogram"));
+    }
+    if (statsJson.has("kll")) {
+      extendedStatistics.put("kll", statsJson.getJSONObject("kll"));
+    }
+    if (statsJson.has("unique_values")) {
+      extendedStatistics.put("unique_values", statsJson.getJSONArray("unique_values"));
+    }
+    if (extendedStatistics.length() > 0) {
+      fds.extendedStatistics = extendedStatistics.toString();
+    }
+    return fds;
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations.featurestore.statistics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to parse one legacy statistics file, streamed by
+ * {@link ExpatFeatureDescriptiveStatistics#parseStatistics}, against the file read into a String and parsed by the
+ * org.json parser before it. The files are shaped as the ones of wide feature groups: every column has a histogram,
+ * percentiles, a kll sketch and a correlation with every other column. Add -prof gc for the allocation per file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class StatisticsParserBenchmark {
+  private static final int HISTOGRAM_BINS = 20;
+  private static final int PERCENTILES = 100;
+  private static final int KLL_BUCKETS = 50;
+  private static final int KLL_SKETCH_VALUES = 200;
+  
+  @Param({"50", "500"})
+  public int columns;
+  
+  private byte[] content;
+  
+  @Setup
+  public void setup() {
+    StringBuilder json = new StringBuilder("{\"columns\":[");
+    for (int c = 0; c < columns; c++) {
+      if (c > 0) {
+        json.append(',');
+      }
+      appendColumn(json, c);
+    }
+    json.append("]}");
+    content = json.toString().getBytes(StandardCharsets.UTF_8);
+  }
+  
+  @Benchmark
+  public Collection<ExpatFeatureDescriptiveStatistics> streaming() throws IOException {
+    return ExpatFeatureDescriptiveStatistics.parseStatistics(new ByteArrayInputStream(content));
+  }
+  
+  @Benchmark
+  public Collection<ExpatFeatureDescriptiveStatistics> legacy() {
+    return LegacyStatisticsParser.parse(new String(content, StandardCharsets.UTF_8));
+  }
+  
+  private void appendColumn(StringBuilder json, int column) {
+    json.append("{\"column\":\"feature_").append(column).append("\",\"dataType\":\"Fractional\"")
+      .append(",\"count\":100000,\"numRecordsNull\":12,\"numRecordsNonNull\":99988,\"completeness\":0.99988")
+      .append(",\"approximateNumDistinctValues\":81234,\"exactNumDistinctValues\":80912,\"distinctness\":0.80912")
+      .append(",\"entropy\":11.3071,\"uniqueness\":0.71243,\"minimum\":-1034.25,\"maximum\":98213.5")
+      .append(",\"sum\":4.2119e7,\"mean\":421.24,\"stdDev\":1873.0921");
+    json.append(",\"percentiles\":[");
+    for (int i = 0; i < PERCENTILES; i++) {
+      json.append(i == 0 ? "" : ",").append(-1034.25 + i * 992.4753);
+    }
+    json.append("],\"histogram\":[");
+    for (int i = 0; i < HISTOGRAM_BINS; i++) {
+      json.append(i == 0 ? "" : ",").append("{\"value\":\"").append(-1034.25 + i * 4962.3875)
+        .append("\",\"count\":").append(5000 + i * 17).append('}');
+    }
+    json.append("],\"correlations\":[");
+    for (int i = 0; i < columns; i++) {
+      json.append(i == 0 ? "" : ",").append("{\"column\":\"feature_").append(i).append("\",\"correlation\":")
+        .append(i == column ? 1.0 : ((i * 31 + column * 17) % 2000 - 1000) / 1000.0).append('}');
+    }
+    json.append("],\"kll\":{\"buckets\":[");
+    for (int i = 0; i < KLL_BUCKETS; i++) {
+      json.append(i == 0 ? "" : ",").append("{\"low_value\":").append(-1034.25 + i * 1984.9505)
+        .append(",\"high_value\":").append(-1034.25 + (i + 1) * 1984.9505)
+        .append(",\"count\":").append(1999 + i % 3).append('}');
+    }
+    json.append("],\"sketch\":{\"c\":0.64,\"k\":2048,\"data\":[[");
+    for (int i = 0; i < KLL_SKETCH_VALUES; i++) {
+      json.append(i == 0 ? "" : ",").append(-1034.25 + i * 496.2375);
+    }
+    json.append("]]}}}");
+  }
+}
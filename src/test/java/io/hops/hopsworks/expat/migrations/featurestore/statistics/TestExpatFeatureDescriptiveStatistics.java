@@ -0,0 +1,140 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations.featurestore.statistics;
+
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+public class TestExpatFeatureDescriptiveStatistics {
+
+  private static final String NUMERICAL = "{\"column\":\"age\",\"dataType\":\"Integral\",\"count\":10," +
+    "\"numRecordsNull\":1,\"numRecordsNonNull\":9,\"completeness\":0.9,\"approximateNumDistinctValues\":7," +
+    "\"uniqueness\":0.5,\"entropy\":1.25,\"distinctness\":0.7,\"exactNumDistinctValues\":7," +
+    "\"minimum\":1,\"maximum\":99.5,\"sum\":\"250\",\"mean\":27.7,\"stdDev\":3.1,\"percentiles\":[1,2.5,\"3\"]," +
+    "\"histogram\":[{\"value\":\"1\",\"count\":3}],\"correlations\":[{\"column\":\"b\",\"correlation\":0.1}]," +
+    "\"kll\":{\"buckets\":[{\"low_value\":1,\"high_value\":2,\"count\":1}],\"sketch\":{\"c\":0.6,\"k\":2048}}}";
+  private static final String UNIQUE_VALUES = "{\"column\":\"age\",\"unique_values\":[1,2,3]}";
+  private static final String STRING = "{\"column\":\"name\",\"dataType\":\"String\",\"numRecordsNull\":0," +
+    "\"numRecordsNonNull\":4,\"completeness\":1.0,\"approximateNumDistinctValues\":3,\"ignored\":{\"a\":[1]}}";
+  private static final String EMPTY = "{\"column\":\"empty\",\"dataType\":\"Fractional\",\"count\":0," +
+    "\"mean\":null,\"percentiles\":[null],\"histogram\":{}}";
+
+  @Test
+  public void testSameAsLegacyParser() throws IOException {
+    assertSameAsLegacy("{\"columns\":[" + NUMERICAL + "," + STRING + "," + EMPTY + "]}");
+  }
+
+  @Test
+  public void testUniqueValuesMergedAsLegacyParser() throws IOException {
+    assertSameAsLegacy("{\"columns\":[" + NUMERICAL + "," + UNIQUE_VALUES + "]}");
+    assertSameAsLegacy("{\"columns\":[" + UNIQUE_VALUES + "," + NUMERICAL + "]}");
+    assertSameAsLegacy("{\"columns\":[" + UNIQUE_VALUES + "," + STRING.replace("name", "age") + "]}");
+  }
+
+  @Test
+  public void testOtherSectionsSkipped() throws IOException {
+    assertSameAsLegacy("{\"checks\":[{\"columns\":[]}],\"columns\":[" + STRING + "],\"meta\":{\"columns\":1}}");
+  }
+
+  @Test
+  public void testRejectedAsLegacyParser() throws IOException {
+    String[] invalid = {
+      "",
+      "[]",
+      "{\"other\":[]}",
+      "{\"columns\":[" + STRING + "]",
+      "{\"columns\":[1]}",
+      "{\"columns\":[{\"dataType\":\"String\"}]}",
+      "{\"columns\":[{\"column\":null}]}",
+      "{\"columns\":[{\"column\":\"a\",\"dataType\":null,\"count\":0}]}",
+      "{\"columns\":[{\"column\":\"a\",\"count\":null}]}",
+      "{\"columns\":[{\"column\":\"a\",\"mean\":null}]}",
+      "{\"columns\":[{\"column\":\"a\",\"count\":5,\"numRecordsNull\":null}]}",
+      "{\"columns\":[{\"column\":\"a\",\"minimum\":\"abc\"}]}",
+      "{\"columns\":[{\"column\":\"a\",\"maximum\":true}]}",
+      "{\"columns\":[{\"column\":\"a\",\"percentiles\":[1,null,2],\"mean\":1}]}",
+      "{\"columns\":[{\"column\":\"a\",\"percentiles\":null}]}",
+      "{\"columns\":[{\"column\":\"a\",\"histogram\":null}]}",
+      "{\"columns\":[{\"column\":\"a\",\"kll\":[]}]}",
+      "{\"columns\":[" + NUMERICAL.replace("\"stdDev\":3.1", "\"stdDev\":null") + "]}",
+    };
+    for (String content : invalid) {
+      Assert.assertNull(content, LegacyStatisticsParser.parse(content));
+      Assert.assertNull(content, parse(content));
+    }
+  }
+
+  private static Collection<ExpatFeatureDescriptiveStatistics> parse(String content) throws IOException {
+    return ExpatFeatureDescriptiveStatistics.parseStatistics(
+      new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static void assertSameAsLegacy(String content) throws IOException {
+    Map<String, ExpatFeatureDescriptiveStatistics> expected = byName(LegacyStatisticsParser.parse(content));
+    Map<String, ExpatFeatureDescriptiveStatistics> actual = byName(parse(content));
+    Assert.assertEquals(expected.keySet(), actual.keySet());
+    for (String feature : expected.keySet()) {
+      assertSame(expected.get(feature), actual.get(feature));
+    }
+  }
+
+  private static Map<String, ExpatFeatureDescriptiveStatistics> byName(
+    Collection<ExpatFeatureDescriptiveStatistics> statistics) {
+    Assert.assertNotNull(statistics);
+    Map<String, ExpatFeatureDescriptiveStatistics> byName = new HashMap<>();
+    for (ExpatFeatureDescriptiveStatistics fds : statistics) {
+      byName.put(fds.featureName, fds);
+    }
+    return byName;
+  }
+
+  private static void assertSame(ExpatFeatureDescriptiveStatistics expected, ExpatFeatureDescriptiveStatistics actual) {
+    String feature = expected.featureName;
+    Assert.assertEquals(feature, expected.featureType, actual.featureType);
+    Assert.assertEquals(feature, expected.count, actual.count);
+    Assert.assertEquals(feature, expected.completeness, actual.completeness);
+    Assert.assertEquals(feature, expected.numNonNullValues, actual.numNonNullValues);
+    Assert.assertEquals(feature, expected.numNullValues, actual.numNullValues);
+    Assert.assertEquals(feature, expected.approxNumDistinctValues, actual.approxNumDistinctValues);
+    Assert.assertEquals(feature, expected.min, actual.min);
+    Assert.assertEquals(feature, expected.max, actual.max);
+    Assert.assertEquals(feature, expected.sum, actual.sum);
+    Assert.assertEquals(feature, expected.mean, actual.mean);
+    Assert.assertEquals(feature, expected.stddev, actual.stddev);
+    Assert.assertEquals(feature, expected.percentiles, actual.percentiles);
+    Assert.assertEquals(feature, expected.distinctness, actual.distinctness);
+    Assert.assertEquals(feature, expected.entropy, actual.entropy);
+    Assert.assertEquals(feature, expected.uniqueness, actual.uniqueness);
+    Assert.assertEquals(feature, expected.exactNumDistinctValues, actual.exactNumDistinctValues);
+    if (expected.extendedStatistics == null) {
+      Assert.assertNull(feature, actual.extendedStatistics);
+    } else {
+      // the key order of the legacy org.json output is not defined
+      Assert.assertNotNull(feature, actual.extendedStatistics);
+      Assert.assertTrue(feature + ": " + actual.extendedStatistics,
+        new JSONObject(expected.extendedStatistics).similar(new JSONObject(actual.extendedStatistics)));
+    }
+  }
+}
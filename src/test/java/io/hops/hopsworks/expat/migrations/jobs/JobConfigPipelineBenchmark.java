@@ -0,0 +1,98 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations.jobs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows per second converted by {@link UpdateJobConfiguration} through {@link JobConfigPipeline#transform}, against
+ * the org.json conversion before the shared json codec. The rows are json_config values of jobs of the versions the
+ * step upgrades from, Spark and PySpark jobs with Kafka topics, schedules and resources, and a Flink job the step
+ * leaves as it is. Add -prof gc for the allocation per row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(JobConfigPipelineBenchmark.ROWS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JobConfigPipelineBenchmark {
+  static final int ROWS = 4;
+
+  private static final String SPARK = "{\"type\":\"SPARK\",\"HISTORYSERVER\":\"\",\"PYSPARK_PYTHON\":\"\"," +
+    "\"PYLIB\":\"\",\"DYNEXECSMAX\":1500,\"DYNEXECSMIN\":1,\"IS_TFONSPARK\":false," +
+    "\"JARPATH\":\"hdfs:///Projects/demo/Resources/spark-examples.jar\"," +
+    "\"ARGS\":\"-i 10 --output hdfs:///Projects/demo/Resources/out\",\"APPNAME\":\"sparkpi\"," +
+    "\"MAINCLASS\":\"org.apache.spark.examples.SparkPi\"," +
+    "\"PROPERTIES\":\"spark.sql.shuffle.partitions=8:spark.eventLog.enabled=true\",\"QUEUE\":\"default\"," +
+    "\"AMMEM\":1024,\"AMCORS\":1,\"EXECMEM\":4096,\"EXECCORES\":2,\"NUM_GPUS\":0,\"NUMEXECS\":4,\"DYNEXECS\":true," +
+    "\"DYNEXECSMINSELECTED\":1,\"DYNEXECSMAXSELECTED\":10,\"DYNEXECSINIT\":1," +
+    "\"KAFKA\":{\"TOPICS\":{\"0\":{\"NAME\":\"clicks\",\"TICKED\":true}," +
+    "\"1\":{\"NAME\":\"orders\",\"TICKED\":false}}," +
+    "\"CONSUMER_GROUPS\":{\"0\":{\"NAME\":\"demo-consumers\",\"ID\":\"1\"}},\"ADVANCED\":false}," +
+    "\"SCHEDULE\":{\"NUMBER\":1,\"UNIT\":\"DAY\",\"START\":1500000000000}," +
+    "\"RESOURCES\":{\"0\":{\"NAME\":\"log4j.properties\"," +
+    "\"PATH\":\"hdfs:///Projects/demo/Resources/log4j.properties\"," +
+    "\"VISIBILITY\":\"APPLICATION\",\"TYPE\":\"FILE\"},\"1\":{\"NAME\":\"deps.zip\"," +
+    "\"PATH\":\"hdfs:///Projects/demo/Resources/deps.zip\",\"VISIBILITY\":\"APPLICATION\",\"TYPE\":\"ARCHIVE\"}}}";
+  private static final String PYSPARK = "{\"type\":\"PYSPARK\",\"HISTORYSERVER\":\"\",\"PYSPARK_PYTHON\":\"\"," +
+    "\"PYLIB\":\"\",\"DYNEXECSMAX\":1500,\"DYNEXECSMIN\":1,\"IS_TFONSPARK\":true," +
+    "\"JARPATH\":\"hdfs:///Projects/demo/Jupyter/train.py\",\"ARGS\":\"\",\"APPNAME\":\"train\",\"MAINCLASS\":\"\"," +
+    "\"PROPERTIES\":\"\",\"QUEUE\":\"default\",\"AMMEM\":2048,\"AMCORS\":1,\"EXECMEM\":8192,\"EXECCORES\":1," +
+    "\"NUM_GPUS\":1,\"NUMEXECS\":2,\"DYNEXECS\":false,\"DYNEXECSMINSELECTED\":0,\"DYNEXECSMAXSELECTED\":2," +
+    "\"DYNEXECSINIT\":0,\"RESOURCES\":{}}";
+  private static final String PYSPARK_SCHEDULED = "{\"type\":\"PYSPARK\",\"JARPATH\":" +
+    "\"hdfs:///Projects/demo/Jupyter/featurize.py\",\"ARGS\":\"--date today\",\"APPNAME\":\"featurize\"," +
+    "\"QUEUE\":\"default\",\"AMMEM\":1024,\"AMCORS\":1,\"EXECMEM\":2048,\"EXECCORES\":1,\"NUMEXECS\":1," +
+    "\"SCHEDULE\":{\"NUMBER\":6,\"UNIT\":\"HOUR\",\"START\":1510000000000}}";
+  private static final String FLINK = "{\"type\":\"FLINK\",\"appName\":\"stream\",\"jobManagerMemory\":768," +
+    "\"numberOfTaskManagers\":2,\"slots\":1,\"taskManagerMemory\":1024,\"localResources\":[]}";
+
+  private final String[] rows = {SPARK, PYSPARK, PYSPARK_SCHEDULED, FLINK};
+  private final String[] types = {"SPARK", "PYSPARK", "PYSPARK", "FLINK"};
+  private final List<JobConfigTransformer> chain = Collections.singletonList(new UpdateJobConfiguration());
+
+  @Benchmark
+  public void codec(Blackhole blackhole) throws IOException {
+    for (int i = 0; i < ROWS; i++) {
+      blackhole.consume(JobConfigPipeline.transform(chain, false, types[i], rows[i]));
+    }
+  }
+
+  @Benchmark
+  public void legacy(Blackhole blackhole) {
+    for (int i = 0; i < ROWS; i++) {
+      blackhole.consume(LegacyJobConfiguration.convert(rows[i]));
+    }
+  }
+}
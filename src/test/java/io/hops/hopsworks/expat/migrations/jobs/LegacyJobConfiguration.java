@@ -0,0 +1,159 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations.jobs;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Set;
+
+/**
+ * The org.json based conversion of {@link UpdateJobConfiguration#transform} as it was before the shared json codec,
+ * to compare the two.
+ */
+class LegacyJobConfiguration {
+
+  static String convert(String oldConfig) {
+    JSONObject config = new JSONObject(oldConfig);
+
+    renameIfKeyExists(config, "type", "jobType");
+
+    if (config.get("jobType").equals("SPARK") || config.get("jobType").equals("PYSPARK")) {
+      config.put("type", "sparkJobConfiguration");
+    } else {
+      renameIfKeyExists(config, "jobType", "type");
+      return oldConfig;
+    }
+
+    removeKeyIfExists(config, "HISTORYSERVER");
+    removeKeyIfExists(config, "PYSPARK_PYTHON");
+    removeKeyIfExists(config, "PYLIB");
+    removeKeyIfExists(config, "DYNEXECSMAX");
+    removeKeyIfExists(config, "DYNEXECSMIN");
+    removeKeyIfExists(config, "IS_TFONSPARK");
+
+    renameIfKeyExists(config, "JARPATH", "appPath");
+    renameIfKeyExists(config, "ARGS", "args");
+    renameIfKeyExists(config, "APPNAME", "appName");
+    renameIfKeyExists(config, "MAINCLASS", "mainClass");
+    renameIfKeyExists(config, "PROPERTIES", "properties");
+    renameIfKeyExists(config, "QUEUE", "amQueue");
+
+    renameIfKeyExists(config, "AMMEM", "amMemory");
+    renameIfKeyExists(config, "AMCORS", "amVCores");
+
+    renameIfKeyExists(config, "EXECMEM", "spark.executor.memory");
+    renameIfKeyExists(config, "EXECCORES", "spark.executor.cores");
+    renameIfKeyExists(config, "NUM_GPUS", "spark.executor.gpus");
+
+    renameIfKeyExists(config, "NUMEXECS", "spark.executor.instances");
+
+    renameIfKeyExists(config, "DYNEXECS", "spark.dynamicAllocation.enabled");
+    renameIfKeyExists(config, "DYNEXECSMINSELECTED", "spark.dynamicAllocation.minExecutors");
+    renameIfKeyExists(config, "DYNEXECSMAXSELECTED", "spark.dynamicAllocation.maxExecutors");
+    renameIfKeyExists(config, "DYNEXECSINIT", "spark.dynamicAllocation.initialExecutors");
+
+    if (config.has("KAFKA")) {
+      renameKafka(config);
+    }
+    if (config.has("SCHEDULE")) {
+      renameSchedule(config);
+    }
+    if (config.has("RESOURCES")) {
+      renameResources(config);
+    }
+    return config.toString();
+  }
+
+  private static void renameIfKeyExists(JSONObject config, String oldKey, String newKey) {
+    if (config.has(oldKey)) {
+      Object oldKeyValue = config.get(oldKey);
+      config.remove(oldKey);
+      config.put(newKey, oldKeyValue);
+    }
+  }
+
+  private static void removeKeyIfExists(JSONObject config, String key) {
+    if (config.has(key)) {
+      config.remove(key);
+    }
+  }
+
+  private static void renameKafka(JSONObject config) {
+    renameIfKeyExists(config, "KAFKA", "kafka");
+    JSONObject kafkaObj = (JSONObject) config.get("kafka");
+    if (kafkaObj.has("TOPICS")) {
+      JSONArray topicArr = new JSONArray();
+      renameIfKeyExists(kafkaObj, "TOPICS", "topics");
+      JSONObject topicObj = (JSONObject) kafkaObj.get("topics");
+      Set<String> keys = topicObj.keySet();
+      for (String key : keys) {
+        JSONObject obj = new JSONObject();
+        obj.put("name", ((JSONObject) topicObj.get(key)).get("NAME"));
+        obj.put("ticked", ((JSONObject) topicObj.get(key)).get("TICKED"));
+        topicArr.put(topicArr.length(), obj);
+      }
+      kafkaObj.put("topics", topicArr);
+    }
+    if (kafkaObj.has("CONSUMER_GROUPS")) {
+      JSONArray topicArr = new JSONArray();
+      renameIfKeyExists(kafkaObj, "CONSUMER_GROUPS", "consumerGroups");
+      JSONObject topicObj = (JSONObject) kafkaObj.get("consumerGroups");
+      Set<String> keys = topicObj.keySet();
+      for (String key : keys) {
+        JSONObject obj = new JSONObject();
+        obj.put("name", ((JSONObject) topicObj.get(key)).get("NAME"));
+        obj.put("id", ((JSONObject) topicObj.get(key)).get("ID"));
+        topicArr.put(topicArr.length(), obj);
+      }
+      kafkaObj.put("consumerGroups", topicArr);
+    }
+    if (kafkaObj.has("ADVANCED")) {
+      renameIfKeyExists(kafkaObj, "ADVANCED", "advanced");
+    }
+  }
+
+  private static void renameSchedule(JSONObject config) {
+    renameIfKeyExists(config, "SCHEDULE", "schedule");
+    JSONObject scheduleObj = (JSONObject) config.get("schedule");
+    if (scheduleObj.has("NUMBER")) {
+      renameIfKeyExists(scheduleObj, "NUMBER", "number");
+    }
+    if (scheduleObj.has("UNIT")) {
+      renameIfKeyExists(scheduleObj, "UNIT", "unit");
+    }
+    if (scheduleObj.has("START")) {
+      renameIfKeyExists(scheduleObj, "START", "start");
+    }
+  }
+
+  private static void renameResources(JSONObject config) {
+    JSONArray resourcesArr = new JSONArray();
+    renameIfKeyExists(config, "RESOURCES", "localResources");
+    JSONObject resourcesObj = (JSONObject) config.get("localResources");
+    Set<String> keys = resourcesObj.keySet();
+    for (String key : keys) {
+      JSONObject obj = new JSONObject();
+      obj.put("name", ((JSONObject) resourcesObj.get(key)).get("NAME"));
+      obj.put("path", ((JSONObject) resourcesObj.get(key)).get("PATH"));
+      obj.put("visibility", ((JSONObject) resourcesObj.get(key)).get("VISIBILITY"));
+      obj.put("type", ((JSONObject) resourcesObj.get(key)).get("TYPE"));
+      resourcesArr.put(resourcesArr.length(), obj);
+    }
+    config.put("localResources", resourcesArr);
+  }
+}
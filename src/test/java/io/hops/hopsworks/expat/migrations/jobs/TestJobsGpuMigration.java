@@ -0,0 +1,39 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations.jobs;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.hops.hopsworks.expat.json.JsonCodec;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestJobsGpuMigration {
+
+  @Test
+  public void testTransformAndRevert() throws JsonProcessingException {
+    String json = "{\"type\":\"sparkJobConfiguration\",\"EXECMEM\":2048}";
+    ObjectNode config = JsonCodec.readObject(json);
+    JobsGpuMigration migration = new JobsGpuMigration();
+
+    migration.transform(config);
+    Assert.assertEquals("{\"type\":\"sparkJobConfiguration\",\"EXECMEM\":2048,\"NUM_GPUS\":\"0\"}",
+      JsonCodec.write(config));
+    migration.revert(config);
+    Assert.assertEquals(json, JsonCodec.write(config));
+  }
+}
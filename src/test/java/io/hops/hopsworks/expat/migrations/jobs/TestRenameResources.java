@@ -0,0 +1,62 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations.jobs;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.hops.hopsworks.expat.json.JsonCodec;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestRenameResources {
+
+  // one resource of each kind, in the order the rollback lists them
+  private static final String RESOURCES = "{\"type\":\"sparkJobConfiguration\",\"localResources\":[" +
+    "{\"name\":\"a.jar\",\"path\":\"hdfs:///Projects/p/a.jar\",\"visibility\":\"application\",\"type\":\"file\"}," +
+    "{\"name\":\"b.txt\",\"path\":\"hdfs:///Projects/p/b.txt\",\"visibility\":\"application\",\"type\":\"file\"}," +
+    "{\"name\":\"c.zip\",\"path\":\"hdfs:///Projects/p/c.zip\",\"visibility\":\"application\",\"type\":\"archive\"}," +
+    "{\"name\":\"d.py\",\"path\":\"hdfs:///Projects/p/d.py\",\"visibility\":\"application\",\"type\":\"file\"}]}";
+
+  @Test
+  public void testTransform() throws JsonProcessingException {
+    ObjectNode config = JsonCodec.readObject(RESOURCES.replace("{\"type\"", "{\"kafka\":{},\"type\""));
+    new RenameResources().transform(config);
+
+    Assert.assertEquals("{\"type\":\"sparkJobConfiguration\",\"spark.yarn.dist.jars\":\"hdfs:///Projects/p/a.jar,\"," +
+      "\"spark.yarn.dist.pyFiles\":\"hdfs:///Projects/p/d.py,\"," +
+      "\"spark.yarn.dist.archives\":\"hdfs:///Projects/p/c.zip,\"," +
+      "\"spark.yarn.dist.files\":\"hdfs:///Projects/p/b.txt,\"}", JsonCodec.write(config));
+  }
+
+  @Test
+  public void testTransformAndRevert() throws JsonProcessingException {
+    ObjectNode config = JsonCodec.readObject(RESOURCES);
+    RenameResources migration = new RenameResources();
+
+    migration.transform(config);
+    migration.revert(config);
+    Assert.assertEquals(RESOURCES, JsonCodec.write(config));
+  }
+
+  @Test
+  public void testRevertKeepsResourcesNotMigrated() throws JsonProcessingException {
+    ObjectNode config = JsonCodec.readObject(RESOURCES);
+    new RenameResources().revert(config);
+
+    Assert.assertEquals(RESOURCES, JsonCodec.write(config));
+  }
+}
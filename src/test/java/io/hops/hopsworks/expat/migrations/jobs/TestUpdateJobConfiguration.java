@@ -0,0 +1,75 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations.jobs;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.hops.hopsworks.expat.json.JsonCodec;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestUpdateJobConfiguration {
+
+  // the fields dropped by the migration have the values the rollback puts back
+  private static final String SPARK = "{\"type\":\"SPARK\",\"HISTORYSERVER\":\"\",\"PYSPARK_PYTHON\":\"\"," +
+    "\"PYLIB\":\"\",\"DYNEXECSMAX\":1500,\"DYNEXECSMIN\":1,\"JARPATH\":\"hdfs:///Projects/p/app.jar\"," +
+    "\"ARGS\":\"-a 1\",\"APPNAME\":\"app\",\"MAINCLASS\":\"io.hops.Main\",\"PROPERTIES\":\"\",\"QUEUE\":\"default\"," +
+    "\"AMMEM\":1024,\"AMCORS\":1,\"EXECMEM\":2048,\"EXECCORES\":2,\"NUM_GPUS\":0,\"NUMEXECS\":2,\"DYNEXECS\":true," +
+    "\"DYNEXECSMINSELECTED\":1,\"DYNEXECSMAXSELECTED\":10,\"DYNEXECSINIT\":1," +
+    "\"KAFKA\":{\"TOPICS\":[{\"NAME\":\"t\",\"TICKED\":true}],\"CONSUMER_GROUPS\":[{\"NAME\":\"g\",\"ID\":\"1\"}]," +
+    "\"ADVANCED\":false}," +
+    "\"SCHEDULE\":{\"NUMBER\":1,\"UNIT\":\"DAY\",\"START\":1500000000000}," +
+    "\"RESOURCES\":[{\"NAME\":\"a.py\",\"PATH\":\"hdfs:///Projects/p/a.py\",\"VISIBILITY\":\"APPLICATION\"," +
+    "\"TYPE\":\"FILE\"}]}";
+
+  @Test
+  public void testTransform() throws JsonProcessingException {
+    ObjectNode config = JsonCodec.readObject(SPARK);
+    new UpdateJobConfiguration().transform(config);
+
+    Assert.assertEquals("sparkJobConfiguration", JsonCodec.getText(config, "type"));
+    Assert.assertEquals("SPARK", JsonCodec.getText(config, "jobType"));
+    Assert.assertFalse(config.has("HISTORYSERVER"));
+    Assert.assertFalse(config.has("JARPATH"));
+    Assert.assertEquals("hdfs:///Projects/p/app.jar", JsonCodec.getText(config, "appPath"));
+    Assert.assertEquals(2048, config.get("spark.executor.memory").asInt());
+    Assert.assertEquals("t", config.get("kafka").get("topics").get(0).get("name").asText());
+    Assert.assertEquals("1", config.get("kafka").get("consumerGroups").get(0).get("id").asText());
+    Assert.assertEquals("DAY", config.get("schedule").get("unit").asText());
+    Assert.assertEquals("hdfs:///Projects/p/a.py", config.get("localResources").get(0).get("path").asText());
+  }
+
+  @Test
+  public void testTransformAndRevert() throws JsonProcessingException {
+    ObjectNode config = JsonCodec.readObject(SPARK);
+    UpdateJobConfiguration migration = new UpdateJobConfiguration();
+
+    migration.transform(config);
+    migration.revert(config);
+    // renamed fields go last, the fields are compared whatever their order
+    Assert.assertEquals(JsonCodec.readObject(SPARK), config);
+  }
+
+  @Test
+  public void testTransformLeavesOtherJobTypes() throws JsonProcessingException {
+    String json = "{\"type\":\"PYTHON\",\"appPath\":\"hdfs:///Projects/p/a.py\"}";
+    ObjectNode config = JsonCodec.readObject(json);
+    new UpdateJobConfiguration().transform(config);
+
+    Assert.assertEquals(JsonCodec.readObject(json), config);
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * This file is part of Expat
+ * Copyright (C) 2018, Logical Clocks AB. All rights reserved
+ *
+ * Expat is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU Affero General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Expat is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package io.hops.hopsworks.expat.migrations.projects.util;
+
+import io.hops.hopsworks.common.hdfs.DistributedFileSystemOps;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestHdfsOperationExecutor {
+
+  // the operations of the tests do not use the client
+  private static HdfsOperationExecutor executor(int maxInFlight) {
+    return new HdfsOperationExecutor(Collections.<DistributedFileSystemOps>singletonList(null), maxInFlight);
+  }
+
+  @Test
+  public void testSkippedAfterCompletedFailure() throws Exception {
+    AtomicInteger ran = new AtomicInteger();
+    try (HdfsOperationExecutor executor = executor(4)) {
+      CompletableFuture<Void> failed = executor.submit("p", dfso -> {
+        throw new IOException("failed");
+      });
+      failed.handle((ignored, failure) -> null).join();
+      // submitted once the failed operation completed
+      CompletableFuture<Void> skipped = executor.submit("p", dfso -> ran.incrementAndGet());
+      CompletableFuture<Void> other = executor.submit("q", dfso -> ran.incrementAndGet());
+
+      Map<String, List<Exception>> errors = executor.await();
+      Assert.assertTrue(skipped.isCompletedExceptionally());
+      Assert.assertFalse(other.isCompletedExceptionally());
+      Assert.assertEquals(1, ran.get());
+      Assert.assertEquals(Collections.singleton("p"), errors.keySet());
+      Assert.assertEquals(1, errors.get("p").size());
+    }
+  }
+
+  @Test
+  public void testAwaitForgetsFailures() throws Exception {
+    AtomicInteger ran = new AtomicInteger();
+    try (HdfsOperationExecutor executor = executor(4)) {
+      executor.submit("p", dfso -> {
+        throw new IOException("failed");
+      });
+      Assert.assertEquals(1, executor.await().size());
+
+      CompletableFuture<Void> next = executor.submit("p", dfso -> ran.incrementAndGet());
+      Assert.assertTrue(executor.await().isEmpty());
+      Assert.assertFalse(next.isCompletedExceptionally());
+      Assert.assertEquals(1, ran.get());
+      Assert.assertTrue(executor.getErrors().isEmpty());
+    }
+  }
+
+  @Test
+  public void testSamePathInOrder() throws Exception {
+    List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+    try (HdfsOperationExecutor executor = executor(2)) {
+      for (int i = 0; i < 50; i++) {
+        int operation = i;
+        executor.submit("p", dfso -> order.add(operation));
+      }
+      executor.awaitSuccess();
+    }
+    for (int i = 0; i < 50; i++) {
+      Assert.assertEquals(Integer.valueOf(i), order.get(i));
+    }
+  }
+}